@@ -6,12 +6,14 @@ import java.util.concurrent.TimeUnit;
 
 import edu.ucla.cs.jshrinklib.JShrink;
 import edu.ucla.cs.jshrinklib.backup.BackupService;
+import edu.ucla.cs.jshrinklib.backup.DeltaDebugger;
 import edu.ucla.cs.jshrinklib.classcollapser.ClassCollapser;
 import edu.ucla.cs.jshrinklib.classcollapser.ClassCollapserData;
 import edu.ucla.cs.jshrinklib.reachability.MethodData;
 import edu.ucla.cs.jshrinklib.methodinliner.InlineData;
 import edu.ucla.cs.jshrinklib.reachability.*;
 
+import org.apache.commons.io.FileUtils;
 import org.apache.log4j.PropertyConfigurator;
 
 public class Application {
@@ -84,6 +86,12 @@ public class Application {
 			JShrink.enable_member_visibility = !commandLineParser.useBaseline();
 			JShrink.enable_super_class_recursion_check = !commandLineParser.useBaseline();
 			JShrink.enable_annotation_updates = !commandLineParser.useBaseline();
+			JShrink.analysis_threads = commandLineParser.getAnalysisThreads();
+			JShrink.asm_method_removal = commandLineParser.useASM("method-removal");
+			JShrink.asm_method_wiping = commandLineParser.useASM("method-wiping");
+			JShrink.asm_field_removal = commandLineParser.useASM("field-removal");
+			JShrink.normalize_classes = commandLineParser.normalizeClasses();
+			JShrink.process_timeout_minutes = commandLineParser.getProcessTimeoutMinutes();
 
 			if(commandLineParser.collapseClasses() && commandLineParser.removeClasses()){
 				//TODO: This inconsistency should be solved.
@@ -457,6 +465,15 @@ public class Application {
 				))return;
 			}
 
+			// the changes discarded after failing their tests are not written (see "--delta-debugging")
+			Set<String> discardedClasses = jShrink.getDiscardedClasses();
+			if(!discardedClasses.isEmpty()) {
+				filterClassesAfterDebloating(discardedClasses, appMethodsRemoved,
+						libMethodsRemoved, appFieldsRemoved, libFieldsRemoved);
+				removedFields.removeIf(f -> discardedClasses.contains(f.getClassName()));
+				removedClasses.removeAll(discardedClasses);
+			}
+
 			toLog.append(jShrink.getLog());
 			// update class files at the end of all transformations
 			jShrink.updateClassFiles();
@@ -609,8 +626,7 @@ public class Application {
 				commandLineParser.getLogDirectory(), 
 				toLog.toString(), 
 				toLogVerbose.toString(),
-					commandLineParser.isRunTests() ? Optional.of((testOutputBefore != null)?testOutputBefore.getTestOutputText():"") : Optional.empty(),
-					commandLineParser.isRunTests() ? Optional.of((testOutputAfter != null)?testOutputAfter.getTestOutputText():"") : Optional.empty(),
+					commandLineParser.isRunTests(), testOutputBefore, testOutputAfter,
 					unmodifiableClass);
 
 			if(commandLineParser.isVerbose()){
@@ -620,7 +636,7 @@ public class Application {
 	}
 
 	private static void outputToLogDirectory(File directory, String log, String verboseLog,
-											 Optional<String> testOutputBefore, Optional<String> testOutputAfter,
+											 boolean runTests, TestOutput testOutputBefore, TestOutput testOutputAfter,
 											 Map<String, String> unmodifiableClasses){
 
 		try {
@@ -634,18 +650,11 @@ public class Application {
 			fileWriter.write(verboseLog);
 			fileWriter.close();
 
-			if(testOutputBefore.isPresent()) {
-				fileWriter =
-						new FileWriter(directory.getAbsolutePath() + File.separator + "test_output_before.dat");
-				fileWriter.write(testOutputBefore.get());
-				fileWriter.close();
-			}
-
-			if(testOutputAfter.isPresent()) {
-				fileWriter =
-						new FileWriter(directory.getAbsolutePath() + File.separator + "test_output_after.dat");
-				fileWriter.write(testOutputAfter.get());
-				fileWriter.close();
+			if(runTests) {
+				writeTestOutput(testOutputBefore,
+						new File(directory.getAbsolutePath() + File.separator + "test_output_before.dat"));
+				writeTestOutput(testOutputAfter,
+						new File(directory.getAbsolutePath() + File.separator + "test_output_after.dat"));
 			}
 
 			StringBuilder unmodifiableClassesString = new StringBuilder();
@@ -664,6 +673,86 @@ public class Application {
 			System.exit(1);
 		}
 	}
+	/*
+	Writes the output of the tests (empty if they were not run yet) to the given file. Output logged in a file by JShrink
+	is copied from it rather than read into memory.
+	 */
+	private static void writeTestOutput(TestOutput testOutput, File file) throws IOException {
+		if(testOutput != null && testOutput.getTestOutputFile().isPresent()){
+			FileUtils.copyFile(testOutput.getTestOutputFile().get(), file);
+		} else {
+			FileWriter fileWriter = new FileWriter(file);
+			fileWriter.write(testOutput != null ? testOutput.getTestOutputText() : "");
+			fileWriter.close();
+		}
+	}
+
+	/*
+	Whether no checkpoint follows the one of the given transformation, in which case it is validated with the whole test
+	suite even when the tests are selected (see "--select-tests").
+	 */
+	private static boolean isLastTransform(String transform, ApplicationCommandLineParser commandLineParser){
+		switch(transform){
+			case "method-removal":
+				return !commandLineParser.removedFields() && !commandLineParser.collapseClasses()
+					&& !commandLineParser.inlineMethods();
+			case "field-removal":
+				return !commandLineParser.collapseClasses() && !commandLineParser.inlineMethods();
+			case "class-collapser":
+				return !commandLineParser.inlineMethods();
+			default:
+				return true;
+		}
+	}
+
+	/*
+	Validates the last checkpoint, with the tests reaching the changed classes if they are selected (see
+	"--select-tests").
+	 */
+	private static boolean validateLastCheckpoint(JShrink jShrink, String transform,
+	                                              ApplicationCommandLineParser commandLineParser){
+		if(commandLineParser.selectTests() && !isLastTransform(transform, commandLineParser)){
+			return backupService.validateLastCheckpoint(jShrink.getTestClassesAffected());
+		}
+		return backupService.validateLastCheckpoint();
+	}
+
+	/*
+	The transformations whose changes to different classes can be discarded independently (see "--delta-debugging").
+	The changes made by the class collapser and the method inliner to a class depend on those to other classes.
+	 */
+	private static boolean isDeltaDebugged(String transform){
+		return transform.equals("method-removal") || transform.equals("field-removal");
+	}
+
+	/*
+	Isolates the classes whose changes fail the tests (see "DeltaDebugger"), discards their changes, and validates the
+	remaining changes in a new checkpoint. The changes are not kept per transformation, so the search is over all the
+	changes made so far.
+	 */
+	private static boolean keepPassingChanges(JShrink jShrink, String transform,
+	                                          ApplicationCommandLineParser commandLineParser){
+		boolean selectTests = commandLineParser.selectTests() && !isLastTransform(transform, commandLineParser);
+		DeltaDebugger deltaDebugger = new DeltaDebugger(subsets -> backupService.validateSubsets(transform, subsets,
+			(classes, checkpoint) ->
+				jShrink.updateClassFilesAtPath(BackupService.resolveFiles(checkpoint, jShrink.getClassPaths()), classes),
+			classes -> selectTests ? Optional.of(jShrink.getTestClassesAffected(classes)) : Optional.empty(),
+			commandLineParser.getDeltaDebuggingThreads().get()));
+
+		Set<String> rejected = deltaDebugger.isolateFailures(jShrink.getChangedClasses());
+		if(commandLineParser.isVerbose()){
+			System.out.println("[" + new java.util.Date() + "]" + "Discarding the changes to " + rejected.size()
+				+ " classes after " + transform + " (" + deltaDebugger.getValidations() + " subsets validated): "
+				+ rejected);
+		}
+		jShrink.discardChanges(rejected);
+
+		backupService.removeCheckpoint();
+		backupService.addCheckpoint(transform);
+		jShrink.updateClassFilesAtPath(backupService.resolveFiles(jShrink.getClassPaths()));
+		return validateLastCheckpoint(jShrink, transform, commandLineParser);
+	}
+
 	private static boolean applyAndValidateTransform(JShrink jShrink, String transform, StringBuilder toLog,
 													 Set<MethodData> appMethodsRemoved, Set<MethodData> allAppMethodsBefore,
 													 Set<MethodData> libMethodsRemoved, Set<MethodData> allLibMethodsBefore, Set<FieldData> appFieldsRemoved,
@@ -680,9 +769,19 @@ public class Application {
 			jShrink.updateClassFilesAtPath(backupService.resolveFiles(jShrink.getClassPaths()));
 
 			//conduct tests
-			if(!backupService.validateLastCheckpoint()){
+			boolean safe = validateLastCheckpoint(jShrink, transform, commandLineParser);
+			if(!safe && commandLineParser.getDeltaDebuggingThreads().isPresent() && isDeltaDebugged(transform)){
+				safe = keepPassingChanges(jShrink, transform, commandLineParser);
+			}
+			if(!safe){
 				//if not safe
 				backupService.removeCheckpoint();
+				if(commandLineParser.selectTests()){
+					// the earlier checkpoints were only validated with the tests selected for them
+					while(backupService.getCheckpointCount() > 1 && !backupService.validateLastCheckpoint()){
+						backupService.removeCheckpoint();
+					}
+				}
 				backupService.revertToLast();
 
 				//clean up all checkpoints
@@ -786,8 +885,7 @@ public class Application {
 				long endTime = System.nanoTime();
 				toLog.append("time_elapsed," + TimeUnit.NANOSECONDS.toSeconds((endTime - startTime)) + System.lineSeparator());
 				outputToLogDirectory(commandLineParser.getLogDirectory(), toLog.toString(), toLogVerbose.toString(),
-						commandLineParser.isRunTests() ? Optional.of(testOutputBefore.getTestOutputText()) : Optional.empty(),
-						commandLineParser.isRunTests() ? Optional.of(testOutputAfter.getTestOutputText()) : Optional.empty(),
+						commandLineParser.isRunTests(), testOutputBefore, testOutputAfter,
 						unmodifiableClass);
 
 				if(commandLineParser.isVerbose()){
@@ -802,7 +900,15 @@ public class Application {
 																 Set<MethodData> libMethodsRemoved,
 																 Set<FieldData> appFieldsRemoved,
 																 Set<FieldData> libFieldsRemoved) {
-		Set<String> classes = jShrink.filterUnmodifiableClass();
+		filterClassesAfterDebloating(jShrink.filterUnmodifiableClass(), appMethodsRemoved, libMethodsRemoved,
+				appFieldsRemoved, libFieldsRemoved);
+	}
+
+	// the members of the given classes are not removed after all
+	private static void filterClassesAfterDebloating(Set<String> classes, Set<MethodData> appMethodsRemoved,
+													 Set<MethodData> libMethodsRemoved,
+													 Set<FieldData> appFieldsRemoved,
+													 Set<FieldData> libFieldsRemoved) {
 		HashSet<MethodData> methodsNotRemoved = new HashSet<MethodData>();
 		for(MethodData removedMethod : appMethodsRemoved) {
 			if(classes.contains(removedMethod.getClassName())) {
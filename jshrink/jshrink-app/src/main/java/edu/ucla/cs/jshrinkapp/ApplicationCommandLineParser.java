@@ -42,6 +42,16 @@ public class ApplicationCommandLineParser {
 	private final boolean cache;
 	private final boolean ignoreLibs;
 	private final boolean baseline;
+	private final int analysisThreads;
+	private final Set<String> asmTransformations;
+	private final boolean normalizeClasses;
+	private final boolean selectTests;
+	private final Optional<Integer> deltaDebuggingThreads;
+	private final long processTimeoutMinutes;
+
+	// the transformations which can be made with ASM rather than Soot ("--asm-transformations")
+	private static final List<String> ASM_TRANSFORMATIONS =
+		Arrays.asList("method-removal", "method-wiping", "field-removal");
 
 
 	private static void printHelp(CommandLine commandLine){
@@ -188,6 +198,85 @@ public class ApplicationCommandLineParser {
 		this.ignoreLibs = commandLine.hasOption("b");
 		this.baseline = commandLine.hasOption("S");
 
+		if(commandLine.hasOption("P")){
+			if(commandLine.getOptionValue("P") != null){
+				try {
+					this.analysisThreads = Integer.parseInt(commandLine.getOptionValue("P"));
+				} catch (NumberFormatException e){
+					throw new ParseException("The number of analysis threads must be an integer (\""
+						+ commandLine.getOptionValue("P") + "\" given).");
+				}
+				if(this.analysisThreads < 1){
+					throw new ParseException("The number of analysis threads must be at least 1.");
+				}
+			} else {
+				this.analysisThreads = Runtime.getRuntime().availableProcessors();
+			}
+		} else {
+			this.analysisThreads = 1;
+		}
+
+		if(commandLine.hasOption("asm")){
+			if(commandLine.getOptionValue("asm") != null){
+				this.asmTransformations = new HashSet<String>();
+				for(String transformation : commandLine.getOptionValue("asm").split(",")){
+					if(!ASM_TRANSFORMATIONS.contains(transformation.trim())){
+						throw new ParseException("Unknown ASM transformation \"" + transformation.trim()
+							+ "\" (expected one of " + String.join(", ", ASM_TRANSFORMATIONS) + ").");
+					}
+					this.asmTransformations.add(transformation.trim());
+				}
+			} else {
+				this.asmTransformations = new HashSet<String>(ASM_TRANSFORMATIONS);
+			}
+		} else {
+			this.asmTransformations = new HashSet<String>();
+		}
+
+		this.normalizeClasses = !commandLine.hasOption("nn");
+		this.selectTests = commandLine.hasOption("st");
+
+		if(this.selectTests && !commandLine.hasOption("ch")){
+			throw new ParseException("Cannot select the tests of checkpoints without checkpoints.");
+		}
+
+		if(commandLine.hasOption("dd")){
+			if(!commandLine.hasOption("ch")){
+				throw new ParseException("Cannot delta debug failed transformations without checkpoints.");
+			}
+			if(commandLine.getOptionValue("dd") != null){
+				int threads;
+				try {
+					threads = Integer.parseInt(commandLine.getOptionValue("dd"));
+				} catch (NumberFormatException e){
+					throw new ParseException("The number of delta debugging threads must be an integer (\""
+						+ commandLine.getOptionValue("dd") + "\" given).");
+				}
+				if(threads < 1){
+					throw new ParseException("The number of delta debugging threads must be at least 1.");
+				}
+				this.deltaDebuggingThreads = Optional.of(threads);
+			} else {
+				this.deltaDebuggingThreads = Optional.of(Runtime.getRuntime().availableProcessors());
+			}
+		} else {
+			this.deltaDebuggingThreads = Optional.empty();
+		}
+
+		if(commandLine.hasOption("pt")){
+			try {
+				this.processTimeoutMinutes = Long.parseLong(commandLine.getOptionValue("pt"));
+			} catch (NumberFormatException e){
+				throw new ParseException("The process timeout must be an integer (\""
+					+ commandLine.getOptionValue("pt") + "\" given).");
+			}
+			if(this.processTimeoutMinutes < 0){
+				throw new ParseException("The process timeout cannot be negative.");
+			}
+		} else {
+			this.processTimeoutMinutes = 0;
+		}
+
 		if(this.removeFields && this.skipMethodRemoval){
 			throw new ParseException("Cannot Remove fields while skipping method removal.");
 		}
@@ -538,6 +627,67 @@ public class ApplicationCommandLineParser {
 				.required(false)
 				.build();
 
+		Option parallelAnalysisOption = Option.builder("P")
+				.desc("Run the call graph analysis of independent Maven modules in parallel, or, for a single " +
+					"module, split its reachability traversal between threads " +
+					"(Optional argument: the number of threads, defaults to the number of available processors)")
+				.longOpt("parallel-analysis")
+				.hasArg(true)
+				.optionalArg(true)
+				.argName("Threads")
+				.required(false)
+				.build();
+
+		Option asmTransformationsOption = Option.builder("asm")
+				.desc("Make the given transformations directly in the bytecode with ASM, rather than through Soot " +
+					"(Optional argument: a comma-separated list of \"method-removal\", \"method-wiping\" and " +
+					"\"field-removal\", defaults to all of them)")
+				.longOpt("asm-transformations")
+				.hasArg(true)
+				.optionalArg(true)
+				.argName("Transformations")
+				.required(false)
+				.build();
+
+		Option noNormalizeOption = Option.builder("nn")
+				.desc("Do not rewrite every class with Soot before the transformations. The size baselines are instead " +
+					"worked out from the size of each class as it is, or, with \"--use-cache\", as Soot wrote it in " +
+					"an earlier run")
+				.longOpt("no-normalize")
+				.hasArg(false)
+				.required(false)
+				.build();
+
+		Option selectTestsOption = Option.builder("st")
+				.desc("With checkpoints, only run the test classes which reach the classes changed so far to validate " +
+					"each checkpoint. The last checkpoint is still validated with the whole test suite")
+				.longOpt("select-tests")
+				.hasArg(false)
+				.required(false)
+				.build();
+
+		Option deltaDebuggingOption = Option.builder("dd")
+				.desc("With checkpoints, when the method or field removal fails its tests, isolate the classes whose " +
+					"changes fail them and only discard these, rather than the whole transformation. The subsets of " +
+					"classes are validated in parallel checkpoints (Optional argument: the number of checkpoints " +
+					"validated at the same time, defaults to the number of available processors)")
+				.longOpt("delta-debugging")
+				.hasArg(true)
+				.optionalArg(true)
+				.argName("Threads")
+				.required(false)
+				.build();
+
+		Option processTimeoutOption = Option.builder("pt")
+				.desc("Kill the Maven commands run on the project (building it, resolving its classpaths, running its " +
+					"tests) once they run for longer than the given number of minutes. A command which times out " +
+					"fails, e.g., the tests of a checkpoint fail (0, the default, means no timeout)")
+				.longOpt("process-timeout")
+				.hasArg(true)
+				.argName("Minutes")
+				.required(false)
+				.build();
+
 		Options toReturn = new Options();
 		toReturn.addOption(libClassPathOption);
 		toReturn.addOption(appClassPathOption);
@@ -567,6 +717,12 @@ public class ApplicationCommandLineParser {
 		toReturn.addOption(ignoreLibsOptions);
 		toReturn.addOption(baselineOption);
 		toReturn.addOption(checkpointOption);
+		toReturn.addOption(parallelAnalysisOption);
+		toReturn.addOption(asmTransformationsOption);
+		toReturn.addOption(noNormalizeOption);
+		toReturn.addOption(selectTestsOption);
+		toReturn.addOption(deltaDebuggingOption);
+		toReturn.addOption(processTimeoutOption);
 
 		return toReturn;
 	}
@@ -692,4 +848,39 @@ public class ApplicationCommandLineParser {
 	}
 
 	public String getBackupPath(){ return this.backupPath;}
+
+	public int getAnalysisThreads(){
+		return this.analysisThreads;
+	}
+
+	/**
+	 * @param transformation "method-removal", "method-wiping" or "field-removal"
+	 * @return Whether the transformation is to be made with ASM
+	 */
+	public boolean useASM(String transformation){
+		return this.asmTransformations.contains(transformation);
+	}
+
+	public boolean normalizeClasses(){
+		return this.normalizeClasses;
+	}
+
+	public boolean selectTests(){
+		return this.selectTests;
+	}
+
+	/**
+	 * @return The number of checkpoints validated at the same time when delta debugging a failed transformation, if it
+	 * is to be delta debugged ("--delta-debugging")
+	 */
+	public Optional<Integer> getDeltaDebuggingThreads(){
+		return this.deltaDebuggingThreads;
+	}
+
+	/**
+	 * @return The time, in minutes, after which the Maven commands run on the project are killed (0 = no timeout)
+	 */
+	public long getProcessTimeoutMinutes(){
+		return this.processTimeoutMinutes;
+	}
 }
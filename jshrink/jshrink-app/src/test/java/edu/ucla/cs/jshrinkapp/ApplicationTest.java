@@ -1634,6 +1634,74 @@ public class ApplicationTest {
 		assertTrue(jarIntact());
 	}
 
+	@Test
+	public void asmTransformationsTest() {
+		StringBuilder arguments = new StringBuilder();
+		arguments.append("--prune-app ");
+		arguments.append("--maven-project " + getSimpleTestProjectDir().getAbsolutePath() + " ");
+		arguments.append("--main-entry ");
+		arguments.append("--test-entry ");
+		arguments.append("--remove-methods ");
+		arguments.append("--remove-fields ");
+		arguments.append("--asm-transformations method-removal,field-removal ");
+		arguments.append("--run-tests ");
+		arguments.append("--log-directory " + getLogDirectory().getAbsolutePath() + " ");
+		arguments.append("--use-cache ");
+
+		Application.main(arguments.toString().split("\\s+"));
+
+		Set<MethodData> methodsRemoved = Application.removedMethods;
+		Set<FieldData> fieldsRemoved = Application.removedFields;
+
+		assertTrue(Application.removedMethod);
+		assertTrue(isPresent(methodsRemoved, "StandardStuff", "publicNotTestedButUntouched"));
+		assertTrue(isPresent(methodsRemoved, "StandardStuff", "privateAndUntouched"));
+		assertFalse(isPresent(methodsRemoved, "StandardStuff", "getString"));
+		assertFalse(isPresent(methodsRemoved, "Main", "main"));
+
+		assertEquals(4, fieldsRemoved.size());
+		assertTrue(isFieldPresent(fieldsRemoved, "edu.ucla.cs.onr.test.LibraryClass", "x"));
+		assertTrue(isFieldPresent(fieldsRemoved, "edu.ucla.cs.onr.test.LibraryClass2", "y"));
+
+		assertEquals(Application.testOutputBefore.getRun(), Application.testOutputAfter.getRun());
+		assertEquals(Application.testOutputBefore.getErrors(), Application.testOutputAfter.getErrors());
+		assertEquals(Application.testOutputBefore.getFailures(), Application.testOutputAfter.getFailures());
+		assertEquals(Application.testOutputBefore.getSkipped(), Application.testOutputAfter.getSkipped());
+
+		assertTrue(jarIntact());
+	}
+
+	@Test
+	public void noNormalizeTest() {
+		StringBuilder arguments = new StringBuilder();
+		arguments.append("--prune-app ");
+		arguments.append("--maven-project " + getSimpleTestProjectDir().getAbsolutePath() + " ");
+		arguments.append("--main-entry ");
+		arguments.append("--test-entry ");
+		arguments.append("--remove-methods ");
+		arguments.append("--no-normalize ");
+		arguments.append("--run-tests ");
+		arguments.append("--log-directory " + getLogDirectory().getAbsolutePath() + " ");
+		arguments.append("--use-cache ");
+
+		Application.main(arguments.toString().split("\\s+"));
+
+		Set<MethodData> methodsRemoved = Application.removedMethods;
+
+		assertTrue(Application.removedMethod);
+		assertTrue(isPresent(methodsRemoved, "StandardStuff", "publicNotTestedButUntouched"));
+		assertTrue(isPresent(methodsRemoved, "StandardStuff", "privateAndUntouched"));
+		assertFalse(isPresent(methodsRemoved, "StandardStuff", "getString"));
+		assertFalse(isPresent(methodsRemoved, "Main", "main"));
+
+		assertEquals(Application.testOutputBefore.getRun(), Application.testOutputAfter.getRun());
+		assertEquals(Application.testOutputBefore.getErrors(), Application.testOutputAfter.getErrors());
+		assertEquals(Application.testOutputBefore.getFailures(), Application.testOutputAfter.getFailures());
+		assertEquals(Application.testOutputBefore.getSkipped(), Application.testOutputAfter.getSkipped());
+
+		assertTrue(jarIntact());
+	}
+
 	@Test
 	public void fieldRemovalTestWithTamiFlex() {
 		ClassLoader classLoader = ApplicationTest.class.getClassLoader();
@@ -8,8 +8,13 @@ import edu.ucla.cs.jshrinklib.methodinliner.InlineData;
 import edu.ucla.cs.jshrinklib.methodinliner.MethodInliner;
 import edu.ucla.cs.jshrinklib.methodwiper.MethodWiper;
 import edu.ucla.cs.jshrinklib.reachability.*;
+import edu.ucla.cs.jshrinklib.util.ASMTransformer;
 import edu.ucla.cs.jshrinklib.util.ClassFileUtils;
+import edu.ucla.cs.jshrinklib.util.ClassPathWriter;
+import edu.ucla.cs.jshrinklib.util.DigestUtils;
 import edu.ucla.cs.jshrinklib.util.PathResolutionUtil;
+import edu.ucla.cs.jshrinklib.util.ProcessRunner;
+import edu.ucla.cs.jshrinklib.util.SootPassCache;
 import edu.ucla.cs.jshrinklib.util.SootUtils;
 import org.apache.commons.io.FileUtils;
 import soot.*;
@@ -35,11 +40,31 @@ public class JShrink {
 	private boolean projectAnalyserRun = false;
 	private Set<SootClass> classesToModify = new HashSet<SootClass>();
 	private Set<SootClass> classesToRemove = new HashSet<SootClass>();
+	/*
+	The methods of "classesToModify" whose bodies have been changed (by method wiping). Only these are re-emitted when
+	a class is written, and the rest of its class file is copied, unless the class is in "classesToRegenerate": the class
+	collapser and the method inliner change classes in too many ways to track, so their classes are re-emitted in full.
+	 */
+	private Map<SootClass, Set<SootMethod>> modifiedMethods = new HashMap<SootClass, Set<SootMethod>>();
+	private Set<SootClass> classesToRegenerate = new HashSet<SootClass>();
+	private ASMTransformer asmTransformer = new ASMTransformer();
+	/*
+	The classes whose changes have been discarded (see "discardChanges"). Their Soot classes may still be changed, so
+	they are never written, even if a later transformation changes them again.
+	 */
+	private Set<String> discardedClasses = new HashSet<String>();
 	private ClassReferenceGraph classDependencyGraph = null;
 	private long libSizeCompressed = -1;
 	private long libSizeDecompressed = -1;
 	private long appSizeCompressed = -1;
 	private long appSizeDecompressed = -1;
+	/*
+	When the classes are not normalised by the Soot pass (see "normalize_classes"), the size each class would have
+	gained (or, mostly, lost) by being rewritten by Soot, as cached by an earlier run (see "SootPassCache"), to be added
+	to the decompressed sizes. A class's delta is dropped once it is re-emitted in full, or removed.
+	 */
+	private Map<String, Long> appSizeDeltas = new HashMap<String, Long>();
+	private Map<String, Long> libSizeDeltas = new HashMap<String, Long>();
 
 	// a global boolean variable indicating whether we should allow
 	public static boolean enable_type_dependency = false;
@@ -47,6 +72,23 @@ public class JShrink {
 	public static boolean enable_super_class_recursion_check = false;
 	public static boolean enable_annotation_updates = false;
 
+	// the number of Maven modules whose call graphs may be analysed at the same time (1 = one after another). A
+	// single module uses these threads for its reachability traversal instead.
+	public static int analysis_threads = 1;
+
+	// the transformations made directly in the bytecode with ASM, rather than on the Soot classes (see "ASMTransformer")
+	public static boolean asm_method_removal = false;
+	public static boolean asm_method_wiping = false;
+	public static boolean asm_field_removal = false;
+
+	// whether "makeSootPass" rewrites the classes with Soot. If not, the classes are left as they are, and the sizes are
+	// reported as if they had been rewritten, for the classes the Soot pass cache has seen (see "sizeDeltas")
+	public static boolean normalize_classes = true;
+
+	// the time, in minutes, after which the Maven commands run by JShrink (building the project, resolving its
+	// classpaths, running its tests) are killed (0 = no timeout), see "ProcessRunner"
+	public static long process_timeout_minutes = 0;
+
 	//Map<Class,Exception thrown by Soot>
 	private Map<String,String> unmodifiableClasses = new HashMap<String, String>();
 	private boolean runTests;
@@ -166,6 +208,7 @@ public class JShrink {
 				this.useSpark, this.verbose, this.runTests, this.useCache, this.ignoreLibs));
 
 		((MavenSingleProjectAnalyzer) this.projectAnalyser.get()).setCompileProject(!alreadyCompiled);
+		((MavenSingleProjectAnalyzer) this.projectAnalyser.get()).setAnalysisThreads(analysis_threads);
 
 		this.projectAnalyser.get().setup();
 		this.alreadyCompiled = true;
@@ -260,6 +303,8 @@ public class JShrink {
 	}
 
 	public ClassCollapserData collapseClasses(boolean collapseAppClasses, boolean collapseLibClasses, boolean removeClasses){
+		moveASMTransformationsToSoot();
+
 		Set<String> allClasses = new HashSet<String>();
 		Set<String> usedClasses = new HashSet<String>();
 		Set<MethodData> usedMethods = new HashSet<MethodData>();
@@ -286,6 +331,7 @@ public class JShrink {
 		for(String classToRewrite : classCollapserData.getClassesToRewrite()){
 			SootClass sootClass = Scene.v().loadClassAndSupport(classToRewrite);
 			this.classesToModify.add(sootClass);
+			this.classesToRegenerate.add(sootClass);
 		}
 		for(String classToRemove : classCollapserData.getClassesToRemove()){
 			SootClass sootClass = Scene.v().loadClassAndSupport(classToRemove);
@@ -317,14 +363,53 @@ public class JShrink {
 			return callGraphs.get();
 		}
 
+		/*
+		The project analyser returns read-only views of its call graph, but the class collapser updates this one in
+		place, so it is copied here (once).
+		 */
 		callGraphs = Optional.of(new HashMap<MethodData, Set<MethodData>>());
-		callGraphs.get().putAll(this.getProjectAnalyserRun().getUsedAppMethods());
-		callGraphs.get().putAll(this.getProjectAnalyserRun().getUsedLibMethodsCompileOnly());
-		callGraphs.get().putAll(this.getProjectAnalyserRun().getUsedTestMethods());
+		addToCallGraph(callGraphs.get(), this.getProjectAnalyserRun().getUsedAppMethods());
+		addToCallGraph(callGraphs.get(), this.getProjectAnalyserRun().getUsedLibMethodsCompileOnly());
+		addToCallGraph(callGraphs.get(), this.getProjectAnalyserRun().getUsedTestMethods());
 		return callGraphs.get();
 	}
 
+	private static void addToCallGraph(Map<MethodData, Set<MethodData>> callGraph,
+	                                   Map<MethodData, Set<MethodData>> toAdd){
+		for(Map.Entry<MethodData, Set<MethodData>> entry : toAdd.entrySet()){
+			callGraph.put(entry.getKey(), new HashSet<MethodData>(entry.getValue()));
+		}
+	}
+
+	/**
+	 * @return The test classes which may be affected by the classes to be modified or removed upon execution of
+	 * "updateClassFiles()" (see "TestImpactAnalysis")
+	 */
+	public Set<String> getTestClassesAffected(){
+		return getTestClassesAffected(this.getChangedClasses());
+	}
+
+	/**
+	 * @param changedClasses Some of the classes to be modified or removed
+	 * @return The test classes which may be affected by the changes to the given classes
+	 */
+	public Set<String> getTestClassesAffected(Set<String> changedClasses){
+		Map<String, String> superClasses = new HashMap<String, String>();
+		for(String testClass : this.getTestClasses()){
+			SootClass sootClass = Scene.v().getSootClassUnsafe(testClass, false);
+			while(sootClass != null && sootClass.hasSuperclass() && !superClasses.containsKey(sootClass.getName())){
+				superClasses.put(sootClass.getName(), sootClass.getSuperclass().getName());
+				sootClass = sootClass.getSuperclass();
+			}
+		}
+
+		return TestImpactAnalysis.getTestClassesReaching(this.getSimplifiedCallGraph(), changedClasses,
+			this.getTestClasses(), superClasses);
+	}
+
 	public InlineData inlineMethods(boolean inlineAppClassMethods, boolean inlineLibClassMethods){
+		moveASMTransformationsToSoot();
+
 		Set<String> classesInScope = new HashSet<String>();
 		if(inlineAppClassMethods) {
 			classesInScope.addAll(this.getAllAppClasses());
@@ -354,6 +439,7 @@ public class JShrink {
 
 		InlineData output = MethodInliner.inlineMethods(callgraph, classPaths, unmodifiableClasses.keySet());
 		this.classesToModify.addAll(output.getClassesModified());
+		this.classesToRegenerate.addAll(output.getClassesModified());
 
 		return output;
 	}
@@ -398,10 +484,38 @@ public class JShrink {
 		}
 
 		//Remove the classes and not the classes affected.
-		for(MethodData methodData : toRemove){
-			if(!removedMethods.contains(methodData)) {
+		/*
+		A method cannot be removed while another method of its class still calls it (Soot can then no longer write the
+		class out). Its callers may themselves be removed later in the same pass, so the order in which the set is
+		iterated must not matter: methods which could not be removed are retried as long as the previous pass removed
+		something.
+		 */
+		Set<MethodData> remaining = new HashSet<MethodData>(toRemove);
+		remaining.removeAll(removedMethods);
+		if(JShrink.asm_method_removal) {
+			// the methods are removed from the bytecode, so neither the order nor Soot's ability to write the class matter
+			for(MethodData methodData : remaining) {
+				SootClass sootClass = Scene.v().loadClassAndSupport(methodData.getClassName());
+				if (!sootClass.isEnum() && sootClass.declaresMethod(methodData.getSubSignature())) {
+					SootMethod sootMethod = sootClass.getMethod(methodData.getSubSignature());
+					if(!sootMethod.isAbstract() && !sootMethod.isNative()) {
+						this.asmTransformer.removeMethod(methodData);
+						removedMethods.add(methodData);
+					}
+				}
+			}
+			return removedMethods;
+		}
+
+		boolean removedAny = true;
+		while(removedAny && !remaining.isEmpty()) {
+			removedAny = false;
+			Iterator<MethodData> iterator = remaining.iterator();
+			while(iterator.hasNext()) {
+				MethodData methodData = iterator.next();
 				if(unmodifiableClasses.containsKey(methodData.getClassName())) {
 					// this class cannot be modified by Soot
+					iterator.remove();
 					continue;
 				}
 				SootClass sootClass = Scene.v().loadClassAndSupport(methodData.getClassName());
@@ -410,7 +524,11 @@ public class JShrink {
 					if (MethodWiper.removeMethod(sootMethod)) {
 						removedMethods.add(methodData);
 						this.classesToModify.add(sootClass);
+						iterator.remove();
+						removedAny = true;
 					}
+				} else {
+					iterator.remove();
 				}
 			}
 		}
@@ -424,9 +542,15 @@ public class JShrink {
 			SootClass sootClass = Scene.v().loadClassAndSupport(methodData.getClassName());
 			if(!sootClass.isEnum() && sootClass.declaresMethod(methodData.getSubSignature())) {
 				SootMethod sootMethod = sootClass.getMethod(methodData.getSubSignature());
-				if(MethodWiper.wipeMethodBody(sootMethod)) {
+				if(JShrink.asm_method_wiping) {
+					if(!sootMethod.isAbstract() && !sootMethod.isNative()) {
+						this.asmTransformer.wipeMethodBody(methodData, getSuperClassConstructor(sootMethod));
+						removedMethods.add(methodData);
+					}
+				} else if(MethodWiper.wipeMethodBody(sootMethod)) {
 					removedMethods.add(methodData);
 					this.classesToModify.add(sootClass);
+					addModifiedMethod(sootMethod);
 				}
 			}
 		}
@@ -439,6 +563,14 @@ public class JShrink {
 			SootClass sootClass = Scene.v().loadClassAndSupport(methodData.getClassName());
 			if(!sootClass.isEnum() && sootClass.declaresMethod(methodData.getSubSignature())) {
 				SootMethod sootMethod = sootClass.getMethod(methodData.getSubSignature());
+				if(JShrink.asm_method_wiping) {
+					if(!sootMethod.isAbstract() && !sootMethod.isNative()) {
+						this.asmTransformer.wipeMethodBodyAndInsertRuntimeException(methodData, exceptionMethod,
+							getSuperClassConstructor(sootMethod));
+						removedMethods.add(methodData);
+					}
+					continue;
+				}
 				boolean success = false;
 				if (exceptionMethod.isPresent()) {
 					success = MethodWiper.wipeMethodBodyAndInsertRuntimeException(sootMethod, exceptionMethod.get());
@@ -448,6 +580,7 @@ public class JShrink {
 				if (success) {
 					removedMethods.add(methodData);
 					this.classesToModify.add(sootClass);
+					addModifiedMethod(sootMethod);
 				}
 			}
 		}
@@ -473,50 +606,126 @@ public class JShrink {
 
 		return classPaths;
 	}
+	/*
+	Classes are written straight into the jars by a ClassPathWriter, which rewrites each modified jar once. The only
+	exception is the type dependency analysis, which reads the class files of the jars from the classpath directories
+	(see "removeClasses"), so jars are still extracted, and recompressed afterwards, when it is enabled.
+	 */
+	private Set<File> extractJarsIfRequired(Set<File> classPaths) throws IOException {
+		if(JShrink.enable_type_dependency){
+			return new HashSet<File>(ClassFileUtils.extractJars(new ArrayList<File>(classPaths)));
+		}
+		return new HashSet<File>();
+	}
+
 	public void updateClassFilesAtPath(Set<File> classPaths){
+		updateClassFilesAtPath(classPaths, this.getChangedClasses());
+	}
+
+	/**
+	 * Writes the changes to the given classes only, leaving the other classes as they are (e.g., to validate part of a
+	 * transformation, see "DeltaDebugger").
+	 * @param classPaths The classpaths to write the classes in
+	 * @param classes The classes whose changes are written
+	 */
+	public void updateClassFilesAtPath(Set<File> classPaths, Set<String> classes){
+		dropDiscardedChanges();
 		try {
-			Set<File> decompressedJars =
-					new HashSet<File>(ClassFileUtils.extractJars(new ArrayList<File>(classPaths)));
-			modifyClasses(this.classesToModify, classPaths);
-			this.removeClasses(this.classesToRemove, classPaths);
-			/*
-			File.delete() does not delete a file immediately. I was therefore running into a problem where the jars
-			were being recompressed with the files that were supposed to be deleted. I found adding a small delay
-			solved this problem. However, it would be good to find a better solution to this problem.
-			TODO: Fix the above.
-			 */
-			TimeUnit.SECONDS.sleep(1);
+			Set<File> decompressedJars = extractJarsIfRequired(classPaths);
+			ClassPathWriter classPathWriter = new ClassPathWriter(classPaths);
+			modifyClasses(filterByName(this.classesToModify, classes), classPathWriter);
+			Set<String> excludedClasses = new HashSet<String>(this.asmTransformer.getClasses());
+			excludedClasses.removeAll(classes);
+			excludedClasses.addAll(classesToRemove());
+			this.asmTransformer.apply(classPathWriter, excludedClasses);
+			this.removeClasses(filterByName(this.classesToRemove, classes), classPaths, classPathWriter);
+			classPathWriter.commit();
 			ClassFileUtils.compressJars(decompressedJars);
-		}catch(IOException | InterruptedException e){
+		}catch(IOException e){
 			e.printStackTrace();
 			System.exit(1);
 		}
 	}
+	private static Set<SootClass> filterByName(Set<SootClass> sootClasses, Set<String> classNames){
+		Set<SootClass> toReturn = new HashSet<SootClass>();
+		for(SootClass sootClass : sootClasses){
+			if(classNames.contains(sootClass.getName())){
+				toReturn.add(sootClass);
+			}
+		}
+		return toReturn;
+	}
+
+	/**
+	 * @return The classes to be modified or removed upon execution of "updateClassFiles()"
+	 */
+	public Set<String> getChangedClasses(){
+		dropDiscardedChanges();
+		Set<String> toReturn = new HashSet<String>();
+		toReturn.addAll(this.classesToModified());
+		toReturn.addAll(this.classesToRemove());
+		toReturn.addAll(this.asmTransformer.getClasses());
+		return toReturn;
+	}
+
+	/**
+	 * Discards the changes made to the given classes: they are left as they are upon execution of
+	 * "updateClassFiles()", as are any changes later transformations make to them.
+	 */
+	public void discardChanges(Set<String> classes){
+		this.discardedClasses.addAll(classes);
+		dropDiscardedChanges();
+	}
+
+	public Set<String> getDiscardedClasses(){
+		return Collections.unmodifiableSet(this.discardedClasses);
+	}
+
+	private void dropDiscardedChanges(){
+		if(this.discardedClasses.isEmpty()){
+			return;
+		}
+		Set<SootClass> toDrop = filterByName(this.classesToModify, this.discardedClasses);
+		toDrop.addAll(filterByName(this.classesToRemove, this.discardedClasses));
+		this.classesToModify.removeAll(toDrop);
+		this.classesToRemove.removeAll(toDrop);
+		this.classesToRegenerate.removeAll(toDrop);
+		this.modifiedMethods.keySet().removeAll(toDrop);
+		for(String className : this.discardedClasses){
+			this.asmTransformer.clear(className);
+		}
+	}
+
 	public void updateClassFiles(){
+		dropDiscardedChanges();
 		try {
 			Set<File> classPaths = this.getClassPaths();
-			Set<File> decompressedJars =
-				new HashSet<File>(ClassFileUtils.extractJars(new ArrayList<File>(classPaths)));
+			Set<File> decompressedJars = extractJarsIfRequired(classPaths);
+			ClassPathWriter classPathWriter = new ClassPathWriter(classPaths);
 
-			modifyClasses(this.classesToModify, classPaths);
+			modifyClasses(this.classesToModify, classPathWriter);
+			for(SootClass sootClass : this.classesToRegenerate){
+				dropSizeDelta(sootClass.getName());
+			}
 			this.classesToModify.clear();
+			this.modifiedMethods.clear();
+			this.classesToRegenerate.clear();
 
-			this.removeClasses(this.classesToRemove, classPaths);
-			/*
-			File.delete() does not delete a file immediately. I was therefore running into a problem where the jars
-			were being recompressed with the files that were supposed to be deleted. I found adding a small delay
-			solved this problem. However, it would be good to find a better solution to this problem.
-			TODO: Fix the above.
-			 */
-			TimeUnit.SECONDS.sleep(1);
+			this.asmTransformer.apply(classPathWriter, classesToRemove());
+			this.asmTransformer.clear();
+
+			this.removeClasses(this.classesToRemove, classPaths, classPathWriter);
+			for(SootClass sootClass : this.classesToRemove){
+				dropSizeDelta(sootClass.getName());
+			}
 			this.classesToRemove.clear();
-            //modifyClasses(this.classesToModify, classPaths);
+
+			classPathWriter.commit();
 			ClassFileUtils.compressJars(decompressedJars);
 
-			//this.classesToModify.clear();
 			updateSizes();
 			this.reset();
-		}catch(IOException | InterruptedException e){
+		}catch(IOException e){
 			e.printStackTrace();
 			System.exit(1);
 		}
@@ -526,25 +735,23 @@ public class JShrink {
 		this.projectAnalyser = Optional.empty();
 		this.projectAnalyserRun = false;
 		this.classesToModify.clear();
+		this.modifiedMethods.clear();
+		this.classesToRegenerate.clear();
 		this.classesToRemove.clear();
+		this.asmTransformer.clear();
+		this.discardedClasses.clear();
 		this.callGraphs = Optional.empty();
+		// the method IDs were only held by the analysis, and the call graphs, dropped above
+		SymbolTable.clear();
 		G.reset();
 	}
 
 	private long getSize(boolean withJarsDecompressed, List<File> classPaths){
-		Set<File> decompressedJars = new HashSet<File>();
 		long toReturn = 0;
 		try {
-			if(withJarsDecompressed){
-				decompressedJars =
-					new HashSet<File>(ClassFileUtils.extractJars(new ArrayList<File>(classPaths)));
-			}
-
 			for(File file : classPaths){
-				toReturn+=ClassFileUtils.getSize(file);
+				toReturn += withJarsDecompressed ? ClassFileUtils.getDecompressedSize(file) : ClassFileUtils.getSize(file);
 			}
-
-			ClassFileUtils.compressJars(decompressedJars);
 		}catch(IOException e){
 			e.printStackTrace();
 			System.exit(1);
@@ -555,9 +762,24 @@ public class JShrink {
 
 	private void updateSizes(){
 		this.libSizeCompressed = getSize(false, this.getProjectAnalyser().getLibClasspaths());
-		this.libSizeDecompressed = getSize(true, this.getProjectAnalyser().getLibClasspaths());
+		this.libSizeDecompressed = getSize(true, this.getProjectAnalyser().getLibClasspaths())
+			+ sum(this.libSizeDeltas.values());
 		this.appSizeCompressed = getSize(false, this.getProjectAnalyser().getAppClasspaths());
-		this.appSizeDecompressed = getSize(true, this.getProjectAnalyser().getAppClasspaths());
+		this.appSizeDecompressed = getSize(true, this.getProjectAnalyser().getAppClasspaths())
+			+ sum(this.appSizeDeltas.values());
+	}
+
+	private static long sum(Collection<Long> values){
+		long toReturn = 0;
+		for(long value : values){
+			toReturn += value;
+		}
+		return toReturn;
+	}
+
+	private void dropSizeDelta(String className){
+		this.appSizeDeltas.remove(className);
+		this.libSizeDeltas.remove(className);
 	}
 
 	private void checkSizes(){
@@ -600,78 +822,137 @@ public class JShrink {
 	 */
 	public void makeSootPass(){
 		Set<File> classPaths = getClassPaths();
-		Set<SootClass> classesToRewrite = new HashSet<SootClass>();
-		for(String className : this.getProjectAnalyserRun().getAppClasses()){
-			SootClass sootClass = Scene.v().loadClassAndSupport(className);
-			if(!SootUtils.modifiableSootClass(sootClass)){
-				Optional<String> exceptionMessage = SootUtils.getUnmodifiableClassException(sootClass);
-				assert(exceptionMessage.isPresent());
-				unmodifiableClasses.put(className, exceptionMessage.get());
-				continue;
-			}
-			classesToRewrite.add(sootClass);
-		}
-		for(String className : this.getProjectAnalyserRun().getLibClassesCompileOnly()){
-			SootClass sootClass = Scene.v().loadClassAndSupport(className);
-			if(!SootUtils.modifiableSootClass(sootClass)){
-				Optional<String> exceptionMessage = SootUtils.getUnmodifiableClassException(sootClass);
-				assert(exceptionMessage.isPresent());
-				unmodifiableClasses.put(className, exceptionMessage.get());
-				continue;
-			}
-			classesToRewrite.add(sootClass);
+		Optional<SootPassCache> cache = Optional.empty();
+		if(this.useCache){
+			cache = Optional.of(new SootPassCache(new File(
+				CallGraphAnalysisCacheWrapper.getCacheDirectory(this.projectDir).getAbsolutePath() + File.separator
+					+ "soot_pass" + File.separator + CallGraphAnalysisCacheWrapper.getSootDigest())));
 		}
 
-		/*for(String className: this.getProjectAnalyserRun().getLibClasses()){
-			SootClass sootClass = Scene.v().loadClassAndSupport(className);
-			if(!SootUtils.modifiableSootClass(sootClass)){
-				Optional<String> exceptionMessage = SootUtils.getUnmodifiableClassException(sootClass);
-				assert(exceptionMessage.isPresent());
-				unmodifiableClasses.put(className, exceptionMessage.get());
-				continue;
-			}
-			this.classDependencyGraph.addClass(sootClass);
-		}*/
-		// We need to update class name references in test classes in class collapsing
-		// So we need to make sure they are modifiable.
-		// I saw a case in the disunity project where a test class has lambda expressions which
-		// crashes the write-out process
-		for(String className : this.getProjectAnalyserRun().getTestClasses()) {
-			SootClass sootClass = Scene.v().loadClassAndSupport(className);
-			if(!SootUtils.modifiableSootClass(sootClass)){
-				Optional<String> exceptionMessage = SootUtils.getUnmodifiableClassException(sootClass);
-				assert(exceptionMessage.isPresent());
-				unmodifiableClasses.put(className, exceptionMessage.get());
-			}
-			// no need to rewrite since we do not measure the size of test code
-//			classesToRewrite.add(sootClass);
-		}
 		try {
-			Set<File> decompressedJars =
-				new HashSet<File>(ClassFileUtils.extractJars(new ArrayList<File>(classPaths)));
-			modifyClasses(classesToRewrite, classPaths);
-			ClassFileUtils.compressJars(decompressedJars);
+			ClassPathWriter classPathWriter = new ClassPathWriter(classPaths);
+			makeSootPass(this.getProjectAnalyserRun().getAppClasses(), classPathWriter, cache, true,
+				this.appSizeDeltas);
+			makeSootPass(this.getProjectAnalyserRun().getLibClassesCompileOnly(), classPathWriter, cache, true,
+				this.libSizeDeltas);
+			// We need to update class name references in test classes in class collapsing
+			// So we need to make sure they are modifiable.
+			// I saw a case in the disunity project where a test class has lambda expressions which
+			// crashes the write-out process
+			// no need to rewrite since we do not measure the size of test code
+			makeSootPass(this.getProjectAnalyserRun().getTestClasses(), classPathWriter, cache, false,
+				new HashMap<String, Long>());
+			classPathWriter.commit();
 		}catch(IOException e){
 			e.printStackTrace();
 			System.exit(1);
 		}
 		updateSizes();
 
-		long appSizeBefore = this.getAppSize(true);
-		long libSizeBefore = this.getLibSize(true);
+		if(JShrink.normalize_classes){
+			long appSizeBefore = this.getAppSize(true);
+			long libSizeBefore = this.getLibSize(true);
+
+			//Run setup again to return the tests (They may have been corrupted by the Soot class).
+			this.getProjectAnalyser().setup();
+
+			long appSizeAfter = this.getAppSize(true);
+			long libSizeAfter = this.getLibSize(true);
+
+			if(appSizeAfter != appSizeBefore){
+				System.out.println("[" + new java.util.Date() + "]" + "WARNING: App Size Differs before and after running 'setup'");
+			}
+
+			if(libSizeAfter != libSizeBefore){
+				System.out.println("[" + new java.util.Date() + "]" + "WARNING: Lib Size Differs before and after running 'setup'");
+			}
+		}
+	}
+
+	/*
+	Rewrites the given classes with Soot (if "rewrite" and "normalize_classes"), noting those which Soot cannot write as
+	unmodifiable. Soot's verdict on a class file, and the class file it writes, are taken from the cache, if there is one
+	and it has seen a class file with the same digest before. The other classes are loaded, and then written by Soot, once,
+	in parallel (see "ClassFileUtils.getClassBytes(Collection, Map)"), which also tells whether they are modifiable (see
+	"SootUtils.getUnmodifiableClassException").
+
+	Without "normalize_classes", the classes to rewrite are not written by Soot, only checked to be modifiable, as the
+	classes not to rewrite are: the size of a class is then taken as that of the class file Soot wrote for it in an
+	earlier run, if cached, or else as its own size.
+	 */
+	private void makeSootPass(Collection<String> classNames, ClassPathWriter classPathWriter,
+	                          Optional<SootPassCache> cache, boolean rewrite, Map<String, Long> sizeDeltas)
+		throws IOException {
+		Map<String, byte[]> classFiles = classPathWriter.readClasses(classNames);
+		Map<String, String> digests = new HashMap<String, String>();
+		Map<String, byte[]> normalisedClassFiles = new HashMap<String, byte[]>();
+		Map<String, String> exceptionMessages = new HashMap<String, String>();
+		List<SootClass> classesToWrite = new ArrayList<SootClass>();
+		for(String className : classNames){
+			byte[] classBytes = classFiles.get(className);
+			if(classBytes == null && rewrite){
+				throw new IOException("Cannot find file for class '" + className + "'");
+			}
+			if(classBytes != null){
+				digests.put(className, DigestUtils.sha256(classBytes));
+			}
+
+			Optional<SootPassCache.Entry> cached = Optional.empty();
+			if(cache.isPresent() && digests.containsKey(className)){
+				cached = cache.get().get(digests.get(className));
+			}
 
-		//Run setup again to return the tests (They may have been corrupted by the Soot class).
-		this.getProjectAnalyser().setup();
+			if(cached.isPresent()){
+				cached.get().getClassBytes().ifPresent(b -> normalisedClassFiles.put(className, b));
+				cached.get().getExceptionMessage().ifPresent(m -> exceptionMessages.put(className, m));
+			} else {
+				SootClass sootClass = Scene.v().loadClassAndSupport(className);
+				if(rewrite ? JShrink.normalize_classes : cache.isPresent() && digests.containsKey(className)){
+					classesToWrite.add(sootClass);
+				} else {
+					SootUtils.getUnmodifiableClassException(sootClass)
+						.ifPresent(m -> exceptionMessages.put(className, m));
+				}
+			}
+		}
 
-		long appSizeAfter = this.getAppSize(true);
-		long libSizeAfter = this.getLibSize(true);
+		Map<String, Exception> exceptions = new HashMap<String, Exception>();
+		Map<String, byte[]> written = ClassFileUtils.getClassBytes(classesToWrite, exceptions);
+		for(SootClass sootClass : classesToWrite){
+			String className = sootClass.getName();
+			if(written.containsKey(className)){
+				normalisedClassFiles.put(className, written.get(className));
+			} else {
+				exceptionMessages.put(className, String.valueOf(exceptions.get(className).getLocalizedMessage()));
+			}
 
-		if(appSizeAfter != appSizeBefore){
-			System.out.println("[" + new java.util.Date() + "]" + "WARNING: App Size Differs before and after running 'setup'");
+			if(cache.isPresent() && digests.containsKey(className)){
+				if(written.containsKey(className)){
+					cache.get().putClassBytes(digests.get(className), written.get(className));
+				} else {
+					cache.get().putExceptionMessage(digests.get(className), exceptionMessages.get(className));
+				}
+			}
 		}
 
-		if(libSizeAfter != libSizeBefore){
-			System.out.println("[" + new java.util.Date() + "]" + "WARNING: Lib Size Differs before and after running 'setup'");
+		for(String className : classNames){
+			if(exceptionMessages.containsKey(className)){
+				unmodifiableClasses.put(className, exceptionMessages.get(className));
+				continue;
+			}
+
+			if(rewrite){
+				byte[] classBytes = classFiles.get(className);
+				byte[] normalisedBytes = normalisedClassFiles.get(className);
+				if(JShrink.normalize_classes){
+					// an unchanged class (e.g., one normalised by an earlier run) need not be rewritten, nor its jar
+					if(!Arrays.equals(classBytes, normalisedBytes)){
+						classPathWriter.writeClass(className, normalisedBytes);
+					}
+				} else if(normalisedBytes != null){
+					sizeDeltas.put(className, (long) normalisedBytes.length - classBytes.length);
+				}
+			}
 		}
 	}
 
@@ -695,8 +976,15 @@ public class JShrink {
 		return Collections.unmodifiableSet(toReturn);
 	}
 
-	private void modifyClasses(Set<SootClass> classesToRewrite, Set<File> classPaths){
-		for (SootClass sootClass : classesToRewrite) {
+	/*
+	The classes re-emitted in full are written together, in parallel (see "ClassPathWriter.writeClasses"). Classes of which
+	only some methods are re-emitted are written one by one, as Soot's conversion of a method to Baf is not thread-safe.
+	All the classes are attempted before any failure is reported.
+	 */
+	private void modifyClasses(Set<SootClass> classesToRewrite, ClassPathWriter classPathWriter){
+		Map<String, Exception> exceptions = new TreeMap<String, Exception>();
+		List<SootClass> classesToWrite = new ArrayList<SootClass>();
+		for (SootClass sootClass : sortByName(classesToRewrite)) {
 			try {
 				if(unmodifiableClasses.containsKey(sootClass.getName())) {
 					if(verbose) {
@@ -704,15 +992,40 @@ public class JShrink {
 						// the first soot pass. But this may cause a problem when loading or running the unmodified class.
 						System.out.println("[" + new java.util.Date() + "]" + "Attempting to update an unmodifiable class " + sootClass.getName());
 					}
+				} else if(this.classesToRegenerate.contains(sootClass)) {
+					classesToWrite.add(sootClass);
 				} else {
-					ClassFileUtils.writeClass(sootClass, classPaths);
+					classPathWriter.writeClass(sootClass,
+						this.modifiedMethods.getOrDefault(sootClass, Collections.<SootMethod>emptySet()));
 				}
-			} catch (IOException e) {
-				System.out.println("An exception was thrown when attempting to rewrite a class:");
-				e.printStackTrace();
-				System.exit(1);
+			} catch (Exception e) {
+				exceptions.put(sootClass.getName(), e);
 			}
 		}
+		exceptions.putAll(classPathWriter.writeClasses(classesToWrite));
+		exitOnWriteFailures(exceptions, "rewrite");
+	}
+
+	private static List<SootClass> sortByName(Collection<SootClass> sootClasses){
+		List<SootClass> toReturn = new ArrayList<SootClass>(sootClasses);
+		toReturn.sort(Comparator.comparing(SootClass::getName));
+		return toReturn;
+	}
+
+	/*
+	A class which could not be written leaves the project half-transformed, so the run cannot go on. Every failing class
+	is reported first, rather than only the first one.
+	 */
+	private static void exitOnWriteFailures(Map<String, Exception> exceptions, String action){
+		if(exceptions.isEmpty()){
+			return;
+		}
+		for(Map.Entry<String, Exception> exception : exceptions.entrySet()){
+			System.out.println("An exception was thrown when attempting to " + action + " the class "
+				+ exception.getKey() + ":");
+			exception.getValue().printStackTrace();
+		}
+		System.exit(1);
 	}
 
 	public Set<String> filterUnmodifiableClass() {
@@ -730,7 +1043,7 @@ public class JShrink {
 		return classNameOnly;
 	}
 
-	private void removeClasses(Set<SootClass> classesToRemove, Set<File> classPaths){
+	private void removeClasses(Set<SootClass> classesToRemove, Set<File> classPaths, ClassPathWriter classPathWriter){
 		if(classesToRemove.size() == 0)
 			return;
 
@@ -739,23 +1052,29 @@ public class JShrink {
 			Instant start = Instant.now();
 			PathResolutionUtil.buildMap(classPaths);
 			classesToBeRemoved = classesToRemove.stream().map(x->x.getName()).collect(Collectors.toSet());
+			Map<String, String> classFiles = new LinkedHashMap<String, String>();
 			for(String className : this.getProjectAnalyser().getAppClasses()){
-				SootClass sootClass = Scene.v().getSootClass(className);
-				this.classDependencyGraph.addClass(sootClass.getName(), PathResolutionUtil.getClassPath(sootClass.getName()));
+				classFiles.put(className, PathResolutionUtil.getClassPath(className));
 			}
 			for(String className : this.getProjectAnalyser().getLibClassesCompileOnly()){
-				SootClass sootClass = Scene.v().getSootClass(className);
-				this.classDependencyGraph.addClass(sootClass.getName(), PathResolutionUtil.getClassPath(sootClass.getName()));
+				classFiles.put(className, PathResolutionUtil.getClassPath(className));
 			}
 			for(String className : this.getProjectAnalyser().getTestClasses()){
-				SootClass sootClass = Scene.v().getSootClass(className);
-				this.classDependencyGraph.addClass(sootClass.getName(), PathResolutionUtil.getClassPath(sootClass.getName()));
+				classFiles.put(className, PathResolutionUtil.getClassPath(className));
+			}
+			if(this.useCache){
+				this.classDependencyGraph = ClassReferenceGraph.getCached(classFiles,
+					CallGraphAnalysisCacheWrapper.getCacheDirectory(this.projectDir));
+			} else {
+				this.classDependencyGraph.addAll(classFiles);
 			}
 			if(this.verbose)
 				System.out.println("[" + new java.util.Date() + "]" + "Resolved dependencies in "+Duration.between(Instant.now(),start).getSeconds());
 		}
 
-		for(SootClass sootClass : classesToRemove){
+		Map<String, Exception> exceptions = new TreeMap<String, Exception>();
+		List<SootClass> classesToEmpty = new ArrayList<SootClass>();
+		for(SootClass sootClass : sortByName(classesToRemove)){
 			Set<String> referencedBy = this.classDependencyGraph.getReferencedBy(sootClass.getName());
 			//not including classes marked for deletion
 			referencedBy.removeAll(classesToBeRemoved);
@@ -782,16 +1101,16 @@ public class JShrink {
 					methodsToRemove.clear();
 					fieldsToRemove.clear();
 					
-					ClassFileUtils.writeClass(sootClass, classPaths);
+					classesToEmpty.add(sootClass);
 				}else{
-					ClassFileUtils.removeClass(sootClass, classPaths);
+					classPathWriter.removeClass(sootClass);
 				}
 			} catch (IOException e){
-				System.out.println("An exception was thrown when attempting to delete a class:");
-				e.printStackTrace();
-				System.exit(1);
+				exceptions.put(sootClass.getName(), e);
 			}
 		}
+		exceptions.putAll(classPathWriter.writeClasses(classesToEmpty));
+		exitOnWriteFailures(exceptions, "delete");
 	}
 
 	public Set<FieldData> removeFields(Set<FieldData> toRemove) {
@@ -813,7 +1132,7 @@ public class JShrink {
 
 		// modify each Soot class
 		for(String className : toRemoveByClassName.keySet()) {
-			if(unmodifiableClasses.containsKey(className)) {
+			if(unmodifiableClasses.containsKey(className) && !JShrink.asm_field_removal) {
 				// do not remove a field in an unmodifiable class since the class cannot be updated anyway
 				continue;
 			}
@@ -834,7 +1153,13 @@ public class JShrink {
 					}
 				}
 
-				if(sootField != null && FieldWiper.removeField(sootField, verbose)) {
+				if(sootField == null) {
+					continue;
+				}
+				if(JShrink.asm_field_removal) {
+					this.asmTransformer.removeField(unusedField);
+					removedFields.add(unusedField);
+				} else if(FieldWiper.removeField(sootField, verbose)) {
 					removedFields.add(unusedField);
 					this.classesToModify.add(sootClass);
 				}
@@ -843,7 +1168,105 @@ public class JShrink {
 
 		return removedFields;
 	}
+
+	private void addModifiedMethod(SootMethod sootMethod){
+		this.modifiedMethods.computeIfAbsent(sootMethod.getDeclaringClass(), k -> new HashSet<SootMethod>())
+			.add(sootMethod);
+	}
+
+	private static Optional<MethodData> getSuperClassConstructor(SootMethod sootMethod){
+		if(!sootMethod.isConstructor()){
+			return Optional.empty();
+		}
+		SootMethod superClassConstructor = MethodWiper.getSuperClassConstructor(sootMethod);
+		return superClassConstructor == null ?
+			Optional.empty() : Optional.of(SootUtils.sootMethodToMethodData(superClassConstructor));
+	}
+
+	/*
+	The class collapser and the method inliner change the Soot classes, and so need them to reflect the methods and
+	fields removed so far. Before they run, the transformations recorded for ASM are therefore made on the Soot classes
+	instead, as if ASM had not been selected. Those Soot cannot make (e.g., in classes Soot cannot write out) are left to
+	ASM.
+	 */
+	private void moveASMTransformationsToSoot(){
+		for(String className : new HashSet<String>(this.asmTransformer.getClasses())){
+			if(unmodifiableClasses.containsKey(className)) {
+				continue;
+			}
+
+			SootClass sootClass = Scene.v().loadClassAndSupport(className);
+			Set<FieldData> removedFields = this.asmTransformer.getRemovedFields(className);
+			Set<MethodData> wipedMethods = this.asmTransformer.getWipedMethods(className);
+			Map<MethodData, Boolean> wipesThrowing = new HashMap<MethodData, Boolean>();
+			Map<MethodData, Optional<String>> wipeMessages = new HashMap<MethodData, Optional<String>>();
+			for(MethodData methodData : wipedMethods) {
+				wipesThrowing.put(methodData, this.asmTransformer.throwsException(methodData));
+				wipeMessages.put(methodData, this.asmTransformer.getExceptionMessage(methodData));
+			}
+			Set<MethodData> remaining = new HashSet<MethodData>(this.asmTransformer.getRemovedMethods(className));
+			this.asmTransformer.clear(className);
+
+			for(FieldData fieldData : removedFields) {
+				for(SootField sootField : new ArrayList<SootField>(sootClass.getFields())) {
+					if(sootField.getName().equals(fieldData.getName())
+						&& sootField.getType().toString().equals(fieldData.getType())) {
+						FieldWiper.removeField(sootField, verbose);
+						break;
+					}
+				}
+			}
+
+			for(MethodData methodData : wipedMethods) {
+				SootMethod sootMethod = sootClass.getMethod(methodData.getSubSignature());
+				boolean success;
+				if(!wipesThrowing.get(methodData)) {
+					success = MethodWiper.wipeMethodBody(sootMethod);
+				} else if(wipeMessages.get(methodData).isPresent()) {
+					success = MethodWiper.wipeMethodBodyAndInsertRuntimeException(sootMethod,
+						wipeMessages.get(methodData).get());
+				} else {
+					success = MethodWiper.wipeMethodBodyAndInsertRuntimeException(sootMethod);
+				}
+				if(success) {
+					addModifiedMethod(sootMethod);
+				} else if(wipesThrowing.get(methodData)) {
+					this.asmTransformer.wipeMethodBodyAndInsertRuntimeException(methodData, wipeMessages.get(methodData),
+						getSuperClassConstructor(sootMethod));
+				} else {
+					this.asmTransformer.wipeMethodBody(methodData, getSuperClassConstructor(sootMethod));
+				}
+			}
+
+			// as in "removeMethods", retry the methods whose callers in the class are removed later
+			boolean removedAny = true;
+			while(removedAny && !remaining.isEmpty()) {
+				removedAny = false;
+				Iterator<MethodData> iterator = remaining.iterator();
+				while(iterator.hasNext()) {
+					if(MethodWiper.removeMethod(sootClass.getMethod(iterator.next().getSubSignature()))) {
+						iterator.remove();
+						removedAny = true;
+					}
+				}
+			}
+			for(MethodData methodData : remaining) {
+				this.asmTransformer.removeMethod(methodData);
+			}
+
+			this.classesToModify.add(sootClass);
+		}
+	}
+
 	public String getLog(){
-		return ((MavenSingleProjectAnalyzer)getProjectAnalyser()).getLog();
+		StringBuilder log = new StringBuilder(((MavenSingleProjectAnalyzer)getProjectAnalyser()).getLog());
+		// the external commands run so far (e.g., "maven_test"), and the time spent running them
+		for(Map.Entry<String, ProcessRunner.Metrics> metrics : ProcessRunner.getMetrics().entrySet()){
+			log.append(metrics.getKey() + "_runs," + metrics.getValue().getRuns() + System.lineSeparator());
+			log.append(metrics.getKey() + "_timeouts," + metrics.getValue().getTimeouts() + System.lineSeparator());
+			log.append(metrics.getKey() + "_time,"
+				+ TimeUnit.MILLISECONDS.toSeconds(metrics.getValue().getTotalMillis()) + System.lineSeparator());
+		}
+		return log.toString();
 	}
 }
@@ -2,10 +2,10 @@ package edu.ucla.cs.jshrinklib.backup;
 
 import java.io.File;
 import java.nio.file.Path;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Set;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
 
 public class BackupService {
 	ArrayList<Checkpoint> checkpoints;
@@ -46,6 +46,70 @@ public class BackupService {
 		return c.isValid() && c.isSafe();
 	}
 
+	/*
+	Validates the last checkpoint with the given test classes only (see "JShrink.getTestClassesAffected"), rather than
+	with the whole test suite.
+	 */
+	public boolean validateLastCheckpoint(Set<String> testClasses) {
+		if(checkpoints.size()==0){
+			return false;
+		}
+		Checkpoint c = checkpoints.get(checkpoints.size()-1);
+		return c.isValid() && c.isSafe(testClasses);
+	}
+
+	/**
+	 * Validates each subset of changes in its own checkpoint, taken from the project as it is, so they can be validated
+	 * in parallel (see "DeltaDebugger"). The checkpoints, and the output of their tests, are deleted once validated.
+	 * @param name The name of the checkpoints, suffixed by the index of their subset
+	 * @param subsets The subsets of the changed classes
+	 * @param write Writes the changes to a subset of classes to a checkpoint
+	 * @param testClasses The test classes to validate the changes to a subset of classes with, if they are selected
+	 * @param threads The number of checkpoints validated at the same time
+	 * @return Whether each subset passes validation, in the order of the subsets
+	 */
+	public List<Boolean> validateSubsets(String name, List<Set<String>> subsets, BiConsumer<Set<String>, Checkpoint> write,
+	                                     Function<Set<String>, Optional<Set<String>>> testClasses, int threads){
+		// the changes are written one checkpoint after the other, as Soot is not thread-safe
+		List<Checkpoint> subsetCheckpoints = new ArrayList<Checkpoint>();
+		List<Optional<Set<String>>> subsetTestClasses = new ArrayList<Optional<Set<String>>>();
+		for(int i = 0; i < subsets.size(); i++){
+			Checkpoint c = new Checkpoint(this.realPath, this.backupFolder, name + "-" + i, this.isVerbose);
+			// the subset is judged by the outcome of its tests only, so their output is not kept
+			c.setKeepTestLogs(false);
+			write.accept(subsets.get(i), c);
+			subsetCheckpoints.add(c);
+			subsetTestClasses.add(testClasses.apply(subsets.get(i)));
+		}
+
+		List<Boolean> toReturn = new ArrayList<Boolean>();
+		ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, subsets.size())));
+		try {
+			List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+			for(int i = 0; i < subsets.size(); i++){
+				Checkpoint c = subsetCheckpoints.get(i);
+				Optional<Set<String>> selected = subsetTestClasses.get(i);
+				results.add(executor.submit(() -> c.isValid() && (selected.isPresent() ? c.isSafe(selected.get()) : c.isSafe())));
+			}
+			for(Future<Boolean> result : results){
+				toReturn.add(result.get());
+			}
+		} catch (InterruptedException | ExecutionException e) {
+			e.printStackTrace();
+			System.exit(1);
+		} finally {
+			executor.shutdown();
+			for(Checkpoint c : subsetCheckpoints){
+				c.delete();
+			}
+		}
+		return toReturn;
+	}
+
+	public int getCheckpointCount(){
+		return checkpoints.size();
+	}
+
 	public boolean revertToLast(){
 		Checkpoint c = checkpoints.get(checkpoints.size()-1);
 		if(!c.rollBackToBackup()) {
@@ -59,7 +123,10 @@ public class BackupService {
 		if(checkpoints.size()==0){
 			throw new IllegalArgumentException("No checkpoints found to resolve classpaths");
 		}
-		Checkpoint c = checkpoints.get(checkpoints.size()-1);
+		return resolveFiles(checkpoints.get(checkpoints.size()-1), files);
+	}
+
+	public static Set<File> resolveFiles(Checkpoint c, Set<File> files){
 		Set<File> resolvedFiles = new HashSet<File>();
 		for(File f: files){
 			resolvedFiles.add(c.resolveToBackupFile(f));
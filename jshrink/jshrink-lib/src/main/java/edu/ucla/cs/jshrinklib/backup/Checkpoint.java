@@ -1,12 +1,16 @@
 package edu.ucla.cs.jshrinklib.backup;
 
+import edu.ucla.cs.jshrinklib.JShrink;
 import edu.ucla.cs.jshrinklib.reachability.TestOutput;
 import edu.ucla.cs.jshrinklib.util.MavenUtils;
+import edu.ucla.cs.jshrinklib.util.ProcessRunner;
 import org.apache.commons.io.FileUtils;
 
 import java.io.*;
-import java.nio.file.Path;
-import java.nio.file.Paths;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
 
 public class Checkpoint {
 	private java.time.Instant timestamp;
@@ -17,72 +21,218 @@ public class Checkpoint {
 	private boolean isVerbose;
 	public boolean rollBack;
 	private boolean isValid;
+	// false once creating a hard link failed, from then on files are copied
+	private boolean hardLinks = true;
+	// whether the output of failing tests is kept, see "setKeepTestLogs"
+	private boolean keepTestLogs = true;
 
-	private boolean runTests(){
+	/*
+	Runs the given test classes only, if any are given, or the whole test suite otherwise. Only the outcome of the whole
+	test suite is remembered (see "isSafe").
+	 */
+	private boolean runTests(Optional<Set<String>> testClasses){
+		if(testClasses.isPresent() && testClasses.get().isEmpty()){
+			if (this.isVerbose) {
+				System.out.println("[" + new java.util.Date() + "]" + "No test reaches the classes changed for checkpoint "+this.transformation+", skipping tests.");
+			}
+			return true;
+		}
 		if (this.isVerbose) {
-			System.out.println("[" + new java.util.Date() + "]" + "Running project tests for checkpoint "+this.transformation+" ...");
-		}
-		this.testsPassed = false;
-		String[] cmd;
-		ProcessBuilder processBuilder;
-		Process process;
-		InputStream stdout;
-		InputStreamReader isr;
-		BufferedReader br;
-		String line;
-		int exitValue;
-		String maven_log = "";
+			System.out.println("[" + new java.util.Date() + "]" + "Running project tests for checkpoint "+this.transformation
+				+(testClasses.isPresent() ? " ("+testClasses.get().size()+" test classes selected)" : "")+" ...");
+		}
+		boolean testsPassed = false;
+		// the output is not kept in memory, only logged in a temporary file, which is kept if the tests fail (see
+		// "setKeepTestLogs")
+		MavenUtils.TestOutputParser testOutputParser = new MavenUtils.TestOutputParser();
+		ProcessRunner.Result result;
+		File log = null;
 		try{
+			log = File.createTempFile("jshrink_maven_test_", ".log");
 			File pomFile = new File(this.backupPath + File.separator + "pom.xml");
 			File libsDir = new File(this.backupPath + File.separator + "libs");
-			cmd = new String[]{"mvn", "-f", pomFile.getAbsolutePath(), "surefire:test",
-					"-Dmaven.repo.local=" + libsDir.getAbsolutePath(), "--batch-mode", "-fn"};
-			processBuilder = new ProcessBuilder(cmd);
-			processBuilder.redirectErrorStream(true);
-			process = processBuilder.start();
-			stdout = process.getInputStream();
-			isr = new InputStreamReader(stdout);
-			br = new BufferedReader(isr);
-			while ((line = br.readLine()) != null) {
-				maven_log += line + System.lineSeparator();
+			List<String> cmd = new ArrayList<String>(Arrays.asList("mvn", "-f", pomFile.getAbsolutePath(), "surefire:test",
+					"-Dmaven.repo.local=" + libsDir.getAbsolutePath(), "--batch-mode", "-fn"));
+			if(testClasses.isPresent()){
+				cmd.add("-Dtest=" + getTestPatterns(testClasses.get()));
+				// modules which have none of the selected tests
+				cmd.add("-DfailIfNoTests=false");
+				cmd.add("-Dsurefire.failIfNoSpecifiedTests=false");
 			}
-			br.close();
-			exitValue = process.waitFor();
+			result = new ProcessRunner("maven_checkpoint_test", cmd)
+				.addLineHandler(testOutputParser)
+				.setLogFile(log)
+				.setTimeout(JShrink.process_timeout_minutes, TimeUnit.MINUTES)
+				.run();
 		}
 		catch(Exception e){
 			System.out.println(e.getStackTrace());
+			if(log != null){
+				log.delete();
+			}
+			return false;
+		}
+
+		if(result.isTimedOut()){
+			System.out.println("[" + new java.util.Date() + "]" + "Running the tests for checkpoint "+this.transformation
+				+" timed out. " + result.getFailureMessage());
+			if(!this.keepTestLogs){
+				log.delete();
+			}
 			return false;
 		}
 
 		// still get test output even in case of test failure
-		TestOutput out = MavenUtils.testOutputFromString(maven_log);
+		TestOutput out = testOutputParser.getTestOutput(log);
 		if(out.isTestBuildSuccess() && out.getFailures() == 0 && out.getErrors() == 0){
-			this.testsPassed = true;
+			testsPassed = true;
+		}
+		if(!testClasses.isPresent()){
+			this.testsPassed = testsPassed;
+		}
+
+		if(testsPassed || !this.keepTestLogs){
+			log.delete();
+		} else if (this.isVerbose) {
+			System.out.println("[" + new java.util.Date() + "]" + "The tests for checkpoint "+this.transformation
+				+" fail, their output is logged in " + log.getAbsolutePath());
 		}
 
 		if (this.isVerbose) {
-			//System.out.println(maven_log);
 			System.out.println("[" + new java.util.Date() + "]" + "Done running project tests for "+transformation+" !");
 		}
 
-		return this.testsPassed;
+		return testsPassed;
 	}
 
+	/*
+	Surefire's "test" parameter, in a form all its versions understand: a path pattern per test class, as older versions
+	match the patterns against the paths of the test sources. Nested classes are run through their top-level class.
+	 */
+	static String getTestPatterns(Set<String> testClasses){
+		Set<String> patterns = new TreeSet<String>();
+		for(String testClass : testClasses){
+			String topLevelClass = testClass.contains("$") ? testClass.substring(0, testClass.indexOf('$')) : testClass;
+			patterns.add(topLevelClass.replace('.', '/'));
+		}
+		return String.join(",", patterns);
+	}
+
+	/*
+	A checkpoint shares the class files and jars of the tree it is taken from, by hard-linking them rather than copying
+	them, so creating a checkpoint (and rolling back to it) costs about as much as the files which differ. This relies on
+	JShrink replacing these files when it writes them (see "ClassFileUtils.replaceFile") rather than writing into them,
+	so a change to a tree never shows in the trees sharing its files. Maven may write into them when it compiles or
+	installs a tree, so the links of the files it writes are broken before (see "breakHardLinks"). Other files are
+	copied. Where hard links are not supported, or the two trees are on different file systems, every file is copied.
+
+	Files of the target tree which already are the files of the source tree (i.e., have not changed since the checkpoint)
+	are left as they are. Files only in the target tree are left as they are, as "FileUtils.copyDirectory" does.
+	 */
 	private void copyFiles(Path oldPath, Path newPath) throws IOException {
-		FileUtils.copyDirectory(oldPath.toFile(), newPath.toFile());
-//		for(Path source: Files.walk(oldPath).collect(Collectors.toSet())){
-//			Path target = newPath.resolve(oldPath.getParent().relativize(source));
-//			if(source.toFile().isDirectory()){
-//				target.toFile().mkdirs();
-//			}
-//			else{
-//				if(!target.getParent().toFile().exists())
-//					target.getParent().toFile().mkdirs();
-//				Files.copy(source, target, StandardCopyOption.REPLACE_EXISTING);
-//			}
-//
-//		}
+		Files.walkFileTree(oldPath, EnumSet.of(FileVisitOption.FOLLOW_LINKS), Integer.MAX_VALUE,
+			new SimpleFileVisitor<Path>() {
+				@Override
+				public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+					// as "FileUtils.copyDirectory", a target tree within the source tree is not copied into itself
+					if(dir.equals(newPath)){
+						return FileVisitResult.SKIP_SUBTREE;
+					}
+					Files.createDirectories(newPath.resolve(oldPath.relativize(dir).toString()));
+					return FileVisitResult.CONTINUE;
+				}
+
+				@Override
+				public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+					copyFile(file, newPath.resolve(oldPath.relativize(file).toString()));
+					return FileVisitResult.CONTINUE;
+				}
+			});
+	}
+
+	/**
+	 * Replaces each file Maven may write into when building the given tree, if it has other hard links (e.g., to a
+	 * checkpoint, see "copyFiles"), by a copy, so writing into it no longer changes the other trees. These are the class
+	 * files of the modules ("target/classes" and "target/test-classes") and, if the modules are installed, their artifacts
+	 * in the local repository ("libs"). Maven's other files are left as they are: running the tests only
+	 * ("surefire:test") writes into neither, and artifacts are downloaded to new files. Called right before Maven
+	 * compiles or installs a tree.
+	 * @param tree The tree Maven builds
+	 * @param install Whether Maven installs the modules into the local repository of the tree
+	 */
+	public static void breakHardLinks(Path tree, boolean install) throws IOException {
+		if(!Files.isDirectory(tree) || !tree.getFileSystem().supportedFileAttributeViews().contains("unix")){
+			// the link count cannot be read, and this is where hard links are not made
+			return;
+		}
+		HashMap<String, File> modules = new HashMap<String, File>();
+		MavenUtils.getModules(tree.toFile(), modules);
+		for(File module : modules.values()){
+			breakHardLinksIn(module.toPath().resolve("target").resolve("classes"));
+			breakHardLinksIn(module.toPath().resolve("target").resolve("test-classes"));
+		}
+
+		Path libs = tree.resolve("libs");
+		if(!install || !Files.isDirectory(libs)){
+			return;
+		}
+		// the artifacts are in "libs/<group>/<artifact id>/<version>"
+		Files.walkFileTree(libs, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+				if(!dir.equals(libs) && modules.containsKey(dir.getFileName().toString())){
+					breakHardLinksIn(dir);
+					return FileVisitResult.SKIP_SUBTREE;
+				}
+				return FileVisitResult.CONTINUE;
+			}
+		});
+	}
+
+	private static void breakHardLinksIn(Path dir) throws IOException {
+		if(!Files.isDirectory(dir)){
+			return;
+		}
+		Files.walkFileTree(dir, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+				if(attrs.isRegularFile() && (Integer) Files.getAttribute(file, "unix:nlink") > 1){
+					Path copy = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+					try {
+						Files.copy(file, copy, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
+						Files.move(copy, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+					} catch (IOException e){
+						Files.deleteIfExists(copy);
+						throw e;
+					}
+				}
+				return FileVisitResult.CONTINUE;
+			}
+		});
 	}
+
+	private void copyFile(Path source, Path target) throws IOException {
+		if(Files.exists(target) && Files.isSameFile(source, target)){
+			return;
+		}
+
+		String fileName = source.getFileName().toString();
+		if(this.hardLinks && (fileName.endsWith(".class") || fileName.endsWith(".jar"))){
+			Files.deleteIfExists(target);
+			try {
+				Files.createLink(target, source);
+				return;
+			} catch (UnsupportedOperationException | IOException e) {
+				if(this.isVerbose){
+					System.out.println("[" + new java.util.Date() + "]" + "Cannot hard-link files for checkpoint "
+						+ this.transformation + ", copying them instead: " + e.getMessage());
+				}
+				this.hardLinks = false;
+			}
+		}
+		Files.copy(source, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
+	}
+
 	private boolean backup(String realPath, String backupPath){
 		try{
 			this.oldPath = Paths.get(realPath);
@@ -149,11 +299,27 @@ public class Checkpoint {
 		return (this.getBackupPath().resolve(this.getRealPath().relativize(realPath.toPath()))).toFile();
 	}
 	public boolean isSafe(){
-		return this.testsPassed || this.runTests();
+		return this.testsPassed || this.runTests(Optional.empty());
+	}
+
+	/**
+	 * @param testClasses The test classes to run, rather than the whole test suite
+	 * @return Whether the given test classes pass (true if the whole test suite has passed)
+	 */
+	public boolean isSafe(Set<String> testClasses){
+		return this.testsPassed || this.runTests(Optional.of(testClasses));
 	}
 
 	public boolean isValid(){return this.isValid;}
 
+	/**
+	 * @param keepTestLogs Whether the output of the tests is kept, in a temporary file, when they fail (the default),
+	 *                     or deleted once the tests have run, as for checkpoints judged only by their outcome
+	 */
+	public void setKeepTestLogs(boolean keepTestLogs){
+		this.keepTestLogs = keepTestLogs;
+	}
+
 	public void exit(){
 		System.exit(0);
 	}
@@ -0,0 +1,144 @@
+package edu.ucla.cs.jshrinklib.backup;
+
+import java.util.*;
+
+/*
+Isolates the changes which make a transformation fail its validation, so the rest of the transformation can be kept
+rather than reverted as a whole. The changes are those made to each class: a subset of the changed classes is validated
+by writing the changes made to these classes only (see "JShrink.updateClassFilesAtPath").
+
+The failing changes are narrowed down with delta debugging ("ddmin"), first over the packages of the changed classes,
+then over the classes of the failing packages, as the changes which fail together are often within a package. The
+subsets of a step are validated together, in one batch, so the validator can validate them in parallel (see
+"BackupService.validateSubsets"). Once a failing subset is isolated, it is rejected and the remaining changes are
+validated again, until they pass, so every failure is isolated.
+ */
+public class DeltaDebugger {
+
+	public interface Validator {
+		/**
+		 * @param subsets Subsets of the changed classes
+		 * @return Whether the changes to each subset of classes pass validation, in the order of the subsets
+		 */
+		List<Boolean> validate(List<Set<String>> subsets);
+	}
+
+	private final Validator validator;
+	private int validations = 0;
+
+	public DeltaDebugger(Validator validator){
+		this.validator = validator;
+	}
+
+	/**
+	 * @param changedClasses The changed classes, whose changes together fail validation
+	 * @return The classes whose changes are to be discarded, so the changes to the other classes pass validation
+	 */
+	public Set<String> isolateFailures(Set<String> changedClasses){
+		Set<String> kept = new TreeSet<String>(changedClasses);
+		Set<String> rejected = new TreeSet<String>();
+		do{
+			Set<String> failing = isolateFailure(kept);
+			kept.removeAll(failing);
+			rejected.addAll(failing);
+		} while(!kept.isEmpty() && !validate(Collections.<Set<String>>singletonList(kept)).get(0));
+		return rejected;
+	}
+
+	/**
+	 * @return The number of subsets validated so far
+	 */
+	public int getValidations(){
+		return this.validations;
+	}
+
+	/*
+	Returns a minimal subset of the given classes which fails validation, given that the changes to all of them fail.
+	 */
+	private Set<String> isolateFailure(Set<String> classes){
+		Map<String, Set<String>> packages = new TreeMap<String, Set<String>>();
+		for(String className : classes){
+			packages.computeIfAbsent(getPackage(className), k -> new TreeSet<String>()).add(className);
+		}
+
+		Set<String> failingClasses = union(ddmin(new ArrayList<Set<String>>(packages.values())));
+
+		List<Set<String>> units = new ArrayList<Set<String>>();
+		for(String className : failingClasses){
+			units.add(Collections.singleton(className));
+		}
+		return union(ddmin(units));
+	}
+
+	/*
+	Zeller's "ddmin": returns a 1-minimal sublist of the given units (i.e., removing any of its units makes the changes
+	pass), given that the changes to all of them fail. At each step, the units are split into "n" chunks, and each chunk,
+	and each complement of a chunk, is validated.
+	 */
+	private List<Set<String>> ddmin(List<Set<String>> units){
+		int n = 2;
+		while(units.size() >= 2){
+			List<List<Set<String>>> chunks = split(units, n);
+			List<Set<String>> subsets = new ArrayList<Set<String>>();
+			for(List<Set<String>> chunk : chunks){
+				subsets.add(union(chunk));
+			}
+			// with two chunks, the complement of a chunk is the other chunk
+			if(chunks.size() > 2){
+				for(List<Set<String>> chunk : chunks){
+					List<Set<String>> complement = new ArrayList<Set<String>>(units);
+					complement.removeAll(chunk);
+					subsets.add(union(complement));
+				}
+			}
+
+			List<Boolean> passed = validate(subsets);
+			int failing = passed.indexOf(false);
+			if(failing >= 0 && failing < chunks.size()){
+				units = chunks.get(failing);
+				n = 2;
+			} else if(failing >= 0){
+				units = new ArrayList<Set<String>>(units);
+				units.removeAll(chunks.get(failing - chunks.size()));
+				n = Math.max(n - 1, 2);
+			} else if(n >= units.size()){
+				break;
+			} else {
+				n = Math.min(2 * n, units.size());
+			}
+		}
+		return units;
+	}
+
+	private List<Boolean> validate(List<Set<String>> subsets){
+		List<Boolean> toReturn = this.validator.validate(subsets);
+		if(toReturn.size() != subsets.size()){
+			throw new IllegalStateException("Validated " + toReturn.size() + " subsets out of " + subsets.size() + ".");
+		}
+		this.validations += subsets.size();
+		return toReturn;
+	}
+
+	private static <T> List<List<T>> split(List<T> list, int n){
+		List<List<T>> toReturn = new ArrayList<List<T>>();
+		int start = 0;
+		for(int i = 0; i < n; i++){
+			int end = start + (list.size() - start) / (n - i);
+			toReturn.add(new ArrayList<T>(list.subList(start, end)));
+			start = end;
+		}
+		return toReturn;
+	}
+
+	private static Set<String> union(Collection<Set<String>> sets){
+		Set<String> toReturn = new TreeSet<String>();
+		for(Set<String> set : sets){
+			toReturn.addAll(set);
+		}
+		return toReturn;
+	}
+
+	private static String getPackage(String className){
+		return className.contains(".") ? className.substring(0, className.lastIndexOf('.')) : "";
+	}
+}
@@ -112,12 +112,16 @@ public class ClassCollapser {
         }
 
         // update the renamed methods in the call graph
-        List<MethodData> usedMethods = new ArrayList<MethodData>(callGraph.keySet());
-        // must iterate the hashmap keyset this way since we need to update keys in the hasmap
+        List<Map.Entry<MethodData, Set<MethodData>>> usedMethods =
+                new ArrayList<Map.Entry<MethodData, Set<MethodData>>>();
+        for(Map.Entry<MethodData, Set<MethodData>> entry : callGraph.entrySet()) {
+            usedMethods.add(new AbstractMap.SimpleEntry<MethodData, Set<MethodData>>(entry));
+        }
+        // must iterate a copy of the hashmap entries this way since we need to update keys in the hasmap
         for(int i = 0; i < usedMethods.size(); i++) {
-            MethodData md = usedMethods.get(i);
+            MethodData md = usedMethods.get(i).getKey();
             String subSignature = md.getClassName() + " : " + md.getSubSignature();
-            Set<MethodData> callers = callGraph.get(md);
+            Set<MethodData> callers = usedMethods.get(i).getValue();
             if(renamedMethods.containsKey(subSignature)) {
                 SootMethod sootMethod = renamedMethods.get(subSignature);
                 MethodData renamedMethodData = SootUtils.sootMethodToMethodData(sootMethod);
@@ -143,6 +147,7 @@ public class ClassCollapser {
                 }
             }
         }
+        rehashCallGraph(callGraph);
 
         // update method call targets whose return types, parameter types, or even names have been changed
         for(String className : allClasses) {
@@ -472,15 +477,14 @@ public class ClassCollapser {
                 Set<MethodData> callers = callGraph.get(orig_md);
                 MethodData md = SootUtils.sootMethodToMethodData(m);
                 // update the references to this method if it is the caller of other methods
-                for(MethodData m2 : callGraph.keySet()) {
-                    Set<MethodData> callers2 = callGraph.get(m2);
+                for(Set<MethodData> callers2 : callGraph.values()) {
                     for(MethodData caller : callers2) {
                         if(caller.equals(orig_md)) {
                             caller.setClassName(to.getName());
                         }
                     }
-                    callGraph.put(m2, callers2);
                 }
+                rehashCallGraph(callGraph);
                 callGraph.put(md, callers);
                 callGraph.remove(orig_md);
             }
@@ -715,6 +719,30 @@ public class ClassCollapser {
         return changed;
     }
 
+    /*
+    Methods are renamed in place, but the hash code of a MethodData covers its signature. The call graph must be
+    rebuilt afterwards so the renamed methods can be found in it, both as callees and as callers. Callees which have
+    been renamed to the same method are merged.
+     */
+    private static void rehashCallGraph(Map<MethodData, Set<MethodData>> callGraph) {
+        List<Map.Entry<MethodData, Set<MethodData>>> entries = new ArrayList<Map.Entry<MethodData, Set<MethodData>>>();
+        for(Map.Entry<MethodData, Set<MethodData>> entry : callGraph.entrySet()) {
+            entries.add(new AbstractMap.SimpleEntry<MethodData, Set<MethodData>>(entry));
+        }
+        callGraph.clear();
+        for(Map.Entry<MethodData, Set<MethodData>> entry : entries) {
+            Set<MethodData> callers = entry.getValue();
+            List<MethodData> copy = new ArrayList<MethodData>(callers);
+            callers.clear();
+            callers.addAll(copy);
+            if(callGraph.containsKey(entry.getKey())) {
+                callGraph.get(entry.getKey()).addAll(callers);
+            } else {
+                callGraph.put(entry.getKey(), callers);
+            }
+        }
+    }
+
     private boolean hasNameConflict(List<SootMethod> methods, String renamed_signature) {
         boolean hasConflict = false;
 
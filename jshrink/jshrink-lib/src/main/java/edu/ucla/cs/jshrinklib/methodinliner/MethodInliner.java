@@ -2,6 +2,7 @@ package edu.ucla.cs.jshrinklib.methodinliner;
 
 import edu.ucla.cs.jshrinklib.JShrink;
 import edu.ucla.cs.jshrinklib.util.ClassFileUtils;
+import edu.ucla.cs.jshrinklib.util.ClassPathIndex;
 import edu.ucla.cs.jshrinklib.util.SootUtils;
 import soot.*;
 import soot.jimple.*;
@@ -26,34 +27,33 @@ public class MethodInliner {
 	public static InlineData inlineMethods(Map<SootMethod, Set<SootMethod>> callgraph, Set<File> classpaths, Set<String> unmodifiableClasses){
 
 		InlineData toReturn = new InlineData();
-		Set<SootMethod> methodsRemoved = new HashSet<SootMethod>();
-
-		boolean callgraphChanged = false;
-
-		Comparator<SootMethod> comparator = new Comparator<SootMethod>() {
-			@Override
-			public int compare(SootMethod o1, SootMethod o2) {
-				return o1.getSignature().compareTo(o2.getSignature());
+		IndexedCallGraph callGraph = new IndexedCallGraph(callgraph);
+
+		/*
+		The callees are attempted in passes, in the order of their signatures, until a pass inlines nothing, as they
+		would be if every callee were attempted in every pass. Only the callees whose attempt may have a different
+		outcome are attempted again, though: those related to a class changed by an inline (see
+		"IndexedCallGraph.getAffected"). One which comes after the current callee is attempted in this pass, the others
+		in the next.
+		 */
+		TreeSet<SootMethod> pass = new TreeSet<SootMethod>(SIGNATURE_ORDER);
+		pass.addAll(callgraph.keySet());
+		TreeSet<SootMethod> nextPass = new TreeSet<SootMethod>(SIGNATURE_ORDER);
+
+		while(!pass.isEmpty()){
+			SootMethod callee = pass.pollFirst();
+			if(!callgraph.containsKey(callee)){
+				continue;
 			}
-		};
-
-		do{
-			SortedMap<SootMethod, Set<SootMethod>> sortedCallgraph = new TreeMap<SootMethod, Set<SootMethod>>(comparator);
-			sortedCallgraph.putAll(callgraph);
-			callgraphChanged = false;
-			for (Map.Entry<SootMethod, Set<SootMethod>> entry : sortedCallgraph.entrySet()) {
 
-				//We are only interested inlining methods if there is only one line site
-				if (entry.getValue().size() != 1) {
-					if(debug){
-						System.out.println();
-						System.out.println("[" + new java.util.Date() + "]" + "More than one call location for " + entry.getKey().getSignature());
-					}
-					continue;
+			//We are only interested inlining methods if there is only one line site
+			if (callgraph.get(callee).size() != 1) {
+				if(debug){
+					System.out.println();
+					System.out.println("[" + new java.util.Date() + "]" + "More than one call location for " + callee.getSignature());
 				}
-
-				SootMethod caller = entry.getValue().iterator().next();
-				SootMethod callee = entry.getKey();
+			} else {
+				SootMethod caller = callgraph.get(callee).iterator().next();
 
 				if(debug){
 					System.out.println();
@@ -61,250 +61,357 @@ public class MethodInliner {
 						+ " at " + caller.getSignature() + ".");
 				}
 
-				//Both the caller and callee classes must be within the current classpaths.
-				if (ClassFileUtils.classInPath(callee.getDeclaringClass().getName(), classpaths).isEmpty()
-					|| ClassFileUtils.classInPath(caller.getDeclaringClass().getName(), classpaths).isEmpty()) {
-					if(debug){
-						System.out.println("[" + new java.util.Date() + "]" + "FAILED: Caller or Callee not within the current classpath");
+				if(inline(callee, caller, callGraph, classpaths, unmodifiableClasses)){
+					//Record the inlined method.
+					toReturn.addInlinedMethods(SootUtils.sootMethodToMethodData(callee),
+						SootUtils.sootMethodToMethodData(caller));
+					toReturn.addClassModified(caller.getDeclaringClass());
+
+					for(SootMethod affected : callGraph.getAffected(callee, caller)){
+						if(SIGNATURE_ORDER.compare(affected, callee) > 0){
+							pass.add(affected);
+						} else {
+							nextPass.add(affected);
+						}
 					}
-					continue;
-				}
 
-				if(callee.getDeclaringClass().isEnum() || caller.getDeclaringClass().isEnum()){
 					if(debug){
-						System.out.println("[" + new java.util.Date() + "]" + "FAILED: Caller or Callee is an ENUM.");
+						System.out.println("[" + new java.util.Date() + "]" + "SUCCESS!");
 					}
-					continue;
+				} else if(callGraph.hasInlinedCandidate(caller, callee)){
+					// the callee inlined in this pass may have been in the way, but will not be in the next pass
+					nextPass.add(callee);
 				}
+			}
 
-				/*
-				We do not consider inner-classes at this time. They are complex corner-cases that are not handled well
-				by Soot's inliner.
-				 */
-				if(!callee.getDeclaringClass().getName().equals(caller.getDeclaringClass().getName())
-					&& (caller.getDeclaringClass().getName().contains("$")
-					|| callee.getDeclaringClass().getName().contains("$"))){
-					if(debug){
-						System.out.println("[" + new java.util.Date() + "]" + "FAILED: Caller or Callee class is an inner class.");
-					}
-					continue;
-				}
+			if(pass.isEmpty()){
+				pass = nextPass;
+				nextPass = new TreeSet<SootMethod>(SIGNATURE_ORDER);
+				callGraph.startPass();
+			}
+		}
 
+		return toReturn;
+	}
 
-				try {
-					callee.retrieveActiveBody();
-					caller.retrieveActiveBody();
-				} catch (Exception e) {
-					//This is a catch all --- if the methods can't be retrieved, we can't inline them.
-					if(debug){
-						System.out.println("[" + new java.util.Date() + "]" + "FAILED: Cannot retrieve active body for caller or callee.");
-					}
-					continue;
-				}
+	private static final Comparator<SootMethod> SIGNATURE_ORDER = new Comparator<SootMethod>() {
+		@Override
+		public int compare(SootMethod o1, SootMethod o2) {
+			return o1.getSignature().compareTo(o2.getSignature());
+		}
+	};
 
-				/*
-				This checks that if the callee comes from a different class, that it contains no references to inner
-				classes.
-				 */
-				if(!caller.getDeclaringClass().equals(callee.getDeclaringClass())) {
-					Set<String> classRefs = classesReferenced(callee.retrieveActiveBody());
-					boolean incompatibleRef = false;
-					for (String classRef : classRefs) {
-						if (classRef.startsWith(callee.getDeclaringClass().getName() + "$")) {
-							if (debug) {
-								System.out.println("[" + new java.util.Date() + "]" + "FAILED: Callee contains reference to inner class field/method.");
-							}
-							incompatibleRef = true;
-							break;
-						}
-					}
-					if (incompatibleRef) {
-						continue;
+	/*
+	Inlines the callee at its single call site in the caller, if it is possible and it makes the code smaller, and
+	updates the call graph. Returns whether the callee was inlined.
+	 */
+	private static boolean inline(SootMethod callee, SootMethod caller, IndexedCallGraph callGraph,
+	                              Set<File> classpaths, Set<String> unmodifiableClasses){
+		//Both the caller and callee classes must be within the current classpaths.
+		if (!ClassPathIndex.contains(callee.getDeclaringClass().getName(), classpaths)
+			|| !ClassPathIndex.contains(caller.getDeclaringClass().getName(), classpaths)) {
+			if(debug){
+				System.out.println("[" + new java.util.Date() + "]" + "FAILED: Caller or Callee not within the current classpath");
+			}
+			return false;
+		}
+
+		if(callee.getDeclaringClass().isEnum() || caller.getDeclaringClass().isEnum()){
+			if(debug){
+				System.out.println("[" + new java.util.Date() + "]" + "FAILED: Caller or Callee is an ENUM.");
+			}
+			return false;
+		}
+
+		/*
+		We do not consider inner-classes at this time. They are complex corner-cases that are not handled well
+		by Soot's inliner.
+		 */
+		if(!callee.getDeclaringClass().getName().equals(caller.getDeclaringClass().getName())
+			&& (caller.getDeclaringClass().getName().contains("$")
+			|| callee.getDeclaringClass().getName().contains("$"))){
+			if(debug){
+				System.out.println("[" + new java.util.Date() + "]" + "FAILED: Caller or Callee class is an inner class.");
+			}
+			return false;
+		}
+
+
+		try {
+			callee.retrieveActiveBody();
+			caller.retrieveActiveBody();
+		} catch (Exception e) {
+			//This is a catch all --- if the methods can't be retrieved, we can't inline them.
+			if(debug){
+				System.out.println("[" + new java.util.Date() + "]" + "FAILED: Cannot retrieve active body for caller or callee.");
+			}
+			return false;
+		}
+
+		/*
+		This checks that if the callee comes from a different class, that it contains no references to inner
+		classes.
+		 */
+		if(!caller.getDeclaringClass().equals(callee.getDeclaringClass())) {
+			Set<String> classRefs = classesReferenced(callee.retrieveActiveBody());
+			boolean incompatibleRef = false;
+			for (String classRef : classRefs) {
+				if (classRef.startsWith(callee.getDeclaringClass().getName() + "$")) {
+					if (debug) {
+						System.out.println("[" + new java.util.Date() + "]" + "FAILED: Callee contains reference to inner class field/method.");
 					}
+					incompatibleRef = true;
+					break;
 				}
+			}
+			if (incompatibleRef) {
+				return false;
+			}
+		}
 
 
-				//The caller and the callee must be contained in a SootClasses that are ultimately modifiable.
+		//The caller and the callee must be contained in a SootClasses that are ultimately modifiable.
 //				if (!SootUtils.modifiableSootClass(caller.getDeclaringClass())
 //					|| !SootUtils.modifiableSootClass(callee.getDeclaringClass())) {
-				if(unmodifiableClasses.contains(caller.getDeclaringClass().getName()) ||
-					unmodifiableClasses.contains(callee.getDeclaringClass().getName())) {
-					if(debug){
-						System.out.println("[" + new java.util.Date() + "]" + "FAILED: Caller or Callee not within modifiable SootClass.");
-					}
-					continue;
-				}
+		if(unmodifiableClasses.contains(caller.getDeclaringClass().getName()) ||
+			unmodifiableClasses.contains(callee.getDeclaringClass().getName())) {
+			if(debug){
+				System.out.println("[" + new java.util.Date() + "]" + "FAILED: Caller or Callee not within modifiable SootClass.");
+			}
+			return false;
+		}
 
-				/*
-				We do not inline constructors (unless within a constructor in the same class). Doing so can cause
-				problems with the MethodWiper component.
-				 */
-				if (callee.isConstructor()) {
-					if (!(caller.getDeclaringClass().equals(callee.getDeclaringClass()) && caller.isConstructor())) {
-						if(debug){
-							System.out.println("[" + new java.util.Date() + "]" + "FAILED: Callee is a constructor.");
-						}
-						continue;
-					}
+		/*
+		We do not inline constructors (unless within a constructor in the same class). Doing so can cause
+		problems with the MethodWiper component.
+		 */
+		if (callee.isConstructor()) {
+			if (!(caller.getDeclaringClass().equals(callee.getDeclaringClass()) && caller.isConstructor())) {
+				if(debug){
+					System.out.println("[" + new java.util.Date() + "]" + "FAILED: Callee is a constructor.");
 				}
+				return false;
+			}
+		}
 
-				//We ignore access methods (created by the compiler for inner classes).
-				if (callee.getName().startsWith("access$") || caller.getName().startsWith("access$")) {
-					if(debug) {
-						System.out.println("[" + new java.util.Date() + "]" + "Caller or Callee is access$ methood");
-					}
-					continue;
-				}
+		//We ignore access methods (created by the compiler for inner classes).
+		if (callee.getName().startsWith("access$") || caller.getName().startsWith("access$")) {
+			if(debug) {
+				System.out.println("[" + new java.util.Date() + "]" + "Caller or Callee is access$ methood");
+			}
+			return false;
+		}
 
 
-				if(JShrink.enable_member_visibility) {
-					/*
-					 * Check that inlining the method does not break any access controls (references to
-					 * private/package-private methods, etc.). If this check is ignored, IllegalAccessExceptions can be
-					 * thrown at runtime.
-					 */
-					if(!accessControlsOk(callee, caller.getDeclaringClass())){
-						if(debug){
-							System.out.println("[" + new java.util.Date() + "]" + "Inlining the callee would violate Java access controls.");
-						}
-						continue;
-					}
+		if(JShrink.enable_member_visibility) {
+			/*
+			 * Check that inlining the method does not break any access controls (references to
+			 * private/package-private methods, etc.). If this check is ignored, IllegalAccessExceptions can be
+			 * thrown at runtime.
+			 */
+			if(!accessControlsOk(callee, caller.getDeclaringClass())){
+				if(debug){
+					System.out.println("[" + new java.util.Date() + "]" + "Inlining the callee would violate Java access controls.");
 				}
+				return false;
+			}
+		}
 
-				Body b = caller.retrieveActiveBody();
-				List<Map.Entry<Stmt, Boolean>> toInline = toInline(b, callee);
+		Body b = caller.retrieveActiveBody();
+		List<Map.Entry<Stmt, Boolean>> toInline = toInline(b, callee);
 
-				// There must be exactly 1 inline site in the caller method.
-				if (toInline.size() != 1) {
-					if(debug){
-						System.out.println("[" + new java.util.Date() + "]" + "FAILED: More than 1 inline site.");
-					}
-					continue;
+		// There must be exactly 1 inline site in the caller method.
+		if (toInline.size() != 1) {
+			if(debug){
+				System.out.println("[" + new java.util.Date() + "]" + "FAILED: More than 1 inline site.");
+			}
+			return false;
+		}
+
+		Stmt site = toInline.get(0).getKey();
+
+		//If it's an instance of Dynamic Invocation, this is a special case that must be handled carefully.
+		//If they are multiple potential targets, then we must skip this potential inlining.
+		if(toInline.get(0).getValue()){
+			if(callGraph.hasOtherCandidate(caller, callee)){
+				if(debug){
+					System.out.println("[" + new java.util.Date() + "]" + "Failed: Dynamic Dispatch with more than one candidate.");
 				}
+				return false;
+			}
+		}
 
-				Stmt site = toInline.get(0).getKey();
+		/*
+		I'm not sure exactly what this does, but I think it's good to use Soot's own "Inlinability" check here.
+		ModifierOptions: "safe", "unsafe", or "nochanges". Though, at the time of writing, "unsafe" is the only
+		option that's been implemented. "unsafe" means that the inline may be unsafe but is possible.
+		*/
+		boolean isInlineSafe;
+		try {
+			isInlineSafe = InlinerSafetyManager.ensureInlinability(callee, site, caller, "unsafe");
+		} catch (Exception e) {
+			// suppress the exception and just do not inline this
+			if(debug) {
+				System.out.println("[" + new java.util.Date() + "]" + "FAILED: exception occurs when checking inline safety.");
+				System.out.println(e.getMessage());
+				System.out.println(e.getStackTrace());
+			}
 
-				//If it's an instance of Dynamic Invocation, this is a special case that must be handled carefully.
-				//If they are multiple potential targets, then we must skip this potential inlining.
-				if(toInline.get(0).getValue()){
-					Set<SootMethod> calledFromCaller = new HashSet<SootMethod>();
-					for( Map.Entry<SootMethod, Set<SootMethod>> entry2 : sortedCallgraph.entrySet()){
-						if(entry2.getValue().contains(caller)){
-							calledFromCaller.add(entry2.getKey());
-						}
-					}
+			return false;
+		}
+		if (!isInlineSafe) {
+			if(debug){
+				System.out.println("[" + new java.util.Date() + "]" + "FAILED: InlineSafetyManager.ensureInlinability returned false.");
+			}
+			return false;
+		}
 
-					boolean cont = false;
-					for(SootMethod sootMethod: calledFromCaller){
-						if(!sootMethod.equals(callee) && sootMethod.getSubSignature().equals(callee.getSubSignature())){
-							cont = true;
-							break;
-						}
-					}
+		boolean isInlineEfficient;
+		try {
+			isInlineEfficient = inlineIsEfficient(callee, site, caller);
+		} catch (Exception e) {
+			// suppress the exception and just do not inline this
+			if(debug) {
+				System.out.println("[" + new java.util.Date() + "]" + "FAILED: exception occurs when checking inline efficiency.");
+				System.out.println(e.getMessage());
+				System.out.println(e.getStackTrace());
+			}
 
-					if(cont){
-						if(debug){
-							System.out.println("[" + new java.util.Date() + "]" + "Failed: Dynamic Dispatch with more than one candidate.");
-						}
-						continue;
-					}
-				}
+			return false;
+		}
+		if(!isInlineEfficient){
+			if(debug){
+				System.out.println("[" + new java.util.Date() + "]" + "FAILED: This inline operation would increase the size of the app.");
+			}
+			return false;
+		}
 
-				/*
-				I'm not sure exactly what this does, but I think it's good to use Soot's own "Inlinability" check here.
-				ModifierOptions: "safe", "unsafe", or "nochanges". Though, at the time of writing, "unsafe" is the only
-				option that's been implemented. "unsafe" means that the inline may be unsafe but is possible.
-				*/
-				boolean isInlineSafe;
-				try {
-					isInlineSafe = InlinerSafetyManager.ensureInlinability(callee, site, caller, "unsafe");
-				} catch (Exception e) {
-					// suppress the exception and just do not inline this
-					if(debug) {
-						System.out.println("[" + new java.util.Date() + "]" + "FAILED: exception occurs when checking inline safety.");
-						System.out.println(e.getMessage());
-						System.out.println(e.getStackTrace());
-					}
 
-					continue;
-				}
-				if (!isInlineSafe) {
-					if(debug){
-						System.out.println("[" + new java.util.Date() + "]" + "FAILED: InlineSafetyManager.ensureInlinability returned false.");
-					}
-					continue;
-				}
+		//I don't know why I have to do this again, but I get errors otherwise.
+		try {
+			b = caller.retrieveActiveBody();
+			toInline = toInline(b, callee);
+			site = toInline.get(0).getKey();
+		}catch(IndexOutOfBoundsException e){
+			/*
+			Sometimes due to Soot parsing bytecode incorrectly, the "toInline" function returns an empty
+			ArrayList. In these rare cases I think it best just to skip the method inlining for those methods.
+			It's a cheap fix but shouldn't have a big impact.
+			*/
+			return false;
 
-				boolean isInlineEfficient;
-				try {
-					isInlineEfficient = inlineIsEfficient(callee, site, caller);
-				} catch (Exception e) {
-					// suppress the exception and just do not inline this
-					if(debug) {
-						System.out.println("[" + new java.util.Date() + "]" + "FAILED: exception occurs when checking inline efficiency.");
-						System.out.println(e.getMessage());
-						System.out.println(e.getStackTrace());
-					}
+		}
 
-					continue;
-				}
-				if(!isInlineEfficient){
-					if(debug){
-						System.out.println("[" + new java.util.Date() + "]" + "FAILED: This inline operation would increase the size of the app.");
-					}
-					continue;
-				}
+		//Inline the method
+		SiteInliner.inlineSite(callee, site, caller);
 
+		//Update our call graph information.
+		callGraph.inlined(callee, caller);
 
-				//I don't know why I have to do this again, but I get errors otherwise.
-				try {
-					b = caller.retrieveActiveBody();
-					toInline = toInline(b, callee);
-					site = toInline.get(0).getKey();
-				}catch(IndexOutOfBoundsException e){
-					/*
-					Sometimes due to Soot parsing bytecode incorrectly, the "toInline" function returns an empty
-					ArrayList. In these rare cases I think it best just to skip the method inlining for those methods.
-					It's a cheap fix but shouldn't have a big impact.
-					*/
-					continue;
+		return true;
+	}
 
+	/*
+	The call graph given to "inlineMethods" (Map<Callee, Set<Caller>>), indexed by caller and by class, so an inline only
+	updates the edges of the methods involved.
+	 */
+	private static class IndexedCallGraph {
+		private final Map<SootMethod, Set<SootMethod>> callers;
+		private final Map<SootMethod, Set<SootMethod>> callees = new HashMap<SootMethod, Set<SootMethod>>();
+		private final Map<SootClass, Set<SootMethod>> methodsByClass = new HashMap<SootClass, Set<SootMethod>>();
+		// the callees inlined in the current pass, with their callers
+		private final Map<SootMethod, Set<SootMethod>> inlinedInPass = new HashMap<SootMethod, Set<SootMethod>>();
+
+		private IndexedCallGraph(Map<SootMethod, Set<SootMethod>> callers){
+			this.callers = callers;
+			for(Map.Entry<SootMethod, Set<SootMethod>> entry : callers.entrySet()){
+				addMethod(entry.getKey());
+				for(SootMethod caller : entry.getValue()){
+					addMethod(caller);
+					this.callees.computeIfAbsent(caller, k -> new HashSet<SootMethod>()).add(entry.getKey());
 				}
+			}
+		}
 
-				//Inline the method
-				SiteInliner.inlineSite(callee, site, caller);
+		private void addMethod(SootMethod sootMethod){
+			this.methodsByClass.computeIfAbsent(sootMethod.getDeclaringClass(), k -> new HashSet<SootMethod>())
+				.add(sootMethod);
+		}
 
-				//Record the inlined method.
-				toReturn.addInlinedMethods(SootUtils.sootMethodToMethodData(callee),
-					SootUtils.sootMethodToMethodData(caller));
-				toReturn.addClassModified(caller.getDeclaringClass());
+		private Set<SootMethod> getCallees(SootMethod caller){
+			return this.callees.getOrDefault(caller, Collections.<SootMethod>emptySet());
+		}
 
-				//Remove update our call graph information (I admit this is a bit inefficient but it's simple).
-				for (Map.Entry<SootMethod, Set<SootMethod>> entry2 : callgraph.entrySet()) {
-					if (entry2.getValue().contains(callee)) {
-						entry2.getValue().remove(callee);
-						entry2.getValue().add(caller);
-						callgraphChanged=true;
-					}
+		/*
+		Whether the caller calls another method with the callee's sub-signature, i.e., whether a dynamic invocation of
+		the callee may have more than one target.
+		 */
+		private boolean hasOtherCandidate(SootMethod caller, SootMethod callee){
+			for(SootMethod sootMethod : getCallees(caller)){
+				if(!sootMethod.equals(callee) && sootMethod.getSubSignature().equals(callee.getSubSignature())){
+					return true;
 				}
+			}
+			return hasInlinedCandidate(caller, callee);
+		}
 
-				if(callgraph.containsKey(callee)) {
-					callgraph.remove(callee);
-					callgraphChanged=true;
+		/*
+		Whether the caller called, before it was inlined in this pass, another method with the callee's sub-signature.
+		Callees inlined in a pass still counted as candidates of a dynamic invocation until the end of the pass.
+		 */
+		private boolean hasInlinedCandidate(SootMethod caller, SootMethod callee){
+			for(Map.Entry<SootMethod, Set<SootMethod>> entry : this.inlinedInPass.entrySet()){
+				if(entry.getValue().contains(caller) && !entry.getKey().equals(callee)
+					&& entry.getKey().getSubSignature().equals(callee.getSubSignature())){
+					return true;
 				}
+			}
+			return false;
+		}
 
-				if(debug){
-					System.out.println("[" + new java.util.Date() + "]" + "SUCCESS!");
+		private void startPass(){
+			this.inlinedInPass.clear();
+		}
+
+		/*
+		The callee's body is now part of the caller's: the methods the callee called are called by the caller instead,
+		and the callee is no longer in the call graph.
+		 */
+		private void inlined(SootMethod callee, SootMethod caller){
+			for(SootMethod called : getCallees(callee)){
+				Set<SootMethod> calledBy = this.callers.get(called);
+				if(calledBy != null && calledBy.remove(callee)){
+					calledBy.add(caller);
+				}
+				if(!called.equals(callee)){
+					this.callees.computeIfAbsent(caller, k -> new HashSet<SootMethod>()).add(called);
 				}
 			}
-		}while(callgraphChanged);
-
-		//Update the call graph with the removed methods.
-		for(SootMethod sootMethod : methodsRemoved){
-			callgraph.remove(sootMethod);
+			this.callees.remove(callee);
+			this.inlinedInPass.put(callee, this.callers.remove(callee));
+			getCallees(caller).remove(callee);
 		}
 
-		return toReturn;
+		/*
+		The callees whose inlining may have a different outcome after the callee was inlined in the caller: the callees
+		declared in the classes of the two methods (their bodies, and the sizes of the classes, have changed), and those
+		called from these classes (their callers, the call sites, and the sizes of the classes, may have changed).
+		 */
+		private Set<SootMethod> getAffected(SootMethod callee, SootMethod caller){
+			Set<SootMethod> toReturn = new HashSet<SootMethod>();
+			Set<SootClass> classes = new HashSet<SootClass>();
+			classes.add(callee.getDeclaringClass());
+			classes.add(caller.getDeclaringClass());
+			for(SootClass sootClass : classes){
+				for(SootMethod sootMethod : this.methodsByClass.getOrDefault(sootClass,
+					Collections.<SootMethod>emptySet())){
+					toReturn.add(sootMethod);
+					toReturn.addAll(getCallees(sootMethod));
+				}
+			}
+			toReturn.retainAll(this.callers.keySet());
+			return toReturn;
+		}
 	}
 
 	//Returns the statements, and whether they are an dynamic invocation or not.
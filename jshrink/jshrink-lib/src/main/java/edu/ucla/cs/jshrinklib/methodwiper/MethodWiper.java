@@ -64,17 +64,7 @@ public class MethodWiper {
 	    */
 		if(sootMethod.isConstructor()){
 			assert(thisLocal != null);
-			SootClass superClass =  sootMethod.getDeclaringClass().getSuperclass();
-
-			SootMethod superClassConstructor = null;
-			for(SootMethod method : superClass.getMethods()){
-				if(method.isConstructor()){
-					if(superClassConstructor == null
-						|| superClassConstructor.getParameterCount() > method.getParameterCount() ){
-						superClassConstructor = method;
-					}
-				}
-			}
+			SootMethod superClassConstructor = getSuperClassConstructor(sootMethod);
 
 			assert(superClassConstructor!=null);
 			List<Value> parameters =new ArrayList<Value>();
@@ -92,6 +82,28 @@ public class MethodWiper {
 		return toReturn;
 	}
 
+	/**
+	 * The superclass constructor a wiped constructor calls: the one with the fewest parameters, to which default values
+	 * are passed.
+	 *
+	 * @param constructor The constructor to be wiped
+	 * @return The superclass constructor, or null if the superclass declares none
+	 */
+	public static SootMethod getSuperClassConstructor(SootMethod constructor){
+		SootClass superClass =  constructor.getDeclaringClass().getSuperclass();
+
+		SootMethod superClassConstructor = null;
+		for(SootMethod method : superClass.getMethods()){
+			if(method.isConstructor()){
+				if(superClassConstructor == null
+					|| superClassConstructor.getParameterCount() > method.getParameterCount() ){
+					superClassConstructor = method;
+				}
+			}
+		}
+		return superClassConstructor;
+	}
+
 	private static Value getDefaultUnitFromType(Type type){
 
 		Value toReturn = null;
@@ -7,7 +7,7 @@ import java.lang.reflect.Field;
 import java.util.*;
 
 import edu.ucla.cs.jshrinklib.util.ASMUtils;
-import edu.ucla.cs.jshrinklib.util.ClassFileUtils;
+import edu.ucla.cs.jshrinklib.util.ClassPathIndex;
 import edu.ucla.cs.jshrinklib.util.EntryPointUtil;
 import edu.ucla.cs.jshrinklib.util.SootUtils;
 import soot.Scene;
@@ -33,18 +33,22 @@ public class CallGraphAnalysis implements IProjectAnalyser, Serializable {
 	private final Set<FieldData> appFields;
 	private final Map<MethodData, Set<FieldData>> appFieldReferences;
 	private final Set<String> usedLibClasses;
-	private final Map<MethodData,Set<MethodData>> usedLibMethods; // callee -> a set of callers
+	private MethodGraph callGraph; // the reachable part of the call graph
+	private final BitSet usedLibMethods; // IDs of the library methods in the call graph
 	private final Set<FieldData> usedLibFields;
 	private final Set<String> usedAppClasses;
-	private final Map<MethodData,Set<MethodData>> usedAppMethods; // callee -> a set of callers
+	private final BitSet usedAppMethods; // IDs of the application methods in the call graph
 	private final Set<FieldData> usedAppFields;
 	private final Set<MethodData> testMethods;
 	private final Set<String> testClasses;
-	private final Map<MethodData, Set<MethodData>> usedTestMethods;
+	private final BitSet usedTestMethods; // IDs of the test methods in the call graph
 	private final Set<String> usedTestClasses;
 	private final EntryPointProcessor entryPointProcessor;
 	private final boolean useSpark;
 	private final Map<MethodData, Set<MethodData>> virtualMethodCalls;
+	private final MemberIndex methodIndex; // the application and library methods, to resolve virtual calls
+	private File summaryDirectory = null;
+	private int traversalThreads = 1;
 
 	public CallGraphAnalysis(List<File> libJarPath,
 	                              List<File> appClassPath, 
@@ -65,18 +69,20 @@ public class CallGraphAnalysis implements IProjectAnalyser, Serializable {
 		appFields = new HashSet<FieldData>();
 		appFieldReferences = new HashMap<MethodData, Set<FieldData>>();
 		usedLibClasses = new HashSet<String>();
-		usedLibMethods = new HashMap<MethodData, Set<MethodData>>();
+		callGraph = new MethodGraph.Builder().build();
+		usedLibMethods = new BitSet();
 		usedLibFields = new HashSet<FieldData>();
 		usedAppClasses = new HashSet<String>();
-		usedAppMethods = new HashMap<MethodData, Set<MethodData>>();
+		usedAppMethods = new BitSet();
 		usedAppFields = new HashSet<FieldData>();
 		testClasses = new HashSet<String>();
 		testMethods = new HashSet<MethodData>();
-		usedTestMethods = new HashMap<MethodData, Set<MethodData>>();
+		usedTestMethods = new BitSet();
 		usedTestClasses = new HashSet<String>();
 		entryPointProcessor = entryPointProc;
 		this.useSpark = useSpark;
 		virtualMethodCalls = new HashMap<MethodData, Set<MethodData>>();
+		methodIndex = new MemberIndex();
 	}
 
 	@Override
@@ -107,6 +113,87 @@ public class CallGraphAnalysis implements IProjectAnalyser, Serializable {
 	/*package*/ void setAppTestPath(List<File> appTestPath){
 		this.appTestPath = appTestPath;
 	}
+
+	/**
+	 * Persists the ASM summary of each classpath entry in the given directory, keyed on the entry's content, so that
+	 * later analyses only re-scan the entries which have changed.
+	 */
+	/*package*/ void setSummaryDirectory(File summaryDirectory){
+		this.summaryDirectory = summaryDirectory;
+	}
+
+	/**
+	 * The number of threads the reachability traversal of the call graph is split between (1 = this thread only).
+	 */
+	/*package*/ void setTraversalThreads(int traversalThreads){
+		this.traversalThreads = Math.max(1, traversalThreads);
+	}
+
+	/*
+	The version of the layout written by "writeCache". Increment this whenever the sections below change.
+	 */
+	/*package*/ static final int CACHE_VERSION = 1;
+
+	/*package*/ void writeCache(File cacheFile) throws IOException {
+		CompactCacheWriter writer = new CompactCacheWriter(CACHE_VERSION);
+		writer.writeMethodSet(this.entryMethods);
+		writer.writeStringSet(this.libClasses);
+		writer.writeMethodSet(this.libMethods);
+		writer.writeFieldSet(this.libFields);
+		writer.writeFieldReferenceMap(this.libFieldReferences);
+		writer.writeStringSet(this.appClasses);
+		writer.writeMethodSet(this.appMethods);
+		writer.writeFieldSet(this.appFields);
+		writer.writeFieldReferenceMap(this.appFieldReferences);
+		writer.writeStringSet(this.usedLibClasses);
+		writer.writeMethodMap(this.getUsedLibMethods());
+		writer.writeFieldSet(this.usedLibFields);
+		writer.writeStringSet(this.usedAppClasses);
+		writer.writeMethodMap(this.getUsedAppMethods());
+		writer.writeFieldSet(this.usedAppFields);
+		writer.writeMethodSet(this.testMethods);
+		writer.writeStringSet(this.testClasses);
+		writer.writeMethodMap(this.getUsedTestMethods());
+		writer.writeStringSet(this.usedTestClasses);
+		writer.writeMethodMap(this.virtualMethodCalls);
+		writer.writeTo(cacheFile);
+	}
+
+	/*package*/ void readCache(File cacheFile) throws IOException {
+		CompactCacheReader reader = CompactCacheReader.open(cacheFile, CACHE_VERSION);
+		reader.readMethodSet(this.entryMethods);
+		reader.readStringSet(this.libClasses);
+		reader.readMethodSet(this.libMethods);
+		reader.readFieldSet(this.libFields);
+		reader.readFieldReferenceMap(this.libFieldReferences);
+		reader.readStringSet(this.appClasses);
+		reader.readMethodSet(this.appMethods);
+		reader.readFieldSet(this.appFields);
+		reader.readFieldReferenceMap(this.appFieldReferences);
+		reader.readStringSet(this.usedLibClasses);
+		Map<MethodData, Set<MethodData>> usedLibMethodMap = new HashMap<MethodData, Set<MethodData>>();
+		reader.readMethodMap(usedLibMethodMap);
+		reader.readFieldSet(this.usedLibFields);
+		reader.readStringSet(this.usedAppClasses);
+		Map<MethodData, Set<MethodData>> usedAppMethodMap = new HashMap<MethodData, Set<MethodData>>();
+		reader.readMethodMap(usedAppMethodMap);
+		reader.readFieldSet(this.usedAppFields);
+		reader.readMethodSet(this.testMethods);
+		reader.readStringSet(this.testClasses);
+		Map<MethodData, Set<MethodData>> usedTestMethodMap = new HashMap<MethodData, Set<MethodData>>();
+		reader.readMethodMap(usedTestMethodMap);
+		reader.readStringSet(this.usedTestClasses);
+		reader.readMethodMap(this.virtualMethodCalls);
+
+		MethodGraph.Builder builder = new MethodGraph.Builder();
+		builder.addAll(usedLibMethodMap);
+		builder.addAll(usedAppMethodMap);
+		builder.addAll(usedTestMethodMap);
+		this.callGraph = builder.build();
+		this.usedLibMethods.or(SymbolTable.toMethodIds(usedLibMethodMap.keySet()));
+		this.usedAppMethods.or(SymbolTable.toMethodIds(usedAppMethodMap.keySet()));
+		this.usedTestMethods.or(SymbolTable.toMethodIds(usedTestMethodMap.keySet()));
+	}
 	
 	
 	/**
@@ -135,23 +222,39 @@ public class CallGraphAnalysis implements IProjectAnalyser, Serializable {
 
 	private void findAllClassesAndMethodsAndFields() {
 		for (File lib : this.libJarPath) {
-			HashSet<String> classes_in_this_lib = new HashSet<String>();
-			HashSet<MethodData> methods_in_this_lib = new HashSet<MethodData>();
-			HashSet<FieldData> fields_in_this_lib = new HashSet<FieldData>();
-			ASMUtils.readClass(lib, classes_in_this_lib, methods_in_this_lib, fields_in_this_lib, libFieldReferences, virtualMethodCalls);
-			this.libClasses.addAll(classes_in_this_lib);
-			this.libMethods.addAll(methods_in_this_lib);
-			this.libFields.addAll(fields_in_this_lib);
+			ClassPathSummary summary = getClassPathSummary(lib, true);
+			this.libClasses.addAll(summary.getClasses());
+			this.libMethods.addAll(summary.getMethods());
+			this.methodIndex.addMethods(summary.getMethods());
+			this.libFields.addAll(summary.getFields());
+			this.libFieldReferences.putAll(summary.getFieldReferences());
+			this.virtualMethodCalls.putAll(summary.getVirtualMethodCalls());
 		}
 
 		for (File appPath : appClassPath) {
-			ASMUtils.readClass(appPath, appClasses, appMethods, appFields, appFieldReferences, virtualMethodCalls);
+			ClassPathSummary summary = getClassPathSummary(appPath, true);
+			this.appClasses.addAll(summary.getClasses());
+			this.appMethods.addAll(summary.getMethods());
+			this.methodIndex.addMethods(summary.getMethods());
+			this.appFields.addAll(summary.getFields());
+			this.appFieldReferences.putAll(summary.getFieldReferences());
+			this.virtualMethodCalls.putAll(summary.getVirtualMethodCalls());
 		}
 
 		for (File testPath : this.appTestPath){
 			// no need to collect field data for test cases
-			ASMUtils.readClass(testPath, testClasses, testMethods,null, null, virtualMethodCalls);
+			ClassPathSummary summary = getClassPathSummary(testPath, false);
+			this.testClasses.addAll(summary.getClasses());
+			this.testMethods.addAll(summary.getMethods());
+			this.virtualMethodCalls.putAll(summary.getVirtualMethodCalls());
+		}
+	}
+
+	private ClassPathSummary getClassPathSummary(File classPath, boolean collectFields){
+		if(this.summaryDirectory == null){
+			return ClassPathSummary.scan(classPath, collectFields);
 		}
+		return ClassPathSummary.get(classPath, collectFields, this.summaryDirectory);
 	}
 
 	private void runCallGraphAnalysis() {
@@ -171,74 +274,64 @@ public class CallGraphAnalysis implements IProjectAnalyser, Serializable {
 
 		CallGraph cg = Scene.v().getCallGraph();
 
-		Map<MethodData,Set<MethodData>> usedMethods = new HashMap<MethodData,Set<MethodData>>();
+		MethodGraph.Builder builder = new MethodGraph.Builder();
 		Set<String> usedClasses = new HashSet<String>();
 
 		for (SootMethod entryMethod : entryPoints) {
 			MethodData entryMethodData = SootUtils.sootMethodToMethodData(entryMethod);
-			if(!usedMethods.containsKey(entryMethodData)) {
-				usedMethods.put(entryMethodData, new HashSet<MethodData>());
-			}
+			builder.addMethod(entryMethodData);
 			usedClasses.add(entryMethodData.getClassName());
-			SootUtils.visitMethodNonRecur(entryMethod, cg, usedClasses, usedMethods, this.appClasses, this.libClasses);
 		}
+		SootUtils.visitMethodsNonRecur(entryPoints, cg, usedClasses, builder, this.traversalThreads);
 
-		// check for used library classes and methods
+		// check for used library, application and test classes
 		this.usedLibClasses.addAll(this.libClasses);
 		this.usedLibClasses.retainAll(usedClasses);
-		for(Map.Entry<MethodData, Set<MethodData>> e : usedMethods.entrySet()){
-			if(this.libMethods.contains(e.getKey())){
-				this.usedLibMethods.put(e.getKey(), e.getValue());
-			}
-		}
-
-		// check for used application classes and methods
 		this.usedAppClasses.addAll(this.appClasses);
 		this.usedAppClasses.retainAll(usedClasses);
-		for(Map.Entry<MethodData, Set<MethodData>> e : usedMethods.entrySet()){
-			if(this.appMethods.contains(e.getKey())){
-				this.usedAppMethods.put(e.getKey(),e.getValue());
-			}
-		}
-
-		// check for used test classes and methods
 		this.usedTestClasses.addAll(this.testClasses);
 		this.usedTestClasses.retainAll(usedClasses);
-		for(Map.Entry<MethodData, Set<MethodData>> e : usedMethods.entrySet()){
-			if(this.testMethods.contains(e.getKey())){
-				this.usedTestMethods.put(e.getKey(), e.getValue());
-			}
-		}
+
+		// check for used library, application and test methods
+		BitSet usedMethods = builder.getMethodIds();
+		this.usedLibMethods.or(SymbolTable.toMethodIds(this.libMethods));
+		this.usedLibMethods.and(usedMethods);
+		this.usedAppMethods.or(SymbolTable.toMethodIds(this.appMethods));
+		this.usedAppMethods.and(usedMethods);
+		this.usedTestMethods.or(SymbolTable.toMethodIds(this.testMethods));
+		this.usedTestMethods.and(usedMethods);
 
 		// check for the referenced but not actually invoked methods
 		// we still want to keep those methods since JVM needs to find them at runtime for dynamic dispatching
+		Map<MethodData, Optional<MethodData>> resolvedCalls = new HashMap<MethodData, Optional<MethodData>>();
 		for(MethodData method : this.virtualMethodCalls.keySet()) {
-			if (this.usedLibMethods.containsKey(method) || this.usedAppMethods.containsKey(method)
-					|| this.usedTestMethods.containsKey(method) || this.entryMethods.contains(method)) {
+			int id = SymbolTable.findMethodId(method);
+			if ((id >= 0 && (this.usedLibMethods.get(id) || this.usedAppMethods.get(id) || this.usedTestMethods.get(id)))
+					|| this.entryMethods.contains(method)) {
 				// this method is used, check whether all virtual calls in this method is also in the used method set
 				Set<MethodData> virtualCalls = this.virtualMethodCalls.get(method);
 				for (MethodData virtualCall : virtualCalls) {
-					String className = virtualCall.getClassName();
+					Optional<MethodData> md = resolvedCalls.computeIfAbsent(virtualCall, this::findMethodCall);
+					if (!md.isPresent()) {
+						continue;
+					}
+					// the method may be declared in a superclass of the call site's class
+					String className = md.get().getClassName();
+					int mdId = builder.addMethod(md.get());
 					if (appClasses.contains(className)) {
 						// a virtual call to an application method
-						MethodData md = findMethodCall(virtualCall, appMethods);
-						if (md != null) {
-							if (!usedAppMethods.containsKey(md)) {
-								usedAppMethods.put(md, new HashSet<MethodData>());
-								if (!usedAppClasses.contains(className)) {
-									usedAppClasses.add(className);
-								}
+						if (!usedAppMethods.get(mdId)) {
+							usedAppMethods.set(mdId);
+							if (!usedAppClasses.contains(className)) {
+								usedAppClasses.add(className);
 							}
 						}
-					} else if (libClasses.contains(className)) {
+					} else {
 						// a virtual call to a library method
-						MethodData md = findMethodCall(virtualCall, libMethods);
-						if (md != null) {
-							if (!usedLibMethods.containsKey(md)) {
-								usedLibMethods.put(md, new HashSet<MethodData>());
-								if (!usedLibClasses.contains(className)) {
-									usedLibClasses.add(className);
-								}
+						if (!usedLibMethods.get(mdId)) {
+							usedLibMethods.set(mdId);
+							if (!usedLibClasses.contains(className)) {
+								usedLibClasses.add(className);
 							}
 						}
 					}
@@ -246,8 +339,11 @@ public class CallGraphAnalysis implements IProjectAnalyser, Serializable {
 			}
 		}
 
+		this.callGraph = builder.build();
+
 		// check for used fields
-		for(MethodData method : usedMethods.keySet()) {
+		for(int id = usedMethods.nextSetBit(0); id >= 0; id = usedMethods.nextSetBit(id + 1)) {
+			MethodData method = this.callGraph.getMethod(id);
 			Set<FieldData> fieldRefs;
 			if(this.libFieldReferences.containsKey(method)) {
 				fieldRefs = this.libFieldReferences.get(method);
@@ -315,22 +411,30 @@ public class CallGraphAnalysis implements IProjectAnalyser, Serializable {
 	/**
 	 * This method is to find the original MethodData object of a method call. The isPublic and isStatic fields in a
 	 * method call object are always set to true and false since there is no method modifier information in the callsite.
-	 * So we use this method to find the original MethodData object of a method call. Return null if we cannot find one.
+	 * So we use this method to find the original MethodData object of a method call. If the class of the call site does
+	 * not declare the method, it is looked up in the superclasses, as the JVM would. Return an empty optional if we
+	 * cannot find one in the application or library classes.
 	 *
 	 * @param call
-	 * @param set
 	 * @return
 	 */
-	private MethodData findMethodCall(MethodData call, Set<MethodData> set) {
-		for(MethodData method : set) {
-			if(method.getClassName().equals(call.getClassName())
-				&& method.getName().equals(call.getName())
-				&& Arrays.equals(method.getArgs(), call.getArgs())) {
+	private Optional<MethodData> findMethodCall(MethodData call) {
+		String className = call.getClassName();
+		while(this.appClasses.contains(className) || this.libClasses.contains(className)) {
+			Optional<MethodData> method = this.methodIndex.getMethod(className, call.getName(), call.getArgs());
+			if(method.isPresent()) {
 				return method;
 			}
+
+			// the class hierarchy has already been loaded by Soot
+			SootClass sootClass = Scene.v().getSootClassUnsafe(className, false);
+			if(sootClass == null || !sootClass.hasSuperclass()) {
+				break;
+			}
+			className = sootClass.getSuperclass().getName();
 		}
 
-		return null;
+		return Optional.empty();
 	}
 
 	@Override
@@ -350,21 +454,19 @@ public class CallGraphAnalysis implements IProjectAnalyser, Serializable {
 
 	//TODO: I don't like having these three mehtods here. Not really relevant to the call graph.
 	public String getLibPathOfMethod(MethodData methodData) {
-		return ClassFileUtils.classInPath(methodData.getClassName(),
-			this.libJarPath).get(0).getAbsolutePath();
+		return getLibPathOfClass(methodData.getClassName());
 	}
 
 	public String getLibPathOfField(FieldData fieldData) {
-		return ClassFileUtils.classInPath(fieldData.getClassName(),
-			this.libJarPath).get(0).getAbsolutePath();
+		return getLibPathOfClass(fieldData.getClassName());
 	}
 
 	public String getLibPathOfClass(String libClass) {
-		List<File> files = ClassFileUtils.classInPath(libClass, this.libJarPath);
-		if(files.size() == 0) {
+		List<ClassPathIndex.Location> locations = ClassPathIndex.find(libClass, this.libJarPath);
+		if(locations.size() == 0) {
 			return null;
 		}
-		return ClassFileUtils.classInPath(libClass, this.libJarPath).get(0).getAbsolutePath();
+		return locations.get(0).getClassPathEntry().getAbsolutePath();
 	}
 
 	@Override
@@ -393,7 +495,7 @@ public class CallGraphAnalysis implements IProjectAnalyser, Serializable {
 
 	@Override
 	public Map<MethodData,Set<MethodData>> getUsedLibMethods() {
-		return Collections.unmodifiableMap(this.usedLibMethods);
+		return this.callGraph.asMap(this.usedLibMethods);
 	}
 
 	@Override
@@ -408,7 +510,7 @@ public class CallGraphAnalysis implements IProjectAnalyser, Serializable {
 
 	@Override
 	public Map<MethodData,Set<MethodData>>getUsedAppMethods() {
-		return Collections.unmodifiableMap(this.usedAppMethods);
+		return this.callGraph.asMap(this.usedAppMethods);
 	}
 
 	@Override
@@ -479,7 +581,7 @@ public class CallGraphAnalysis implements IProjectAnalyser, Serializable {
 
 	@Override
 	public Map<MethodData, Set<MethodData>> getUsedTestMethods(){
-		return this.usedTestMethods;
+		return this.callGraph.asMap(this.usedTestMethods);
 	}
 
 	@Override
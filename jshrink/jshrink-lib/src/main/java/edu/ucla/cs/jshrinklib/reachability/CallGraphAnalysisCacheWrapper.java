@@ -1,10 +1,14 @@
 package edu.ucla.cs.jshrinklib.reachability;
 
+import edu.ucla.cs.jshrinklib.util.DigestUtils;
 import edu.ucla.cs.jshrinklib.util.SootUtils;
-import jdk.nashorn.internal.codegen.CompilerConstants;
+import org.apache.commons.io.FileUtils;
 import soot.Scene;
 
 import java.io.*;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.security.CodeSource;
 import java.util.*;
 
 public class CallGraphAnalysisCacheWrapper implements IProjectAnalyser {
@@ -21,6 +25,10 @@ public class CallGraphAnalysisCacheWrapper implements IProjectAnalyser {
 	private final List<File> appTestPath;
 	private boolean hasSetup;
 	private boolean hasRun;
+	private String cacheKey = null;
+	private String manifest = null;
+	private File cacheFile = null;
+	private static String sootDigest = null;
 
 	public CallGraphAnalysisCacheWrapper(File projectDir, String module, List<File> libJarPath,
 	                                     List<File> appClassPath,
@@ -39,40 +47,53 @@ public class CallGraphAnalysisCacheWrapper implements IProjectAnalyser {
 
 		Optional<File> cache = this.getCache();
 
+		this.cga = this.newCallGraphAnalysis();
+		hasSetup = false;
+		hasRun = false;
+
 		if(cache.isPresent() && this.useCache){
 			if(this.verbose){
 				System.out.println("[" + new java.util.Date() + "]" + "Call graph cache exists (\"" + cache.get().getAbsolutePath() + "\"). Loading...");
 			}
 
 			try{
-				ObjectInputStream in=new ObjectInputStream(new FileInputStream(getCacheFileLocation()));
-				this.cga=(CallGraphAnalysis) in.readObject();
-				in.close();
-			}catch(Exception e){
-				e.printStackTrace();
-				System.exit(1);
+				this.cga.readCache(cache.get());
+				hasSetup = true;
+				hasRun = true;
+			}catch(IOException e){
+				// e.g., a cache written by an older version of JShrink. We simply regenerate it.
+				System.out.println("[" + new java.util.Date() + "]" + "Could not load call graph cache (\""
+					+ cache.get().getAbsolutePath() + "\"): " + e.getLocalizedMessage() + ". It will be regenerated.");
+				this.cga = this.newCallGraphAnalysis();
 			}
 
-			if(this.verbose){
+			if(hasRun && this.verbose){
 				System.out.println("[" + new java.util.Date() + "]" + "Done loading call graph cache.");
 			}
-
-			this.cga.setAppClassPath(this.appClassPath);
-			this.cga.setAppTestPath(this.appTestPath);
-			this.cga.setLibJarPath(this.libJarPath);
-
-			hasSetup = true;
-			hasRun = true;
-		} else{
-			this.cga = new CallGraphAnalysis(libJarPath, appClassPath, appTestPath,entryPointProc, useSpark);
-			hasSetup = false;
-			hasRun = false;
 		}
 
 		assert(this.cga != null);
 	}
 
 
+	private CallGraphAnalysis newCallGraphAnalysis(){
+		CallGraphAnalysis callGraphAnalysis = new CallGraphAnalysis(this.libJarPath, this.appClassPath,
+			this.appTestPath, this.entryPointProcessor, this.useSparkInstance);
+		if(this.useCache){
+			// Even when the call graph has to be recomputed, the ASM scan of unchanged classpath entries is reused
+			callGraphAnalysis.setSummaryDirectory(getSummaryDirectory(this.projectDirectory));
+		}
+		return callGraphAnalysis;
+	}
+
+	/**
+	 * The number of threads the reachability traversal of the call graph is split between, if it is not loaded from the
+	 * cache.
+	 */
+	/*package*/ void setTraversalThreads(int traversalThreads){
+		this.cga.setTraversalThreads(traversalThreads);
+	}
+
 	/*package*/ Optional<File> getCache(){
 
 		File cacheFile = this.getCacheFileLocation();
@@ -85,54 +106,110 @@ public class CallGraphAnalysisCacheWrapper implements IProjectAnalyser {
 	}
 
 	private File getCacheFileLocation(){
-
-		int customEntryPointHashcode = 0;
-		for(MethodData methodData : this.entryPointProcessor.getCustomEntry()){
-			customEntryPointHashcode += methodData.hashCode();
+		if(this.cacheFile == null){
+			this.cacheFile = new File(getCacheDirectory(this.projectDirectory).getAbsolutePath()
+				+ File.separator + "cga_" + this.projectModule + "_" + this.getCacheKey() + ".cache");
 		}
+		return this.cacheFile;
+	}
+
+	private File getManifestFileLocation(){
+		return new File(this.getCacheFileLocation().getAbsolutePath() + ".manifest");
+	}
+
+	/*
+	The cache key is the SHA-256 digest of everything the call graph is built from: the cache format, the Soot build,
+	the content of each classpath entry (in classpath order), the entry points and the Spark options. File paths and
+	names are deliberately left out so a cache can be reused for a rebuilt project, or on another machine, as long as
+	its content is the same. The manifest records the same information in a human-readable form.
+	 */
+	/*package*/ String getCacheKey(){
+		if(this.cacheKey == null){
+			StringBuilder key = new StringBuilder();
+			StringBuilder manifest = new StringBuilder();
+
+			addToCacheKey(key, manifest, "format " + CallGraphAnalysis.CACHE_VERSION, "");
+			addToCacheKey(key, manifest, "soot " + soot.Main.versionString + " " + getSootDigest(), "");
+
+			addToCacheKey(key, manifest, "entry"
+				+ (this.entryPointProcessor.isMainEntry() ? " main" : "")
+				+ (this.entryPointProcessor.isPublicEntry() ? " public" : "")
+				+ (this.entryPointProcessor.isTestEntry() ? " test" : ""), "");
+			SortedSet<String> customEntryPoints = new TreeSet<String>();
+			for(MethodData methodData : this.entryPointProcessor.getCustomEntry()){
+				// Not MethodData.getSignature() as it relies on Soot's Scene
+				customEntryPoints.add("<" + methodData.getClassName() + ": " + methodData.getReturnType() + " "
+					+ methodData.getName() + "(" + String.join(",", methodData.getArgs()) + ")>");
+			}
+			for(String customEntryPoint : customEntryPoints){
+				addToCacheKey(key, manifest, "custom " + customEntryPoint, "");
+			}
 
-		int classPathHashcode = 0;
-		Set<File> classPaths = new HashSet<File>();
-		classPaths.addAll(this.appClassPath);
-		classPaths.addAll(this.appTestPath);
-		classPaths.addAll(this.libJarPath);
-		for(File classPath :  classPaths){
-			classPathHashcode += classPath.getName().hashCode();
+			addToCacheKey(key, manifest, "spark " + this.useSparkInstance, "");
+			if(this.useSparkInstance){
+				for(Map.Entry<String, String> option : new TreeMap<String, String>(SootUtils.getSparkOpt()).entrySet()){
+					addToCacheKey(key, manifest, "spark-option " + option.getKey() + "=" + option.getValue(), "");
+				}
+			}
+
+			for(File classPath : this.libJarPath){
+				addToCacheKey(key, manifest, "lib " + getDigest(classPath), " " + classPath.getAbsolutePath());
+			}
+			for(File classPath : this.appClassPath){
+				addToCacheKey(key, manifest, "app " + getDigest(classPath), " " + classPath.getAbsolutePath());
+			}
+			for(File classPath : this.appTestPath){
+				addToCacheKey(key, manifest, "test " + getDigest(classPath), " " + classPath.getAbsolutePath());
+			}
+
+			this.cacheKey = DigestUtils.sha256(key.toString());
+			this.manifest = "key " + this.cacheKey + "\n" + "module " + this.projectModule + "\n" + manifest.toString();
 		}
+		return this.cacheKey;
+	}
 
-		File cacheFile = new File(getCacheDirectory(this.projectDirectory).getAbsolutePath()
-			+ File.separator + "cga_" + this.projectModule + (this.entryPointProcessor.isMainEntry() ? "_main" : "")
-			+ (this.entryPointProcessor.isPublicEntry() ? "_public" : "")
-			+ (this.entryPointProcessor.isTestEntry() ? "_test" : "")
-			+ (this.useSparkInstance ? "_spark" : "") + "_customEntry" + Integer.toHexString(customEntryPointHashcode)
-			+ "_classPath" + Integer.toHexString(classPathHashcode) +".cache");
+	private static void addToCacheKey(StringBuilder key, StringBuilder manifest, String keyLine, String comment){
+		key.append(keyLine).append('\n');
+		manifest.append(keyLine).append(comment).append('\n');
+	}
 
-		return cacheFile;
+	private static String getDigest(File classPath){
+		try{
+			return DigestUtils.sha256(classPath);
+		}catch(IOException e){
+			// e.g., a module without test classes
+			return "absent";
+		}
+	}
+
+	public static synchronized String getSootDigest(){
+		if(sootDigest == null){
+			sootDigest = "unknown";
+			try{
+				CodeSource codeSource = soot.Main.class.getProtectionDomain().getCodeSource();
+				if(codeSource != null){
+					sootDigest = DigestUtils.sha256(new File(codeSource.getLocation().toURI()));
+				}
+			}catch(IOException | URISyntaxException | IllegalArgumentException e){
+				// Fall back on the Soot version string alone
+			}
+		}
+		return sootDigest;
 	}
 
 	public static File getCacheDirectory(File projectDirectory){
 		return new File( projectDirectory.getAbsolutePath() + File.separator + "jshrink_caches");
 	}
 
+	/*package*/ static File getSummaryDirectory(File projectDirectory){
+		return new File(getCacheDirectory(projectDirectory).getAbsolutePath() + File.separator + "asm_summaries");
+	}
+
 	private void createCache(){
 		try{
-
-			File cacheFile = getCacheFileLocation();
-			if(cacheFile.exists()){
-				cacheFile.delete();
-			}
-
-			if(!getCacheDirectory(this.projectDirectory).exists()){
-				getCacheDirectory(this.projectDirectory).mkdirs();
-			}
-			cacheFile.createNewFile();
-
-			FileOutputStream fout = new FileOutputStream(getCacheFileLocation());
-			ObjectOutputStream out = new ObjectOutputStream(fout);
-			out.writeObject(this.cga);
-			out.flush();
-			out.close();
-		}catch(Exception e){
+			this.cga.writeCache(getCacheFileLocation());
+			FileUtils.writeStringToFile(getManifestFileLocation(), this.manifest, StandardCharsets.UTF_8);
+		}catch(IOException e){
 			e.printStackTrace();
 			System.exit(1);
 		}
@@ -0,0 +1,128 @@
+package edu.ucla.cs.jshrinklib.reachability;
+
+import edu.ucla.cs.jshrinklib.util.ASMUtils;
+import edu.ucla.cs.jshrinklib.util.DigestUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * The classes, methods, fields, field references and virtual calls found by ASM in a single classpath entry (a jar or
+ * a class directory).
+ *
+ * Summaries can be persisted in a directory, keyed on the digest of the entry's content. Re-analysing a project then
+ * only re-scans the entries which have actually changed; a typical example being the application classes changing
+ * while the library jars stay the same.
+ */
+/*package*/ class ClassPathSummary {
+
+	private static final int SUMMARY_VERSION = 1;
+
+	private final Set<String> classes = new HashSet<String>();
+	private final Set<MethodData> methods = new HashSet<MethodData>();
+	private final Set<FieldData> fields;
+	private final Map<MethodData, Set<FieldData>> fieldReferences;
+	private final Map<MethodData, Set<MethodData>> virtualMethodCalls = new HashMap<MethodData, Set<MethodData>>();
+
+	private ClassPathSummary(boolean collectFields){
+		this.fields = collectFields ? new HashSet<FieldData>() : null;
+		this.fieldReferences = collectFields ? new HashMap<MethodData, Set<FieldData>>() : null;
+	}
+
+	/**
+	 * Scans the classpath entry with ASM.
+	 *
+	 * @param classPath A jar or a directory
+	 * @param collectFields Whether to collect field data and field references
+	 */
+	/*package*/ static ClassPathSummary scan(File classPath, boolean collectFields){
+		ClassPathSummary summary = new ClassPathSummary(collectFields);
+		ASMUtils.readClass(classPath, summary.classes, summary.methods, summary.fields, summary.fieldReferences,
+			summary.virtualMethodCalls);
+		return summary;
+	}
+
+	/**
+	 * Returns the summary of the classpath entry, read from the summary directory if this entry's content has been
+	 * summarised before. Otherwise the entry is scanned and the summary stored for the next run.
+	 *
+	 * @param classPath A jar or a directory
+	 * @param collectFields Whether to collect field data and field references
+	 * @param summaryDirectory The directory where summaries are persisted
+	 */
+	/*package*/ static ClassPathSummary get(File classPath, boolean collectFields, File summaryDirectory){
+		File summaryFile;
+		try {
+			summaryFile = new File(summaryDirectory.getAbsolutePath() + File.separator
+				+ DigestUtils.sha256(classPath) + (collectFields ? "" : "_nofields") + ".summary");
+		} catch (IOException e){
+			// e.g., the classpath entry does not exist. Let the scan deal with it as it always has.
+			return scan(classPath, collectFields);
+		}
+
+		if(summaryFile.exists()){
+			try {
+				return read(summaryFile, collectFields);
+			} catch (IOException e){
+				System.out.println("[" + new java.util.Date() + "]" + "Could not read the class summary \""
+					+ summaryFile.getAbsolutePath() + "\" (" + e.getLocalizedMessage() + "), re-scanning \""
+					+ classPath.getAbsolutePath() + "\"");
+			}
+		}
+
+		ClassPathSummary summary = scan(classPath, collectFields);
+		try {
+			summary.write(summaryFile);
+		} catch (IOException e){
+			System.out.println("[" + new java.util.Date() + "]" + "Could not store the class summary \""
+				+ summaryFile.getAbsolutePath() + "\": " + e.getLocalizedMessage());
+		}
+		return summary;
+	}
+
+	/*package*/ Set<String> getClasses(){
+		return this.classes;
+	}
+
+	/*package*/ Set<MethodData> getMethods(){
+		return this.methods;
+	}
+
+	/*package*/ Set<FieldData> getFields(){
+		return this.fields;
+	}
+
+	/*package*/ Map<MethodData, Set<FieldData>> getFieldReferences(){
+		return this.fieldReferences;
+	}
+
+	/*package*/ Map<MethodData, Set<MethodData>> getVirtualMethodCalls(){
+		return this.virtualMethodCalls;
+	}
+
+	private void write(File summaryFile) throws IOException {
+		CompactCacheWriter writer = new CompactCacheWriter(SUMMARY_VERSION);
+		writer.writeStringSet(this.classes);
+		writer.writeMethodSet(this.methods);
+		if(this.fields != null){
+			writer.writeFieldSet(this.fields);
+			writer.writeFieldReferenceMap(this.fieldReferences);
+		}
+		writer.writeMethodMap(this.virtualMethodCalls);
+		writer.writeTo(summaryFile);
+	}
+
+	private static ClassPathSummary read(File summaryFile, boolean collectFields) throws IOException {
+		ClassPathSummary summary = new ClassPathSummary(collectFields);
+		CompactCacheReader reader = CompactCacheReader.open(summaryFile, SUMMARY_VERSION);
+		reader.readStringSet(summary.classes);
+		reader.readMethodSet(summary.methods);
+		if(collectFields){
+			reader.readFieldSet(summary.fields);
+			reader.readFieldReferenceMap(summary.fieldReferences);
+		}
+		reader.readMethodMap(summary.virtualMethodCalls);
+		return summary;
+	}
+}
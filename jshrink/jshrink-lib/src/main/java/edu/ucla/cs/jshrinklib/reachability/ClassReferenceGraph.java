@@ -1,19 +1,46 @@
 package edu.ucla.cs.jshrinklib.reachability;
 
+import edu.ucla.cs.jshrinklib.util.DigestUtils;
 import soot.*;
 import soot.javaToJimple.InitialResolver;
 
+import java.io.File;
+import java.io.IOException;
 import java.io.Serializable;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Map;
-import java.util.Set;
+import java.util.*;
+import java.util.stream.Collectors;
 
+/*
+Class names are interned to integer IDs, and the graph is stored as two adjacency lists of IDs: the classes each class
+references, and the classes each class is referenced by. Both "getReferences" and "getReferencedBy" are therefore
+answered in O(degree).
+ */
 public class ClassReferenceGraph implements Serializable {
-    private HashMap<String, Set<String>> graph=null;
+
+    private static final int CACHE_VERSION = 1;
+
+    private final List<String> names = new ArrayList<String>();
+    private final Map<String, Integer> ids = new HashMap<String, Integer>();
+    private final List<IntList> references = new ArrayList<IntList>();
+    private final List<IntList> referencedBy = new ArrayList<IntList>();
+
+    private static class IntList implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private int[] values = new int[4];
+        private int size = 0;
+
+        private void add(int value){
+            if(size == values.length){
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+    }
+
     public ClassReferenceGraph(){
-        graph = new HashMap<>();
     }
+
     private Set<String> getConstantPoolReferences(String classPath) throws Exception{
         return ConstantPoolScanner.getClassReferences(classPath);
     }
@@ -30,14 +57,39 @@ public class ClassReferenceGraph implements Serializable {
         }
         return toReturn;
     }
+
+    private int getId(String className){
+        Integer id = ids.get(className);
+        if(id == null){
+            id = names.size();
+            ids.put(className, id);
+            names.add(className);
+            references.add(new IntList());
+            referencedBy.add(new IntList());
+        }
+        return id;
+    }
+
     public void addClass(String className, Set<String> references){
-        Set<String> refererrs;
         className = className.replaceAll("/",".");
-        references.remove(className);
+        int from = getId(className);
+
+        // a class may be added more than once, do not duplicate the edges already present
+        IntList existing = this.references.get(from);
+        Set<Integer> existingReferences = new HashSet<Integer>();
+        for(int i=0; i<existing.size; i++){
+            existingReferences.add(existing.values[i]);
+        }
+
         for(String ref: references){
-            refererrs = graph.getOrDefault(ref, new HashSet<String>());
-            refererrs.add(className);
-            graph.put(ref, refererrs);
+            if(ref.equals(className)){
+                continue;
+            }
+            int to = getId(ref);
+            if(existingReferences.add(to)){
+                this.references.get(from).add(to);
+                this.referencedBy.get(to).add(from);
+            }
         }
     }
 
@@ -52,10 +104,27 @@ public class ClassReferenceGraph implements Serializable {
         }
     }
 
-    public void addAll(HashMap<String, String> classNamePathMap) {
-        Set<String> references, refererrs;
-        for(String clazz: classNamePathMap.keySet()){
-            this.addClass(clazz, classNamePathMap.get(clazz));
+    /*
+    The constant pools are read in parallel, as reading them only involves each class's own file. The graph itself is
+    then updated on the calling thread.
+     */
+    public void addAll(Map<String, String> classNamePathMap) {
+        List<Map.Entry<String, String>> classes = new ArrayList<Map.Entry<String, String>>(classNamePathMap.entrySet());
+        List<Set<String>> references = classes.parallelStream().map(e -> {
+            try{
+                return this.getConstantPoolReferences(e.getValue());
+            }
+            catch (Exception ex) {
+                System.out.println("An an exception was thrown while getting references for Class "+e.getKey()+" at "+e.getValue());
+                ex.printStackTrace();
+                return null;
+            }
+        }).collect(Collectors.toList());
+
+        for(int i=0; i<classes.size(); i++){
+            if(references.get(i) != null){
+                addClass(classes.get(i).getKey(), references.get(i));
+            }
         }
     }
 
@@ -70,22 +139,157 @@ public class ClassReferenceGraph implements Serializable {
         }
     }
 
+    private Set<String> toNames(IntList list){
+        Set<String> toReturn = new HashSet<String>();
+        for(int i=0; i<list.size; i++){
+            toReturn.add(names.get(list.values[i]));
+        }
+        return toReturn;
+    }
 
-
+    /**
+     * @return The classes referenced by the given class
+     */
     public Set<String> getReferences(String className){
-        Set<String> references = new HashSet<String>();
-        for(Map.Entry<String, Set<String>> e:graph.entrySet()){
-            if(e.getValue().contains(className))
-                references.add(e.getKey());
-        }
-        return references;
+        Integer id = ids.get(className);
+        return id == null ? new HashSet<String>() : toNames(references.get(id));
     }
 
+    /**
+     * @return The classes referencing the given class
+     */
     public Set<String> getReferencedBy(String className){
-        return graph.getOrDefault(className, new HashSet<String>());
+        Integer id = ids.get(className);
+        return id == null ? new HashSet<String>() : toNames(referencedBy.get(id));
+    }
+
+    /**
+     * @return The classes referenced by the given class, directly or through other classes (excluding the class itself)
+     */
+    public Set<String> getTransitiveReferences(String className){
+        return transitiveClosure(className, references);
+    }
+
+    /**
+     * @return The classes referencing the given class, directly or through other classes (excluding the class itself)
+     */
+    public Set<String> getTransitiveReferencedBy(String className){
+        return transitiveClosure(className, referencedBy);
+    }
+
+    private Set<String> transitiveClosure(String className, List<IntList> edges){
+        Set<String> toReturn = new HashSet<String>();
+        Integer start = ids.get(className);
+        if(start == null){
+            return toReturn;
+        }
+
+        BitSet visited = new BitSet(names.size());
+        int[] worklist = new int[names.size()];
+        int head = 0, tail = 0;
+        visited.set(start);
+        worklist[tail++] = start;
+        while(head < tail){
+            IntList next = edges.get(worklist[head++]);
+            for(int i=0; i<next.size; i++){
+                int id = next.values[i];
+                if(!visited.get(id)){
+                    visited.set(id);
+                    toReturn.add(names.get(id));
+                    worklist[tail++] = id;
+                }
+            }
+        }
+        return toReturn;
     }
 
+    /**
+     * @return The classes referenced by at least one class
+     */
     public Set<String> getNodes(){
-        return graph.keySet();
+        Set<String> toReturn = new HashSet<String>();
+        for(int i=0; i<names.size(); i++){
+            if(referencedBy.get(i).size > 0){
+                toReturn.add(names.get(i));
+            }
+        }
+        return toReturn;
+    }
+
+    /*package*/ void writeCache(File cacheFile) throws IOException {
+        CompactCacheWriter writer = new CompactCacheWriter(CACHE_VERSION);
+        writer.writeInt(names.size());
+        for(String name : names){
+            writer.writeString(name);
+        }
+        for(IntList list : references){
+            writer.writeInt(list.size);
+            for(int i=0; i<list.size; i++){
+                writer.writeInt(list.values[i]);
+            }
+        }
+        writer.writeTo(cacheFile);
+    }
+
+    /*package*/ static ClassReferenceGraph readCache(File cacheFile) throws IOException {
+        ClassReferenceGraph graph = new ClassReferenceGraph();
+        CompactCacheReader reader = CompactCacheReader.open(cacheFile, CACHE_VERSION);
+        int size = reader.readInt();
+        for(int i=0; i<size; i++){
+            graph.getId(reader.readString());
+        }
+        for(int from=0; from<size; from++){
+            int degree = reader.readInt();
+            for(int i=0; i<degree; i++){
+                int to = reader.readInt();
+                if(to >= size){
+                    throw new IOException("Corrupt class reference cache (ID " + to + " out of range)");
+                }
+                graph.references.get(from).add(to);
+                graph.referencedBy.get(to).add(from);
+            }
+        }
+        return graph;
+    }
+
+    /**
+     * Returns the graph built from the given class files, reading it from the cache directory if a graph has been built
+     * from the same classes, with the same content, before. Otherwise the graph is built and stored for the next run.
+     *
+     * @param classNamePathMap The class files, keyed on the class name
+     * @param cacheDirectory The directory the graph is persisted in (e.g., the call graph cache directory)
+     */
+    public static ClassReferenceGraph getCached(Map<String, String> classNamePathMap, File cacheDirectory){
+        StringBuilder key = new StringBuilder();
+        for(Map.Entry<String, String> e : new TreeMap<String, String>(classNamePathMap).entrySet()){
+            String digest;
+            try{
+                digest = e.getValue() == null ? "absent" : DigestUtils.sha256(new File(e.getValue()));
+            }catch(IOException ex){
+                digest = "absent";
+            }
+            key.append(e.getKey()).append('=').append(digest).append('\n');
+        }
+        File cacheFile = new File(cacheDirectory.getAbsolutePath() + File.separator + "class_references_"
+            + DigestUtils.sha256(key.toString()) + ".cache");
+
+        if(cacheFile.exists()){
+            try{
+                return readCache(cacheFile);
+            }catch(IOException e){
+                System.out.println("[" + new java.util.Date() + "]" + "Could not load class reference cache (\""
+                    + cacheFile.getAbsolutePath() + "\"): " + e.getLocalizedMessage() + ". It will be regenerated.");
+            }
+        }
+
+        ClassReferenceGraph graph = new ClassReferenceGraph();
+        graph.addAll(classNamePathMap);
+        try{
+            graph.writeCache(cacheFile);
+        }catch(IOException e){
+            System.out.println("[" + new java.util.Date() + "]" + "Could not store class reference cache (\""
+                + cacheFile.getAbsolutePath() + "\"): " + e.getLocalizedMessage());
+        }
+        return graph;
     }
 }
@@ -0,0 +1,207 @@
+package edu.ucla.cs.jshrinklib.reachability;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Reads a file written by CompactCacheWriter. The file is memory-mapped and decoded section by section; the sections
+ * must be read in the order they were written.
+ */
+/*package*/ class CompactCacheReader {
+
+	private final ByteBuffer buffer;
+	private final String[] strings;
+	private final MethodData[] methods;
+	private final FieldData[] fields;
+
+	private CompactCacheReader(ByteBuffer buffer, int expectedVersion) throws IOException {
+		this.buffer = buffer;
+
+		if(buffer.remaining() < 8 || buffer.getInt() != CompactCacheWriter.MAGIC){
+			throw new IOException("Not a JShrink cache file");
+		}
+		int version = buffer.getInt();
+		if(version != expectedVersion){
+			throw new IOException("Unsupported cache version " + version + " (expected " + expectedVersion + ")");
+		}
+		int tableFormat = buffer.remaining() < 4 ? -1 : buffer.getInt();
+		if(tableFormat != CompactCacheWriter.TABLE_FORMAT){
+			throw new IOException("Unsupported cache table format " + tableFormat
+				+ " (expected " + CompactCacheWriter.TABLE_FORMAT + ")");
+		}
+
+		this.strings = new String[readVarInt()];
+		byte[] stringBytes = new byte[64];
+		for(int i=0; i<strings.length; i++){
+			int length = readVarInt();
+			if(stringBytes.length < length){
+				stringBytes = new byte[Math.max(length, stringBytes.length * 2)];
+			}
+			buffer.get(stringBytes, 0, length);
+			strings[i] = new String(stringBytes, 0, length, StandardCharsets.UTF_8);
+		}
+
+		this.methods = new MethodData[readVarInt()];
+		for(int i=0; i<methods.length; i++){
+			String name = readString();
+			String className = readString();
+			String returnType = readNullableString();
+			String[] args = new String[readVarInt()];
+			for(int j=0; j<args.length; j++){
+				args[j] = readString();
+			}
+			String annotation = readNullableString();
+			int flags = readVarInt();
+			MethodData method = new MethodData(name, className, returnType, args, (flags & 1) != 0, (flags & 2) != 0);
+			method.setAnnotation(annotation);
+			if((flags & 4) != 0){
+				method.setAsJUnit3Test();
+			}
+			methods[i] = method;
+		}
+
+		this.fields = new FieldData[readVarInt()];
+		for(int i=0; i<fields.length; i++){
+			String name = readString();
+			String className = readString();
+			String type = readNullableString();
+			fields[i] = new FieldData(name, className, readVarInt() != 0, type);
+		}
+	}
+
+	/**
+	 * Opens a cache file.
+	 *
+	 * @param file The cache file
+	 * @param expectedVersion The version the sections are expected to be written in
+	 * @throws IOException If the file cannot be read, is not a cache file, or is of another version
+	 */
+	/*package*/ static CompactCacheReader open(File file, int expectedVersion) throws IOException {
+		try(RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+		    FileChannel channel = randomAccessFile.getChannel()){
+			// the mapping remains valid once the channel is closed
+			ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			return new CompactCacheReader(buffer, expectedVersion);
+		} catch (BufferUnderflowException | IndexOutOfBoundsException e){
+			throw new IOException("Truncated or corrupt cache file \"" + file.getAbsolutePath() + "\"", e);
+		}
+	}
+
+	/*package*/ int readInt() throws IOException {
+		return readVarInt();
+	}
+
+	/*package*/ String readString() throws IOException {
+		return strings[readId(strings.length)];
+	}
+
+	/*package*/ void readStringSet(Collection<String> into) throws IOException {
+		for(int id : readIds(strings.length)){
+			into.add(strings[id]);
+		}
+	}
+
+	/*package*/ void readMethodSet(Collection<MethodData> into) throws IOException {
+		for(int id : readIds(methods.length)){
+			into.add(methods[id]);
+		}
+	}
+
+	/*package*/ void readFieldSet(Collection<FieldData> into) throws IOException {
+		for(int id : readIds(fields.length)){
+			into.add(fields[id]);
+		}
+	}
+
+	/*package*/ void readMethodMap(Map<MethodData, Set<MethodData>> into) throws IOException {
+		int size = readVarInt();
+		int key = 0;
+		for(int i=0; i<size; i++){
+			key += readVarInt();
+			checkId(key, methods.length);
+			Set<MethodData> values = new HashSet<MethodData>();
+			readMethodSet(values);
+			into.put(methods[key], values);
+		}
+	}
+
+	/*package*/ void readFieldReferenceMap(Map<MethodData, Set<FieldData>> into) throws IOException {
+		int size = readVarInt();
+		int key = 0;
+		for(int i=0; i<size; i++){
+			key += readVarInt();
+			checkId(key, methods.length);
+			Set<FieldData> values = new HashSet<FieldData>();
+			readFieldSet(values);
+			into.put(methods[key], values);
+		}
+	}
+
+	/*package*/ void readStringMap(Map<String, Set<String>> into) throws IOException {
+		int size = readVarInt();
+		int key = 0;
+		for(int i=0; i<size; i++){
+			key += readVarInt();
+			checkId(key, strings.length);
+			Set<String> values = new HashSet<String>();
+			readStringSet(values);
+			into.put(strings[key], values);
+		}
+	}
+
+	// see "CompactCacheWriter.nullableStringId"
+	private String readNullableString() throws IOException {
+		int id = readVarInt();
+		if(id == 0){
+			return null;
+		}
+		checkId(id - 1, strings.length);
+		return strings[id - 1];
+	}
+
+	private int readId(int tableSize) throws IOException {
+		int id = readVarInt();
+		checkId(id, tableSize);
+		return id;
+	}
+
+	private int[] readIds(int tableSize) throws IOException {
+		int[] ids = new int[readVarInt()];
+		int previous = 0;
+		for(int i=0; i<ids.length; i++){
+			previous += readVarInt();
+			checkId(previous, tableSize);
+			ids[i] = previous;
+		}
+		return ids;
+	}
+
+	private static void checkId(int id, int tableSize) throws IOException {
+		if(id < 0 || id >= tableSize){
+			throw new IOException("Corrupt cache file (ID " + id + " out of range)");
+		}
+	}
+
+	// unsigned LEB128, see CompactCacheWriter
+	private int readVarInt() throws IOException {
+		try {
+			int value = 0;
+			for(int shift = 0; shift < 35; shift += 7){
+				byte b = buffer.get();
+				value |= (b & 0x7F) << shift;
+				if((b & 0x80) == 0){
+					return value;
+				}
+			}
+		} catch (BufferUnderflowException e){
+			throw new IOException("Truncated cache file", e);
+		}
+		throw new IOException("Corrupt cache file (malformed integer)");
+	}
+}
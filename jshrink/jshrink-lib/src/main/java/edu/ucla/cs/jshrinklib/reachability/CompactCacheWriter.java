@@ -0,0 +1,275 @@
+package edu.ucla.cs.jshrinklib.reachability;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+
+/**
+ * Writes analysis results (class names, MethodData, FieldData and the maps between them) in JShrink's compact cache
+ * format. Every string is stored once in a string table, every MethodData/FieldData once in a method/field table, and
+ * the sections that follow refer to them by integer ID. Sets and adjacency lists are stored as sorted, delta-encoded,
+ * variable-length integers. Use CompactCacheReader to read the sections back, in the same order they were written.
+ *
+ * MethodData and FieldData objects are identified by reference (not "equals"), so objects shared between sections
+ * (e.g., a method in both the "lib methods" set and the "used lib methods" map) are shared again once read back.
+ */
+/*package*/ class CompactCacheWriter {
+
+	/*package*/ static final int MAGIC = 0x4A534B43; // "JSKC"
+
+	// the version of the encoding of the string, method and field tables, checked by CompactCacheReader
+	/*package*/ static final int TABLE_FORMAT = 2;
+
+	private final int version;
+	private final Map<String, Integer> stringIds = new HashMap<String, Integer>();
+	private final List<String> strings = new ArrayList<String>();
+	private final Map<MethodData, Integer> methodIds = new IdentityHashMap<MethodData, Integer>();
+	private final List<MethodData> methods = new ArrayList<MethodData>();
+	private final Map<FieldData, Integer> fieldIds = new IdentityHashMap<FieldData, Integer>();
+	private final List<FieldData> fields = new ArrayList<FieldData>();
+	private final ByteSink body = new ByteSink();
+
+	/**
+	 * @param version The version of the format of the sections written, checked by CompactCacheReader
+	 */
+	/*package*/ CompactCacheWriter(int version){
+		this.version = version;
+	}
+
+	/*package*/ void writeInt(int value){
+		body.writeVarInt(value);
+	}
+
+	/*package*/ void writeString(String string){
+		body.writeVarInt(stringId(string));
+	}
+
+	/*package*/ void writeStringSet(Collection<String> set){
+		writeIds(toIds(set, this::stringId));
+	}
+
+	/*package*/ void writeMethodSet(Collection<MethodData> set){
+		writeIds(toIds(set, this::methodId));
+	}
+
+	/*package*/ void writeFieldSet(Collection<FieldData> set){
+		writeIds(toIds(set, this::fieldId));
+	}
+
+	/*package*/ void writeMethodMap(Map<MethodData, Set<MethodData>> map){
+		writeMap(map, this::methodId, this::methodId);
+	}
+
+	/*package*/ void writeFieldReferenceMap(Map<MethodData, Set<FieldData>> map){
+		writeMap(map, this::methodId, this::fieldId);
+	}
+
+	/*package*/ void writeStringMap(Map<String, Set<String>> map){
+		writeMap(map, this::stringId, this::stringId);
+	}
+
+	/**
+	 * Writes the tables and all the sections written so far to the given file. The file is first written to a
+	 * temporary file in the same directory and then moved in place, so readers never see a partially written cache.
+	 */
+	/*package*/ void writeTo(File file) throws IOException {
+		ByteSink header = new ByteSink();
+		header.writeInt(MAGIC);
+		header.writeInt(this.version);
+		header.writeInt(TABLE_FORMAT);
+
+		/*
+		The method and field tables are built while the sections are written, and refer to the string table, so the
+		string table must be the last thing that is completed. Serializing the method and field tables does not add
+		any new strings as they were all added when the methods/fields were first given an ID.
+		 */
+		ByteSink tables = new ByteSink();
+		tables.writeVarInt(methods.size());
+		for(MethodData method : methods){
+			tables.writeVarInt(stringIds.get(method.getName()));
+			tables.writeVarInt(stringIds.get(method.getClassName()));
+			tables.writeVarInt(nullableStringId(method.getReturnType()));
+			tables.writeVarInt(method.getArgs().length);
+			for(String arg : method.getArgs()){
+				tables.writeVarInt(stringIds.get(arg));
+			}
+			tables.writeVarInt(nullableStringId(method.getAnnotation()));
+			tables.writeVarInt((method.isPublic() ? 1 : 0) | (method.isStatic() ? 2 : 0)
+				| (method.isJUnit3Test() ? 4 : 0));
+		}
+		tables.writeVarInt(fields.size());
+		for(FieldData field : fields){
+			tables.writeVarInt(stringIds.get(field.getName()));
+			tables.writeVarInt(stringIds.get(field.getClassName()));
+			tables.writeVarInt(nullableStringId(field.getType()));
+			tables.writeVarInt(field.isStatic() ? 1 : 0);
+		}
+
+		header.writeVarInt(strings.size());
+		for(String string : strings){
+			byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+			header.writeVarInt(bytes.length);
+			header.write(bytes, 0, bytes.length);
+		}
+
+		File parent = file.getAbsoluteFile().getParentFile();
+		if(!parent.exists()){
+			parent.mkdirs();
+		}
+		File temp = File.createTempFile(file.getName(), ".tmp", parent);
+		try(OutputStream out = new BufferedOutputStream(new FileOutputStream(temp))){
+			header.writeTo(out);
+			tables.writeTo(out);
+			body.writeTo(out);
+		}
+		try {
+			Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e){
+			temp.delete();
+			throw e;
+		}
+	}
+
+	private int stringId(String string){
+		Integer id = stringIds.get(string);
+		if(id == null){
+			id = strings.size();
+			stringIds.put(string, id);
+			strings.add(string);
+		}
+		return id;
+	}
+
+	/*
+	The ID of a string which may be null (e.g., the annotation of a method, or an unresolved type), shifted by one so that
+	0 stands for null.
+	 */
+	private int nullableStringId(String string){
+		return string == null ? 0 : stringId(string) + 1;
+	}
+
+	private int methodId(MethodData method){
+		Integer id = methodIds.get(method);
+		if(id == null){
+			stringId(method.getName());
+			stringId(method.getClassName());
+			nullableStringId(method.getReturnType());
+			for(String arg : method.getArgs()){
+				stringId(arg);
+			}
+			nullableStringId(method.getAnnotation());
+			id = methods.size();
+			methodIds.put(method, id);
+			methods.add(method);
+		}
+		return id;
+	}
+
+	private int fieldId(FieldData field){
+		Integer id = fieldIds.get(field);
+		if(id == null){
+			stringId(field.getName());
+			stringId(field.getClassName());
+			nullableStringId(field.getType());
+			id = fields.size();
+			fieldIds.put(field, id);
+			fields.add(field);
+		}
+		return id;
+	}
+
+	private interface IdFunction<T> {
+		int idOf(T t);
+	}
+
+	private static <T> int[] toIds(Collection<T> collection, IdFunction<T> ids){
+		int[] toReturn = new int[collection.size()];
+		int i = 0;
+		for(T t : collection){
+			toReturn[i++] = ids.idOf(t);
+		}
+		Arrays.sort(toReturn);
+		return toReturn;
+	}
+
+	private void writeIds(int[] sortedIds){
+		body.writeVarInt(sortedIds.length);
+		int previous = 0;
+		for(int id : sortedIds){
+			body.writeVarInt(id - previous);
+			previous = id;
+		}
+	}
+
+	private <K, V> void writeMap(Map<K, ? extends Collection<V>> map, IdFunction<K> keyIds, IdFunction<V> valueIds){
+		int[] keys = new int[map.size()];
+		int[][] values = new int[map.size()][];
+		int i = 0;
+		for(Map.Entry<K, ? extends Collection<V>> entry : map.entrySet()){
+			keys[i] = keyIds.idOf(entry.getKey());
+			values[i] = toIds(entry.getValue(), valueIds);
+			i++;
+		}
+
+		// sort the entries by key ID so the keys can be delta-encoded too
+		Integer[] order = new Integer[keys.length];
+		for(int j=0; j<order.length; j++){
+			order[j] = j;
+		}
+		Arrays.sort(order, (a, b) -> Integer.compare(keys[a], keys[b]));
+
+		body.writeVarInt(keys.length);
+		int previous = 0;
+		for(int index : order){
+			body.writeVarInt(keys[index] - previous);
+			previous = keys[index];
+			writeIds(values[index]);
+		}
+	}
+
+	/*
+	A minimal growable byte buffer. Unlike ByteArrayOutputStream it is not synchronized, and it writes
+	variable-length integers directly.
+	 */
+	private static class ByteSink {
+		private byte[] bytes = new byte[4096];
+		private int size = 0;
+
+		private void ensureCapacity(int extra){
+			if(size + extra > bytes.length){
+				bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + extra));
+			}
+		}
+
+		private void write(byte[] b, int offset, int length){
+			ensureCapacity(length);
+			System.arraycopy(b, offset, bytes, size, length);
+			size += length;
+		}
+
+		private void writeInt(int value){
+			ensureCapacity(4);
+			bytes[size++] = (byte) (value >>> 24);
+			bytes[size++] = (byte) (value >>> 16);
+			bytes[size++] = (byte) (value >>> 8);
+			bytes[size++] = (byte) value;
+		}
+
+		// unsigned LEB128
+		private void writeVarInt(int value){
+			ensureCapacity(5);
+			while((value & ~0x7F) != 0){
+				bytes[size++] = (byte) ((value & 0x7F) | 0x80);
+				value >>>= 7;
+			}
+			bytes[size++] = (byte) value;
+		}
+
+		private void writeTo(OutputStream out) throws IOException {
+			out.write(bytes, 0, size);
+		}
+	}
+}
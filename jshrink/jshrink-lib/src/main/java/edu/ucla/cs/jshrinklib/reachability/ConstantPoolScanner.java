@@ -1,6 +1,9 @@
 package edu.ucla.cs.jshrinklib.reachability;
 
+import org.objectweb.asm.ClassReader;
+
 import java.io.*;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.Set;
@@ -13,103 +16,176 @@ public class ConstantPoolScanner {
             return (this.ref_id+":"+this.type+":"+this.refs+":"+this.comment).replaceAll("/",".");
         }
     }
-    private static ArrayList<ConstantPoolReference> javapRunner(File clazz) throws IOException, InterruptedException {
-        ArrayList<ConstantPoolReference> outputStream = new ArrayList<ConstantPoolReference>();
 
-        String[] cmd;
-        ProcessBuilder processBuilder;
-        Process process;
-        InputStream stdout;
-        InputStreamReader isr;
-        BufferedReader br;
-        String line;
-        int exitValue;
-        cmd = new String[]{"javap", "-v", clazz.getAbsolutePath()};
-        processBuilder = new ProcessBuilder(cmd);
-        processBuilder.redirectErrorStream(true);
-        process = processBuilder.start();
-        stdout = process.getInputStream();
-        isr = new InputStreamReader(stdout);
-        br = new BufferedReader(isr);
+    // Constant pool tags, see the JVM specification, section 4.4
+    private static final int UTF8 = 1;
+    private static final int INTEGER = 3;
+    private static final int FLOAT = 4;
+    private static final int LONG = 5;
+    private static final int DOUBLE = 6;
+    private static final int CLASS = 7;
+    private static final int STRING = 8;
+    private static final int FIELDREF = 9;
+    private static final int METHODREF = 10;
+    private static final int INTERFACE_METHODREF = 11;
+    private static final int NAME_AND_TYPE = 12;
+    private static final int METHOD_HANDLE = 15;
+    private static final int METHOD_TYPE = 16;
+    private static final int DYNAMIC = 17;
+    private static final int INVOKE_DYNAMIC = 18;
+    private static final int MODULE = 19;
+    private static final int PACKAGE = 20;
 
-        while((line=br.readLine()) != null && !line.equals("Constant pool:")) {}
-        while((line=br.readLine()) != null && !line.equals("{")) {
-            try{
-                outputStream.add(javapParse(line));
-            }
-            catch(Exception e){
-                System.out.println("Could not parse line "+line+ " for class "+clazz.getAbsolutePath());
-                e.printStackTrace();
-            }
-        }
+    private static ClassReader readClassFile(File clazz) throws IOException {
+        return new ClassReader(Files.readAllBytes(clazz.toPath()));
+    }
 
-        br.close();
+    private static int tag(ClassReader cr, int index){
+        // "getItem" returns the offset of the entry's content, which directly follows its tag
+        return cr.b[cr.getItem(index) - 1];
+    }
 
-        exitValue = process.waitFor();
+    private static String utf8(ClassReader cr, int index) throws IOException {
+        // a CONSTANT_Utf8 entry is a length followed by modified UTF-8, exactly what DataInput.readUTF reads
+        int offset = cr.getItem(index);
+        return new DataInputStream(new ByteArrayInputStream(cr.b, offset, cr.b.length - offset)).readUTF();
+    }
 
-        if(exitValue != 0) {
-            throw new IOException("JAVAP cannot get type dependency information! The following was output:"
-                    + System.lineSeparator() + isr.read());
+    private static String classOrNameAndType(ClassReader cr, int index) throws IOException {
+        int offset = cr.getItem(index);
+        if(tag(cr, index) == NAME_AND_TYPE){
+            return utf8(cr, cr.readUnsignedShort(offset)) + ":" + utf8(cr, cr.readUnsignedShort(offset + 2));
         }
-        return outputStream;
+        return utf8(cr, cr.readUnsignedShort(offset));
     }
-    private static ConstantPoolReference javapParse(String line){
+
+    /*
+    Reads one constant pool entry into the same form the "javap -v" output used to be parsed into: the type name and
+    the referenced entries as printed by javap, and javap's comment resolving them (without quotes).
+     */
+    private static ConstantPoolReference readEntry(ClassReader cr, int index) throws IOException {
         ConstantPoolReference cpr = new ConstantPoolReference();
-        int type_start = line.indexOf("= ") +2;
-        cpr.ref_id = line.substring(0,type_start -3).trim();
-        cpr.type = line.substring(type_start, line.length());
-        int type_end = cpr.type.indexOf(" ");
-        if(type_end <= 0){
-            return cpr;
+        cpr.ref_id = "#" + index;
+        int offset = cr.getItem(index);
+        cpr.comment = "";
+        switch(tag(cr, index)){
+            case UTF8:
+                cpr.type = "Utf8";
+                cpr.refs = utf8(cr, index);
+                break;
+            case INTEGER:
+                cpr.type = "Integer";
+                cpr.refs = Integer.toString(cr.readInt(offset));
+                break;
+            case FLOAT:
+                cpr.type = "Float";
+                cpr.refs = Float.intBitsToFloat(cr.readInt(offset)) + "f";
+                break;
+            case LONG:
+                cpr.type = "Long";
+                cpr.refs = cr.readLong(offset) + "l";
+                break;
+            case DOUBLE:
+                cpr.type = "Double";
+                cpr.refs = Double.longBitsToDouble(cr.readLong(offset)) + "d";
+                break;
+            case CLASS:
+            case STRING:
+            case METHOD_TYPE:
+            case MODULE:
+            case PACKAGE:
+                cpr.type = typeName(tag(cr, index));
+                cpr.refs = "#" + cr.readUnsignedShort(offset);
+                cpr.comment = utf8(cr, cr.readUnsignedShort(offset));
+                break;
+            case FIELDREF:
+            case METHODREF:
+            case INTERFACE_METHODREF:
+                cpr.type = typeName(tag(cr, index));
+                cpr.refs = "#" + cr.readUnsignedShort(offset) + ".#" + cr.readUnsignedShort(offset + 2);
+                cpr.comment = classOrNameAndType(cr, cr.readUnsignedShort(offset)) + "."
+                        + classOrNameAndType(cr, cr.readUnsignedShort(offset + 2));
+                break;
+            case NAME_AND_TYPE:
+                cpr.type = "NameAndType";
+                cpr.refs = "#" + cr.readUnsignedShort(offset) + ":#" + cr.readUnsignedShort(offset + 2);
+                cpr.comment = classOrNameAndType(cr, index);
+                break;
+            case METHOD_HANDLE:
+                cpr.type = "MethodHandle";
+                cpr.refs = cr.readByte(offset) + ":#" + cr.readUnsignedShort(offset + 1);
+                break;
+            case DYNAMIC:
+            case INVOKE_DYNAMIC:
+                cpr.type = typeName(tag(cr, index));
+                cpr.refs = "#" + cr.readUnsignedShort(offset) + ":#" + cr.readUnsignedShort(offset + 2);
+                cpr.comment = "#" + cr.readUnsignedShort(offset) + ":"
+                        + classOrNameAndType(cr, cr.readUnsignedShort(offset + 2));
+                break;
+            default:
+                throw new IOException("Unknown constant pool tag " + tag(cr, index) + " at entry " + index);
         }
-        cpr.type = cpr.type.substring(0, type_end);
-
-        int comment_start = line.indexOf("//");
-        if (comment_start <= 0)
-            comment_start = line.length();
+        return cpr;
+    }
 
-        cpr.refs = line.substring(type_start+type_end, comment_start).trim();
-        if(comment_start!=line.length()) {
-            cpr.comment = line.substring(comment_start+2, line.length()).trim().replaceAll("\"","");
+    private static String typeName(int tag){
+        switch(tag){
+            case CLASS: return "Class";
+            case STRING: return "String";
+            case METHOD_TYPE: return "MethodType";
+            case MODULE: return "Module";
+            case PACKAGE: return "Package";
+            case FIELDREF: return "Fieldref";
+            case METHODREF: return "Methodref";
+            case INTERFACE_METHODREF: return "InterfaceMethodref";
+            case DYNAMIC: return "Dynamic";
+            default: return "InvokeDynamic";
         }
-        else{
-            cpr.comment = "";
-        }
-        return cpr;//(ref_id, type, refs, comment);
-
     }
-    public static ArrayList<ConstantPoolReference> getConstantPool(File classFile) throws IOException, InterruptedException{
-        //TODO: May replace with better method to obtain constant pool
-        return javapRunner(classFile);
+
+    /* This method reads the constant pool directly from the class file, in the form "javap -v" prints it
+     * */
+    public static ArrayList<ConstantPoolReference> getConstantPool(File classFile) throws IOException {
+        ClassReader cr = readClassFile(classFile);
+        ArrayList<ConstantPoolReference> constantPool = new ArrayList<ConstantPoolReference>();
+        for(int i=1; i<cr.getItemCount(); i++){
+            // the entry following a Long or a Double is unusable, and has no offset
+            if(cr.getItem(i) != 0){
+                constantPool.add(readEntry(cr, i));
+            }
+        }
+        return constantPool;
     }
-    private static Set<String> getClassReferencesFromPool(ArrayList<ConstantPoolReference> constantPool){
+
+    private static Set<String> getClassReferences(ClassReader cr) throws IOException {
         Set<String> references = new HashSet<String>();
-        for(ConstantPoolReference cpr: constantPool){
-            if(cpr.type.equals("Class")){
-                int s = 0, e=cpr.comment.length();
-                while(cpr.comment.charAt(s)=='[' && s<e){
-                    s++;
-                }
-                if(cpr.comment.charAt(s)=='L' && cpr.comment.charAt(e-1)==';') {s++; e--;}
-                String className = cpr.comment.substring(s,e);
-                if(className.length()==1 || className.startsWith("java") || className.startsWith("sun")){
-                    continue;
-                }
-                references.add(className.replaceAll("/","."));
+        for(int i=1; i<cr.getItemCount(); i++){
+            if(cr.getItem(i) == 0 || tag(cr, i) != CLASS){
+                continue;
             }
-
+            String name = utf8(cr, cr.readUnsignedShort(cr.getItem(i)));
+            int s = 0, e=name.length();
+            while(s<e && name.charAt(s)=='['){
+                s++;
+            }
+            if(name.charAt(s)=='L' && name.charAt(e-1)==';') {s++; e--;}
+            String className = name.substring(s,e);
+            if(className.length()==1 || className.startsWith("java") || className.startsWith("sun")){
+                continue;
+            }
+            references.add(className.replace('/','.'));
         }
         return references;
     }
 
-    /* This method obtains the constant pool through the javap -v command and returns all references of the class type
+    /* This method reads the constant pool of the class file and returns all references of the class type
      * */
 
-    public static Set<String> getClassReferences(String class_path) throws IOException, InterruptedException{
-        return getClassReferencesFromPool(getConstantPool(new File(class_path)));
+    public static Set<String> getClassReferences(String class_path) throws IOException {
+        return getClassReferences(new File(class_path));
     }
 
-    public static Set<String> getClassReferences(File clazz) throws IOException, InterruptedException{
-        return getClassReferencesFromPool(getConstantPool(clazz));
+    public static Set<String> getClassReferences(File clazz) throws IOException {
+        return getClassReferences(readClassFile(clazz));
     }
 }
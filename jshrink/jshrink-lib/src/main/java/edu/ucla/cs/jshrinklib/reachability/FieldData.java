@@ -1,6 +1,7 @@
 package edu.ucla.cs.jshrinklib.reachability;
 
 import java.io.Serializable;
+import java.util.Objects;
 
 public class FieldData implements Serializable {
     private String name;
@@ -9,10 +10,10 @@ public class FieldData implements Serializable {
     private String type;
 
     public FieldData(String name, String className, boolean isStatic, String type) {
-        this.name = name;
-        this.className = className;
+        this.name = SymbolTable.intern(name);
+        this.className = SymbolTable.intern(className);
         this.isStatic = isStatic;
-        this.type = type;
+        this.type = SymbolTable.intern(type);
     }
 
     public String getName(){
@@ -32,7 +33,7 @@ public class FieldData implements Serializable {
     }
 
     public void setClassName(String newClassName) {
-        this.className = newClassName;
+        this.className = SymbolTable.intern(newClassName);
     }
 
     @Override
@@ -40,7 +41,7 @@ public class FieldData implements Serializable {
         if(o instanceof FieldData){
             FieldData toCompare = (FieldData)o;
             if(this.name.equals(toCompare.name) && this.className.equals(toCompare.className)
-                    && this.type.equals(toCompare.type) && this.isStatic == toCompare.isStatic){
+                    && Objects.equals(this.type, toCompare.type) && this.isStatic == toCompare.isStatic){
                 return true;
             }
         }
@@ -52,7 +53,8 @@ public class FieldData implements Serializable {
     public int hashCode(){
         int hash = this.name.hashCode() * 11 + 17;
         hash += this.className.hashCode() * 19;
-        hash += this.type.hashCode() * 31;
+        // the type is null if it could not be resolved
+        hash += Objects.hashCode(this.type) * 31;
         hash += this.isStatic ? 7 : 13;
         return hash;
     }
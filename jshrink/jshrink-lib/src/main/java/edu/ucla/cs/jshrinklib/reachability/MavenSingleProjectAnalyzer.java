@@ -4,8 +4,19 @@ import java.io.*;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.*;
-
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+import edu.ucla.cs.jshrinklib.JShrink;
+import edu.ucla.cs.jshrinklib.backup.Checkpoint;
 import edu.ucla.cs.jshrinklib.util.ClassFileUtils;
+import edu.ucla.cs.jshrinklib.util.MavenClasspathCache;
+import edu.ucla.cs.jshrinklib.util.ProcessRunner;
+import edu.ucla.cs.jshrinklib.util.SootUtils;
 import org.apache.commons.io.FileUtils;
 
 import soot.G;
@@ -48,15 +59,18 @@ public class MavenSingleProjectAnalyzer implements IProjectAnalyser {
 	private final Set<FieldData> appFields;
 	private final Set<String> usedLibClasses;
 	private final Set<String> usedLibClassesCompileOnly;
-	private final Map<MethodData, Set<MethodData>> usedLibMethods;
-	private final Map<MethodData, Set<MethodData>> usedLibMethodsCompileOnly;
+	private final MethodGraph.Builder callGraphBuilder; // callee -> callers, over all modules
+	private MethodGraph callGraph = null; // built from callGraphBuilder when first needed
+	private BitSet nonAnnotationMethods = null; // IDs of the methods in callGraph not declared by annotations
+	private final BitSet usedLibMethods; // IDs of the library methods in the call graph
+	private final BitSet usedLibMethodsCompileOnly;
 	private final Set<FieldData> usedLibFields;
 	private final Set<FieldData> usedLibFieldsCompileOnly;
 	private final Set<String> usedAppClasses;
-	private final Map<MethodData, Set<MethodData>> usedAppMethods;
+	private final BitSet usedAppMethods;
 	private final Set<FieldData> usedAppFields;
 	private final Set<MethodData> testMethods;
-	private final Map<MethodData, Set<MethodData>> usedTestMethods;
+	private final BitSet usedTestMethods;
 	private final Set<String> testClasses;
 	private final Set<String> usedTestClasses;
 	private final Map<String,List<File>> app_class_paths;
@@ -76,6 +90,7 @@ public class MavenSingleProjectAnalyzer implements IProjectAnalyser {
 	private final boolean useCache;
 	private final StringBuilder log;
 	private final boolean ignoreLibs;
+	private int analysisThreads = 1;
 
 	public MavenSingleProjectAnalyzer(String pathToMavenProject, EntryPointProcessor entryPointProc,
 									  Optional<File> tamiFlex, Optional<File> jmtrace,
@@ -95,18 +110,19 @@ public class MavenSingleProjectAnalyzer implements IProjectAnalyser {
 		appFields = new HashSet<FieldData>();
 		usedLibClasses = new HashSet<String>();
 		usedLibClassesCompileOnly = new HashSet<String>();
-		usedLibMethods = new HashMap<MethodData, Set<MethodData>>();
-		usedLibMethodsCompileOnly = new HashMap<MethodData,Set<MethodData>>();
+		callGraphBuilder = new MethodGraph.Builder();
+		usedLibMethods = new BitSet();
+		usedLibMethodsCompileOnly = new BitSet();
 		usedLibFields = new HashSet<FieldData>();
 		usedLibFieldsCompileOnly = new HashSet<FieldData>();
 		usedAppClasses = new HashSet<String>();
-		usedAppMethods = new HashMap<MethodData, Set<MethodData>>();
+		usedAppMethods = new BitSet();
 		usedAppFields = new HashSet<FieldData>();
 		app_class_paths = new HashMap<String, List<File>>();
 		app_test_paths = new HashMap<String, List<File>>();
 		lib_class_paths = new HashMap<String, List<File>>();
 		testMethods = new HashSet<MethodData>();
-		usedTestMethods = new HashMap<MethodData, Set<MethodData>>();
+		usedTestMethods = new BitSet();
 		testClasses = new HashSet<String>();
 		usedTestClasses = new HashSet<String>();
 		classpaths = new HashMap<String, String>();
@@ -131,23 +147,30 @@ public class MavenSingleProjectAnalyzer implements IProjectAnalyser {
 		this.compileProject = compileProject;
 	}
 
+	/**
+	 * Sets how many modules may have their call graph analysis run at the same time. By default (1), modules are
+	 * analysed one after another. With more threads, each module is analysed with its own thread-scoped Soot
+	 * instance; the per-module results are still merged in module-name order. When there is only one module to
+	 * analyse, its reachability traversal is split between the threads instead.
+	 */
+	public void setAnalysisThreads(int analysisThreads) {
+		this.analysisThreads = Math.max(1, analysisThreads);
+	}
+
 	public void cleanup(){
 		//This is just used for cleaning up after testing. It just runs "mvn clean"
 		File pomFile = new File(project_path + File.separator + "pom.xml");
 		File libsDir = new File(project_path + File.separator + "libs");
 
 		try{
-			Process process = Runtime.getRuntime().exec("mvn -f " + pomFile.getAbsolutePath() + " " +
-					"clean");
-			BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
-			String maven_log = "";
-			String line;
-			while((line=reader.readLine()) != null) {
-				maven_log += line + System.lineSeparator();
-			}
-			reader.close();
-			
-			if(maven_log.contains("BUILD FAILURE")) {
+			final boolean[] buildFailure = {false};
+			ProcessRunner.Result result = new ProcessRunner("maven_clean", "mvn", "-f", pomFile.getAbsolutePath(), "clean",
+				"--batch-mode")
+				.addLineHandler(line -> buildFailure[0] |= line.contains("BUILD FAILURE"))
+				.setTimeout(JShrink.process_timeout_minutes, TimeUnit.MINUTES)
+				.run();
+
+			if(buildFailure[0] || result.isTimedOut()) {
 				System.out.println("'mvn clean' fails.");
 			}
 
@@ -157,7 +180,7 @@ public class MavenSingleProjectAnalyzer implements IProjectAnalyser {
 				//Do nothing
 			}
 
-		}catch(IOException e){
+		}catch(IOException | InterruptedException e){
 			e.printStackTrace();
 			System.exit(1);
 		}
@@ -172,20 +195,11 @@ public class MavenSingleProjectAnalyzer implements IProjectAnalyser {
 		MavenUtils.getModules(root_dir, modules);
 
 		// get all classpaths for submodules if any
-		String classpathInfo = "";
-		String classpathInfo_compile_only = "";
 		try {
 			 File pomFile = new File(root_dir + File.separator + "pom.xml");
 			 File libsDir = new File(root_dir + File.separator + "libs");
 
-			 String[] cmd;
-			 ProcessBuilder processBuilder;
-			 Process process;
-			 InputStream stdout;
-			 InputStreamReader isr;
-			 BufferedReader br;
-			 String line;
-			 int exitValue;
+			 ProcessRunner.Result result;
 			 if(this.compileProject) {
 			 	if(this.verbose){
 			 		System.out.println("[" + new java.util.Date() + "]" + "Compiling project...");
@@ -193,28 +207,19 @@ public class MavenSingleProjectAnalyzer implements IProjectAnalyser {
 				 // Ensure the project is compiled.
 				 // Prepare the command and its arguments in a String array in case there is a space or special
 				 // character in the pom file path or lib dir path.
-				 cmd = new String[]{"mvn", "-f", pomFile.getAbsolutePath(), "install",
+				 // The class files and jars may be shared with checkpoints, which Maven must not write into.
+				 Checkpoint.breakHardLinks(root_dir.toPath(), true);
+				 result = new ProcessRunner("maven_install", "mvn", "-f", pomFile.getAbsolutePath(), "install",
 					 "-Dmaven.repo.local=" + libsDir.getAbsolutePath(),
 					 "--quiet",
 					 "--batch-mode",
-					 "-DskipTests=true"};
-				 processBuilder = new ProcessBuilder(cmd);
-				 processBuilder.redirectErrorStream(true);
-				 process = processBuilder.start();
-				 stdout = process.getInputStream();
-				 isr = new InputStreamReader(stdout);
-				 br = new BufferedReader(isr);
-
-				 String output = "";
-				 while ((line = br.readLine()) != null) {
-				 	output += line + System.lineSeparator();
-				 }
-				 br.close();
-
-				 exitValue = process.waitFor();
+					 "-DskipTests=true")
+					 .setTemporaryLogFile()
+					 .setTimeout(JShrink.process_timeout_minutes, TimeUnit.MINUTES)
+					 .run();
 
-				 if (exitValue != 0) {
-					 throw new IOException("Build failed! Output the following " + System.lineSeparator() + output);
+				 if (!result.isSuccess()) {
+					 throw new IOException("Build failed! " + result.getFailureMessage());
 				 }
 				 if(this.verbose){
 					 System.out.println("[" + new java.util.Date() + "]" + "Done compiling project!");
@@ -226,89 +231,70 @@ public class MavenSingleProjectAnalyzer implements IProjectAnalyser {
 					 System.out.println("[" + new java.util.Date() + "]" + "Running project tests...");
 				 }
 
-				 cmd = new String[]{"mvn", "-f", pomFile.getAbsolutePath(), "surefire:test",
-					 "-Dmaven.repo.local=" + libsDir.getAbsolutePath(), "--batch-mode", "-fn"};
-				 processBuilder = new ProcessBuilder(cmd);
-				 processBuilder.redirectErrorStream(true);
-				 process = processBuilder.start();
-				 stdout = process.getInputStream();
-				 isr = new InputStreamReader(stdout);
-				 br = new BufferedReader(isr);
-
-				 String maven_log = "";
-				 while ((line = br.readLine()) != null) {
-					 maven_log += line + System.lineSeparator();
+				 // the output is not kept in memory but logged in a file, which is part of the test output (see
+				 // "TestOutput.getTestOutputFile"), so it is kept until JShrink exits
+				 File testLog = File.createTempFile("jshrink_maven_test_", ".log");
+				 testLog.deleteOnExit();
+				 MavenUtils.TestOutputParser testOutputParser = new MavenUtils.TestOutputParser();
+				 result = new ProcessRunner("maven_test", "mvn", "-f", pomFile.getAbsolutePath(), "surefire:test",
+					 "-Dmaven.repo.local=" + libsDir.getAbsolutePath(), "--batch-mode", "-fn")
+					 .addLineHandler(testOutputParser)
+					 .setLogFile(testLog)
+					 .setTimeout(JShrink.process_timeout_minutes, TimeUnit.MINUTES)
+					 .run();
+
+				 if (result.isTimedOut()) {
+					 throw new IOException("Running the tests failed! " + result.getFailureMessage());
 				 }
-				 br.close();
-
-				 exitValue = process.waitFor();
 
 				 // still get test output even in case of test failure
-				 this.testOutput = MavenUtils.testOutputFromString(maven_log);
+				 this.testOutput = testOutputParser.getTestOutput(testLog);
 
 				 if (this.verbose) {
 					 System.out.println("[" + new java.util.Date() + "]" + "Done running project tests!");
 				 }
 			 }
 
-			if(this.verbose){
-				System.out.println("[" + new java.util.Date() + "]" + "Getting dependency information...");
-			}
-			// first get the full classpath (compile scope + test scope) so that we will get a more complete
-			// call graph in the static analysis later
-			cmd = new String[]{"mvn", "-f", pomFile.getAbsolutePath(), "dependency:build-classpath",
-				"-Dmaven.repo.local=" + libsDir.getAbsolutePath(),  "--batch-mode"};
-			processBuilder = new ProcessBuilder(cmd);
-			processBuilder.redirectErrorStream(true);
-			process = processBuilder.start();
-			stdout = process.getInputStream();
-			isr = new InputStreamReader(stdout);
-			br = new BufferedReader(isr);
-
-			while((line=br.readLine()) != null) {
-				classpathInfo += line + System.lineSeparator();
-			}
-			br.close();
-
-			exitValue = process.waitFor();
-			
-			if(exitValue != 0) {
-				throw new IOException("Cannot get dependency information! The following was output:"
-					+ System.lineSeparator() + classpathInfo);
-			}
-
-			if(this.verbose){
-				System.out.println("[" + new java.util.Date() + "]" + "Done getting dependency information!");
-			}
-
-			if(this.verbose){
-				System.out.println("[" + new java.util.Date() + "]" + "Getting compile scope dependency information...");
-			}
-			
-			// then get the classpath of the compile scope only for the future method removal
-			cmd = new String[]{"mvn", "-f", pomFile.getAbsolutePath(), "dependency:build-classpath",
-				"-Dmaven.repo.local=" + libsDir.getAbsolutePath(), "-DincludeScope=compile", "--batch-mode"};
-			processBuilder = new ProcessBuilder(cmd);
-			processBuilder.redirectErrorStream(true);
-			process = processBuilder.start();
-			stdout = process.getInputStream();
-			isr = new InputStreamReader(stdout);
-			br = new BufferedReader(isr);
-
-			while((line = br.readLine()) != null) {
-				classpathInfo_compile_only += line + System.lineSeparator();
-			}
-			br.close();
-
-			exitValue = process.waitFor();
+			// the classpaths resolved before for the same "pom.xml" files, if any, spare running Maven again
+			MavenClasspathCache classpathCache = new MavenClasspathCache(root_dir, libsDir, this.useCache
+				? Optional.of(CallGraphAnalysisCacheWrapper.getCacheDirectory(root_dir)) : Optional.empty());
+			Optional<HashMap<String, String>> cachedClasspaths = classpathCache.get("test");
+			Optional<HashMap<String, String>> cachedClasspathsCompileOnly = classpathCache.get("compile");
+			if(cachedClasspaths.isPresent() && cachedClasspathsCompileOnly.isPresent()){
+				if(this.verbose){
+					System.out.println("[" + new java.util.Date() + "]" + "Using cached dependency information (\""
+						+ classpathCache.getKey() + "\")");
+				}
+				classpaths.putAll(cachedClasspaths.get());
+				classpaths_compile_only.putAll(cachedClasspathsCompileOnly.get());
+			} else {
+				if(this.verbose){
+					System.out.println("[" + new java.util.Date() + "]" + "Getting dependency information...");
+				}
+				// get the full classpath (compile scope + test scope) so that we will get a more complete call graph
+				// in the static analysis later, and the scope of each dependency, from which the classpath of the
+				// compile scope only is worked out for the future method removal
+				MavenUtils.ClasspathParser classpathParser = new MavenUtils.ClasspathParser();
+				result = new ProcessRunner("maven_dependency", "mvn", "-f", pomFile.getAbsolutePath(),
+					"dependency:build-classpath", "dependency:list", "-DoutputAbsoluteArtifactFilename=true",
+					"-Dmaven.repo.local=" + libsDir.getAbsolutePath(), "--batch-mode")
+					.addLineHandler(classpathParser)
+					.setTemporaryLogFile()
+					.setTimeout(JShrink.process_timeout_minutes, TimeUnit.MINUTES)
+					.run();
+
+				if(!result.isSuccess()) {
+					throw new IOException("Cannot get dependency information! " + result.getFailureMessage());
+				}
 
-			if(exitValue != 0) {
-				throw new IOException("Cannot get dependency information for compile scope! The following was output:"
-					+ System.lineSeparator() + classpathInfo_compile_only);
-			}
+				classpaths.putAll(classpathParser.getClasspaths());
+				classpaths_compile_only.putAll(classpathParser.getCompileClasspaths());
+				classpathCache.put("test", classpaths);
+				classpathCache.put("compile", classpaths_compile_only);
 
-			if(this.verbose){
-				System.out.println("[" + new java.util.Date() + "]" + "Done getting compile scope dependency information!");
+				if(this.verbose){
+					System.out.println("[" + new java.util.Date() + "]" + "Done getting dependency information!");
+				}
 			}
 
 		}catch(IOException | InterruptedException e){
@@ -318,9 +304,6 @@ public class MavenSingleProjectAnalyzer implements IProjectAnalyser {
 		}
 
 
-		classpaths.putAll(MavenUtils.getClasspaths(classpathInfo));
-		classpaths_compile_only.putAll(MavenUtils.getClasspaths(classpathInfo_compile_only));
-
 		for(String artifact_id : modules.keySet()) {
 			// Note that not all submodules are built
 			if(classpaths.containsKey(artifact_id)) {
@@ -376,21 +359,31 @@ public class MavenSingleProjectAnalyzer implements IProjectAnalyser {
 		}
 	}
 
-	private static void addToMap(Map<MethodData, Set<MethodData>> map, MethodData key, Collection<MethodData> elements){
-		if(!map.containsKey(key)){
-			map.put(key, new HashSet<MethodData>());
-		}
-		for(MethodData element : elements){
-			map.get(key).add(element);
-		}
+	/*
+	Adds the method and its callers to the call graph, marking it as used in "usedMethods". Returns the method's ID.
+	 */
+	private int addToCallGraph(BitSet usedMethods, MethodData callee, Collection<MethodData> callers){
+		int id = this.callGraphBuilder.addMethod(callee);
+		usedMethods.set(id);
+		this.callGraphBuilder.addCalls(callee, callers);
+		this.callGraph = null;
+		return id;
 	}
 
-	private static void addToMap(Map<MethodData,Set<MethodData>> map, Map<MethodData, Set<MethodData>> toAdd){
+	private void addToCallGraph(BitSet usedMethods, Map<MethodData, Set<MethodData>> toAdd){
 		for(Map.Entry<MethodData, Set<MethodData>> entry : toAdd.entrySet()){
-			addToMap(map, entry.getKey(), entry.getValue());
+			addToCallGraph(usedMethods, entry.getKey(), entry.getValue());
 		}
 	}
 
+	private MethodGraph getCallGraph(){
+		if(this.callGraph == null){
+			this.callGraph = this.callGraphBuilder.build();
+			this.nonAnnotationMethods = null;
+		}
+		return this.callGraph;
+	}
+
 	@Override
 	public void run() {
 		File root_dir = new File(project_path);
@@ -399,110 +392,21 @@ public class MavenSingleProjectAnalyzer implements IProjectAnalyser {
 		HashMap<String, File> modules = new HashMap<String, File>();
 		MavenUtils.getModules(root_dir, modules);
 
-		int count = 0;
-		long callgraphTimeSeconds = 0;
-		for(String artifact_id : modules.keySet()) {
+		List<String> modulesToAnalyse = new ArrayList<String>();
+		for(String artifact_id : new TreeSet<String>(modules.keySet())) {
 			// Note that not all submodules are built
 			if(classpaths.containsKey(artifact_id)) {
-
-				if(this.verbose){
-					System.out.println("[" + new java.util.Date() + "]" + "Running callgraph analysis for module \"" + artifact_id +"\"...");
-				}
-				
-				// increment the count of analyzed modules
-				count++;
-
-				List<File> localLibClassPaths =
-					(lib_class_paths.containsKey(artifact_id) ? lib_class_paths.get(artifact_id) : new ArrayList<File>());
-
-				List<File> localAppClassPaths =
-					(app_class_paths.containsKey(artifact_id) ? app_class_paths.get(artifact_id) : new ArrayList<File>());
-
-				List<File> localTestClassPaths =
-					(app_test_paths.containsKey(artifact_id) ? app_test_paths.get(artifact_id) : new ArrayList<File>());
-
-				Instant callgraphStart = Instant.now();
-
-				CallGraphAnalysisCacheWrapper runner =
-						new CallGraphAnalysisCacheWrapper(new File(project_path), artifact_id, localLibClassPaths,
-							localAppClassPaths, localTestClassPaths, entryPointProcessor,
-								this.useSpark, this.useCache, this.verbose);
-				runner.setup();
-				runner.run();
-
-				callgraphTimeSeconds += Duration.between(callgraphStart, Instant.now()).getSeconds();
-
-				//this.callgraphs.addAll(runner.getCallGraphs());
-				
-				String cp_compile_only = classpaths_compile_only.get(artifact_id);
-				HashSet<String> compile_lib_paths = 
-						new HashSet<String>(Arrays.asList(cp_compile_only.split(File.pathSeparator)));
-				// aggregate the analysis result of the submodule
-				for(String libClass : runner.getLibClasses()) {
-					this.libClasses.add(libClass);
-					String lib_path = runner.getLibPathOfClass(libClass);
-					if(compile_lib_paths.contains(lib_path)) {
-						this.libClassesCompileOnly.add(libClass);
-					}
-				}
-				for(MethodData libMethod : runner.getLibMethods()) {
-					this.libMethods.add(libMethod);
-					String lib_path = runner.getLibPathOfMethod(libMethod);
-					if(compile_lib_paths.contains(lib_path)) {
-						this.libMethodsCompileOnly.add(libMethod);
-					}
-				}
-				for(FieldData libField : runner.getLibFields()) {
-					this.libFields.add(libField);
-					String lib_path = runner.getLibPathOfField(libField);
-					if(compile_lib_paths.contains(lib_path)) {
-						this.libFieldsCompileOnly.add(libField);
-					}
-				}
-				for(String usedLibClass : runner.getUsedLibClasses()) {
-					this.usedLibClasses.add(usedLibClass);
-					String lib_path = runner.getLibPathOfClass(usedLibClass);
-					if(compile_lib_paths.contains(lib_path)) {
-						this.usedLibClassesCompileOnly.add(usedLibClass);
-					}
-				}
-				for(Map.Entry<MethodData,Set<MethodData>> libMethod : runner.getUsedLibMethods().entrySet()) {
-					addToMap(this.usedLibMethods, libMethod.getKey(),libMethod.getValue());
-					String lib_path = runner.getLibPathOfMethod(libMethod.getKey());
-					if(compile_lib_paths.contains(lib_path)) {
-						addToMap(this.usedLibMethodsCompileOnly, libMethod.getKey(), libMethod.getValue());
-					}
-				}
-				for(FieldData usedLibField : runner.getUsedLibFields()) {
-					this.usedLibFields.add(usedLibField);
-					String lib_path = runner.getLibPathOfField(usedLibField);
-					if(compile_lib_paths.contains(lib_path)) {
-						this.usedLibFieldsCompileOnly.add(usedLibField);
-					}
-				}
-
-				this.appClasses.addAll(runner.getAppClasses());
-				this.appMethods.addAll(runner.getAppMethods());
-				this.appFields.addAll(runner.getAppFields());
-				this.usedAppClasses.addAll(runner.getUsedAppClasses());
-				addToMap(this.usedAppMethods, runner.getUsedAppMethods());
-				this.usedAppFields.addAll(runner.getUsedAppFields());
-
-				this.testClasses.addAll(runner.getTestClasses());
-				this.testMethods.addAll(runner.getTestMethods());
-				this.usedTestClasses.addAll(runner.getUsedTestClasses());
-				addToMap(this.usedTestMethods, runner.getUsedTestMethods());
-
-				this.entryPoints.addAll(runner.getEntryPoints());
-				
-				// make sure to reset Soot after running reachability analysis
-				G.reset();
-
-				if(this.verbose){
-					System.out.println("[" + new java.util.Date() + "]" + "Done running callgraph analysis for module \"" + artifact_id +"\"!");
-				}
+				modulesToAnalyse.add(artifact_id);
 			}
 		}
+		int count = modulesToAnalyse.size();
+
+		Map<String, EntryPointProcessor> moduleEntryPoints = new HashMap<String, EntryPointProcessor>();
+		for(String module : modulesToAnalyse) {
+			moduleEntryPoints.put(module, entryPointProcessor);
+		}
+		long callgraphTimeSeconds =
+			analyseModules(modulesToAnalyse, moduleEntryPoints, "callgraph", this::aggregateModuleAnalysis);
 
 		log.append("static_analysis_time," + Long.toString(callgraphTimeSeconds) + System.lineSeparator());
 
@@ -562,50 +466,35 @@ public class MavenSingleProjectAnalyzer implements IProjectAnalyser {
 			// aggregate all used methods from each submodule (if any) into one set
 			HashMap<String, HashSet<MethodData>> new_entry_points = new HashMap<String, HashSet<MethodData>>();
 
+			// index all methods and fields once, so that each record is resolved in constant time
+			MemberIndex appIndex = new MemberIndex(appMethods, appFields);
+			MemberIndex libIndex = new MemberIndex(libMethods, libFields);
+			MemberIndex testIndex = new MemberIndex(testMethods, Collections.<FieldData>emptySet());
+
 			//aggregate all methods to be used to search caller methods
-			Set<MethodData> allMethods = new HashSet<MethodData>();
-			allMethods.addAll(testMethods);
-			allMethods.addAll(appMethods);
-			allMethods.addAll(libMethods);
+			MemberIndex allIndex = new MemberIndex();
+			allIndex.addMethods(testMethods);
+			allIndex.addMethods(appMethods);
+			allIndex.addMethods(libMethods);
 
 
 			for(String module : tamiflex.used_methods.keySet()) {
 				HashSet<MethodData> set = new HashSet<MethodData>();
 
 				//resolve all the caller methods to method data objects and add them to used_methods to be processed by the next loop
-				HashMap<String, ArrayList<MethodData>> processed_callers = new HashMap<String, ArrayList<MethodData>>();
+				HashMap<String, List<MethodData>> processed_callers = new HashMap<String, List<MethodData>>();
 
 				for (String calledFrom : tamiflex.used_methods_callers.get(module)) {
 					if(calledFrom==null) continue;
 
-					String[] calledFromSplit = calledFrom.split("\\.");
-					String calledFromClass = "";
-					for(int i=0; i<calledFromSplit.length -1 ; i++){
-						calledFromClass += calledFromSplit[i];
-						if(i != (calledFromSplit.length -2)){
-							calledFromClass += ".";
-						}
-					}
-					String calledFromMethodName = calledFromSplit[calledFromSplit.length-1];
+					int lastDot = calledFrom.lastIndexOf('.');
+					String calledFromClass = lastDot < 0 ? "" : calledFrom.substring(0, lastDot);
+					String calledFromMethodName = calledFrom.substring(lastDot + 1);
 
 					//search for caller method in all methods
-					for(MethodData md: allMethods){
-						if(calledFromClass.equals(md.getClassName()) && calledFromMethodName.equals(md.getName())){
-							ArrayList methodarr;
-							if(processed_callers.containsKey(calledFrom)){
-								//if exists, get the resolved methods array
-								methodarr = processed_callers.get(calledFrom);
-							}
-							else{
-								//create new array
-								methodarr = new ArrayList<MethodData>();
-							}
-							methodarr.add(md);
-							processed_callers.put(calledFrom, methodarr);
-
-							//insert into used_methods array to be processed by the next loop
-							//tamiflex.used_methods.get(module).put( md.getClassName()+": "+md.getSubSignature(),new HashSet<String>());
-						}
+					List<MethodData> methodarr = allIndex.getMethodsByName(calledFromClass, calledFromMethodName);
+					if(!methodarr.isEmpty()){
+						processed_callers.put(calledFrom, methodarr);
 					}
 				}
 
@@ -619,80 +508,54 @@ public class MavenSingleProjectAnalyzer implements IProjectAnalyser {
 					for(String calledFrom : entry.getValue()){
 						//TEMP FIX: add all entry from the resolved methods, might need to be changed later
 						if(processed_callers.containsKey(calledFrom)){
-							processed_callers.get(calledFrom).forEach((caller_md)->calledFromMethodData.add(caller_md));
+							calledFromMethodData.addAll(processed_callers.get(calledFrom));
 						}
 					}
-					
-					boolean foundInApp = false;
-					for(MethodData md : appMethods) {
-						String class_name2 = md.getClassName();
-						// The signature generated below only contains return type, method name, 
-						// and arguments. There are no access modifiers.
-						String method_signature2 = md.getSubSignature(); 
-						if(class_name1.equals(class_name2) && method_signature1.equals(method_signature2)) {
-							// this is an application method
-							if(!usedAppMethods.containsKey(md)) {
-								// this method is already identified as a used method by static analysis
-								set.add(md);
-								usedAppMethods.put(md, new HashSet<MethodData>());
-								usedAppClasses.add(md.getClassName());
-							}
-
-							usedAppMethods.get(md).addAll(calledFromMethodData);
 
-							foundInApp = true;
-							break;
+					// The subsignatures in the index only contain return type, method name, and arguments. There are
+					// no access modifiers.
+					Optional<MethodData> appMethod = appIndex.getMethod(class_name1, method_signature1);
+					Optional<MethodData> libMethod = appMethod.isPresent() ? Optional.<MethodData>empty()
+						: libIndex.getMethod(class_name1, method_signature1);
+					Optional<MethodData> testMethod = appMethod.isPresent() || libMethod.isPresent()
+						? Optional.<MethodData>empty() : testIndex.getMethod(class_name1, method_signature1);
+
+					if(appMethod.isPresent()) {
+						// this is an application method
+						MethodData md = appMethod.get();
+						if(!usedAppMethods.get(SymbolTable.getMethodId(md))) {
+							// this method is already identified as a used method by static analysis
+							set.add(md);
+							usedAppClasses.add(md.getClassName());
 						}
-					}
-
-					
-					if(!foundInApp) {
-						for(MethodData md : libMethods) {
-							String class_name2 = md.getClassName();
-							// The signature generated below only contains return type, method name, 
-							// and arguments. There are no access modifiers.
-							String method_signature2 = md.getSubSignature(); 
-							if(class_name1.equals(class_name2) && method_signature1.equals(method_signature2)) {
-								// this is a library method
-								if(!usedLibMethods.containsKey(md)) {
-									// this method is already identified as a used method by static analysis
-									set.add(md);
-									usedLibMethods.put(md, new HashSet<MethodData>());
-									usedLibClasses.add(md.getClassName());
-									
-									// also need to update usedLibMethodsCompileOnly and usedLibClassesCompile only
-									if(libMethodsCompileOnly.contains(md)) {
-										usedLibMethodsCompileOnly.put(md, new HashSet<MethodData>());
-										usedLibClasses.add(md.getClassName());
-									}
-								}
-
-								usedLibMethods.get(md).addAll(calledFromMethodData);
-								if(usedLibMethodsCompileOnly.containsKey(md)){
-									usedLibMethodsCompileOnly.get(md).addAll(calledFromMethodData);
-								}
-
-								foundInApp = true;
-								break;
 
+						addToCallGraph(usedAppMethods, md, calledFromMethodData);
+					} else if(libMethod.isPresent()) {
+						// this is a library method
+						MethodData md = libMethod.get();
+						int id = SymbolTable.getMethodId(md);
+						if(!usedLibMethods.get(id)) {
+							// this method is already identified as a used method by static analysis
+							set.add(md);
+							usedLibClasses.add(md.getClassName());
+
+							// also need to update usedLibMethodsCompileOnly and usedLibClassesCompile only
+							if(libMethodsCompileOnly.contains(md)) {
+								usedLibMethodsCompileOnly.set(id);
+								usedLibClasses.add(md.getClassName());
 							}
 						}
-					}
 
-					if(!foundInApp){
-						for(MethodData md: testMethods){
-							if(class_name1.equals(md.getClassName()) && method_signature1.equals(md.getSubSignature())){
-								if(!usedTestMethods.containsKey(md)){
-									set.add(md);
-									usedTestMethods.put(md, new HashSet<MethodData>());
-									usedTestClasses.add(md.getClassName());
-								}
-
-								usedTestMethods.get(md).addAll(calledFromMethodData);
-								foundInApp = true;
-								break;
-							}
+						// the callers are shared by all the used method sets
+						addToCallGraph(usedLibMethods, md, calledFromMethodData);
+					} else if(testMethod.isPresent()) {
+						MethodData md = testMethod.get();
+						if(!usedTestMethods.get(SymbolTable.getMethodId(md))){
+							set.add(md);
+							usedTestClasses.add(md.getClassName());
 						}
+
+						addToCallGraph(usedTestMethods, md, calledFromMethodData);
 					}
 					
 					new_entry_points.put(module, set);
@@ -715,25 +578,19 @@ public class MavenSingleProjectAnalyzer implements IProjectAnalyser {
 					// check the application fields first
 					if(appClasses.contains(ownerClassName)) {
 						// this accessed field is from application classes
-						for(FieldData field : appFields) {
-							if(field.getName().equals(fieldName) && field.getClassName().equals(ownerClassName)
-									&& field.getType().equals(fieldType)) {
-								usedAppFields.add(field);
-								usedAppClasses.add(ownerClassName);
-							}
+						for(FieldData field : appIndex.getFields(ownerClassName, fieldName, fieldType)) {
+							usedAppFields.add(field);
+							usedAppClasses.add(ownerClassName);
 						}
 					} else if (libClasses.contains(ownerClassName)) {
 						// this accessed field is from external libraries
-						for(FieldData field : libFields) {
-							if(field.getName().equals(fieldName) && field.getClassName().equals(ownerClassName)
-									&& field.getType().equals(fieldType)) {
-								usedLibFields.add(field);
-								usedLibClasses.add(ownerClassName);
-
-								if(libFieldsCompileOnly.contains(field)) {
-									usedLibFieldsCompileOnly.add(field);
-									usedLibClassesCompileOnly.add(ownerClassName);
-								}
+						for(FieldData field : libIndex.getFields(ownerClassName, fieldName, fieldType)) {
+							usedLibFields.add(field);
+							usedLibClasses.add(ownerClassName);
+
+							if(libFieldsCompileOnly.contains(field)) {
+								usedLibFieldsCompileOnly.add(field);
+								usedLibClassesCompileOnly.add(ownerClassName);
 							}
 						}
 					}
@@ -745,85 +602,216 @@ public class MavenSingleProjectAnalyzer implements IProjectAnalyser {
 
 			log.append("dynamic_analysis_time," + Long.toString(dynamicTimeTotal) + System.lineSeparator());
 
-			long callGraphDynamicTime = 0;
 			// set those methods that are invoked via reflection as entry points and redo the
 			// static analysis
-			for(String module : new_entry_points.keySet()) {
+			List<String> modulesToReanalyse = new ArrayList<String>(new TreeSet<String>(new_entry_points.keySet()));
+			Map<String, EntryPointProcessor> customEntryPointProcessors = new HashMap<String, EntryPointProcessor>();
+			for(String module : modulesToReanalyse) {
+				customEntryPointProcessors.put(module,
+					new EntryPointProcessor(false, false, false, new_entry_points.get(module)));
+			}
+			long callGraphDynamicTime = analyseModules(modulesToReanalyse, customEntryPointProcessors,
+				"Tamiflex callgraph", this::aggregateDynamicModuleAnalysis);
+			log.append("dynamic_callgraph_extension_time," + Long.toString(callGraphDynamicTime) + System.lineSeparator());
+		}
+
+
+		
+		if(count > 1) {
+			adjustClassesAndMethodsAndFieldsFromSubmodules();
+		}
+	}
+	
+	/*
+	Runs the call graph analysis of each module with the given entry points and hands each module's result to the
+	aggregator, always in the order of "modules". Returns the (wall clock) time spent on the analysis in seconds.
+	 */
+	private long analyseModules(List<String> modules, Map<String, EntryPointProcessor> entryPoints, String analysisName,
+	                            BiConsumer<String, CallGraphAnalysisCacheWrapper> aggregator) {
+		if(this.analysisThreads <= 1 || modules.size() <= 1) {
+			long callgraphTimeSeconds = 0;
+			for(String module : modules) {
 				if(this.verbose){
-					System.out.println("[" + new java.util.Date() + "]" + "Running Tamiflex callgraph analysis for module \"" + module +"\"...");
-				}
-				HashSet<MethodData> entry_methods = new_entry_points.get(module);
-				
-				List<File> localLibClassPaths =
-						(lib_class_paths.containsKey(module) ? lib_class_paths.get(module) : new ArrayList<File>());
-
-				List<File> localAppClassPaths =
-						(app_class_paths.containsKey(module) ? app_class_paths.get(module) : new ArrayList<File>());
-
-				List<File> localTestClassPaths =
-						(app_test_paths.containsKey(module) ? app_test_paths.get(module) : new ArrayList<File>());
-
-				EntryPointProcessor customEntryPointProcessor =
-					new EntryPointProcessor(false, false, false,entry_methods);
-
-				Instant callgraphTime = Instant.now();
-				CallGraphAnalysisCacheWrapper runner =
-						new CallGraphAnalysisCacheWrapper(new File(project_path), module, localLibClassPaths,
-							localAppClassPaths, localTestClassPaths, customEntryPointProcessor,
-								useSpark, this.useCache, this.verbose);
-				runner.setup();
-				runner.run();
-
-				callGraphDynamicTime += Duration.between(callgraphTime, Instant.now()).getSeconds();
-
-				//this.callgraphs.addAll(runner.getCallGraphs());
-				
-				// aggregate the analysis result of the submodule
-				for(String class_name : runner.getUsedLibClasses()) {
-					this.usedLibClasses.add(class_name);
-					if(this.libClassesCompileOnly.contains(class_name)) {
-						this.usedLibClassesCompileOnly.add(class_name);
-					}
+					System.out.println("[" + new java.util.Date() + "]" + "Running " + analysisName + " analysis for module \"" + module +"\"...");
 				}
-				for(Map.Entry<MethodData, Set<MethodData>> entry: runner.getUsedLibMethods().entrySet()){
-					addToMap(this.usedLibMethods, entry.getKey(), entry.getValue());
 
-					if(this.libMethodsCompileOnly.contains(entry.getKey())) {
-						addToMap(this.usedLibMethodsCompileOnly, entry.getKey(), entry.getValue());
-					}
-				}
-				for(FieldData field : runner.getUsedLibFields()) {
-					this.usedLibFields.add(field);
-					if(this.libFieldsCompileOnly.contains(field)) {
-						this.usedLibFieldsCompileOnly.add(field);
-					}
-				}
+				Instant callgraphStart = Instant.now();
+				// the modules are analysed one after another, so the threads go to each module's traversal instead
+				CallGraphAnalysisCacheWrapper runner = analyseModule(module, entryPoints.get(module), this.analysisThreads);
+				callgraphTimeSeconds += Duration.between(callgraphStart, Instant.now()).getSeconds();
 
-				this.usedAppClasses.addAll(runner.getUsedAppClasses());
-				addToMap(this.usedAppMethods, runner.getUsedAppMethods());
-				this.entryPoints.addAll(runner.getEntryPoints());
-				this.usedAppFields.addAll(runner.getUsedAppFields());
+				aggregator.accept(module, runner);
 
-				this.usedTestClasses.addAll(runner.getUsedTestClasses());
-				addToMap(this.usedTestMethods, runner.getUsedTestMethods());
-				
 				// make sure to reset Soot after running reachability analysis
 				G.reset();
 
 				if(this.verbose){
-					System.out.println("[" + new java.util.Date() + "]" + "Done running Tamiflex callgraph analysis for module \"" + module +"\"!");
+					System.out.println("[" + new java.util.Date() + "]" + "Done running " + analysisName + " analysis for module \"" + module +"\"!");
 				}
 			}
-			log.append("dynamic_callgraph_extension_time," + Long.toString(callGraphDynamicTime) + System.lineSeparator());
+			return callgraphTimeSeconds;
 		}
 
+		/*
+		Soot's state is global, so each worker gets its own thread-scoped copy. The results are only merged on this
+		thread, in module order, so the aggregated sets do not depend on which module finishes first.
+		 */
+		Instant callgraphStart = Instant.now();
+		SootUtils.useThreadScopedSoot();
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(this.analysisThreads, modules.size()));
+		try {
+			List<Future<CallGraphAnalysisCacheWrapper>> results = new ArrayList<Future<CallGraphAnalysisCacheWrapper>>();
+			for(String module : modules) {
+				results.add(executor.submit(() -> {
+					if(this.verbose){
+						System.out.println("[" + new java.util.Date() + "]" + "Running " + analysisName + " analysis for module \"" + module +"\"...");
+					}
+					try {
+						return analyseModule(module, entryPoints.get(module), 1);
+					} finally {
+						// make sure to reset this worker's Soot instance after running reachability analysis
+						G.reset();
+					}
+				}));
+			}
 
-		
-		if(count > 1) {
-			adjustClassesAndMethodsAndFieldsFromSubmodules();
+			for(int i=0; i<modules.size(); i++) {
+				aggregator.accept(modules.get(i), results.get(i).get());
+				if(this.verbose){
+					System.out.println("[" + new java.util.Date() + "]" + "Done running " + analysisName + " analysis for module \"" + modules.get(i) +"\"!");
+				}
+			}
+		} catch (InterruptedException e) {
+			e.printStackTrace();
+			System.exit(1);
+		} catch (ExecutionException e) {
+			if(e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new RuntimeException(e.getCause());
+		} finally {
+			executor.shutdownNow();
+			SootUtils.useGlobalSoot();
 		}
+
+		return Duration.between(callgraphStart, Instant.now()).getSeconds();
 	}
-	
+
+	private CallGraphAnalysisCacheWrapper analyseModule(String module, EntryPointProcessor moduleEntryPoints,
+	                                                    int traversalThreads) {
+		List<File> localLibClassPaths =
+			(lib_class_paths.containsKey(module) ? lib_class_paths.get(module) : new ArrayList<File>());
+
+		List<File> localAppClassPaths =
+			(app_class_paths.containsKey(module) ? app_class_paths.get(module) : new ArrayList<File>());
+
+		List<File> localTestClassPaths =
+			(app_test_paths.containsKey(module) ? app_test_paths.get(module) : new ArrayList<File>());
+
+		CallGraphAnalysisCacheWrapper runner =
+			new CallGraphAnalysisCacheWrapper(new File(project_path), module, localLibClassPaths,
+				localAppClassPaths, localTestClassPaths, moduleEntryPoints,
+				this.useSpark, this.useCache, this.verbose);
+		runner.setTraversalThreads(traversalThreads);
+		runner.setup();
+		runner.run();
+		return runner;
+	}
+
+	private void aggregateModuleAnalysis(String module, CallGraphAnalysisCacheWrapper runner) {
+		String cp_compile_only = classpaths_compile_only.get(module);
+		HashSet<String> compile_lib_paths = 
+				new HashSet<String>(Arrays.asList(cp_compile_only.split(File.pathSeparator)));
+		// aggregate the analysis result of the submodule
+		for(String libClass : runner.getLibClasses()) {
+			this.libClasses.add(libClass);
+			String lib_path = runner.getLibPathOfClass(libClass);
+			if(compile_lib_paths.contains(lib_path)) {
+				this.libClassesCompileOnly.add(libClass);
+			}
+		}
+		for(MethodData libMethod : runner.getLibMethods()) {
+			this.libMethods.add(libMethod);
+			String lib_path = runner.getLibPathOfMethod(libMethod);
+			if(compile_lib_paths.contains(lib_path)) {
+				this.libMethodsCompileOnly.add(libMethod);
+			}
+		}
+		for(FieldData libField : runner.getLibFields()) {
+			this.libFields.add(libField);
+			String lib_path = runner.getLibPathOfField(libField);
+			if(compile_lib_paths.contains(lib_path)) {
+				this.libFieldsCompileOnly.add(libField);
+			}
+		}
+		for(String usedLibClass : runner.getUsedLibClasses()) {
+			this.usedLibClasses.add(usedLibClass);
+			String lib_path = runner.getLibPathOfClass(usedLibClass);
+			if(compile_lib_paths.contains(lib_path)) {
+				this.usedLibClassesCompileOnly.add(usedLibClass);
+			}
+		}
+		for(Map.Entry<MethodData,Set<MethodData>> libMethod : runner.getUsedLibMethods().entrySet()) {
+			int id = addToCallGraph(this.usedLibMethods, libMethod.getKey(),libMethod.getValue());
+			String lib_path = runner.getLibPathOfMethod(libMethod.getKey());
+			if(compile_lib_paths.contains(lib_path)) {
+				this.usedLibMethodsCompileOnly.set(id);
+			}
+		}
+		for(FieldData usedLibField : runner.getUsedLibFields()) {
+			this.usedLibFields.add(usedLibField);
+			String lib_path = runner.getLibPathOfField(usedLibField);
+			if(compile_lib_paths.contains(lib_path)) {
+				this.usedLibFieldsCompileOnly.add(usedLibField);
+			}
+		}
+
+		this.appClasses.addAll(runner.getAppClasses());
+		this.appMethods.addAll(runner.getAppMethods());
+		this.appFields.addAll(runner.getAppFields());
+		this.usedAppClasses.addAll(runner.getUsedAppClasses());
+		addToCallGraph(this.usedAppMethods, runner.getUsedAppMethods());
+		this.usedAppFields.addAll(runner.getUsedAppFields());
+
+		this.testClasses.addAll(runner.getTestClasses());
+		this.testMethods.addAll(runner.getTestMethods());
+		this.usedTestClasses.addAll(runner.getUsedTestClasses());
+		addToCallGraph(this.usedTestMethods, runner.getUsedTestMethods());
+
+		this.entryPoints.addAll(runner.getEntryPoints());
+	}
+
+	private void aggregateDynamicModuleAnalysis(String module, CallGraphAnalysisCacheWrapper runner) {
+		// aggregate the analysis result of the submodule
+		for(String class_name : runner.getUsedLibClasses()) {
+			this.usedLibClasses.add(class_name);
+			if(this.libClassesCompileOnly.contains(class_name)) {
+				this.usedLibClassesCompileOnly.add(class_name);
+			}
+		}
+		for(Map.Entry<MethodData, Set<MethodData>> entry: runner.getUsedLibMethods().entrySet()){
+			int id = addToCallGraph(this.usedLibMethods, entry.getKey(), entry.getValue());
+
+			if(this.libMethodsCompileOnly.contains(entry.getKey())) {
+				this.usedLibMethodsCompileOnly.set(id);
+			}
+		}
+		for(FieldData field : runner.getUsedLibFields()) {
+			this.usedLibFields.add(field);
+			if(this.libFieldsCompileOnly.contains(field)) {
+				this.usedLibFieldsCompileOnly.add(field);
+			}
+		}
+
+		this.usedAppClasses.addAll(runner.getUsedAppClasses());
+		addToCallGraph(this.usedAppMethods, runner.getUsedAppMethods());
+		this.entryPoints.addAll(runner.getEntryPoints());
+		this.usedAppFields.addAll(runner.getUsedAppFields());
+
+		this.usedTestClasses.addAll(runner.getUsedTestClasses());
+		addToCallGraph(this.usedTestMethods, runner.getUsedTestMethods());
+	}
+
 	/**
 	 * When analyzing different submodules, the application classes in one module may
 	 * be treated as library classes in another module. We need to adjust this so that 
@@ -875,33 +863,18 @@ public class MavenSingleProjectAnalyzer implements IProjectAnalyser {
 		// just in case that those classes are not used in their own modules
 		this.usedAppClasses.addAll(used_lib_classes_copy);
 		
-		Map<MethodData, Set<MethodData>> used_lib_methods_copy
-				= new HashMap<MethodData, Set<MethodData>>();
+		BitSet app_method_ids = SymbolTable.toMethodIds(this.appMethods);
+		BitSet used_lib_methods_copy = (BitSet) this.usedLibMethods.clone();
 		// only keep used app methods from other modules
-		for(Map.Entry<MethodData,Set<MethodData>> methodData : this.usedLibMethods.entrySet()){
-			if(this.appMethods.contains(methodData.getKey())) {
-				addToMap(used_lib_methods_copy, methodData.getKey(), methodData.getValue());
-			}
-		}
+		used_lib_methods_copy.and(app_method_ids);
 		// after removing used app methods from other modules, only used methods from external libs remain
-		for(Map.Entry<MethodData, Set<MethodData>> methodData : used_lib_methods_copy.entrySet()){
-			this.usedLibMethods.remove(methodData.getKey());
-		}
+		this.usedLibMethods.andNot(used_lib_methods_copy);
 		// do the same to get used methods from external libs in the compile scope
-		Map<MethodData,Set<MethodData>> used_lib_methods_compile_only_copy = new HashMap<MethodData,Set<MethodData>>();
-		for(Map.Entry<MethodData,Set<MethodData>> entry : this.usedLibMethodsCompileOnly.entrySet()){
-			if(this.appMethods.contains(entry.getKey())){
-				addToMap(used_lib_methods_compile_only_copy, entry.getKey(), entry.getValue());
-			}
-		}
-
-		for(Map.Entry<MethodData, Set<MethodData>> entry : used_lib_methods_compile_only_copy.entrySet()){
-			this.usedLibMethodsCompileOnly.remove(entry.getKey());
-		}
+		this.usedLibMethodsCompileOnly.andNot(app_method_ids);
 
 		// also need to add the used app methods from other modules back to the set of used app methods
 		// just in case that those methods are not called in their own modules
-		addToMap(this.usedAppMethods,used_lib_methods_copy);
+		this.usedAppMethods.or(used_lib_methods_copy);
 
 		Set<FieldData> used_lib_fields_copy = new HashSet<FieldData>(this.usedLibFields);
 		// only keep used app fields from other modules
@@ -954,21 +927,26 @@ public class MavenSingleProjectAnalyzer implements IProjectAnalyser {
 		return toReturn;
 	}
 
-	private static Map<MethodData, Set<MethodData>> stripAnnotationMethods(Map<MethodData, Set<MethodData>> methodData){
-		Map<MethodData, Set<MethodData>> toReturn = new HashMap<MethodData, Set<MethodData>>();
-		for(Map.Entry<MethodData, Set<MethodData>> entry : methodData.entrySet()){
-			if(!isAnnotation(entry.getKey().getClassName())){
-				Set<MethodData> newValues = new HashSet<MethodData>();
-				for(MethodData value : entry.getValue()){
-					if(!isAnnotation(value.getClassName())){
-						newValues.add(value);
-					}
+	/*
+	Returns a read-only view of the call graph, restricted to the given methods, without the annotation methods (as
+	keys or as callers).
+	 */
+	private Map<MethodData, Set<MethodData>> stripAnnotationMethods(BitSet methodIds){
+		MethodGraph graph = getCallGraph();
+		if(this.nonAnnotationMethods == null){
+			this.nonAnnotationMethods = new BitSet();
+			Map<String, Boolean> annotationClasses = new HashMap<String, Boolean>();
+			BitSet allMethods = graph.getMethodIds();
+			for(int id = allMethods.nextSetBit(0); id >= 0; id = allMethods.nextSetBit(id + 1)){
+				String className = graph.getMethod(id).getClassName();
+				if(!annotationClasses.computeIfAbsent(className, MavenSingleProjectAnalyzer::isAnnotation)){
+					this.nonAnnotationMethods.set(id);
 				}
-				toReturn.put(entry.getKey(), newValues);
 			}
 		}
-
-		return toReturn;
+		BitSet keys = (BitSet) methodIds.clone();
+		keys.and(this.nonAnnotationMethods);
+		return graph.asMap(keys, this.nonAnnotationMethods);
 	}
 
 	private static Set<FieldData> stripAnnotationFields(Set<FieldData> fieldData){
@@ -1038,12 +1016,12 @@ public class MavenSingleProjectAnalyzer implements IProjectAnalyser {
 
 	@Override
 	public Map<MethodData, Set<MethodData>> getUsedLibMethods() {
-		return stripAnnotationMethods(Collections.unmodifiableMap(this.usedLibMethods));
+		return stripAnnotationMethods(this.usedLibMethods);
 	}
 	
 	@Override
 	public Map<MethodData, Set<MethodData>> getUsedLibMethodsCompileOnly() {
-		return stripAnnotationMethods(Collections.unmodifiableMap(this.usedLibMethodsCompileOnly));
+		return stripAnnotationMethods(this.usedLibMethodsCompileOnly);
 	}
 
 	@Override
@@ -1063,7 +1041,7 @@ public class MavenSingleProjectAnalyzer implements IProjectAnalyser {
 
 	@Override
 	public Map<MethodData, Set<MethodData>> getUsedAppMethods() {
-		return stripAnnotationMethods(Collections.unmodifiableMap(this.usedAppMethods));
+		return stripAnnotationMethods(this.usedAppMethods);
 	}
 
 	@Override
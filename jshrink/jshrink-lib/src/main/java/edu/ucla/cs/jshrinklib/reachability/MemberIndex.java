@@ -0,0 +1,98 @@
+package edu.ucla.cs.jshrinklib.reachability;
+
+import java.util.*;
+
+/*
+An index of methods and fields by the names the dynamic analyses (TamiFlex and JMTrace) record them under: methods by
+(class, subsignature) and by (class, method name), fields by (class, "type name"). Methods are also indexed by (class,
+method name, argument types), the key under which ASM records virtual call sites. Building the index is linear in the
+number of members, after which each record is resolved in constant time.
+ */
+public class MemberIndex {
+	private final Map<String, Map<String, MethodData>> methodsBySubSignature =
+		new HashMap<String, Map<String, MethodData>>();
+	private final Map<String, Map<String, List<MethodData>>> methodsByName =
+		new HashMap<String, Map<String, List<MethodData>>>();
+	private final Map<String, Map<String, MethodData>> methodsByArguments =
+		new HashMap<String, Map<String, MethodData>>();
+	private final Map<String, Map<String, List<FieldData>>> fieldsBySignature =
+		new HashMap<String, Map<String, List<FieldData>>>();
+
+	public MemberIndex(){
+	}
+
+	public MemberIndex(Collection<MethodData> methods, Collection<FieldData> fields){
+		addMethods(methods);
+		addFields(fields);
+	}
+
+	public void addMethods(Collection<MethodData> methods){
+		for(MethodData md : methods){
+			// keep the first method with the given subsignature, as a linear scan would find it
+			this.methodsBySubSignature.computeIfAbsent(md.getClassName(), k -> new HashMap<String, MethodData>())
+				.putIfAbsent(md.getSubSignature(), md);
+			this.methodsByName.computeIfAbsent(md.getClassName(), k -> new HashMap<String, List<MethodData>>())
+				.computeIfAbsent(md.getName(), k -> new ArrayList<MethodData>()).add(md);
+			this.methodsByArguments.computeIfAbsent(md.getClassName(), k -> new HashMap<String, MethodData>())
+				.putIfAbsent(getArgumentKey(md.getName(), md.getArgs()), md);
+		}
+	}
+
+	public void addFields(Collection<FieldData> fields){
+		for(FieldData fd : fields){
+			this.fieldsBySignature.computeIfAbsent(fd.getClassName(), k -> new HashMap<String, List<FieldData>>())
+				.computeIfAbsent(fd.getType() + " " + fd.getName(), k -> new ArrayList<FieldData>()).add(fd);
+		}
+	}
+
+	/**
+	 * @param className The class declaring the method (e.g., "java.lang.Object")
+	 * @param subSignature The method subsignature, as returned by "MethodData.getSubSignature" (e.g., "int hashCode()")
+	 * @return The method, if indexed
+	 */
+	public Optional<MethodData> getMethod(String className, String subSignature){
+		Map<String, MethodData> methods = this.methodsBySubSignature.get(className);
+		return methods == null ? Optional.empty() : Optional.ofNullable(methods.get(subSignature));
+	}
+
+	/**
+	 * Finds a method by the class, name and argument types of a call site. The return type is not part of the key;
+	 * if several methods only differ in their return type, the first one indexed is returned.
+	 *
+	 * @param className The class declaring the method
+	 * @param methodName The method name
+	 * @param args The argument types (e.g., {"int", "java.lang.String"})
+	 * @return The method, if indexed
+	 */
+	public Optional<MethodData> getMethod(String className, String methodName, String[] args){
+		Map<String, MethodData> methods = this.methodsByArguments.get(className);
+		return methods == null ? Optional.empty() : Optional.ofNullable(methods.get(getArgumentKey(methodName, args)));
+	}
+
+	/**
+	 * @return All methods of the given class with the given name (i.e., all overloads)
+	 */
+	public List<MethodData> getMethodsByName(String className, String methodName){
+		Map<String, List<MethodData>> methods = this.methodsByName.get(className);
+		if(methods == null || !methods.containsKey(methodName)){
+			return Collections.emptyList();
+		}
+		return Collections.unmodifiableList(methods.get(methodName));
+	}
+
+	/**
+	 * @return All fields of the given class with the given name and type (static, or not)
+	 */
+	public List<FieldData> getFields(String className, String fieldName, String fieldType){
+		Map<String, List<FieldData>> fields = this.fieldsBySignature.get(className);
+		String signature = fieldType + " " + fieldName;
+		if(fields == null || !fields.containsKey(signature)){
+			return Collections.emptyList();
+		}
+		return Collections.unmodifiableList(fields.get(signature));
+	}
+
+	private static String getArgumentKey(String methodName, String[] args){
+		return methodName + "(" + String.join(",", args) + ")";
+	}
+}
@@ -3,6 +3,7 @@ package edu.ucla.cs.jshrinklib.reachability;
 import soot.Scene;
 
 import java.io.Serializable;
+import java.util.Arrays;
 
 public class MethodData implements Serializable {
 	private String name;
@@ -38,11 +39,11 @@ public class MethodData implements Serializable {
 	private void setData(String methodName, String methodClassName, String methodReturnType,
 	                     String[] methodArgs, boolean isPublic, boolean isStatic){
 
-		this.name=methodName;
-		this.className = methodClassName;
-		this.args = methodArgs;
+		this.name = SymbolTable.intern(methodName);
+		this.className = SymbolTable.intern(methodClassName);
+		this.args = SymbolTable.intern(methodArgs);
 		this.isPublicMethod = isPublic;
-		this.returnType = methodReturnType;
+		this.returnType = SymbolTable.intern(methodReturnType);
 		this.isStaticMethod = isStatic;
 		this.annotation = "";
 	}
@@ -56,8 +57,12 @@ public class MethodData implements Serializable {
 		return this.name;
 	}
 
+	/*
+	Note: The hash code of a MethodData covers its signature. A MethodData must be removed from any hash set (or map)
+	it is in before its name, class, arguments or return type are changed, and added back afterwards.
+	 */
 	public void setName(String name) {
-		this.name = name;
+		this.name = SymbolTable.intern(name);
 	}
 
 	public String getClassName(){
@@ -65,7 +70,7 @@ public class MethodData implements Serializable {
 	}
 
 	public void setClassName(String className) {
-		this.className = className;
+		this.className = SymbolTable.intern(className);
 	}
 
 	public String[] getArgs(){
@@ -73,7 +78,7 @@ public class MethodData implements Serializable {
 	}
 
 	public void setArgs(String[] args) {
-		this.args = args;
+		this.args = SymbolTable.intern(args);
 	}
 
 	public String getReturnType(){
@@ -81,7 +86,7 @@ public class MethodData implements Serializable {
 	}
 
 	public void setReturnType(String type) {
-		this.returnType = type;
+		this.returnType = SymbolTable.intern(type);
 	}
 
 	public boolean isPublic(){
@@ -156,13 +161,9 @@ public class MethodData implements Serializable {
 
 	@Override
 	public int hashCode(){
-		int toReturn = this.name.length() * 1 + this.className.length() * 2
-			 + this.returnType.length() * 16;
-
-		for(int i=0; i<this.args.length; i++){
-			toReturn += this.args[i].length() * Math.pow(2.0, (i+5));
-		}
-
-		return toReturn;
+		int toReturn = this.className.hashCode();
+		toReturn = toReturn * 31 + this.name.hashCode();
+		toReturn = toReturn * 31 + this.returnType.hashCode();
+		return toReturn * 31 + Arrays.hashCode(this.args);
 	}
 }
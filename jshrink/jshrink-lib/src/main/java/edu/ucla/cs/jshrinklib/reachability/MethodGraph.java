@@ -0,0 +1,408 @@
+package edu.ucla.cs.jshrinklib.reachability;
+
+import java.util.*;
+
+/*
+An immutable call graph over methods, stored in compressed sparse row form. The nodes are the method IDs handed out by
+the SymbolTable, sorted, and each node's callers (the reverse adjacency, as stored in the "callee -> callers" maps used
+throughout the reachability analysis) and callees (the forward adjacency) are slices of two shared int arrays. The graph
+therefore takes a handful of ints per edge, instead of a HashSet entry per edge.
+
+"asMap" gives a read-only "callee -> callers" Map view of the graph (or of part of it) for the code which expects one.
+The views build nothing up front: a MethodData is only looked up (by its ID) when the view is queried.
+ */
+public class MethodGraph {
+	private final int[] nodes; // the method IDs, sorted
+	private final MethodData[] methods; // the MethodData of each node, in the same order
+	private final int[] callerOffsets;
+	private final int[] callers; // node indices, sorted within each node's slice
+	private final int[] calleeOffsets;
+	private final int[] callees; // node indices, sorted within each node's slice
+	private final BitSet methodIds;
+
+	private MethodGraph(int[] nodes, MethodData[] methods, int[] callerOffsets, int[] callers, int[] calleeOffsets,
+	                    int[] callees, BitSet methodIds){
+		this.nodes = nodes;
+		this.methods = methods;
+		this.callerOffsets = callerOffsets;
+		this.callers = callers;
+		this.calleeOffsets = calleeOffsets;
+		this.callees = callees;
+		this.methodIds = methodIds;
+	}
+
+	/**
+	 * @return The graph of the given "callee -> callers" map
+	 */
+	public static MethodGraph fromMap(Map<MethodData, ? extends Collection<MethodData>> map){
+		Builder builder = new Builder();
+		builder.addAll(map);
+		return builder.build();
+	}
+
+	public int size(){
+		return this.nodes.length;
+	}
+
+	public int getEdgeCount(){
+		return this.callers.length;
+	}
+
+	/**
+	 * @return The IDs of all methods in the graph
+	 */
+	public BitSet getMethodIds(){
+		return (BitSet) this.methodIds.clone();
+	}
+
+	public boolean contains(int methodId){
+		return this.methodIds.get(methodId);
+	}
+
+	public boolean contains(MethodData methodData){
+		int id = SymbolTable.findMethodId(methodData);
+		return id >= 0 && contains(id);
+	}
+
+	/**
+	 * @return The MethodData of the method with the given ID, or null if it is not in the graph
+	 */
+	public MethodData getMethod(int methodId){
+		int index = indexOf(methodId);
+		return index < 0 ? null : this.methods[index];
+	}
+
+	/**
+	 * @return The IDs of the methods calling the method with the given ID (empty if it is not in the graph)
+	 */
+	public int[] getCallers(int methodId){
+		return toIds(indexOf(methodId), this.callerOffsets, this.callers);
+	}
+
+	/**
+	 * @return The IDs of the methods called by the method with the given ID (empty if it is not in the graph)
+	 */
+	public int[] getCallees(int methodId){
+		return toIds(indexOf(methodId), this.calleeOffsets, this.callees);
+	}
+
+	/**
+	 * @return A read-only "callee -> callers" view of the whole graph
+	 */
+	public Map<MethodData, Set<MethodData>> asMap(){
+		return asMap(this.methodIds, null);
+	}
+
+	/**
+	 * @param keys The IDs of the methods to include as keys. Those not in the graph are ignored.
+	 * @return A read-only "callee -> callers" view of the given methods, each with all of its callers
+	 */
+	public Map<MethodData, Set<MethodData>> asMap(BitSet keys){
+		return asMap(keys, null);
+	}
+
+	/**
+	 * @param keys The IDs of the methods to include as keys. Those not in the graph are ignored.
+	 * @param values The IDs of the methods to include as callers, or null to include all callers
+	 * @return A read-only "callee -> callers" view of the given methods, each with the callers in "values"
+	 */
+	public Map<MethodData, Set<MethodData>> asMap(BitSet keys, BitSet values){
+		BitSet keysInGraph = (BitSet) keys.clone();
+		keysInGraph.and(this.methodIds);
+		return new CallerMap(keysInGraph, values == null ? null : (BitSet) values.clone());
+	}
+
+	private int indexOf(int methodId){
+		if(methodId < 0 || !this.methodIds.get(methodId)){
+			return -1;
+		}
+		return Arrays.binarySearch(this.nodes, methodId);
+	}
+
+	private int[] toIds(int index, int[] offsets, int[] adjacency){
+		if(index < 0){
+			return new int[0];
+		}
+		int[] toReturn = new int[offsets[index + 1] - offsets[index]];
+		for(int i=0; i<toReturn.length; i++){
+			toReturn[i] = this.nodes[adjacency[offsets[index] + i]];
+		}
+		return toReturn;
+	}
+
+	/*
+	The "callee -> callers" view returned by "asMap". Any attempt to modify it throws an UnsupportedOperationException.
+	 */
+	private class CallerMap extends AbstractMap<MethodData, Set<MethodData>> {
+		private final BitSet keys;
+		private final BitSet values;
+		private final int size;
+
+		private CallerMap(BitSet keys, BitSet values){
+			this.keys = keys;
+			this.values = values;
+			this.size = keys.cardinality();
+		}
+
+		@Override
+		public int size(){
+			return this.size;
+		}
+
+		@Override
+		public boolean containsKey(Object o){
+			return keyIndexOf(o) >= 0;
+		}
+
+		@Override
+		public Set<MethodData> get(Object o){
+			int index = keyIndexOf(o);
+			return index < 0 ? null : new CallerSet(index, this.values);
+		}
+
+		private int keyIndexOf(Object o){
+			if(!(o instanceof MethodData)){
+				return -1;
+			}
+			int id = SymbolTable.findMethodId((MethodData) o);
+			return id >= 0 && this.keys.get(id) ? indexOf(id) : -1;
+		}
+
+		@Override
+		public Set<Map.Entry<MethodData, Set<MethodData>>> entrySet(){
+			return new AbstractSet<Map.Entry<MethodData, Set<MethodData>>>() {
+				@Override
+				public int size(){
+					return CallerMap.this.size;
+				}
+
+				@Override
+				public Iterator<Map.Entry<MethodData, Set<MethodData>>> iterator(){
+					return new Iterator<Map.Entry<MethodData, Set<MethodData>>>() {
+						private int nextId = keys.nextSetBit(0);
+						private int nextIndex = 0;
+
+						@Override
+						public boolean hasNext(){
+							return this.nextId >= 0;
+						}
+
+						@Override
+						public Map.Entry<MethodData, Set<MethodData>> next(){
+							if(this.nextId < 0){
+								throw new NoSuchElementException();
+							}
+							// the keys are a subset of the (sorted) nodes, so walk forward to the next one
+							while(nodes[this.nextIndex] != this.nextId){
+								this.nextIndex++;
+							}
+							int index = this.nextIndex;
+							this.nextId = keys.nextSetBit(this.nextId + 1);
+							return new AbstractMap.SimpleImmutableEntry<MethodData, Set<MethodData>>(methods[index],
+								new CallerSet(index, values));
+						}
+					};
+				}
+			};
+		}
+	}
+
+	/*
+	The callers of a single node, optionally restricted to the methods in "values".
+	 */
+	private class CallerSet extends AbstractSet<MethodData> {
+		private final int start;
+		private final int end;
+		private final BitSet values;
+		private int size = -1;
+
+		private CallerSet(int index, BitSet values){
+			this.start = callerOffsets[index];
+			this.end = callerOffsets[index + 1];
+			this.values = values;
+		}
+
+		private boolean included(int position){
+			return this.values == null || this.values.get(nodes[callers[position]]);
+		}
+
+		@Override
+		public int size(){
+			if(this.size < 0){
+				int count = 0;
+				for(int i=this.start; i<this.end; i++){
+					if(included(i)){
+						count++;
+					}
+				}
+				this.size = count;
+			}
+			return this.size;
+		}
+
+		@Override
+		public boolean contains(Object o){
+			if(!(o instanceof MethodData)){
+				return false;
+			}
+			int index = indexOf(SymbolTable.findMethodId((MethodData) o));
+			if(index < 0){
+				return false;
+			}
+			int position = Arrays.binarySearch(callers, this.start, this.end, index);
+			return position >= 0 && included(position);
+		}
+
+		@Override
+		public Iterator<MethodData> iterator(){
+			return new Iterator<MethodData>() {
+				private int position = advance(start);
+
+				private int advance(int from){
+					while(from < end && !included(from)){
+						from++;
+					}
+					return from;
+				}
+
+				@Override
+				public boolean hasNext(){
+					return this.position < end;
+				}
+
+				@Override
+				public MethodData next(){
+					if(this.position >= end){
+						throw new NoSuchElementException();
+					}
+					MethodData toReturn = methods[callers[this.position]];
+					this.position = advance(this.position + 1);
+					return toReturn;
+				}
+			};
+		}
+	}
+
+	/*
+	Collects the methods and "callee <- caller" edges of a graph. Edges may be added more than once; the duplicates are
+	dropped. The builder may continue to be used after "build" has been called.
+	 */
+	public static class Builder {
+		private final BitSet methodIds = new BitSet();
+		private MethodData[] methods = new MethodData[16]; // indexed by method ID
+		private long[] edges = new long[16]; // (callee ID << 32) | caller ID
+		private int edgeCount = 0;
+
+		/**
+		 * Adds the method to the graph, if not already present. The first MethodData added for a method is the one
+		 * returned by the graph.
+		 *
+		 * @return The ID of the method
+		 */
+		public int addMethod(MethodData methodData){
+			int id = SymbolTable.getMethodId(methodData);
+			if(!this.methodIds.get(id)){
+				if(id >= this.methods.length){
+					this.methods = Arrays.copyOf(this.methods, Math.max(id + 1, this.methods.length * 2));
+				}
+				this.methods[id] = methodData;
+				this.methodIds.set(id);
+			}
+			return id;
+		}
+
+		public void addCall(MethodData callee, MethodData caller){
+			addEdge(addMethod(callee), addMethod(caller));
+		}
+
+		public void addCalls(MethodData callee, Collection<MethodData> callers){
+			int calleeId = addMethod(callee);
+			for(MethodData caller : callers){
+				addEdge(calleeId, addMethod(caller));
+			}
+		}
+
+		/**
+		 * Adds the methods and edges of a "callee -> callers" map
+		 */
+		public void addAll(Map<MethodData, ? extends Collection<MethodData>> map){
+			for(Map.Entry<MethodData, ? extends Collection<MethodData>> entry : map.entrySet()){
+				addCalls(entry.getKey(), entry.getValue());
+			}
+		}
+
+		public boolean contains(MethodData methodData){
+			int id = SymbolTable.findMethodId(methodData);
+			return id >= 0 && this.methodIds.get(id);
+		}
+
+		/**
+		 * @return The IDs of all methods added so far
+		 */
+		public BitSet getMethodIds(){
+			return (BitSet) this.methodIds.clone();
+		}
+
+		private void addEdge(int calleeId, int callerId){
+			if(this.edgeCount == this.edges.length){
+				compact();
+				// only grow the array if dropping the duplicates did not free a good part of it
+				if(this.edgeCount > this.edges.length / 2){
+					this.edges = Arrays.copyOf(this.edges, this.edges.length * 2);
+				}
+			}
+			this.edges[this.edgeCount++] = ((long) calleeId << 32) | callerId;
+		}
+
+		/*
+		Sorts the edges (by callee, then by caller) and drops the duplicates.
+		 */
+		private void compact(){
+			Arrays.sort(this.edges, 0, this.edgeCount);
+			int unique = 0;
+			for(int i=0; i<this.edgeCount; i++){
+				if(unique == 0 || this.edges[unique - 1] != this.edges[i]){
+					this.edges[unique++] = this.edges[i];
+				}
+			}
+			this.edgeCount = unique;
+		}
+
+		public MethodGraph build(){
+			compact();
+
+			int[] nodes = this.methodIds.stream().toArray();
+			MethodData[] nodeMethods = new MethodData[nodes.length];
+			int[] indexOfId = new int[nodes.length == 0 ? 0 : nodes[nodes.length - 1] + 1];
+			for(int i=0; i<nodes.length; i++){
+				nodeMethods[i] = this.methods[nodes[i]];
+				indexOfId[nodes[i]] = i;
+			}
+
+			int[] callerOffsets = new int[nodes.length + 1];
+			int[] calleeOffsets = new int[nodes.length + 1];
+			for(int i=0; i<this.edgeCount; i++){
+				callerOffsets[indexOfId[(int) (this.edges[i] >>> 32)] + 1]++;
+				calleeOffsets[indexOfId[(int) this.edges[i]] + 1]++;
+			}
+			for(int i=0; i<nodes.length; i++){
+				callerOffsets[i + 1] += callerOffsets[i];
+				calleeOffsets[i + 1] += calleeOffsets[i];
+			}
+
+			// the edges are sorted by callee and then by caller, so both adjacency lists come out sorted
+			int[] callers = new int[this.edgeCount];
+			int[] callees = new int[this.edgeCount];
+			int[] calleeFill = Arrays.copyOf(calleeOffsets, nodes.length);
+			for(int i=0; i<this.edgeCount; i++){
+				int callee = indexOfId[(int) (this.edges[i] >>> 32)];
+				int caller = indexOfId[(int) this.edges[i]];
+				callers[i] = caller;
+				callees[calleeFill[caller]++] = callee;
+			}
+
+			return new MethodGraph(nodes, nodeMethods, callerOffsets, callers, calleeOffsets, callees,
+				(BitSet) this.methodIds.clone());
+		}
+	}
+}
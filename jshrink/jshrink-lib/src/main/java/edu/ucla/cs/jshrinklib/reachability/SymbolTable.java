@@ -0,0 +1,162 @@
+package edu.ucla.cs.jshrinklib.reachability;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+Interns the class names, types and member names of MethodData and FieldData, so the hundreds of thousands of MethodData
+objects built while analysing a large project share a single copy of each string (and of each argument list). It also
+hands out dense integer IDs for methods, so that sets of methods can be stored as BitSets or int arrays, rather than as
+hash sets of objects.
+
+IDs are given out in the order methods are first seen, and are not reused until the table is cleared (see "clear()"),
+which JShrink does whenever it drops its analysis. Two MethodData objects have the same ID if they are equal (i.e., they
+have the same class, name, return type and arguments). All methods but "clear()" may be called from several threads at
+once.
+ */
+public class SymbolTable {
+
+	private static final Map<String, String> strings = new ConcurrentHashMap<String, String>();
+	private static final Map<List<String>, String[]> argLists = new ConcurrentHashMap<List<String>, String[]>();
+
+	private static final Map<MethodKey, Integer> methodIds = new ConcurrentHashMap<MethodKey, Integer>();
+	private static final List<MethodKey> methods = new ArrayList<MethodKey>();
+
+	/*
+	MethodData is mutable (e.g., the class collapser renames methods in place), so the table keeps its own immutable copy
+	of each signature.
+	 */
+	private static class MethodKey {
+		private final String className;
+		private final String name;
+		private final String returnType;
+		private final String[] args;
+		private final boolean isPublic;
+		private final boolean isStatic;
+		private final int hash;
+
+		private MethodKey(MethodData methodData){
+			this.className = intern(methodData.getClassName());
+			this.name = intern(methodData.getName());
+			this.returnType = intern(methodData.getReturnType());
+			this.args = intern(methodData.getArgs());
+			this.isPublic = methodData.isPublic();
+			this.isStatic = methodData.isStatic();
+			this.hash = methodData.hashCode();
+		}
+
+		@Override
+		public boolean equals(Object o){
+			if(!(o instanceof MethodKey)){
+				return false;
+			}
+			MethodKey toCompare = (MethodKey) o;
+			// interned strings and argument lists, so comparing references is enough
+			return this.className == toCompare.className && this.name == toCompare.name
+				&& this.returnType == toCompare.returnType && this.args == toCompare.args;
+		}
+
+		@Override
+		public int hashCode(){
+			return this.hash;
+		}
+	}
+
+	/**
+	 * @return The canonical instance of the string (null for null)
+	 */
+	public static String intern(String string){
+		if(string == null){
+			return null;
+		}
+		String interned = strings.putIfAbsent(string, string);
+		return interned == null ? string : interned;
+	}
+
+	/**
+	 * @return The canonical instance of the argument list, whose elements are themselves interned. It must not be
+	 * modified.
+	 */
+	public static String[] intern(String[] args){
+		if(args == null){
+			return null;
+		}
+		String[] internedArgs = new String[args.length];
+		for(int i=0; i<args.length; i++){
+			internedArgs[i] = intern(args[i]);
+		}
+		String[] interned = argLists.putIfAbsent(Collections.unmodifiableList(Arrays.asList(internedArgs)),
+			internedArgs);
+		return interned == null ? internedArgs : interned;
+	}
+
+	/**
+	 * @return The ID of the method, giving it the next free ID if it has not been seen before
+	 */
+	public static int getMethodId(MethodData methodData){
+		MethodKey key = new MethodKey(methodData);
+		Integer id = methodIds.get(key);
+		if(id != null){
+			return id;
+		}
+		synchronized(methods){
+			id = methodIds.get(key);
+			if(id == null){
+				id = methods.size();
+				methods.add(key);
+				methodIds.put(key, id);
+			}
+			return id;
+		}
+	}
+
+	/**
+	 * @return The ID of the method, or -1 if no method equal to it has been given an ID
+	 */
+	public static int findMethodId(MethodData methodData){
+		Integer id = methodIds.get(new MethodKey(methodData));
+		return id == null ? -1 : id;
+	}
+
+	/**
+	 * @return A new MethodData for the method with the given ID
+	 */
+	public static MethodData getMethod(int id){
+		MethodKey key;
+		synchronized(methods){
+			key = methods.get(id);
+		}
+		return new MethodData(key.name, key.className, key.returnType, key.args, key.isPublic, key.isStatic);
+	}
+
+	public static int getMethodCount(){
+		synchronized(methods){
+			return methods.size();
+		}
+	}
+
+	/**
+	 * Forgets every string, argument list and method seen so far, so IDs are given out from 0 again. The IDs given out
+	 * before (e.g., those held by a MethodGraph or a BitSet of method IDs) are no longer valid, so this must only be
+	 * called once these are dropped, when no analysis is running (see "JShrink.reset()").
+	 */
+	public static void clear(){
+		synchronized(methods){
+			methodIds.clear();
+			methods.clear();
+			strings.clear();
+			argLists.clear();
+		}
+	}
+
+	/**
+	 * @return The IDs of the methods, as a BitSet
+	 */
+	public static BitSet toMethodIds(Collection<MethodData> methodData){
+		BitSet toReturn = new BitSet();
+		for(MethodData md : methodData){
+			toReturn.set(getMethodId(md));
+		}
+		return toReturn;
+	}
+}
@@ -4,6 +4,7 @@ import java.io.*;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
 
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
@@ -26,7 +27,10 @@ import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 import org.xml.sax.SAXException;
 
+import edu.ucla.cs.jshrinklib.JShrink;
+import edu.ucla.cs.jshrinklib.backup.Checkpoint;
 import edu.ucla.cs.jshrinklib.util.MavenUtils;
+import edu.ucla.cs.jshrinklib.util.ProcessRunner;
 
 public class TamiFlexRunner {
 	private String tamiflex_path;
@@ -300,26 +304,22 @@ public class TamiFlexRunner {
 	}
 	
 	public boolean runMavenTest() throws IOException, InterruptedException {
-		String[] cmd = {"mvn", "-f" , (new File(project_path)).getAbsolutePath() ,"test", "-fn", "--batch-mode"};
-		ProcessBuilder processBuilder = new ProcessBuilder(cmd);
-		processBuilder.redirectErrorStream(true);
-		Process process = processBuilder.start();
-		InputStream stdout = process.getInputStream();
-		InputStreamReader isr = new InputStreamReader(stdout);
-		BufferedReader br = new BufferedReader(isr);
-
-		boolean testResult = false;
-		String output = null;
-		while ((output = br.readLine()) != null) {
-			if(output.contains("BUILD SUCCESS")) {
-				testResult = true;
-			} else if (output.contains("BUILD FAILURE")) {
-				testResult = false;
-			}
-		}
-		process.waitFor();
+		final boolean[] testResult = {false};
+		// the class files may be shared with checkpoints, which Maven must not write into when compiling
+		Checkpoint.breakHardLinks(new File(project_path).toPath(), false);
+		new ProcessRunner("maven_tamiflex_test", "mvn", "-f" , (new File(project_path)).getAbsolutePath() ,"test", "-fn",
+			"--batch-mode")
+			.addLineHandler(output -> {
+				if(output.contains("BUILD SUCCESS")) {
+					testResult[0] = true;
+				} else if (output.contains("BUILD FAILURE")) {
+					testResult[0] = false;
+				}
+			})
+			.setTimeout(JShrink.process_timeout_minutes, TimeUnit.MINUTES)
+			.run();
 		
-		return testResult;
+		return testResult[0];
 	}
 	
 	/**
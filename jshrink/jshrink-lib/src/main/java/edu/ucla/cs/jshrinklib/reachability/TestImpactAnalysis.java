@@ -0,0 +1,60 @@
+package edu.ucla.cs.jshrinklib.reachability;
+
+import java.util.*;
+
+/*
+Selects the test classes whose outcome may change when some classes are changed: the test classes which are changed
+themselves, those with a method reaching (in the "callee -> callers" call graph) a method declared in a changed class,
+and the test classes extending these, which inherit their test methods.
+
+The selection is made by class rather than by member. Most transformations remove or wipe members which no test
+reaches, and selecting by member would then select no test at all, whereas the tests reaching the rest of the class
+exercise the class as it is rewritten.
+ */
+public class TestImpactAnalysis {
+
+	/**
+	 * @param callGraph The call graph, as a "callee -> callers" map (e.g., "JShrink.getSimplifiedCallGraph")
+	 * @param changedClasses The classes which are changed (or removed)
+	 * @param testClasses The test classes of the project
+	 * @param superClasses The test classes (and their superclasses) mapped to their superclass
+	 * @return The test classes which are to be run to validate the change
+	 */
+	public static Set<String> getTestClassesReaching(Map<MethodData, Set<MethodData>> callGraph,
+	                                                 Set<String> changedClasses, Set<String> testClasses,
+	                                                 Map<String, String> superClasses){
+		Set<MethodData> reached = new HashSet<MethodData>();
+		Deque<MethodData> toVisit = new ArrayDeque<MethodData>();
+		for(MethodData method : callGraph.keySet()){
+			if(changedClasses.contains(method.getClassName()) && reached.add(method)){
+				toVisit.add(method);
+			}
+		}
+		while(!toVisit.isEmpty()){
+			for(MethodData caller : callGraph.getOrDefault(toVisit.poll(), Collections.<MethodData>emptySet())){
+				if(reached.add(caller)){
+					toVisit.add(caller);
+				}
+			}
+		}
+
+		Set<String> reachingClasses = new HashSet<String>(changedClasses);
+		for(MethodData method : reached){
+			reachingClasses.add(method.getClassName());
+		}
+
+		Set<String> toReturn = new TreeSet<String>();
+		for(String testClass : testClasses){
+			// the test class, or one of its superclasses, reaches a changed class
+			Set<String> visited = new HashSet<String>();
+			for(String className = testClass; className != null && visited.add(className);
+			    className = superClasses.get(className)){
+				if(reachingClasses.contains(className)){
+					toReturn.add(testClass);
+					break;
+				}
+			}
+		}
+		return toReturn;
+	}
+}
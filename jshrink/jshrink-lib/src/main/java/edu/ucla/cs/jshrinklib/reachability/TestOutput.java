@@ -1,11 +1,21 @@
 package edu.ucla.cs.jshrinklib.reachability;
 
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.Objects;
+import java.util.Optional;
+
 public class TestOutput {
 	private final int run;
 	private final int failures;
 	private final int errors;
 	private final int skipped;
 	private final String testOutputText;
+	// the file the output of the tests is logged in, rather than kept in memory, if it is
+	private final Optional<File> testOutputFile;
 	private final boolean testBuildSuccess;
 
 	public TestOutput(int run, int failures, int errors, int skipped, String testOut, boolean buildSuccess){
@@ -14,6 +24,17 @@ public class TestOutput {
 		this.errors = errors;
 		this.skipped = skipped;
 		this.testOutputText = testOut;
+		this.testOutputFile = Optional.empty();
+		this.testBuildSuccess = buildSuccess;
+	}
+
+	public TestOutput(int run, int failures, int errors, int skipped, File testOutFile, boolean buildSuccess){
+		this.run = run;
+		this.failures = failures;
+		this.errors = errors;
+		this.skipped = skipped;
+		this.testOutputText = null;
+		this.testOutputFile = Optional.of(testOutFile);
 		this.testBuildSuccess = buildSuccess;
 	}
 
@@ -37,17 +58,36 @@ public class TestOutput {
 		return this.testBuildSuccess;
 	}
 
+	/**
+	 * @return The output of the tests. If it is logged in a file (see "getTestOutputFile"), it is read from the file
+	 */
 	public String getTestOutputText(){
+		if(this.testOutputFile.isPresent()){
+			try {
+				return FileUtils.readFileToString(this.testOutputFile.get(), Charset.defaultCharset());
+			} catch (IOException e) {
+				e.printStackTrace();
+				return "";
+			}
+		}
 		return this.testOutputText;
 	}
 
+	/**
+	 * @return The file the output of the tests is logged in, if it is not kept in memory
+	 */
+	public Optional<File> getTestOutputFile(){
+		return this.testOutputFile;
+	}
+
 	@Override
 	public boolean equals(Object o){
 		if(o instanceof TestOutput){
 			TestOutput testOutput = (TestOutput) o;
 			return testOutput.run == this.run && testOutput.failures == this.failures
 				&& testOutput.errors == this.errors && testOutput.skipped == this.skipped
-				&& testOutput.testOutputText.equals(this.testOutputText)
+				&& Objects.equals(testOutput.testOutputText, this.testOutputText)
+				&& testOutput.testOutputFile.equals(this.testOutputFile)
 				&& testOutput.testBuildSuccess == this.testBuildSuccess;
 		}
 
@@ -57,6 +97,6 @@ public class TestOutput {
 	@Override
 	public int hashCode(){
 		return this.run + (this.failures * 31) + (this.errors * 31 * 31) + (this.errors * 31 * 31 * 31)
-			+ this.testOutputText.hashCode() + (testBuildSuccess ? 1 : 2);
+			+ Objects.hashCode(this.testOutputText) + this.testOutputFile.hashCode() + (testBuildSuccess ? 1 : 2);
 	}
 }
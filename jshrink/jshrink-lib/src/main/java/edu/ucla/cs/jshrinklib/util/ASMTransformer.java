@@ -0,0 +1,376 @@
+package edu.ucla.cs.jshrinklib.util;
+
+import edu.ucla.cs.jshrinklib.reachability.FieldData;
+import edu.ucla.cs.jshrinklib.reachability.MethodData;
+import org.objectweb.asm.*;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Removes methods, wipes method bodies and removes fields directly in the bytecode with ASM. This is an alternative to
+ * "MethodWiper" and "FieldWiper", which change the Soot classes, after which the whole class is jimplified and written
+ * out again through Jasmin.
+ *
+ * The transformations are recorded per class, and applied when the classes are written, by "apply". Each class is
+ * streamed through a ClassVisitor which drops the removed methods and fields and replaces the code of the wiped methods;
+ * every other method is passed through unchanged (only the constant pool is rebuilt, so entries which were only used by
+ * removed code are dropped). The classes are transformed in parallel.
+ *
+ * Wiped methods are given the same bodies as "MethodWiper" gives them: a default value is returned (or a
+ * RuntimeException thrown), and a wiped constructor first calls the given superclass constructor with default values.
+ */
+public class ASMTransformer {
+
+	private static final String RUNTIME_EXCEPTION = "java/lang/RuntimeException";
+
+	/*
+	A wiped method body. Without an exception, the method returns the default value of its return type.
+	 */
+	private static class Wipe {
+		private final boolean throwException;
+		private final Optional<String> message;
+		private final Optional<MethodData> superConstructor;
+
+		private Wipe(boolean throwException, Optional<String> message, Optional<MethodData> superConstructor){
+			this.throwException = throwException;
+			this.message = message;
+			this.superConstructor = superConstructor;
+		}
+	}
+
+	private static class ClassEdits {
+		private final Map<String, MethodData> removedMethods = new HashMap<String, MethodData>();
+		private final Map<String, MethodData> wipedMethods = new HashMap<String, MethodData>();
+		private final Map<String, Wipe> wipes = new HashMap<String, Wipe>();
+		private final Map<String, FieldData> removedFields = new HashMap<String, FieldData>();
+	}
+
+	// class name -> the transformations of the class
+	private final Map<String, ClassEdits> edits = new HashMap<String, ClassEdits>();
+
+	private ClassEdits getEdits(String className){
+		return this.edits.computeIfAbsent(className, k -> new ClassEdits());
+	}
+
+	private static String getMethodKey(String name, String[] args, String returnType){
+		return name + "(" + String.join(",", args) + ")" + returnType;
+	}
+
+	private static String getMethodKey(MethodData method){
+		return getMethodKey(method.getName(), method.getArgs(), method.getReturnType());
+	}
+
+	private static String getFieldKey(String name, String type){
+		return name + ":" + type;
+	}
+
+	public void removeMethod(MethodData method){
+		String key = getMethodKey(method);
+		ClassEdits classEdits = getEdits(method.getClassName());
+		classEdits.removedMethods.put(key, method);
+		classEdits.wipedMethods.remove(key);
+		classEdits.wipes.remove(key);
+	}
+
+	/**
+	 * Wipes the method body, leaving a return of the default value of its return type.
+	 *
+	 * @param method The method to wipe
+	 * @param superConstructor If the method is a constructor, the superclass constructor to call (as "MethodWiper" does)
+	 */
+	public void wipeMethodBody(MethodData method, Optional<MethodData> superConstructor){
+		wipe(method, new Wipe(false, Optional.empty(), superConstructor));
+	}
+
+	/**
+	 * Wipes the method body, leaving a throw of a RuntimeException (with the message, if given).
+	 *
+	 * @param method The method to wipe
+	 * @param message The message of the RuntimeException
+	 * @param superConstructor If the method is a constructor, the superclass constructor to call (as "MethodWiper" does)
+	 */
+	public void wipeMethodBodyAndInsertRuntimeException(MethodData method, Optional<String> message,
+	                                                    Optional<MethodData> superConstructor){
+		wipe(method, new Wipe(true, message, superConstructor));
+	}
+
+	private void wipe(MethodData method, Wipe wipe){
+		String key = getMethodKey(method);
+		ClassEdits classEdits = getEdits(method.getClassName());
+		if(!classEdits.removedMethods.containsKey(key)){
+			classEdits.wipedMethods.put(key, method);
+			classEdits.wipes.put(key, wipe);
+		}
+	}
+
+	public void removeField(FieldData field){
+		getEdits(field.getClassName()).removedFields.put(getFieldKey(field.getName(), field.getType()), field);
+	}
+
+	/**
+	 * @return The classes with at least one transformation
+	 */
+	public Set<String> getClasses(){
+		return Collections.unmodifiableSet(this.edits.keySet());
+	}
+
+	public Set<MethodData> getRemovedMethods(String className){
+		return this.edits.containsKey(className) ?
+			new HashSet<MethodData>(this.edits.get(className).removedMethods.values()) : Collections.emptySet();
+	}
+
+	public Set<MethodData> getWipedMethods(String className){
+		return this.edits.containsKey(className) ?
+			new HashSet<MethodData>(this.edits.get(className).wipedMethods.values()) : Collections.emptySet();
+	}
+
+	public Set<FieldData> getRemovedFields(String className){
+		return this.edits.containsKey(className) ?
+			new HashSet<FieldData>(this.edits.get(className).removedFields.values()) : Collections.emptySet();
+	}
+
+	/**
+	 * @return Whether the wipe of the method leaves a RuntimeException throw (rather than a return)
+	 */
+	public boolean throwsException(MethodData method){
+		ClassEdits classEdits = this.edits.get(method.getClassName());
+		return classEdits != null && classEdits.wipes.containsKey(getMethodKey(method))
+			&& classEdits.wipes.get(getMethodKey(method)).throwException;
+	}
+
+	/**
+	 * @return The message of the RuntimeException a wiped method throws, if any
+	 */
+	public Optional<String> getExceptionMessage(MethodData method){
+		ClassEdits classEdits = this.edits.get(method.getClassName());
+		if(classEdits == null || !classEdits.wipes.containsKey(getMethodKey(method))){
+			return Optional.empty();
+		}
+		return classEdits.wipes.get(getMethodKey(method)).message;
+	}
+
+	/**
+	 * Forgets the transformations of the class (e.g., once they have been made through Soot instead).
+	 */
+	public void clear(String className){
+		this.edits.remove(className);
+	}
+
+	public void clear(){
+		this.edits.clear();
+	}
+
+	public boolean isEmpty(){
+		return this.edits.isEmpty();
+	}
+
+	/**
+	 * Transforms the classes with the writer, on top of anything the writer has already written for them (e.g., the
+	 * classes Soot has rewritten).
+	 *
+	 * @param classPathWriter The writer of the classpath containing the classes
+	 * @param excludedClasses Classes which are not transformed (e.g., as they are being removed)
+	 */
+	public void apply(ClassPathWriter classPathWriter, Set<String> excludedClasses) throws IOException {
+		List<String> classes = new ArrayList<String>();
+		for(String className : this.edits.keySet()){
+			if(!excludedClasses.contains(className)){
+				classes.add(className);
+			}
+		}
+		classPathWriter.transformClasses(classes, (className, classBytes) -> transform(classBytes, this.edits.get(className)));
+	}
+
+	private static byte[] transform(byte[] classBytes, ClassEdits classEdits){
+		ClassReader classReader = new ClassReader(classBytes);
+		// No flags: the wiped bodies are straight-line code, for which the maximum stack size is computed below, and
+		// which need no stack map frames
+		ClassWriter classWriter = new ClassWriter(0);
+		classReader.accept(new EditingClassVisitor(classWriter, classEdits), 0);
+		return classWriter.toByteArray();
+	}
+
+	private static class EditingClassVisitor extends ClassVisitor {
+		private final ClassEdits classEdits;
+		private String superName;
+
+		private EditingClassVisitor(ClassVisitor classVisitor, ClassEdits classEdits){
+			super(Opcodes.ASM5, classVisitor);
+			this.classEdits = classEdits;
+		}
+
+		@Override
+		public void visit(int version, int access, String name, String signature, String superName,
+		                  String[] interfaces){
+			this.superName = superName;
+			super.visit(version, access, name, signature, superName, interfaces);
+		}
+
+		@Override
+		public FieldVisitor visitField(int access, String name, String desc, String signature, Object value){
+			if(this.classEdits.removedFields.containsKey(getFieldKey(name, Type.getType(desc).getClassName()))){
+				return null;
+			}
+			return super.visitField(access, name, desc, signature, value);
+		}
+
+		@Override
+		public MethodVisitor visitMethod(int access, String name, String desc, String signature,
+		                                 String[] exceptions){
+			String key = getMethodKey(name, getClassNames(Type.getArgumentTypes(desc)),
+				Type.getReturnType(desc).getClassName());
+			if(this.classEdits.removedMethods.containsKey(key)){
+				return null;
+			}
+
+			MethodVisitor methodVisitor = super.visitMethod(access, name, desc, signature, exceptions);
+			Wipe wipe = this.classEdits.wipes.get(key);
+			if(wipe == null || methodVisitor == null || (access & (Opcodes.ACC_ABSTRACT | Opcodes.ACC_NATIVE)) != 0){
+				return methodVisitor;
+			}
+			return new WipingMethodVisitor(methodVisitor, (access & Opcodes.ACC_STATIC) != 0, name, desc,
+				this.superName, wipe);
+		}
+	}
+
+	/*
+	Passes everything but the code on (annotations, parameters, attributes). At the start of the code, the wiped body is
+	written instead, and the original instructions are dropped.
+	 */
+	private static class WipingMethodVisitor extends MethodVisitor {
+		private final MethodVisitor target;
+		private final boolean isStatic;
+		private final String name;
+		private final String desc;
+		private final String superName;
+		private final Wipe wipe;
+
+		private WipingMethodVisitor(MethodVisitor target, boolean isStatic, String name, String desc, String superName,
+		                            Wipe wipe){
+			super(Opcodes.ASM5, target);
+			this.target = target;
+			this.isStatic = isStatic;
+			this.name = name;
+			this.desc = desc;
+			this.superName = superName;
+			this.wipe = wipe;
+		}
+
+		@Override
+		public void visitCode(){
+			this.target.visitCode();
+			int maxStack = 0;
+
+			if(this.name.equals("<init>") && this.superName != null){
+				// as in "MethodWiper", a constructor must call "super(...)"
+				String superConstructorDesc = this.wipe.superConstructor.isPresent() ?
+					getMethodDescriptor(this.wipe.superConstructor.get()) : "()V";
+				this.target.visitVarInsn(Opcodes.ALOAD, 0);
+				int stack = 1;
+				for(Type type : Type.getArgumentTypes(superConstructorDesc)){
+					pushDefaultValue(this.target, type);
+					stack += type.getSize();
+				}
+				this.target.visitMethodInsn(Opcodes.INVOKESPECIAL, this.superName, "<init>", superConstructorDesc,
+					false);
+				maxStack = stack;
+			}
+
+			if(this.wipe.throwException){
+				this.target.visitTypeInsn(Opcodes.NEW, RUNTIME_EXCEPTION);
+				this.target.visitInsn(Opcodes.DUP);
+				if(this.wipe.message.isPresent()){
+					this.target.visitLdcInsn(this.wipe.message.get());
+					this.target.visitMethodInsn(Opcodes.INVOKESPECIAL, RUNTIME_EXCEPTION, "<init>",
+						"(Ljava/lang/String;)V", false);
+					maxStack = Math.max(maxStack, 3);
+				} else {
+					this.target.visitMethodInsn(Opcodes.INVOKESPECIAL, RUNTIME_EXCEPTION, "<init>", "()V", false);
+					maxStack = Math.max(maxStack, 2);
+				}
+				this.target.visitInsn(Opcodes.ATHROW);
+			} else {
+				Type returnType = Type.getReturnType(this.desc);
+				if(returnType.getSort() != Type.VOID){
+					pushDefaultValue(this.target, returnType);
+				}
+				this.target.visitInsn(returnType.getOpcode(Opcodes.IRETURN));
+				maxStack = Math.max(maxStack, returnType.getSize());
+			}
+
+			// the arguments' size includes "this"
+			int maxLocals = (Type.getArgumentsAndReturnSizes(this.desc) >> 2) - (this.isStatic ? 1 : 0);
+			this.target.visitMaxs(maxStack, maxLocals);
+
+			// drop the original code
+			this.mv = null;
+		}
+
+		@Override
+		public void visitEnd(){
+			this.target.visitEnd();
+		}
+	}
+
+	private static void pushDefaultValue(MethodVisitor methodVisitor, Type type){
+		switch(type.getSort()){
+			case Type.LONG:
+				methodVisitor.visitInsn(Opcodes.LCONST_0);
+				break;
+			case Type.FLOAT:
+				methodVisitor.visitInsn(Opcodes.FCONST_0);
+				break;
+			case Type.DOUBLE:
+				methodVisitor.visitInsn(Opcodes.DCONST_0);
+				break;
+			case Type.BOOLEAN:
+			case Type.CHAR:
+			case Type.BYTE:
+			case Type.SHORT:
+			case Type.INT:
+				methodVisitor.visitInsn(Opcodes.ICONST_0);
+				break;
+			default:
+				methodVisitor.visitInsn(Opcodes.ACONST_NULL);
+		}
+	}
+
+	private static String[] getClassNames(Type[] types){
+		String[] toReturn = new String[types.length];
+		for(int i=0; i<types.length; i++){
+			toReturn[i] = types[i].getClassName();
+		}
+		return toReturn;
+	}
+
+	/*package*/ static String getMethodDescriptor(MethodData method){
+		StringBuilder descriptor = new StringBuilder("(");
+		for(String arg : method.getArgs()){
+			descriptor.append(getDescriptor(arg));
+		}
+		descriptor.append(")").append(getDescriptor(method.getReturnType()));
+		return descriptor.toString();
+	}
+
+	/*
+	The descriptor of a type named as in "Type.getClassName()" (e.g., "int", "java.lang.String[]").
+	 */
+	/*package*/ static String getDescriptor(String typeName){
+		if(typeName.endsWith("[]")){
+			return "[" + getDescriptor(typeName.substring(0, typeName.length() - 2));
+		}
+		switch(typeName){
+			case "void": return "V";
+			case "boolean": return "Z";
+			case "char": return "C";
+			case "byte": return "B";
+			case "short": return "S";
+			case "int": return "I";
+			case "float": return "F";
+			case "long": return "J";
+			case "double": return "D";
+			default: return "L" + typeName.replace('.', '/') + ";";
+		}
+	}
+}
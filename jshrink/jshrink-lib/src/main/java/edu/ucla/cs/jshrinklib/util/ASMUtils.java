@@ -1,10 +1,7 @@
 package edu.ucla.cs.jshrinklib.util;
 
 import java.io.*;
-import java.util.Enumeration;
-import java.util.Map;
-import java.util.Set;
-import java.util.jar.JarEntry;
+import java.util.*;
 import java.util.jar.JarFile;
 
 import edu.ucla.cs.jshrinklib.reachability.ASMClassVisitor;
@@ -18,26 +15,61 @@ import org.objectweb.asm.Type;
 
 public class ASMUtils {
 
+	/*
+	The classes, methods, fields, field references and virtual calls found in one chunk of a ClassScanner scan. Fields and
+	field references are only collected if the caller collects them.
+	 */
+	private static class ScanResult {
+		private final Set<String> classes = new HashSet<String>();
+		private final Set<MethodData> methods = new HashSet<MethodData>();
+		private final Set<FieldData> fields;
+		private final Map<MethodData, Set<FieldData>> fieldReferences;
+		private final Map<MethodData, Set<MethodData>> virtualMethodCalls = new HashMap<MethodData, Set<MethodData>>();
+
+		private ScanResult(boolean collectFields, boolean collectFieldReferences){
+			this.fields = collectFields ? new HashSet<FieldData>() : null;
+			this.fieldReferences = collectFieldReferences ? new HashMap<MethodData, Set<FieldData>>() : null;
+		}
+
+		private void visit(InputStream classFile) throws IOException {
+			ClassReader cr = new ClassReader(classFile);
+			cr.accept(new ASMClassVisitor(Opcodes.ASM5, classes, methods, fields, fieldReferences, virtualMethodCalls),
+				ClassReader.SKIP_DEBUG);
+		}
+
+		private void mergeInto(Set<String> classes, Set<MethodData> methods, Set<FieldData> fields,
+		                       Map<MethodData, Set<FieldData>> fieldReferences,
+		                       Map<MethodData, Set<MethodData>> virtualMethodCalls){
+			classes.addAll(this.classes);
+			methods.addAll(this.methods);
+			if(fields != null){
+				fields.addAll(this.fields);
+			}
+			if(fieldReferences != null){
+				fieldReferences.putAll(this.fieldReferences);
+			}
+			virtualMethodCalls.putAll(this.virtualMethodCalls);
+		}
+	}
+
 	public static void readClassFromJarFile(JarFile jarFile, Set<String> classes,
     		Set<MethodData> methods, Set<FieldData> fields, Map<MethodData, Set<FieldData>> fieldReferences, Map<MethodData, Set<MethodData>> virtualMethodCalls) {
-        final Enumeration<JarEntry> entries = jarFile.entries();
-        while (entries.hasMoreElements()) {
-        	final JarEntry entry = entries.nextElement();
-        	// there is a module-info.class in jars built by Java 9
-            if (entry.getName().endsWith(".class") && !entry.getName().equals("module-info")) {
-            	try {
-                	ClassReader cr = new ClassReader(jarFile.getInputStream(entry));
-                	cr.accept(new ASMClassVisitor(Opcodes.ASM5, classes, methods, fields, fieldReferences, virtualMethodCalls), ClassReader.SKIP_DEBUG);
-                } catch (IllegalArgumentException ex) {
-                	continue;
-                } catch (IOException ex){
-	                //Not sure if here is the best way to handle it, but ok for the meantime
-                    System.out.println("An an exception was thrown when reading data from .jar file:");
-                    ex.printStackTrace();
-                    System.exit(1);
-                }
-            }
-        }
+		List<ScanResult> results = ClassScanner.scanJar(jarFile,
+			() -> new ScanResult(fields != null, fieldReferences != null), (result, classFile) -> {
+			try (InputStream in = classFile.openStream()) {
+				result.visit(in);
+			} catch (IllegalArgumentException ex) {
+				// not a class file ASM can read, skip it
+			} catch (IOException ex){
+				//Not sure if here is the best way to handle it, but ok for the meantime
+				System.out.println("An an exception was thrown when reading data from .jar file:");
+				ex.printStackTrace();
+				System.exit(1);
+			}
+		});
+		for(ScanResult result : results){
+			result.mergeInto(classes, methods, fields, fieldReferences, virtualMethodCalls);
+		}
     }
     
     public static void readClassFromDirectory(File dirPath, Set<String> classes,
@@ -48,24 +80,18 @@ public class ASMUtils {
     		System.out.println(dirPath.getAbsolutePath() + " does not exist.");
     		return;
     	}
-    	
-    	for(File f : dirPath.listFiles()) {
-    		if(f.isDirectory()) {
-    			readClassFromDirectory(f, classes, methods, fields, fieldReferences, virtualMethodCalls);
-    		} else {
-    			String fName = f.getName();
-    			if(fName.endsWith(".class")) {
-    				try {
-    					FileInputStream fis = new FileInputStream(f);
-						ClassReader cr = new ClassReader(fis);
-						cr.accept(new ASMClassVisitor(Opcodes.ASM5, classes, methods, fields, fieldReferences, virtualMethodCalls), ClassReader.SKIP_DEBUG);
-						fis.close();
-					} catch (IOException e) {
-						e.printStackTrace();
-					}
-    			}
-    		}
-    	}
+
+		List<ScanResult> results = ClassScanner.scanDirectory(dirPath,
+			() -> new ScanResult(fields != null, fieldReferences != null), (result, classFile) -> {
+			try (InputStream in = classFile.openStream()) {
+				result.visit(in);
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		});
+		for(ScanResult result : results){
+			result.mergeInto(classes, methods, fields, fieldReferences, virtualMethodCalls);
+		}
     }
 
     public static void readClass(File dir, Set<String> classes, Set<MethodData> methods, Set<FieldData> fields,
@@ -74,9 +100,7 @@ public class ASMUtils {
 		    if (dir.isDirectory()) {
 			    readClassFromDirectory(dir, classes, methods, fields, fieldReferences, virtualMethodCalls);
 		    } else if (dir.getName().endsWith(".jar")) {
-			    JarFile j = null;
-			    try {
-				    j = new JarFile(dir);
+			    try (JarFile j = new JarFile(dir)) {
 				    readClassFromJarFile(j, classes, methods, fields, fieldReferences, virtualMethodCalls);
 			    } catch (IOException e) {
 				    e.printStackTrace();
@@ -119,9 +143,7 @@ public class ASMUtils {
 	public static void writeClass(String filePath, ClassWriter writer) {
 		File originalFile = new File(filePath);
 		try {
-			FileOutputStream outputStream = new FileOutputStream(originalFile);
-			outputStream.write(writer.toByteArray());
-			outputStream.close();
+			ClassFileUtils.replaceFile(originalFile, writer.toByteArray());
 		} catch (IOException e) {
 			e.printStackTrace();
 		}
@@ -7,21 +7,35 @@ import net.lingala.zip4j.model.ZipParameters;
 import net.lingala.zip4j.progress.ProgressMonitor;
 import org.apache.commons.io.FileUtils;
 import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.MethodVisitor;
 import org.objectweb.asm.Opcodes;
 import soot.SootClass;
+import soot.SootField;
 import soot.SootMethod;
+import soot.baf.BafASMBackend;
 import soot.jimple.JasminClass;
+import soot.options.Options;
 import soot.util.JasminOutputStream;
+import soot.util.backend.ASMBackendUtils;
+import soot.util.backend.SootASMClassWriter;
 
 import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.*;
-import java.util.jar.JarEntry;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.jar.JarFile;
 
 public class ClassFileUtils {
 
 	public static final String ORIGINAL_FILE_POST_FIX="_original"; //package private as used by tests
 
+	// jar content digest -> the sum of the uncompressed sizes of its entries
+	private static final Map<String, Long> decompressedJarSizes = new ConcurrentHashMap<String, Long>();
+
 	public static long getSize(File file) throws IOException{
 
 		if(!file.exists()){
@@ -40,15 +54,56 @@ public class ClassFileUtils {
 		return length;
 	}
 
-	//SPECIAL NOTE!!!! : This assumes all jars in the classpaths are decompressed!
-	public static List<File> getClassFile(SootClass sootClass, Collection<File> paths) {
-		String classPath = sootClass.getName().replaceAll("\\.", File.separator) + ".class";
+	/**
+	 * Returns the size of a classpath entry as if it were decompressed: the sum of the uncompressed sizes of the files in
+	 * a jar, or, for a directory, its size as given by "getSize(File)". Jar sizes are read from the jar's central
+	 * directory, and are remembered per jar content digest, so they are only read again once the jar has been rewritten.
+	 */
+	public static long getDecompressedSize(File file) throws IOException {
+		if(!file.exists()){
+			throw new IOException("File '" + file.getAbsolutePath() + " does not exist");
+		}
+
+		if(file.isDirectory()){
+			return getSize(file);
+		}
+
+		String digest = DigestUtils.sha256(file);
+		Long size = decompressedJarSizes.get(digest);
+		if(size != null){
+			return size;
+		}
+
+		java.util.zip.ZipFile zipFile;
+		try {
+			zipFile = new java.util.zip.ZipFile(file);
+		} catch (java.util.zip.ZipException e) {
+			// not a jar, as in "extractJars"
+			return file.length();
+		}
+		long length = 0;
+		try {
+			Enumeration<? extends java.util.zip.ZipEntry> entries = zipFile.entries();
+			while(entries.hasMoreElements()){
+				java.util.zip.ZipEntry entry = entries.nextElement();
+				if(!entry.isDirectory()){
+					length += entry.getSize();
+				}
+			}
+		} finally {
+			zipFile.close();
+		}
+		decompressedJarSizes.put(digest, length);
+		return length;
+	}
 
+	//SPECIAL NOTE!!!! : This only returns class files in directories (i.e., classes in jars which have not been
+	//decompressed are not returned).
+	public static List<File> getClassFile(SootClass sootClass, Collection<File> paths) {
 		ArrayList<File> files = new ArrayList<>();
-		for (File p : paths) {
-			File test = new File(p + File.separator + classPath);
-			if (test.exists()) {
-				files.add(test);
+		for (ClassPathIndex.Location location : ClassPathIndex.find(sootClass.getName(), paths)) {
+			if (location.getClassPathEntry().isDirectory()) {
+				files.add(location.getClassFile().get());
 			}
 		}
 
@@ -56,35 +111,9 @@ public class ClassFileUtils {
 	}
 
 	public static List<File> classInPath(String qualifiedClassName, Collection<File> paths){
-		String classFile = qualifiedClassName.replaceAll("\\.", File.separator) + ".class";
-
 		List<File> toReturn = new ArrayList<File>();
-		for(File path : paths){
-			if(path.isDirectory()){
-				if((new File(path.getAbsolutePath()
-					+ File.separator + classFile).exists())){
-					toReturn.add(path);
-				}
-			} else if(path.getAbsolutePath().endsWith(classFile)){
-				toReturn.add(path);
-			} else { //... check to see if it's a jar file
-				JarFile jarFile = null;
-				try{
-					jarFile = new JarFile(path);
-				}catch(IOException e){
-					continue;
-				}
-				assert(jarFile != null);
-
-				final Enumeration<JarEntry> entries = jarFile.entries();
-				while (entries.hasMoreElements()) {
-					final JarEntry entry = entries.nextElement();
-					String entryName = entry.getName();
-					if(entryName.equals(classFile)){
-						toReturn.add(path);
-					}
-				}
-			}
+		for(ClassPathIndex.Location location : ClassPathIndex.find(qualifiedClassName, paths)){
+			toReturn.add(location.getClassPathEntry());
 		}
 
 		return toReturn;
@@ -195,8 +224,77 @@ public class ClassFileUtils {
 	}
 
 	public static void writeClass(SootClass sootClass, File outputFile) throws IOException {
+		replaceFile(outputFile, getClassBytes(sootClass));
+	}
 
-		//I don't fully understand why, but you need to retrieve the methods before writing to the file
+	/**
+	 * Writes the bytes to a new file which then replaces the given file, rather than writing into the given file.
+	 * Checkpoints (see "Checkpoint") hard-link the class files and jars of the project, so writing into one would
+	 * change it in every checkpoint sharing it.
+	 * @param file The file to replace (or create)
+	 * @param bytes The content of the file
+	 */
+	public static void replaceFile(File file, byte[] bytes) throws IOException {
+		File temp = File.createTempFile(file.getName(), ".tmp", file.getAbsoluteFile().getParentFile());
+		try {
+			Files.write(temp.toPath(), bytes);
+			if(file.exists()){
+				try {
+					Files.setPosixFilePermissions(temp.toPath(), Files.getPosixFilePermissions(file.toPath()));
+				} catch (UnsupportedOperationException e){
+					// not a POSIX file system, the temporary file keeps the default permissions
+				}
+			}
+			Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e){
+			temp.delete();
+			throw e;
+		}
+	}
+
+	public static byte[] getClassBytes(SootClass sootClass) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		writeClass(sootClass, bytes);
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Returns the class files of the given classes, as "getClassBytes(SootClass)" does for each. The Jasmin code of the
+	 * classes is generated one at a time, on this thread: it is not thread-safe, even for classes sharing nothing, as the
+	 * graphs built for it (e.g., the ExceptionalUnitGraphs of Jasmin's register allocation) update Soot's shared caches,
+	 * such as ThrowableSet's. The Jasmin code is then assembled into class files in parallel on the common ForkJoinPool,
+	 * as the assembler does not use Soot.
+	 *
+	 * @param sootClasses The classes to write
+	 * @param exceptions The exception thrown for each class which could not be written is put here, by class name
+	 * @return The class files of the classes which could be written, by class name
+	 */
+	public static Map<String, byte[]> getClassBytes(Collection<SootClass> sootClasses,
+	                                                Map<String, Exception> exceptions){
+		Map<String, byte[]> jasminCode = new HashMap<String, byte[]>();
+		for(SootClass sootClass : sootClasses){
+			try {
+				jasminCode.put(sootClass.getName(), getJasminCode(sootClass));
+			} catch (Exception e){
+				exceptions.put(sootClass.getName(), e);
+			}
+		}
+
+		Map<String, byte[]> toReturn = new ConcurrentHashMap<String, byte[]>();
+		Map<String, Exception> failed = new ConcurrentHashMap<String, Exception>();
+		jasminCode.entrySet().parallelStream().forEach(entry -> {
+			try {
+				toReturn.put(entry.getKey(), assemble(entry.getValue()));
+			} catch (Exception e){
+				failed.put(entry.getKey(), e);
+			}
+		});
+		exceptions.putAll(failed);
+		return toReturn;
+	}
+
+	private static void retrieveBodies(SootClass sootClass){
 		for (SootMethod sootMethod : sootClass.getMethods()) {
 			if(sootMethod.isConcrete()){
 				if(!sootMethod.hasActiveBody()) {
@@ -204,14 +302,236 @@ public class ClassFileUtils {
 				}
 			}
 		}
+	}
 
-		OutputStream streamOut = new JasminOutputStream(new FileOutputStream(outputFile));
-		PrintWriter writerOut = new PrintWriter(new OutputStreamWriter(streamOut));
+	/**
+	 * Returns the class file of a class of which only some method bodies have been changed, re-emitting only those
+	 * methods. The rest of the class file (the other methods' bytecode, the attributes and the constant pool) is copied
+	 * from the class file the class was loaded from; fields and methods no longer in the class are left out. If the class
+	 * has changed in other ways (e.g., its superclass, or a method's modifiers), the whole class is re-emitted, as by
+	 * "getClassBytes(SootClass)".
+	 *
+	 * @param sootClass The class to write
+	 * @param originalClassBytes The class file the class was loaded from
+	 * @param modifiedMethods The methods of the class whose bodies have changed
+	 * @return The new class file
+	 */
+	public static byte[] getClassBytes(SootClass sootClass, byte[] originalClassBytes, Set<SootMethod> modifiedMethods)
+		throws IOException {
+		ClassReader originalReader = new ClassReader(originalClassBytes);
+		Map<String, SootMethod> methods = new HashMap<String, SootMethod>();
+		for(SootMethod sootMethod : sootClass.getMethods()){
+			if(sootMethod.isPhantom()){
+				continue;
+			}
+			if(modifiedMethods.contains(sootMethod) && !sootMethod.hasActiveBody()){
+				return getClassBytes(sootClass);
+			}
+			methods.put(sootMethod.getName() + ASMBackendUtils.toTypeDesc(sootMethod.getParameterTypes(),
+				sootMethod.getReturnType()), sootMethod);
+		}
+		Set<String> fields = new HashSet<String>();
+		for(SootField sootField : sootClass.getFields()){
+			if(sootField.isPhantom()){
+				continue;
+			}
+			fields.add(sootField.getName() + ":" + ASMBackendUtils.toTypeDesc(sootField.getType()));
+		}
+
+		ClassPartition partition = new ClassPartition(methods, fields, modifiedMethods);
+		originalReader.accept(partition, ClassReader.SKIP_CODE);
+		if(!partition.isUnchanged(sootClass)){
+			return getClassBytes(sootClass);
+		}
+
+		byte[] emittedMethods = new byte[0];
+		if(!partition.methodsToEmit.isEmpty()){
+			// the methods are emitted with frames for the original class file version
+			ClassWriter classWriter = new SootASMClassWriter(ClassWriter.COMPUTE_FRAMES);
+			new MethodEmitter(sootClass).generate(new ClassVisitor(Opcodes.ASM5, classWriter) {
+				@Override
+				public void visit(int version, int access, String name, String signature, String superName,
+				                  String[] interfaces){
+					super.visit(originalReader.readInt(4), access, name, signature, superName, interfaces);
+				}
+
+				@Override
+				public MethodVisitor visitMethod(int access, String name, String desc, String signature,
+				                                 String[] exceptions){
+					return partition.methodsToEmit.contains(name + desc) ?
+						super.visitMethod(access, name, desc, signature, exceptions) : null;
+				}
+			});
+			emittedMethods = classWriter.toByteArray();
+		}
+
+		/*
+		Giving the original class reader to the class writer lets ASM copy the constant pool and the bytecode of the
+		methods visited unchanged as they are, rather than reading and re-writing them instruction by instruction.
+		 */
+		ClassWriter classWriter = new ClassWriter(originalReader, 0);
+		byte[] finalEmittedMethods = emittedMethods;
+		originalReader.accept(new ClassVisitor(Opcodes.ASM5, classWriter) {
+			@Override
+			public FieldVisitor visitField(int access, String name, String desc, String signature, Object value){
+				return fields.contains(name + ":" + desc) ? super.visitField(access, name, desc, signature, value) : null;
+			}
+
+			@Override
+			public MethodVisitor visitMethod(int access, String name, String desc, String signature,
+			                                 String[] exceptions){
+				return methods.containsKey(name + desc) && !partition.methodsToEmit.contains(name + desc) ?
+					super.visitMethod(access, name, desc, signature, exceptions) : null;
+			}
+
+			@Override
+			public void visitEnd(){
+				if(finalEmittedMethods.length > 0){
+					new ClassReader(finalEmittedMethods).accept(new ClassVisitor(Opcodes.ASM5) {
+						@Override
+						public MethodVisitor visitMethod(int access, String name, String desc, String signature,
+						                                 String[] exceptions){
+							return classWriter.visitMethod(access, name, desc, signature, exceptions);
+						}
+					}, 0);
+				}
+				super.visitEnd();
+			}
+		}, 0);
+		return classWriter.toByteArray();
+	}
+
+	/*
+	Compares a class file with the Soot class loaded from it: finds the methods to emit (those whose bodies have
+	changed), and whether the rest of the Soot class can be copied from the class file.
+	 */
+	private static class ClassPartition extends ClassVisitor {
+		// the modifiers of a method which Soot keeps as they are in the class file
+		private static final int METHOD_MODIFIERS = Opcodes.ACC_PUBLIC | Opcodes.ACC_PRIVATE | Opcodes.ACC_PROTECTED |
+			Opcodes.ACC_STATIC | Opcodes.ACC_FINAL | Opcodes.ACC_SYNCHRONIZED | Opcodes.ACC_NATIVE | Opcodes.ACC_ABSTRACT;
+
+		private final Map<String, SootMethod> methods;
+		private final Set<String> fields;
+		private final Set<SootMethod> modifiedMethods;
+		private final Set<String> methodsToEmit = new HashSet<String>();
+		private final Set<String> originalMethods = new HashSet<String>();
+		private final Set<String> originalFields = new HashSet<String>();
+		private String superName;
+		private Set<String> interfaces;
+		private boolean modifiersChanged = false;
+
+		private ClassPartition(Map<String, SootMethod> methods, Set<String> fields, Set<SootMethod> modifiedMethods){
+			super(Opcodes.ASM5);
+			this.methods = methods;
+			this.fields = fields;
+			this.modifiedMethods = modifiedMethods;
+			for(Map.Entry<String, SootMethod> entry : methods.entrySet()){
+				if(modifiedMethods.contains(entry.getValue())){
+					this.methodsToEmit.add(entry.getKey());
+				}
+			}
+		}
+
+		@Override
+		public void visit(int version, int access, String name, String signature, String superName,
+		                  String[] interfaces){
+			this.superName = superName;
+			this.interfaces = new HashSet<String>(Arrays.asList(interfaces));
+		}
+
+		@Override
+		public FieldVisitor visitField(int access, String name, String desc, String signature, Object value){
+			this.originalFields.add(name + ":" + desc);
+			return null;
+		}
+
+		@Override
+		public MethodVisitor visitMethod(int access, String name, String desc, String signature, String[] exceptions){
+			this.originalMethods.add(name + desc);
+			SootMethod sootMethod = this.methods.get(name + desc);
+			if(sootMethod != null && !this.modifiedMethods.contains(sootMethod)
+				&& (sootMethod.getModifiers() & METHOD_MODIFIERS) != (access & METHOD_MODIFIERS)){
+				this.modifiersChanged = true;
+			}
+			return null;
+		}
+
+		private boolean isUnchanged(SootClass sootClass){
+			Set<String> interfaces = new HashSet<String>();
+			for(SootClass sootInterface : sootClass.getInterfaces()){
+				interfaces.add(ASMBackendUtils.slashify(sootInterface.getName()));
+			}
+			String superName = sootClass.hasSuperclass() ?
+				ASMBackendUtils.slashify(sootClass.getSuperclass().getName()) : null;
+
+			// apart from the bodies of the methods to emit, methods and fields may only have been removed
+			Set<String> copiedMethods = new HashSet<String>(this.methods.keySet());
+			copiedMethods.removeAll(this.methodsToEmit);
+			return !this.modifiersChanged && Objects.equals(superName, this.superName)
+				&& interfaces.equals(this.interfaces) && this.originalMethods.containsAll(copiedMethods)
+				&& this.originalFields.containsAll(this.fields);
+		}
+	}
+
+	/*
+	Emits a class with Soot's ASM backend, converting to Baf only the bodies of the methods which are visited. The class
+	file version the backend would choose is not used, so it is not worked out from the method bodies.
+	 */
+	private static class MethodEmitter extends BafASMBackend {
+		private MethodEmitter(SootClass sootClass){
+			super(sootClass, Options.java_version_default);
+		}
+
+		@Override
+		protected int getMinJavaVersion(SootMethod method){
+			return Options.java_version_1_1;
+		}
+
+		private void generate(ClassVisitor classVisitor){
+			this.cv = classVisitor;
+			generateByteCode();
+		}
+	}
+
+	private static void writeClass(SootClass sootClass, OutputStream out) throws IOException {
+		out.write(assemble(getJasminCode(sootClass)));
+		out.close();
+	}
+
+	/*
+	The Jasmin code of the given class, which "assemble" turns into its class file. This uses Soot, so it is not
+	thread-safe.
+	 */
+	private static byte[] getJasminCode(SootClass sootClass){
+
+		//I don't fully understand why, but you need to retrieve the methods before writing to the file
+		retrieveBodies(sootClass);
+
+		ByteArrayOutputStream jasminCode = new ByteArrayOutputStream();
+		PrintWriter writerOut = new PrintWriter(new OutputStreamWriter(jasminCode));
 
 		JasminClass jasminClass = new soot.jimple.JasminClass(sootClass);
 		jasminClass.print(writerOut);
 		writerOut.flush();
+		return jasminCode.toByteArray();
+	}
+
+	/*
+	Assembles Jasmin code (see "getJasminCode") into a class file. This does not use Soot, so classes can be assembled in
+	parallel.
+	 */
+	private static byte[] assemble(byte[] jasminCode) throws IOException {
+		ByteArrayOutputStream classBytes = new ByteArrayOutputStream();
+		OutputStream streamOut = new JasminOutputStream(classBytes);
+		streamOut.write(jasminCode);
+		// the Jasmin code is assembled when flushed
+		streamOut.flush();
 		streamOut.close();
+		if(classBytes.size() == 0){
+			// Jasmin reports the errors it finds, and then writes nothing
+			throw new IOException("Jasmin could not assemble the class");
+		}
+		return classBytes.toByteArray();
 	}
 
 	public static Set<File> extractJars(List<File> classPaths) throws IOException{
@@ -0,0 +1,174 @@
+package edu.ucla.cs.jshrinklib.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Locates classes in a classpath made of directories and jars.
+ *
+ * The entries of each jar are read from its central directory the first time the jar is queried, and remembered for
+ * the rest of the run, keyed on the jar's path, length and modification time (as "DigestUtils" does). Later queries are
+ * a hash lookup per jar instead of a walk over every entry. Classes in directories are found by checking whether their
+ * class file exists, as directories are written to directly while JShrink runs. The index may be queried from several
+ * threads at once.
+ */
+public class ClassPathIndex {
+
+	private static final Map<String, JarIndex> jarIndexes = new ConcurrentHashMap<String, JarIndex>();
+
+	private static class JarIndex {
+		private final long length;
+		private final long lastModified;
+		// entry name -> offset of the entry's local header
+		private final Map<String, Long> entries;
+
+		private JarIndex(long length, long lastModified, Map<String, Long> entries){
+			this.length = length;
+			this.lastModified = lastModified;
+			this.entries = entries;
+		}
+	}
+
+	/**
+	 * The position of a class in a classpath.
+	 */
+	public static class Location {
+		private final File classPathEntry;
+		private final String entryName;
+		private final long offset;
+
+		private Location(File classPathEntry, String entryName, long offset){
+			this.classPathEntry = classPathEntry;
+			this.entryName = entryName;
+			this.offset = offset;
+		}
+
+		/**
+		 * @return The classpath entry (a directory, a jar, or the class file itself) containing the class
+		 */
+		public File getClassPathEntry(){
+			return this.classPathEntry;
+		}
+
+		/**
+		 * @return The class file's path relative to the classpath entry (e.g., "com/example/Foo.class")
+		 */
+		public String getEntryName(){
+			return this.entryName;
+		}
+
+		public boolean isInJar(){
+			return this.offset >= 0;
+		}
+
+		/**
+		 * @return The offset of the class's local header in the jar, or -1 if it is not in a jar (or the jar uses Zip64)
+		 */
+		public long getOffset(){
+			return this.offset;
+		}
+
+		/**
+		 * @return The class file, if the class is in a directory
+		 */
+		public Optional<File> getClassFile(){
+			if(this.classPathEntry.isDirectory()){
+				return Optional.of(new File(this.classPathEntry, this.entryName));
+			} else if(this.classPathEntry.getAbsolutePath().endsWith(this.entryName)){
+				return Optional.of(this.classPathEntry);
+			}
+			return Optional.empty();
+		}
+	}
+
+	public static String getEntryName(String qualifiedClassName){
+		return qualifiedClassName.replace('.', '/') + ".class";
+	}
+
+	/**
+	 * Returns every location of the class in the classpath, in the order of the classpath.
+	 *
+	 * @param qualifiedClassName The class (e.g., "com.example.Foo")
+	 * @param paths The classpath
+	 */
+	public static List<Location> find(String qualifiedClassName, Collection<File> paths){
+		String entryName = getEntryName(qualifiedClassName);
+
+		List<Location> toReturn = new ArrayList<Location>();
+		for(File path : paths){
+			if(path.isDirectory()){
+				if(new File(path, entryName).exists()){
+					toReturn.add(new Location(path, entryName, -1));
+				}
+			} else if(path.getAbsolutePath().replace(File.separatorChar, '/').endsWith(entryName)){
+				toReturn.add(new Location(path, entryName, -1));
+			} else {
+				Map<String, Long> entries = getJarEntries(path);
+				if(entries != null && entries.containsKey(entryName)){
+					toReturn.add(new Location(path, entryName, entries.get(entryName)));
+				}
+			}
+		}
+		return toReturn;
+	}
+
+	/**
+	 * @return Whether the class is in at least one entry of the classpath
+	 */
+	public static boolean contains(String qualifiedClassName, Collection<File> paths){
+		String entryName = getEntryName(qualifiedClassName);
+
+		for(File path : paths){
+			if(path.isDirectory()){
+				if(new File(path, entryName).exists()){
+					return true;
+				}
+			} else if(path.getAbsolutePath().replace(File.separatorChar, '/').endsWith(entryName)){
+				return true;
+			} else {
+				Map<String, Long> entries = getJarEntries(path);
+				if(entries != null && entries.containsKey(entryName)){
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/*
+	Returns the entries of the jar, or null if the path is not a jar (e.g., it does not exist).
+	 */
+	private static Map<String, Long> getJarEntries(File jar){
+		String path = jar.getAbsolutePath();
+		long length = jar.length();
+		long lastModified = jar.lastModified();
+		JarIndex jarIndex = jarIndexes.get(path);
+		if(jarIndex != null && jarIndex.length == length && jarIndex.lastModified == lastModified){
+			return jarIndex.entries;
+		}
+
+		if(!jar.isFile()){
+			return null;
+		}
+
+		Map<String, Long> entries;
+		try {
+			entries = Collections.unmodifiableMap(JarRewriter.readEntryOffsets(jar));
+		} catch (IOException e){
+			// not a jar, as in "ClassFileUtils.extractJars"
+			entries = Collections.emptyMap();
+		}
+		jarIndexes.put(path, new JarIndex(length, lastModified, entries));
+		return entries;
+	}
+
+	/**
+	 * Forgets the entries of a jar, which will be read again the next time it is queried. Code which rewrites a jar in
+	 * place should call this afterwards.
+	 */
+	public static void invalidate(File jar){
+		jarIndexes.remove(jar.getAbsolutePath());
+	}
+}
@@ -0,0 +1,340 @@
+package edu.ucla.cs.jshrinklib.util;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import soot.SootClass;
+import soot.SootMethod;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiFunction;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.stream.Collectors;
+
+/**
+ * Writes and removes classes in a classpath made of directories and jars, without extracting the jars.
+ *
+ * Classes in directories are written (or deleted) immediately, as "ClassFileUtils.writeClass/removeClass" do. Changes to
+ * classes in jars are collected per jar, and each changed jar is rewritten once, by "commit()", with a JarRewriter.
+ */
+public class ClassPathWriter {
+
+	private final List<File> directories = new ArrayList<File>();
+	private final Map<String, List<JarRewriter>> jarsByEntry = new HashMap<String, List<JarRewriter>>();
+	private final List<JarRewriter> jars = new ArrayList<JarRewriter>();
+
+	public ClassPathWriter(Collection<File> classPath) throws IOException {
+		for(File path : classPath){
+			if(path.isDirectory()){
+				this.directories.add(path);
+				continue;
+			}
+
+			JarFile jarFile;
+			try {
+				jarFile = new JarFile(path);
+			} catch (IOException e) {
+				// neither a directory nor a jar (e.g., does not exist), as in "ClassFileUtils.extractJars"
+				continue;
+			}
+
+			JarRewriter jarRewriter = new JarRewriter(path);
+			this.jars.add(jarRewriter);
+			try {
+				Enumeration<JarEntry> entries = jarFile.entries();
+				while(entries.hasMoreElements()){
+					String name = entries.nextElement().getName();
+					if(name.endsWith(".class")){
+						this.jarsByEntry.computeIfAbsent(name, k -> new ArrayList<JarRewriter>()).add(jarRewriter);
+					}
+				}
+			} finally {
+				jarFile.close();
+			}
+		}
+	}
+
+	/*
+	Where a class is in the classpath: its class files in the directories, and the jars with an entry for it (including
+	entries removed by this writer).
+	 */
+	private static class ClassLocation {
+		private final String entryName;
+		private final List<File> classFiles = new ArrayList<File>();
+		private final List<JarRewriter> jarRewriters;
+
+		private ClassLocation(String className, List<JarRewriter> jarRewriters){
+			this.entryName = ClassPathIndex.getEntryName(className);
+			this.jarRewriters = jarRewriters;
+		}
+
+		private boolean isEmpty(){
+			return this.classFiles.isEmpty() && this.jarRewriters.isEmpty();
+		}
+
+		/*
+		Writes the class file to each of its class files in the directories and to each of its jars.
+		 */
+		private void put(byte[] classBytes) throws IOException {
+			for(File classFile : this.classFiles){
+				ClassFileUtils.replaceFile(classFile, classBytes);
+			}
+			putInJars(classBytes);
+		}
+
+		private void putInJars(byte[] classBytes){
+			for(JarRewriter jarRewriter : this.jarRewriters){
+				jarRewriter.putEntry(this.entryName, classBytes);
+			}
+		}
+
+		private void remove() throws IOException {
+			for(File classFile : this.classFiles){
+				FileUtils.forceDelete(classFile);
+			}
+			for(JarRewriter jarRewriter : this.jarRewriters){
+				jarRewriter.removeEntry(this.entryName);
+			}
+		}
+	}
+
+	private ClassLocation locate(String className){
+		ClassLocation toReturn = new ClassLocation(className, this.jarsByEntry.getOrDefault(
+			ClassPathIndex.getEntryName(className), Collections.<JarRewriter>emptyList()));
+		for(ClassPathIndex.Location location : ClassPathIndex.find(className, this.directories)){
+			toReturn.classFiles.add(location.getClassFile().get());
+		}
+		return toReturn;
+	}
+
+	/*
+	As "locate", but fails if the class is nowhere in the classpath.
+	 */
+	private ClassLocation locateExisting(String className) throws IOException {
+		ClassLocation toReturn = locate(className);
+		if(toReturn.isEmpty()){
+			throw new IOException("Cannot find file for class '" + className + "'");
+		}
+		return toReturn;
+	}
+
+	/**
+	 * Writes the given classes, each re-emitted in full by Soot. The Jasmin code of the classes is generated one at a
+	 * time, and then assembled in parallel (see "ClassFileUtils.getClassBytes(Collection, Map)"). The class files are
+	 * then written as "writeClasses(Map)" does. A class which cannot be generated or written does not stop the others
+	 * from being written.
+	 *
+	 * @return The exception thrown for each class which could not be written, by class name
+	 */
+	public Map<String, Exception> writeClasses(Collection<SootClass> sootClasses){
+		Map<String, Exception> exceptions = new TreeMap<String, Exception>();
+		exceptions.putAll(writeClasses(ClassFileUtils.getClassBytes(sootClasses, exceptions)));
+		return exceptions;
+	}
+
+	/**
+	 * Writes class files, already generated, as "writeClass(String, byte[])" does. The class files in directories are
+	 * written in parallel on the common ForkJoinPool, each to its own file; the jar entries are set on this thread. A
+	 * class which cannot be written does not stop the others from being written.
+	 *
+	 * @param classFiles The class files, by class name
+	 * @return The exception thrown for each class which could not be written, by class name
+	 */
+	public Map<String, Exception> writeClasses(Map<String, byte[]> classFiles){
+		Map<String, Exception> exceptions = new ConcurrentHashMap<String, Exception>();
+		List<Map.Entry<String, File>> filesToWrite = new ArrayList<Map.Entry<String, File>>();
+		for(Map.Entry<String, byte[]> classFile : new TreeMap<String, byte[]>(classFiles).entrySet()){
+			String className = classFile.getKey();
+			ClassLocation location;
+			try {
+				location = locateExisting(className);
+			} catch (IOException e){
+				exceptions.put(className, e);
+				continue;
+			}
+
+			for(File file : location.classFiles){
+				filesToWrite.add(new AbstractMap.SimpleEntry<String, File>(className, file));
+			}
+			location.putInJars(classFile.getValue());
+		}
+
+		filesToWrite.parallelStream().forEach(fileToWrite -> {
+			try {
+				ClassFileUtils.replaceFile(fileToWrite.getValue(), classFiles.get(fileToWrite.getKey()));
+			} catch (IOException e){
+				exceptions.put(fileToWrite.getKey(), e);
+			}
+		});
+		return new TreeMap<String, Exception>(exceptions);
+	}
+
+	/**
+	 * Writes a class of which only the bodies of the given methods have changed (besides removed methods and fields).
+	 * Only these methods are re-emitted by Soot; the rest of the class file is copied from its current content, as in
+	 * "ClassFileUtils.getClassBytes(SootClass, byte[], Set)".
+	 */
+	public void writeClass(SootClass sootClass, Set<SootMethod> modifiedMethods) throws IOException {
+		ClassLocation location = locateExisting(sootClass.getName());
+
+		byte[] originalClassBytes;
+		if(!location.classFiles.isEmpty()){
+			originalClassBytes = Files.readAllBytes(location.classFiles.get(0).toPath());
+		} else {
+			originalClassBytes = readEntry(location.jarRewriters.get(0), location.entryName);
+		}
+
+		location.put(ClassFileUtils.getClassBytes(sootClass, originalClassBytes, modifiedMethods));
+	}
+
+	/*
+	The current content of a jar entry: as last written by this writer, or else as in the jar.
+	 */
+	private static byte[] readEntry(JarRewriter jarRewriter, String entryName) throws IOException {
+		Optional<byte[]> updated = jarRewriter.getUpdatedEntry(entryName);
+		if(updated.isPresent()){
+			return updated.get();
+		}
+		try(JarFile jarFile = new JarFile(jarRewriter.getJar());
+		    InputStream in = jarFile.getInputStream(jarFile.getJarEntry(entryName))){
+			return IOUtils.toByteArray(in);
+		}
+	}
+
+	/**
+	 * Returns the current content of the class files of the given classes: as last written by this writer, or else as
+	 * found in the classpath. Where a class is in several classpath entries, the first one found is read. Classes which
+	 * are not in the classpath, or have been removed, are left out. Each jar is opened once.
+	 */
+	public Map<String, byte[]> readClasses(Collection<String> classNames) throws IOException {
+		Map<String, byte[]> toReturn = new HashMap<String, byte[]>();
+		Map<JarRewriter, List<String>> toReadFromJars = new LinkedHashMap<JarRewriter, List<String>>();
+		for(String className : classNames){
+			ClassLocation location = locate(className);
+			if(!location.classFiles.isEmpty()){
+				toReturn.put(className, Files.readAllBytes(location.classFiles.get(0).toPath()));
+				continue;
+			}
+			for(JarRewriter jarRewriter : location.jarRewriters){
+				if(jarRewriter.isRemoved(location.entryName)){
+					continue;
+				}
+				Optional<byte[]> updated = jarRewriter.getUpdatedEntry(location.entryName);
+				if(updated.isPresent()){
+					toReturn.put(className, updated.get());
+				} else {
+					toReadFromJars.computeIfAbsent(jarRewriter, k -> new ArrayList<String>()).add(className);
+				}
+				break;
+			}
+		}
+
+		for(Map.Entry<JarRewriter, List<String>> entry : toReadFromJars.entrySet()){
+			try(JarFile jarFile = new JarFile(entry.getKey().getJar())){
+				for(String className : entry.getValue()){
+					JarEntry jarEntry = jarFile.getJarEntry(ClassPathIndex.getEntryName(className));
+					try(InputStream in = jarFile.getInputStream(jarEntry)){
+						toReturn.put(className, IOUtils.toByteArray(in));
+					}
+				}
+			}
+		}
+		return toReturn;
+	}
+
+	/**
+	 * Writes a class file, already generated, to every classpath entry containing the class.
+	 */
+	public void writeClass(String className, byte[] classBytes) throws IOException {
+		locateExisting(className).put(classBytes);
+	}
+
+	public void removeClass(SootClass sootClass) throws IOException {
+		locateExisting(sootClass.getName()).remove();
+	}
+
+	/**
+	 * Applies a transformation to the class files of the given classes. Each class file is transformed from its current
+	 * content: as last written by this writer, or else as found in the classpath. The class files are read and written
+	 * on this thread, and transformed in parallel on the common ForkJoinPool.
+	 *
+	 * @param classNames The classes to transform. Classes which are not in the classpath, or have been removed, are
+	 *                   skipped
+	 * @param transformation Returns the new content of a class file, given the class and its current content. Called
+	 *                       concurrently
+	 */
+	public void transformClasses(Collection<String> classNames, BiFunction<String, byte[], byte[]> transformation)
+		throws IOException {
+		List<ClassFileContent> contents = new ArrayList<ClassFileContent>();
+		Map<JarRewriter, List<ClassFileContent>> toReadFromJars = new LinkedHashMap<JarRewriter, List<ClassFileContent>>();
+		for(String className : classNames){
+			ClassLocation location = locate(className);
+			for(File classFile : location.classFiles){
+				contents.add(new ClassFileContent(className, classFile, null, Files.readAllBytes(classFile.toPath())));
+			}
+			for(JarRewriter jarRewriter : location.jarRewriters){
+				if(jarRewriter.isRemoved(location.entryName)){
+					continue;
+				}
+				Optional<byte[]> updated = jarRewriter.getUpdatedEntry(location.entryName);
+				ClassFileContent content = new ClassFileContent(className, null, jarRewriter, updated.orElse(null));
+				contents.add(content);
+				if(!updated.isPresent()){
+					toReadFromJars.computeIfAbsent(jarRewriter, k -> new ArrayList<ClassFileContent>()).add(content);
+				}
+			}
+		}
+
+		for(Map.Entry<JarRewriter, List<ClassFileContent>> entry : toReadFromJars.entrySet()){
+			try(JarFile jarFile = new JarFile(entry.getKey().getJar())){
+				for(ClassFileContent content : entry.getValue()){
+					JarEntry jarEntry = jarFile.getJarEntry(ClassPathIndex.getEntryName(content.className));
+					try(InputStream in = jarFile.getInputStream(jarEntry)){
+						content.bytes = IOUtils.toByteArray(in);
+					}
+				}
+			}
+		}
+
+		// A parallel stream of a list keeps the encounter order in "collect"
+		List<byte[]> transformed = contents.parallelStream()
+			.map(content -> transformation.apply(content.className, content.bytes)).collect(Collectors.toList());
+
+		for(int i=0; i<contents.size(); i++){
+			ClassFileContent content = contents.get(i);
+			if(content.file != null){
+				ClassFileUtils.replaceFile(content.file, transformed.get(i));
+			} else {
+				content.jarRewriter.putEntry(ClassPathIndex.getEntryName(content.className), transformed.get(i));
+			}
+		}
+	}
+
+	private static class ClassFileContent {
+		private final String className;
+		private final File file;
+		private final JarRewriter jarRewriter;
+		private byte[] bytes;
+
+		private ClassFileContent(String className, File file, JarRewriter jarRewriter, byte[] bytes){
+			this.className = className;
+			this.file = file;
+			this.jarRewriter = jarRewriter;
+			this.bytes = bytes;
+		}
+	}
+
+	/**
+	 * Rewrites every jar in which a class has been written or removed.
+	 */
+	public void commit() throws IOException {
+		for(JarRewriter jarRewriter : this.jars){
+			jarRewriter.rewrite();
+		}
+	}
+}
@@ -0,0 +1,154 @@
+package edu.ucla.cs.jshrinklib.util;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.stream.Collectors;
+
+/**
+ * Visits the class files of a jar or a directory on the common ForkJoinPool.
+ *
+ * The class files are split into chunks, in the order a sequential scan would visit them (the jar's entry order, or a
+ * depth-first walk of the directory in "File.listFiles()" order). Each chunk is visited by one worker into its own
+ * accumulator, and the accumulators are returned in chunk order. Merging them in that order therefore gives exactly the
+ * same result as visiting every class file, in turn, into a single accumulator, without the workers ever sharing a
+ * collection.
+ */
+public class ClassScanner {
+
+	// Below this many class files, the scan is not worth distributing
+	private static final int MIN_CHUNK_SIZE = 32;
+
+	/**
+	 * A class file within a jar or a directory. Its content is only read if requested, and may be read from any thread.
+	 */
+	public static class ClassFile {
+		private final String name;
+		private final File file;
+		private final JarFile jarFile;
+		private final JarEntry jarEntry;
+
+		private ClassFile(String name, File file, JarFile jarFile, JarEntry jarEntry){
+			this.name = name;
+			this.file = file;
+			this.jarFile = jarFile;
+			this.jarEntry = jarEntry;
+		}
+
+		/**
+		 * @return The path of the class file relative to the jar or directory root, separated by "/"
+		 */
+		public String getName(){
+			return this.name;
+		}
+
+		/**
+		 * @return The class file, or null if the class file is a jar entry
+		 */
+		public File getFile(){
+			return this.file;
+		}
+
+		public InputStream openStream() throws IOException {
+			if(this.jarEntry != null){
+				return this.jarFile.getInputStream(this.jarEntry);
+			}
+			return new FileInputStream(this.file);
+		}
+	}
+
+	/**
+	 * Scans a jar or a directory.
+	 *
+	 * @param classPath The jar or directory
+	 * @param newAccumulator Creates the accumulator of a chunk
+	 * @param visitor Visits a class file into the accumulator of its chunk. Called concurrently for different chunks
+	 * @return The accumulators, in the order of their chunks
+	 * @throws IOException If the class path is neither a directory nor a jar, or the jar cannot be opened
+	 */
+	public static <A> List<A> scan(File classPath, Supplier<A> newAccumulator, BiConsumer<A, ClassFile> visitor)
+		throws IOException {
+		if(classPath.isDirectory()){
+			return scanDirectory(classPath, newAccumulator, visitor);
+		} else if(classPath.getName().endsWith(".jar")){
+			try(JarFile jarFile = new JarFile(classPath)){
+				return scanJar(jarFile, newAccumulator, visitor);
+			}
+		}
+		throw new IOException("Cannot read classes from '" + classPath.getAbsolutePath() +
+			"'. It is neither a directory or a jar.");
+	}
+
+	/**
+	 * Scans the class files of a jar. The jar must remain open until this method returns.
+	 */
+	public static <A> List<A> scanJar(JarFile jarFile, Supplier<A> newAccumulator, BiConsumer<A, ClassFile> visitor){
+		List<ClassFile> classFiles = new ArrayList<ClassFile>();
+		Enumeration<JarEntry> entries = jarFile.entries();
+		while(entries.hasMoreElements()){
+			JarEntry entry = entries.nextElement();
+			// there is a module-info.class in jars built by Java 9
+			if(entry.getName().endsWith(".class") && !entry.getName().endsWith("module-info.class")){
+				classFiles.add(new ClassFile(entry.getName(), null, jarFile, entry));
+			}
+		}
+		return visit(classFiles, newAccumulator, visitor);
+	}
+
+	/**
+	 * Scans the class files of a directory, and of its sub-directories.
+	 */
+	public static <A> List<A> scanDirectory(File directory, Supplier<A> newAccumulator,
+	                                        BiConsumer<A, ClassFile> visitor){
+		List<ClassFile> classFiles = new ArrayList<ClassFile>();
+		listClassFiles(directory, "", classFiles);
+		return visit(classFiles, newAccumulator, visitor);
+	}
+
+	private static void listClassFiles(File directory, String prefix, List<ClassFile> classFiles){
+		File[] files = directory.listFiles();
+		if(files == null){
+			return;
+		}
+		for(File f : files){
+			if(f.isDirectory()){
+				listClassFiles(f, prefix + f.getName() + "/", classFiles);
+			} else if(f.getName().endsWith(".class")){
+				classFiles.add(new ClassFile(prefix + f.getName(), f, null, null));
+			}
+		}
+	}
+
+	private static <A> List<A> visit(List<ClassFile> classFiles, Supplier<A> newAccumulator,
+	                                 BiConsumer<A, ClassFile> visitor){
+		int parallelism = ForkJoinPool.getCommonPoolParallelism();
+		// a few chunks per worker, so the workers stay busy when some classes take longer than others
+		int chunkSize = Math.max(MIN_CHUNK_SIZE, (classFiles.size() + parallelism * 4 - 1) / (parallelism * 4));
+
+		List<List<ClassFile>> chunks = new ArrayList<List<ClassFile>>();
+		for(int i=0; i<classFiles.size(); i+=chunkSize){
+			chunks.add(classFiles.subList(i, Math.min(classFiles.size(), i + chunkSize)));
+		}
+
+		if(chunks.size() <= 1){
+			A accumulator = newAccumulator.get();
+			for(ClassFile classFile : classFiles){
+				visitor.accept(accumulator, classFile);
+			}
+			return Collections.singletonList(accumulator);
+		}
+
+		// A parallel stream of a list keeps the encounter order in "collect"
+		return chunks.parallelStream().map(chunk -> {
+			A accumulator = newAccumulator.get();
+			for(ClassFile classFile : chunk){
+				visitor.accept(accumulator, classFile);
+			}
+			return accumulator;
+		}).collect(Collectors.toList());
+	}
+}
@@ -0,0 +1,138 @@
+package edu.ucla.cs.jshrinklib.util;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * SHA-256 content digests of files, directories and strings, used to key JShrink's caches on what they were built
+ * from rather than on file names.
+ *
+ * File digests are remembered for the rest of the run, keyed on the file's path, length and modification time, so
+ * hashing the same jar for several modules (or several caches) only reads it once. Code which rewrites a file in place
+ * within the same second should call "invalidate" afterwards.
+ */
+public class DigestUtils {
+
+	private static final Map<String, FileDigest> fileDigests = new ConcurrentHashMap<String, FileDigest>();
+
+	private static class FileDigest {
+		private final long length;
+		private final long lastModified;
+		private final String digest;
+
+		private FileDigest(long length, long lastModified, String digest){
+			this.length = length;
+			this.lastModified = lastModified;
+			this.digest = digest;
+		}
+	}
+
+	public static MessageDigest newSha256(){
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e){
+			// Every Java platform is required to support SHA-256
+			throw new IllegalStateException(e);
+		}
+	}
+
+	public static String toHex(byte[] bytes){
+		StringBuilder sb = new StringBuilder(bytes.length * 2);
+		for(byte b : bytes){
+			sb.append(Character.forDigit((b >> 4) & 0xF, 16));
+			sb.append(Character.forDigit(b & 0xF, 16));
+		}
+		return sb.toString();
+	}
+
+	public static String sha256(byte[] bytes){
+		return toHex(newSha256().digest(bytes));
+	}
+
+	public static String sha256(String string){
+		return sha256(string.getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Returns the SHA-256 digest of a file, or of a directory. The digest of a directory covers the relative path and
+	 * the content of every file below it, so it does not depend on where the directory is located.
+	 *
+	 * @param file A file or directory
+	 * @return The hexadecimal digest
+	 * @throws IOException If the file does not exist or cannot be read
+	 */
+	public static String sha256(File file) throws IOException {
+		if(!file.exists()){
+			throw new FileNotFoundException("File '" + file.getAbsolutePath() + "' does not exist");
+		}
+
+		if(!file.isDirectory()){
+			return fileDigest(file);
+		}
+
+		SortedMap<String, File> files = new TreeMap<String, File>();
+		listFiles(file, "", files);
+
+		MessageDigest messageDigest = newSha256();
+		for(Map.Entry<String, File> entry : files.entrySet()){
+			messageDigest.update(entry.getKey().getBytes(StandardCharsets.UTF_8));
+			messageDigest.update((byte) 0);
+			messageDigest.update(fileDigest(entry.getValue()).getBytes(StandardCharsets.US_ASCII));
+			messageDigest.update((byte) '\n');
+		}
+		return toHex(messageDigest.digest());
+	}
+
+	/**
+	 * Forgets the digest remembered for a file (or for every file below a directory).
+	 */
+	public static void invalidate(File file){
+		String path = file.getAbsolutePath();
+		fileDigests.remove(path);
+		if(file.isDirectory()){
+			fileDigests.keySet().removeIf(p -> p.startsWith(path + File.separator));
+		}
+	}
+
+	private static String fileDigest(File file) throws IOException {
+		String path = file.getAbsolutePath();
+		long length = file.length();
+		long lastModified = file.lastModified();
+
+		FileDigest known = fileDigests.get(path);
+		if(known != null && known.length == length && known.lastModified == lastModified){
+			return known.digest;
+		}
+
+		MessageDigest messageDigest = newSha256();
+		byte[] buffer = new byte[64 * 1024];
+		try(InputStream in = new FileInputStream(file)){
+			int read;
+			while((read = in.read(buffer)) != -1){
+				messageDigest.update(buffer, 0, read);
+			}
+		}
+		String digest = toHex(messageDigest.digest());
+		fileDigests.put(path, new FileDigest(length, lastModified, digest));
+		return digest;
+	}
+
+	private static void listFiles(File dir, String prefix, Map<String, File> files){
+		File[] children = dir.listFiles();
+		if(children == null){
+			return;
+		}
+		for(File child : children){
+			String relativePath = prefix + child.getName();
+			if(child.isDirectory()){
+				listFiles(child, relativePath + "/", files);
+			} else {
+				files.put(relativePath, child);
+			}
+		}
+	}
+}
@@ -0,0 +1,422 @@
+package edu.ucla.cs.jshrinklib.util;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.zip.*;
+
+/**
+ * Rewrites a jar in a single streaming pass: entries that have been updated are written with their new content,
+ * removed entries are dropped, and every other entry is copied byte for byte (without being decompressed and
+ * recompressed). The new jar is written next to the original and then moved over it, so the original is never left
+ * half-written.
+ *
+ * The raw copy reads the zip central directory directly. Jars using Zip64 extensions (over 65535 entries or 4GB) are
+ * instead rewritten through java.util.zip, which recompresses every entry.
+ */
+public class JarRewriter {
+
+	private static final int LOCAL_HEADER = 0x04034b50;
+	private static final int CENTRAL_HEADER = 0x02014b50;
+	private static final int END_OF_CENTRAL_DIRECTORY = 0x06054b50;
+	private static final int ZIP64_END_OF_CENTRAL_DIRECTORY_LOCATOR = 0x07064b50;
+	private static final int DATA_DESCRIPTOR = 0x08074b50;
+
+	private static final int LOCAL_HEADER_SIZE = 30;
+	private static final int CENTRAL_HEADER_SIZE = 46;
+	private static final int END_OF_CENTRAL_DIRECTORY_SIZE = 22;
+	private static final int FLAG_DATA_DESCRIPTOR = 0x0008;
+	private static final int FLAG_UTF8 = 0x0800;
+
+	private final File jar;
+	private final Map<String, byte[]> updatedEntries = new LinkedHashMap<String, byte[]>();
+	private final Set<String> removedEntries = new HashSet<String>();
+
+	/*
+	Thrown when the jar uses zip features the raw copy does not handle. The jar is then rewritten through java.util.zip.
+	 */
+	private static class UnsupportedZipException extends IOException {
+		private static final long serialVersionUID = 1L;
+
+		private UnsupportedZipException(String message){
+			super(message);
+		}
+	}
+
+	private static class CentralDirectoryEntry {
+		private String name;
+		private byte[] record;
+		private int flags;
+		private long compressedSize;
+		private long localHeaderOffset;
+	}
+
+	public JarRewriter(File jar){
+		this.jar = jar;
+	}
+
+	public File getJar(){
+		return this.jar;
+	}
+
+	/**
+	 * Sets the content of an entry. The entry is added if the jar does not contain it.
+	 */
+	public void putEntry(String name, byte[] content){
+		this.removedEntries.remove(name);
+		this.updatedEntries.put(name, content);
+	}
+
+	/**
+	 * @return The content the entry has been set to by "putEntry", if any
+	 */
+	public Optional<byte[]> getUpdatedEntry(String name){
+		return Optional.ofNullable(this.updatedEntries.get(name));
+	}
+
+	public boolean isRemoved(String name){
+		return this.removedEntries.contains(name);
+	}
+
+	public void removeEntry(String name){
+		this.updatedEntries.remove(name);
+		this.removedEntries.add(name);
+	}
+
+	public boolean hasChanges(){
+		return !this.updatedEntries.isEmpty() || !this.removedEntries.isEmpty();
+	}
+
+	/**
+	 * Writes the updated jar in place of the original. Does nothing if no entry has been updated or removed.
+	 */
+	public void rewrite() throws IOException {
+		if(!hasChanges()){
+			return;
+		}
+
+		File temp = File.createTempFile(this.jar.getName(), ".tmp", this.jar.getAbsoluteFile().getParentFile());
+		try {
+			try {
+				rewriteRaw(temp);
+			} catch (UnsupportedZipException e){
+				rewriteWithZipStreams(temp);
+			}
+			Files.move(temp.toPath(), this.jar.toPath(), StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e){
+			temp.delete();
+			throw new IOException("Unable to rewrite jar file '" + this.jar.getAbsolutePath() + "'. Following exception thrown:"
+				+ System.lineSeparator() + e.getLocalizedMessage(), e);
+		}
+		DigestUtils.invalidate(this.jar);
+		ClassPathIndex.invalidate(this.jar);
+	}
+
+	/**
+	 * Reads the names of the entries of a jar from its central directory, without reading the entries themselves.
+	 *
+	 * @return The offset of each entry's local header, keyed on the entry name. Offsets are -1 for Zip64 jars.
+	 */
+	public static Map<String, Long> readEntryOffsets(File jar) throws IOException {
+		Map<String, Long> offsets = new HashMap<String, Long>();
+		try(FileChannel in = FileChannel.open(jar.toPath(), StandardOpenOption.READ)){
+			ByteBuffer endOfCentralDirectory = readEndOfCentralDirectory(in);
+			int entryCount = endOfCentralDirectory.getShort(10) & 0xFFFF;
+			long centralDirectorySize = endOfCentralDirectory.getInt(12) & 0xFFFFFFFFL;
+			long centralDirectoryOffset = endOfCentralDirectory.getInt(16) & 0xFFFFFFFFL;
+			if(entryCount == 0xFFFF || centralDirectorySize == 0xFFFFFFFFL || centralDirectoryOffset == 0xFFFFFFFFL){
+				throw new UnsupportedZipException("Zip64 jar");
+			}
+			for(CentralDirectoryEntry entry
+				: readCentralDirectory(in, centralDirectoryOffset, centralDirectorySize, entryCount)){
+				offsets.put(entry.name, entry.localHeaderOffset);
+			}
+		} catch (UnsupportedZipException e){
+			offsets.clear();
+			try(ZipFile zipFile = new ZipFile(jar)){
+				Enumeration<? extends ZipEntry> entries = zipFile.entries();
+				while(entries.hasMoreElements()){
+					offsets.put(entries.nextElement().getName(), -1L);
+				}
+			}
+		}
+		return offsets;
+	}
+
+	private void rewriteRaw(File output) throws IOException {
+		try(FileChannel in = FileChannel.open(this.jar.toPath(), StandardOpenOption.READ);
+		    FileChannel out = FileChannel.open(output.toPath(), StandardOpenOption.WRITE,
+			    StandardOpenOption.TRUNCATE_EXISTING)){
+			ByteBuffer endOfCentralDirectory = readEndOfCentralDirectory(in);
+			int entryCount = endOfCentralDirectory.getShort(10) & 0xFFFF;
+			long centralDirectorySize = endOfCentralDirectory.getInt(12) & 0xFFFFFFFFL;
+			long centralDirectoryOffset = endOfCentralDirectory.getInt(16) & 0xFFFFFFFFL;
+			if(entryCount == 0xFFFF || centralDirectorySize == 0xFFFFFFFFL || centralDirectoryOffset == 0xFFFFFFFFL){
+				throw new UnsupportedZipException("Zip64 jar");
+			}
+			byte[] comment = new byte[endOfCentralDirectory.getShort(20) & 0xFFFF];
+			endOfCentralDirectory.position(END_OF_CENTRAL_DIRECTORY_SIZE);
+			endOfCentralDirectory.get(comment);
+
+			List<CentralDirectoryEntry> entries =
+				readCentralDirectory(in, centralDirectoryOffset, centralDirectorySize, entryCount);
+
+			ByteArrayOutputStream centralDirectory = new ByteArrayOutputStream();
+			Set<String> written = new HashSet<String>();
+			int writtenCount = 0;
+			for(CentralDirectoryEntry entry : entries){
+				if(this.removedEntries.contains(entry.name)){
+					continue;
+				}
+				long offset = out.position();
+				byte[] record;
+				if(this.updatedEntries.containsKey(entry.name)){
+					ByteBuffer original = ByteBuffer.wrap(entry.record).order(ByteOrder.LITTLE_ENDIAN);
+					record = writeEntry(out, entry.name, this.updatedEntries.get(entry.name), original.getInt(12));
+				} else {
+					copyEntry(in, out, entry);
+					record = entry.record.clone();
+					ByteBuffer.wrap(record).order(ByteOrder.LITTLE_ENDIAN).putInt(42, (int) offset);
+				}
+				checkOffset(offset);
+				centralDirectory.write(record);
+				written.add(entry.name);
+				writtenCount++;
+			}
+
+			int now = toDosTime(System.currentTimeMillis());
+			for(Map.Entry<String, byte[]> entry : this.updatedEntries.entrySet()){
+				if(!written.contains(entry.getKey())){
+					centralDirectory.write(writeEntry(out, entry.getKey(), entry.getValue(), now));
+					writtenCount++;
+				}
+			}
+
+			long newCentralDirectoryOffset = out.position();
+			checkOffset(newCentralDirectoryOffset);
+			if(writtenCount >= 0xFFFF){
+				throw new UnsupportedZipException("Too many entries for a non-Zip64 jar");
+			}
+			writeFully(out, ByteBuffer.wrap(centralDirectory.toByteArray()));
+
+			ByteBuffer end = ByteBuffer.allocate(END_OF_CENTRAL_DIRECTORY_SIZE + comment.length)
+				.order(ByteOrder.LITTLE_ENDIAN);
+			end.putInt(END_OF_CENTRAL_DIRECTORY).putShort((short) 0).putShort((short) 0)
+				.putShort((short) writtenCount).putShort((short) writtenCount)
+				.putInt(centralDirectory.size()).putInt((int) newCentralDirectoryOffset)
+				.putShort((short) comment.length).put(comment);
+			end.flip();
+			writeFully(out, end);
+		}
+	}
+
+	private static void checkOffset(long offset) throws UnsupportedZipException {
+		if(offset >= 0xFFFFFFFFL){
+			throw new UnsupportedZipException("Jar too large for a non-Zip64 jar");
+		}
+	}
+
+	private static ByteBuffer readEndOfCentralDirectory(FileChannel in) throws IOException {
+		long size = in.size();
+		int length = (int) Math.min(size, END_OF_CENTRAL_DIRECTORY_SIZE + 0xFFFF);
+		ByteBuffer tail = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+		readFully(in, tail, size - length);
+
+		// the record ends with a variable length comment, so search backwards for its signature
+		for(int i = length - END_OF_CENTRAL_DIRECTORY_SIZE; i >= 0; i--){
+			if(tail.getInt(i) == END_OF_CENTRAL_DIRECTORY
+				&& i + END_OF_CENTRAL_DIRECTORY_SIZE + (tail.getShort(i + 20) & 0xFFFF) == length){
+				if(i >= 20 && tail.getInt(i - 20) == ZIP64_END_OF_CENTRAL_DIRECTORY_LOCATOR){
+					throw new UnsupportedZipException("Zip64 jar");
+				}
+				tail.position(i);
+				return tail.slice().order(ByteOrder.LITTLE_ENDIAN);
+			}
+		}
+		throw new ZipException("Not a zip file (no end of central directory record)");
+	}
+
+	private static List<CentralDirectoryEntry> readCentralDirectory(FileChannel in, long offset, long size, int count)
+		throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate((int) size).order(ByteOrder.LITTLE_ENDIAN);
+		readFully(in, buffer, offset);
+
+		List<CentralDirectoryEntry> entries = new ArrayList<CentralDirectoryEntry>(count);
+		int position = 0;
+		for(int i=0; i<count; i++){
+			if(position + CENTRAL_HEADER_SIZE > buffer.limit() || buffer.getInt(position) != CENTRAL_HEADER){
+				throw new ZipException("Corrupt central directory");
+			}
+			int nameLength = buffer.getShort(position + 28) & 0xFFFF;
+			int extraLength = buffer.getShort(position + 30) & 0xFFFF;
+			int commentLength = buffer.getShort(position + 32) & 0xFFFF;
+			int recordLength = CENTRAL_HEADER_SIZE + nameLength + extraLength + commentLength;
+
+			CentralDirectoryEntry entry = new CentralDirectoryEntry();
+			entry.flags = buffer.getShort(position + 8) & 0xFFFF;
+			entry.compressedSize = buffer.getInt(position + 20) & 0xFFFFFFFFL;
+			long uncompressedSize = buffer.getInt(position + 24) & 0xFFFFFFFFL;
+			entry.localHeaderOffset = buffer.getInt(position + 42) & 0xFFFFFFFFL;
+			if(entry.compressedSize == 0xFFFFFFFFL || uncompressedSize == 0xFFFFFFFFL
+				|| entry.localHeaderOffset == 0xFFFFFFFFL){
+				throw new UnsupportedZipException("Zip64 entry");
+			}
+			entry.record = new byte[recordLength];
+			buffer.position(position);
+			buffer.get(entry.record);
+			entry.name = new String(entry.record, CENTRAL_HEADER_SIZE, nameLength, StandardCharsets.UTF_8);
+			entries.add(entry);
+
+			position += recordLength;
+		}
+		return entries;
+	}
+
+	private static void copyEntry(FileChannel in, FileChannel out, CentralDirectoryEntry entry) throws IOException {
+		ByteBuffer localHeader = ByteBuffer.allocate(LOCAL_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		readFully(in, localHeader, entry.localHeaderOffset);
+		if(localHeader.getInt(0) != LOCAL_HEADER){
+			// e.g., a jar with a prefix (such as a launch script), where offsets are not relative to the file start
+			throw new UnsupportedZipException("No local header at the offset of entry " + entry.name);
+		}
+
+		long end = entry.localHeaderOffset + LOCAL_HEADER_SIZE + (localHeader.getShort(26) & 0xFFFF)
+			+ (localHeader.getShort(28) & 0xFFFF) + entry.compressedSize;
+		if((entry.flags & FLAG_DATA_DESCRIPTOR) != 0){
+			// the data descriptor's signature is optional
+			ByteBuffer signature = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+			readFully(in, signature, end);
+			end += signature.getInt(0) == DATA_DESCRIPTOR ? 16 : 12;
+		}
+
+		long position = entry.localHeaderOffset;
+		while(position < end){
+			long transferred = in.transferTo(position, end - position, out);
+			if(transferred <= 0){
+				throw new EOFException("Unexpected end of jar file in entry " + entry.name);
+			}
+			position += transferred;
+		}
+	}
+
+	/*
+	Writes a local header and the (deflated, unless that does not make it smaller) content. Returns the matching central
+	directory record.
+	 */
+	private static byte[] writeEntry(FileChannel out, String name, byte[] content, int dosTime) throws IOException {
+		long offset = out.position();
+		checkOffset(offset);
+		byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+
+		CRC32 crc = new CRC32();
+		crc.update(content);
+
+		Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION, true);
+		ByteArrayOutputStream deflated = new ByteArrayOutputStream(content.length / 2 + 64);
+		try {
+			deflater.setInput(content);
+			deflater.finish();
+			byte[] buffer = new byte[8192];
+			while(!deflater.finished()){
+				int length = deflater.deflate(buffer);
+				deflated.write(buffer, 0, length);
+			}
+		} finally {
+			deflater.end();
+		}
+
+		boolean stored = deflated.size() >= content.length;
+		byte[] data = stored ? content : deflated.toByteArray();
+		short method = stored ? (short) ZipEntry.STORED : (short) ZipEntry.DEFLATED;
+		short version = stored ? (short) 10 : (short) 20;
+
+		ByteBuffer localHeader = ByteBuffer.allocate(LOCAL_HEADER_SIZE + nameBytes.length)
+			.order(ByteOrder.LITTLE_ENDIAN);
+		localHeader.putInt(LOCAL_HEADER).putShort(version).putShort((short) FLAG_UTF8).putShort(method)
+			.putInt(dosTime).putInt((int) crc.getValue()).putInt(data.length).putInt(content.length)
+			.putShort((short) nameBytes.length).putShort((short) 0).put(nameBytes);
+		localHeader.flip();
+		writeFully(out, localHeader);
+		writeFully(out, ByteBuffer.wrap(data));
+
+		ByteBuffer record = ByteBuffer.allocate(CENTRAL_HEADER_SIZE + nameBytes.length).order(ByteOrder.LITTLE_ENDIAN);
+		record.putInt(CENTRAL_HEADER).putShort((short) 20).putShort(version).putShort((short) FLAG_UTF8)
+			.putShort(method).putInt(dosTime).putInt((int) crc.getValue()).putInt(data.length).putInt(content.length)
+			.putShort((short) nameBytes.length).putShort((short) 0).putShort((short) 0).putShort((short) 0)
+			.putShort((short) 0).putInt(0).putInt((int) offset).put(nameBytes);
+		return record.array();
+	}
+
+	private void rewriteWithZipStreams(File output) throws IOException {
+		try(ZipFile zipFile = new ZipFile(this.jar);
+		    ZipOutputStream out = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(output)))){
+			out.setLevel(Deflater.BEST_COMPRESSION);
+			Set<String> written = new HashSet<String>();
+			byte[] buffer = new byte[8192];
+			Enumeration<? extends ZipEntry> entries = zipFile.entries();
+			while(entries.hasMoreElements()){
+				ZipEntry entry = entries.nextElement();
+				if(this.removedEntries.contains(entry.getName()) || !written.add(entry.getName())){
+					continue;
+				}
+				ZipEntry newEntry = new ZipEntry(entry.getName());
+				newEntry.setTime(entry.getTime());
+				out.putNextEntry(newEntry);
+				if(this.updatedEntries.containsKey(entry.getName())){
+					out.write(this.updatedEntries.get(entry.getName()));
+				} else {
+					try(InputStream in = zipFile.getInputStream(entry)){
+						int length;
+						while((length = in.read(buffer)) != -1){
+							out.write(buffer, 0, length);
+						}
+					}
+				}
+				out.closeEntry();
+			}
+			for(Map.Entry<String, byte[]> entry : this.updatedEntries.entrySet()){
+				if(written.add(entry.getKey())){
+					out.putNextEntry(new ZipEntry(entry.getKey()));
+					out.write(entry.getValue());
+					out.closeEntry();
+				}
+			}
+		}
+	}
+
+	private static int toDosTime(long time){
+		Calendar calendar = Calendar.getInstance();
+		calendar.setTimeInMillis(time);
+		int year = calendar.get(Calendar.YEAR);
+		if(year < 1980){
+			return (1 << 21) | (1 << 16);
+		}
+		return (year - 1980) << 25 | (calendar.get(Calendar.MONTH) + 1) << 21
+			| calendar.get(Calendar.DAY_OF_MONTH) << 16 | calendar.get(Calendar.HOUR_OF_DAY) << 11
+			| calendar.get(Calendar.MINUTE) << 5 | calendar.get(Calendar.SECOND) >> 1;
+	}
+
+	private static void readFully(FileChannel in, ByteBuffer buffer, long position) throws IOException {
+		while(buffer.hasRemaining()){
+			int read = in.read(buffer, position);
+			if(read < 0){
+				throw new EOFException("Unexpected end of jar file");
+			}
+			position += read;
+		}
+		buffer.flip();
+	}
+
+	private static void writeFully(FileChannel out, ByteBuffer buffer) throws IOException {
+		while(buffer.hasRemaining()){
+			out.write(buffer);
+		}
+	}
+}
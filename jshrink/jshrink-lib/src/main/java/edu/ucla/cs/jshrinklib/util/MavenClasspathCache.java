@@ -0,0 +1,133 @@
+package edu.ucla.cs.jshrinklib.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The classpaths Maven resolves for each module of a project (see "MavenSingleProjectAnalyzer.setup"), keyed on the
+ * digest of every "pom.xml" file of the project and on the local repository they are resolved in. The classpaths are
+ * kept for the rest of the run, so setting the project up again (e.g., after "JShrink.updateClassFiles") does not run
+ * Maven, and, if a directory is given, persisted there in the form of the output of "dependency:build-classpath" (see
+ * "MavenUtils.getClasspathsFromFile").
+ *
+ * Classpaths are only reused while every file on them exists: a local repository which has been deleted (e.g., by
+ * "MavenSingleProjectAnalyzer.cleanup") or pruned has the classpaths resolved again.
+ */
+public class MavenClasspathCache {
+
+	private static final String FORMAT = "1";
+
+	private static final Map<String, HashMap<String, String>> resolved =
+		new ConcurrentHashMap<String, HashMap<String, String>>();
+
+	private final File projectDirectory;
+	private final File localRepository;
+	private final Optional<File> directory;
+	private String key = null;
+
+	/**
+	 * @param projectDirectory The root directory of the project
+	 * @param localRepository The local repository the dependencies are resolved in
+	 * @param directory The directory the classpaths are persisted in, if they are. It is created if it does not exist
+	 */
+	public MavenClasspathCache(File projectDirectory, File localRepository, Optional<File> directory){
+		this.projectDirectory = projectDirectory;
+		this.localRepository = localRepository;
+		this.directory = directory;
+	}
+
+	/*
+	The key is the SHA-256 digest of the cache format, the local repository, and the path (relative to the project) and
+	content of every "pom.xml" file of the project. Unlike the call graph cache key, it covers the location of the
+	project, as the classpaths are absolute.
+	 */
+	public String getKey() throws IOException {
+		if(this.key == null){
+			StringBuilder key = new StringBuilder();
+			key.append("format " + FORMAT).append('\n');
+			key.append("project " + this.projectDirectory.getAbsolutePath()).append('\n');
+			key.append("repository " + this.localRepository.getAbsolutePath()).append('\n');
+			SortedMap<String, File> poms = new TreeMap<String, File>();
+			listPoms(this.projectDirectory, "", poms);
+			for(Map.Entry<String, File> pom : poms.entrySet()){
+				key.append("pom " + pom.getKey() + " " + DigestUtils.sha256(pom.getValue())).append('\n');
+			}
+			this.key = DigestUtils.sha256(key.toString());
+		}
+		return this.key;
+	}
+
+	private void listPoms(File dir, String relativePath, SortedMap<String, File> poms){
+		File[] files = dir.listFiles();
+		if(files == null){
+			return;
+		}
+		for(File file : files){
+			if(file.isDirectory()){
+				// the local repository (whose state is checked when the classpaths are reused) and build outputs
+				if(!file.getAbsoluteFile().equals(this.localRepository.getAbsoluteFile())
+					&& !file.getName().equals("target")){
+					listPoms(file, relativePath + file.getName() + "/", poms);
+				}
+			} else if(file.getName().equals("pom.xml")){
+				poms.put(relativePath + file.getName(), file);
+			}
+		}
+	}
+
+	private File getFile(String scope) throws IOException {
+		return new File(this.directory.get().getAbsolutePath() + File.separator
+			+ "classpaths_" + scope + "_" + this.getKey() + ".log");
+	}
+
+	/**
+	 * @param scope The scope of the classpaths (e.g., "test" or "compile")
+	 * @return The classpath of each module, if it has been resolved for the current "pom.xml" files, and every file on
+	 * it exists
+	 */
+	public Optional<HashMap<String, String>> get(String scope){
+		try {
+			HashMap<String, String> classpaths = resolved.get(scope + "_" + this.getKey());
+			if(classpaths == null && this.directory.isPresent() && this.getFile(scope).exists()){
+				classpaths = MavenUtils.getClasspathsFromFile(this.getFile(scope));
+			}
+			if(classpaths != null && allExist(classpaths)){
+				resolved.put(scope + "_" + this.getKey(), classpaths);
+				return Optional.of(new HashMap<String, String>(classpaths));
+			}
+		} catch (IOException e){
+			System.out.println("[" + new java.util.Date() + "]" + "Could not read the cached " + scope
+				+ " classpaths: " + e.getLocalizedMessage());
+		}
+		return Optional.empty();
+	}
+
+	/**
+	 * Stores the classpath of each module resolved for the given scope (e.g., "test" or "compile").
+	 */
+	public void put(String scope, HashMap<String, String> classpaths){
+		try {
+			resolved.put(scope + "_" + this.getKey(), new HashMap<String, String>(classpaths));
+			if(this.directory.isPresent()){
+				this.directory.get().mkdirs();
+				MavenUtils.writeClasspathsToFile(classpaths, this.getFile(scope));
+			}
+		} catch (IOException e){
+			System.out.println("[" + new java.util.Date() + "]" + "Could not cache the " + scope
+				+ " classpaths: " + e.getLocalizedMessage());
+		}
+	}
+
+	private static boolean allExist(Map<String, String> classpaths){
+		for(String classpath : classpaths.values()){
+			for(String path : classpath.split(File.pathSeparator)){
+				if(!path.isEmpty() && !new File(path).exists()){
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+}
@@ -3,9 +3,8 @@ package edu.ucla.cs.jshrinklib.util;
 import java.io.File;
 import java.io.IOException;
 import java.nio.charset.Charset;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.*;
+import java.util.function.Consumer;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -14,36 +13,176 @@ import org.apache.commons.io.FileUtils;
 
 public class MavenUtils {
 
+	/*
+	The header Maven logs before running a goal of the dependency plugin on a module, e.g.,
+	"[INFO] --- maven-dependency-plugin:2.8:build-classpath (default-cli) @ module ---" (Maven 3.8 and earlier) or
+	"[INFO] --- dependency:3.7.0:build-classpath (default-cli) @ module ---" (Maven 3.9 and later).
+	 */
+	private static final Pattern DEPENDENCY_PLUGIN_HEADER =
+		Pattern.compile(".*--- (?:maven-dependency-plugin|dependency):\\S+:(\\S+) .*@ (.+?) ---.*");
+
+	// the scopes of the "compile" classpath, as "dependency:build-classpath -DincludeScope=compile" resolves it
+	private static final Set<String> COMPILE_SCOPES = new HashSet<String>(Arrays.asList("compile", "provided", "system"));
+
+	private static final Set<String> SCOPES =
+		new HashSet<String>(Arrays.asList("compile", "provided", "runtime", "test", "system", "import"));
+
+	/*
+	Returns the goal of the dependency plugin and the module the given header line is logged for, if it is one.
+	 */
+	private static Optional<String[]> getDependencyPluginHeader(String line){
+		Matcher matcher = DEPENDENCY_PLUGIN_HEADER.matcher(line);
+		if(matcher.matches()){
+			return Optional.of(new String[]{matcher.group(1), matcher.group(2).trim()});
+		}
+		return Optional.empty();
+	}
+
 	public static HashMap<String, String> getClasspaths(String log_file_contents){
-		HashMap<String, String> cp_map = new HashMap<String, String>();
+		ClasspathParser parser = new ClasspathParser();
+		for(String line : log_file_contents.split(System.lineSeparator())){
+			parser.accept(line);
+		}
+		return parser.getClasspaths();
+	}
 
-		String[] lines = log_file_contents.split(System.lineSeparator());
-		for (int i = 0; i < lines.length; i++) {
-			String line = lines[i];
-			if (line.equals("[INFO] Dependencies classpath:")) {
-				// scan backwards till finding the first line that contains
-				// '[INFO] --- maven-dependency-plugin:'
-				String header = null;
-				for(int j = 1; j <= i; j++) {
-					header  = lines[i-j];
-					if (header.contains("--- maven-dependency-plugin:")) {
-						break;
-					}
+	/**
+	 * Gets the compile scope classpath of each module from the output of "dependency:build-classpath" and
+	 * "dependency:list -DoutputAbsoluteArtifactFilename=true" run together, i.e., the entries of the full classpath
+	 * (see "getClasspaths") which are compile, provided or system scope dependencies. This is the classpath
+	 * "dependency:build-classpath -DincludeScope=compile" resolves, without running Maven a second time.
+	 * @param log_file_contents The output of Maven
+	 * @return The compile scope classpath of each module
+	 */
+	public static HashMap<String, String> getCompileClasspaths(String log_file_contents){
+		ClasspathParser parser = new ClasspathParser();
+		for(String line : log_file_contents.split(System.lineSeparator())){
+			parser.accept(line);
+		}
+		return parser.getCompileClasspaths();
+	}
+
+	/**
+	 * Parses the output of "dependency:build-classpath" (and "dependency:list -DoutputAbsoluteArtifactFilename=true")
+	 * line by line, as Maven outputs it (see "ProcessRunner.addLineHandler"), so the output need not be kept.
+	 */
+	public static class ClasspathParser implements Consumer<String> {
+		private final HashMap<String, String> classpaths = new HashMap<String, String>();
+		private final Map<String, Set<String>> compileFiles = new HashMap<String, Set<String>>();
+		// the header of the dependency plugin the lines are output under, if any
+		private Optional<String[]> header = Optional.empty();
+		// the module whose dependencies are listed, if they are
+		private String listedModule = null;
+		// the module whose classpath is on the next line, if it is
+		private String classpathModule = null;
+		private boolean classpathExpected = false;
+
+		@Override
+		public void accept(String line){
+			if(this.classpathExpected){
+				this.classpathExpected = false;
+				if(this.classpathModule != null){
+					this.classpaths.put(this.classpathModule, line);
 				}
+				return;
+			}
 
-				if(header != null) {
-					String tmp = header.split("@")[1];
-					String name = tmp.substring(0, tmp.indexOf("---")).trim();
-					String cp = lines[i+1];
-					cp_map.put(name, cp);
+			Optional<String[]> header = getDependencyPluginHeader(line);
+			if(header.isPresent()){
+				this.header = header;
+				this.listedModule = header.get()[0].equals("list") ? header.get()[1] : null;
+				if(this.listedModule != null){
+					this.compileFiles.put(this.listedModule, new HashSet<String>());
+				}
+			} else if(line.equals("[INFO] Dependencies classpath:")){
+				this.classpathExpected = true;
+				if(this.header.isPresent()){
+					this.classpathModule = this.header.get()[1];
 				} else {
+					this.classpathModule = null;
 					System.out.println("Cannot find the name of "
 						+ "this project/module when resolving classpaths.");
 				}
+			} else if(this.listedModule != null && line.startsWith("[INFO]    ")){
+				Optional<String[]> dependency = getListedDependency(line.substring("[INFO]    ".length()));
+				if(dependency.isPresent() && COMPILE_SCOPES.contains(dependency.get()[0])){
+					this.compileFiles.get(this.listedModule).add(dependency.get()[1]);
+				}
 			}
 		}
 
-		return cp_map;
+		/**
+		 * @return The full classpath of each module
+		 */
+		public HashMap<String, String> getClasspaths(){
+			HashMap<String, String> cp_map = new HashMap<String, String>(this.classpaths);
+			// the output ended right after the classpath header
+			if(this.classpathExpected && this.classpathModule != null){
+				cp_map.put(this.classpathModule, "");
+			}
+			return cp_map;
+		}
+
+		/**
+		 * @return The compile scope classpath of each module (see "MavenUtils.getCompileClasspaths")
+		 */
+		public HashMap<String, String> getCompileClasspaths(){
+			HashMap<String, String> cp_map = new HashMap<String, String>();
+			for(Map.Entry<String, String> classpath : this.getClasspaths().entrySet()){
+				if(!this.compileFiles.containsKey(classpath.getKey())){
+					System.out.println("Cannot find the dependency list of module " + classpath.getKey()
+						+ " when resolving compile scope classpaths.");
+					continue;
+				}
+				List<String> cp = new ArrayList<String>();
+				for(String path : classpath.getValue().split(File.pathSeparator)){
+					if(this.compileFiles.get(classpath.getKey()).contains(path)){
+						cp.add(path);
+					}
+				}
+				cp_map.put(classpath.getKey(), String.join(File.pathSeparator, cp));
+			}
+			return cp_map;
+		}
+	}
+
+	/*
+	Returns the scope and the file of a dependency listed by "dependency:list -DoutputAbsoluteArtifactFilename=true",
+	i.e., "group:artifact:type[:classifier]:version:scope:file", possibly followed by " (optional)" or by the Java
+	module of the dependency (" -- module ...").
+	 */
+	private static Optional<String[]> getListedDependency(String line){
+		String dependency = line.trim();
+		if(dependency.contains(" -- ")){
+			dependency = dependency.substring(0, dependency.indexOf(" -- "));
+		}
+		if(dependency.endsWith(" (optional)")){
+			dependency = dependency.substring(0, dependency.length() - " (optional)".length());
+		}
+
+		String[] parts = dependency.split(":");
+		for(int scope = 4; scope <= 5 && scope + 1 < parts.length; scope++){
+			if(SCOPES.contains(parts[scope])){
+				String file = String.join(":", Arrays.asList(parts).subList(scope + 1, parts.length));
+				return Optional.of(new String[]{parts[scope], file});
+			}
+		}
+		return Optional.empty();
+	}
+
+	/**
+	 * Writes the classpath of each module in the form of the output of "dependency:build-classpath", so it can be read
+	 * back with "getClasspathsFromFile".
+	 */
+	public static void writeClasspathsToFile(Map<String, String> classpaths, File log_file) throws IOException {
+		StringBuilder log = new StringBuilder();
+		for(Map.Entry<String, String> classpath : new TreeMap<String, String>(classpaths).entrySet()){
+			log.append("[INFO] --- dependency:cached:build-classpath (default-cli) @ " + classpath.getKey() + " ---"
+				+ System.lineSeparator());
+			log.append("[INFO] Dependencies classpath:" + System.lineSeparator());
+			log.append(classpath.getValue() + System.lineSeparator());
+		}
+		FileUtils.writeStringToFile(log_file, log.toString(), Charset.defaultCharset());
 	}
 
 	public static HashMap<String, Integer> testClassesFromString(String mavenOutput){
@@ -67,33 +206,60 @@ public class MavenUtils {
 	}
 
 	public static TestOutput testOutputFromString(String mavenOutput){
-		String test_regex = ".*Tests run: (\\d+), Failures: (\\d+), Errors: (\\d+), Skipped: (\\d+)$";
+		TestOutputParser parser = new TestOutputParser();
+		for(String line : mavenOutput.split(System.lineSeparator())){
+			parser.accept(line);
+		}
+		return parser.getTestOutput(mavenOutput);
+	}
+
+	/**
+	 * Parses the test summary of the output of "surefire:test" line by line, as Maven outputs it (see
+	 * "ProcessRunner.addLineHandler"), so the output need not be kept.
+	 */
+	public static class TestOutputParser implements Consumer<String> {
+		private static final Pattern TEST_SUMMARY =
+			Pattern.compile(".*Tests run: (\\d+), Failures: (\\d+), Errors: (\\d+), Skipped: (\\d+)$");
 
-		String[] log_lines = mavenOutput.split(System.lineSeparator());
+		private boolean summaryFound = false;
+		private int run = 0;
+		private int failures = 0;
+		private int errors = 0;
+		private int skipped = 0;
+		private boolean buildPass = true;
 
-		Pattern pattern = Pattern.compile(test_regex);
-		int run = 0;
-		int failures = 0;
-		int errors = 0;
-		int skipped = 0;
-		for (String line : log_lines) {
-			if (pattern.matcher(line).matches()) {
+		@Override
+		public void accept(String line){
+			if(!this.summaryFound && TEST_SUMMARY.matcher(line).matches()){
+				this.summaryFound = true;
 				Matcher matcher = Pattern.compile("\\d+").matcher(line);
 				matcher.find();
-				run = Integer.parseInt(matcher.group());
+				this.run = Integer.parseInt(matcher.group());
 				matcher.find();
-				failures = Integer.parseInt(matcher.group());
+				this.failures = Integer.parseInt(matcher.group());
 				matcher.find();
-				errors = Integer.parseInt(matcher.group());
+				this.errors = Integer.parseInt(matcher.group());
 				matcher.find();
-				skipped = Integer.parseInt(matcher.group());
-				break;
+				this.skipped = Integer.parseInt(matcher.group());
+			}
+			if(line.contains("BUILD FAILURE")){
+				this.buildPass = false;
 			}
 		}
 
-		boolean buildPass = !mavenOutput.contains("BUILD FAILURE");
+		/**
+		 * @param text The output of Maven, or where it is to be found, as it is kept with the test summary
+		 */
+		public TestOutput getTestOutput(String text){
+			return new TestOutput(this.run, this.failures, this.errors, this.skipped, text, this.buildPass);
+		}
 
-		return new TestOutput(run, failures, errors, skipped, mavenOutput, buildPass);
+		/**
+		 * @param log The file the output of Maven is logged in, as it is kept with the test summary
+		 */
+		public TestOutput getTestOutput(File log){
+			return new TestOutput(this.run, this.failures, this.errors, this.skipped, log, this.buildPass);
+		}
 	}
 
 	public static HashMap<String, String> getClasspathsFromFile(File log_file) {
@@ -7,10 +7,10 @@ import java.util.*;
 
 public class PathResolutionUtil {
 	private static HashMap<String, String> classPathMap = new HashMap<String, String>();
-	private static HashSet<String> classPaths = new HashSet<>();
+	private static Set<File> classPaths = new LinkedHashSet<File>();
 	public static void buildMap(Set<File> class_paths){
 		for(File cp:class_paths) {
-			classPaths.add(cp.getAbsolutePath());
+			classPaths.add(cp.getAbsoluteFile());
 			PathResolutionUtil.readClass(cp);
 		}
 	}
@@ -19,12 +19,9 @@ public class PathResolutionUtil {
 			return PathResolutionUtil.classPathMap.get(className);
 		else
 		{
-			String fp = className.replaceAll("\\.",File.separator)+".class";
-			String path = "";
-			for(String cp: classPaths){
-				path = cp+File.separator+fp;
-				if(new File(path).exists())
-					return path;
+			for(ClassPathIndex.Location location : ClassPathIndex.find(className, classPaths)){
+				if(location.getClassFile().isPresent())
+					return location.getClassFile().get().getAbsolutePath();
 			}
 		}
 		return null;
@@ -32,7 +29,7 @@ public class PathResolutionUtil {
 	public static void readClass(File dir){
 		try {
 			if (dir.isDirectory()) {
-				readClassFromDirectory(dir, "");
+				readClassFromDirectory(dir);
 			}
 			else {
 				throw new IOException("Cannot read classes from '" + dir.getAbsolutePath() + "'. It is not a directory.");
@@ -43,35 +40,27 @@ public class PathResolutionUtil {
 		}
 	}
 
-	public static void readClassFromDirectory(File dirPath, String prefix) {
-		if(prefix.startsWith("/"))
-			prefix = prefix.substring(1);
+	public static void readClassFromDirectory(File dirPath) {
 		if(!dirPath.exists()) {
 			// fix NPE due to non-existent file
 			System.out.println(dirPath.getAbsolutePath() + " does not exist.");
 			return;
 		}
 
-		for(File f : dirPath.listFiles()) {
-			if(f.isDirectory()) {
-				readClassFromDirectory(f, prefix+"/"+dirPath.getName());
-			} else {
-				String fName = f.getName();
-				if(fName.endsWith(".class")) {
-					String class_package = "";
-					int path_start = prefix.indexOf("/");
-					if(path_start>-1){
-						class_package = prefix.substring(prefix.indexOf("/")+1).replaceAll("/",".")+".";
-					}
-					//prefix shouldn't start from classes. or test-classes
-					if(prefix.length()==0 && (dirPath.getName().equals("classes") || dirPath.getName().equals("test-classes"))){
-						class_package = "";
-					}
-					else
-						class_package += dirPath.getName()+".";
-					PathResolutionUtil.classPathMap.put(class_package+fName.substring(0,fName.length()-6),f.getAbsolutePath());
+		// class names are only derived from the file paths, the class files themselves are never read
+		List<Map<String, String>> results = ClassScanner.scanDirectory(dirPath, LinkedHashMap::new,
+			(result, classFile) -> {
+				String name = classFile.getName();
+				String className = name.substring(0, name.length() - 6).replace('/', '.');
+				//prefix shouldn't start from classes. or test-classes
+				if(!name.contains("/")
+					&& !(dirPath.getName().equals("classes") || dirPath.getName().equals("test-classes"))){
+					className = dirPath.getName() + "." + className;
 				}
-			}
+				result.put(className, classFile.getFile().getAbsolutePath());
+			});
+		for(Map<String, String> result : results){
+			PathResolutionUtil.classPathMap.putAll(result);
 		}
 	}
 }
@@ -0,0 +1,290 @@
+package edu.ucla.cs.jshrinklib.util;
+
+import java.io.*;
+import java.nio.charset.Charset;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Runs an external command (e.g., Maven), streaming its output (stdout and stderr, merged) line by line to the given
+ * handlers, such as the incremental parsers of "MavenUtils", rather than collecting it in memory. The raw output may be
+ * spilled to a log file, and only its last lines are kept for error messages.
+ *
+ * The command is killed once it runs for longer than its timeout, if any. The number of runs, timeouts and the time
+ * spent running each kind of command (by its name) are recorded, see "getMetrics".
+ */
+public class ProcessRunner {
+
+	// the number of lines of output kept for error messages
+	private static final int TAIL_LINES = 50;
+
+	private static final Map<String, Metrics> metrics = new ConcurrentHashMap<String, Metrics>();
+
+	private final String name;
+	private final List<String> command;
+	private final List<Consumer<String>> lineHandlers = new ArrayList<Consumer<String>>();
+	private Optional<File> logFile = Optional.empty();
+	private boolean temporaryLogFile = false;
+	private boolean keepOutput = false;
+	private long timeoutMillis = 0;
+
+	/**
+	 * @param name The name the command is recorded under (e.g., "maven_test")
+	 * @param command The command and its arguments
+	 */
+	public ProcessRunner(String name, List<String> command){
+		this.name = name;
+		this.command = new ArrayList<String>(command);
+	}
+
+	public ProcessRunner(String name, String... command){
+		this(name, Arrays.asList(command));
+	}
+
+	/**
+	 * Adds a handler each line of output is given to, as it is output.
+	 */
+	public ProcessRunner addLineHandler(Consumer<String> lineHandler){
+		this.lineHandlers.add(lineHandler);
+		return this;
+	}
+
+	/**
+	 * Writes the output to the given file.
+	 */
+	public ProcessRunner setLogFile(File logFile){
+		this.logFile = Optional.of(logFile);
+		this.temporaryLogFile = false;
+		return this;
+	}
+
+	/**
+	 * Writes the output to a temporary file, which is deleted if the command succeeds, and kept otherwise (see
+	 * "Result.getLogFile").
+	 */
+	public ProcessRunner setTemporaryLogFile(){
+		this.logFile = Optional.empty();
+		this.temporaryLogFile = true;
+		return this;
+	}
+
+	/**
+	 * Keeps the whole output in memory (see "Result.getOutput").
+	 */
+	public ProcessRunner keepOutput(){
+		this.keepOutput = true;
+		return this;
+	}
+
+	/**
+	 * Kills the command once it runs for longer than the given time. A timeout of 0 (the default) means no timeout.
+	 */
+	public ProcessRunner setTimeout(long timeout, TimeUnit unit){
+		this.timeoutMillis = unit.toMillis(timeout);
+		return this;
+	}
+
+	public Result run() throws IOException, InterruptedException {
+		File log = null;
+		if(this.temporaryLogFile){
+			log = File.createTempFile("jshrink_" + this.name + "_", ".log");
+		} else if(this.logFile.isPresent()){
+			log = this.logFile.get();
+			if(log.getAbsoluteFile().getParentFile() != null){
+				log.getAbsoluteFile().getParentFile().mkdirs();
+			}
+		}
+
+		ProcessBuilder processBuilder = new ProcessBuilder(this.command);
+		processBuilder.redirectErrorStream(true);
+
+		long start = System.nanoTime();
+		Process process = processBuilder.start();
+
+		// the timeout is enforced from another thread, as reading the output blocks until the command ends
+		final boolean[] timedOut = {false};
+		Thread watchdog = null;
+		if(this.timeoutMillis > 0){
+			watchdog = new Thread(() -> {
+				try {
+					if(!process.waitFor(this.timeoutMillis, TimeUnit.MILLISECONDS)){
+						synchronized (timedOut) {
+							timedOut[0] = true;
+						}
+						process.destroyForcibly();
+					}
+				} catch (InterruptedException e) {
+					// the command has ended
+				}
+			}, "jshrink-" + this.name + "-timeout");
+			watchdog.setDaemon(true);
+			watchdog.start();
+		}
+
+		Deque<String> tail = new ArrayDeque<String>();
+		StringBuilder output = this.keepOutput ? new StringBuilder() : null;
+		int exitValue;
+		try(BufferedReader br = new BufferedReader(new InputStreamReader(process.getInputStream()));
+		    Writer writer = log != null
+			    ? new BufferedWriter(new OutputStreamWriter(new FileOutputStream(log), Charset.defaultCharset()))
+			    : null){
+			String line;
+			while((line = br.readLine()) != null){
+				for(Consumer<String> lineHandler : this.lineHandlers){
+					lineHandler.accept(line);
+				}
+				if(writer != null){
+					writer.write(line);
+					writer.write(System.lineSeparator());
+				}
+				if(output != null){
+					output.append(line).append(System.lineSeparator());
+				}
+				tail.addLast(line);
+				if(tail.size() > TAIL_LINES){
+					tail.removeFirst();
+				}
+			}
+			exitValue = process.waitFor();
+		} finally {
+			if(process.isAlive()){
+				process.destroyForcibly();
+			}
+			if(watchdog != null){
+				watchdog.interrupt();
+			}
+		}
+
+		long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+		boolean hasTimedOut;
+		synchronized (timedOut) {
+			hasTimedOut = timedOut[0];
+		}
+		metrics.computeIfAbsent(this.name, k -> new Metrics()).record(millis, hasTimedOut);
+
+		if(this.temporaryLogFile && exitValue == 0 && !hasTimedOut){
+			log.delete();
+			log = null;
+		}
+
+		return new Result(exitValue, hasTimedOut, millis, new ArrayList<String>(tail),
+			output != null ? Optional.of(output.toString()) : Optional.empty(), Optional.ofNullable(log));
+	}
+
+	/**
+	 * @return The metrics of each kind of command run so far, by name
+	 */
+	public static Map<String, Metrics> getMetrics(){
+		return new TreeMap<String, Metrics>(metrics);
+	}
+
+	public static void resetMetrics(){
+		metrics.clear();
+	}
+
+	public static class Result {
+		private final int exitValue;
+		private final boolean timedOut;
+		private final long millis;
+		private final List<String> tail;
+		private final Optional<String> output;
+		private final Optional<File> logFile;
+
+		private Result(int exitValue, boolean timedOut, long millis, List<String> tail, Optional<String> output,
+		               Optional<File> logFile){
+			this.exitValue = exitValue;
+			this.timedOut = timedOut;
+			this.millis = millis;
+			this.tail = tail;
+			this.output = output;
+			this.logFile = logFile;
+		}
+
+		public int getExitValue(){
+			return this.exitValue;
+		}
+
+		public boolean isTimedOut(){
+			return this.timedOut;
+		}
+
+		public boolean isSuccess(){
+			return this.exitValue == 0 && !this.timedOut;
+		}
+
+		public long getMillis(){
+			return this.millis;
+		}
+
+		/**
+		 * @return The last lines of output
+		 */
+		public List<String> getTail(){
+			return this.tail;
+		}
+
+		/**
+		 * @return The whole output, if it is kept (see "ProcessRunner.keepOutput")
+		 */
+		public Optional<String> getOutput(){
+			return this.output;
+		}
+
+		/**
+		 * @return The file the output is written to, if any. A temporary log file is only kept if the command fails
+		 */
+		public Optional<File> getLogFile(){
+			return this.logFile;
+		}
+
+		/**
+		 * @return A description of the failure of the command, with the last lines of its output
+		 */
+		public String getFailureMessage(){
+			StringBuilder message = new StringBuilder();
+			message.append(this.timedOut ? "Timed out after " + this.millis + " ms." : "Exited with " + this.exitValue + ".");
+			if(this.logFile.isPresent()){
+				message.append(" The output is logged in " + this.logFile.get().getAbsolutePath() + ".");
+			}
+			message.append(" The output ended with:");
+			for(String line : this.tail){
+				message.append(System.lineSeparator()).append(line);
+			}
+			return message.toString();
+		}
+	}
+
+	public static class Metrics {
+		private int runs = 0;
+		private int timeouts = 0;
+		private long totalMillis = 0;
+		private long maxMillis = 0;
+
+		private synchronized void record(long millis, boolean timedOut){
+			this.runs++;
+			if(timedOut){
+				this.timeouts++;
+			}
+			this.totalMillis += millis;
+			this.maxMillis = Math.max(this.maxMillis, millis);
+		}
+
+		public synchronized int getRuns(){
+			return this.runs;
+		}
+
+		public synchronized int getTimeouts(){
+			return this.timeouts;
+		}
+
+		public synchronized long getTotalMillis(){
+			return this.totalMillis;
+		}
+
+		public synchronized long getMaxMillis(){
+			return this.maxMillis;
+		}
+	}
+}
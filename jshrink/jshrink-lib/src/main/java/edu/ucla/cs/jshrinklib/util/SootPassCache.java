@@ -0,0 +1,110 @@
+package edu.ucla.cs.jshrinklib.util;
+
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Optional;
+
+/**
+ * The outcome of the Soot pass (see "JShrink.makeSootPass") for single class files, persisted in a directory and keyed
+ * on the digest of the class file: either the class file Soot writes for the class, or the exception Soot throws when
+ * it cannot write the class. Classes which have been through the Soot pass before (typically, those of library jars
+ * which have not changed since the last run) then need not be loaded and written by Soot again.
+ */
+public class SootPassCache {
+
+	private final File directory;
+
+	public static class Entry {
+		private final Optional<byte[]> classBytes;
+		private final Optional<String> exceptionMessage;
+
+		private Entry(Optional<byte[]> classBytes, Optional<String> exceptionMessage){
+			this.classBytes = classBytes;
+			this.exceptionMessage = exceptionMessage;
+		}
+
+		/**
+		 * @return The class file written by Soot, if Soot can write the class
+		 */
+		public Optional<byte[]> getClassBytes(){
+			return this.classBytes;
+		}
+
+		/**
+		 * @return The message of the exception thrown by Soot, if Soot cannot write the class
+		 */
+		public Optional<String> getExceptionMessage(){
+			return this.exceptionMessage;
+		}
+	}
+
+	/**
+	 * @param directory The directory the entries are persisted in. It is created when the first entry is stored, if it
+	 *                  does not exist
+	 */
+	public SootPassCache(File directory){
+		this.directory = directory;
+	}
+
+	private File getFile(String classDigest, String extension){
+		return new File(this.directory.getAbsolutePath() + File.separator + classDigest + extension);
+	}
+
+	/**
+	 * @param classDigest The digest of the class file, as given by "DigestUtils.sha256(byte[])"
+	 * @return The outcome of the Soot pass for the class file, if it has been stored
+	 */
+	public Optional<Entry> get(String classDigest){
+		try {
+			File classFile = getFile(classDigest, ".class");
+			if(classFile.exists()){
+				return Optional.of(new Entry(Optional.of(Files.readAllBytes(classFile.toPath())), Optional.empty()));
+			}
+			File exceptionFile = getFile(classDigest, ".unmodifiable");
+			if(exceptionFile.exists()){
+				return Optional.of(new Entry(Optional.empty(),
+					Optional.of(FileUtils.readFileToString(exceptionFile, StandardCharsets.UTF_8))));
+			}
+		} catch (IOException e){
+			System.out.println("[" + new java.util.Date() + "]" + "Could not read the Soot pass cache entry \""
+				+ classDigest + "\": " + e.getLocalizedMessage());
+		}
+		return Optional.empty();
+	}
+
+	/**
+	 * Stores the class file Soot writes for the class file with the given digest.
+	 */
+	public void putClassBytes(String classDigest, byte[] classBytes){
+		put(getFile(classDigest, ".class"), classBytes);
+	}
+
+	/**
+	 * Stores the message of the exception Soot throws when writing the class file with the given digest.
+	 */
+	public void putExceptionMessage(String classDigest, String exceptionMessage){
+		put(getFile(classDigest, ".unmodifiable"), exceptionMessage.getBytes(StandardCharsets.UTF_8));
+	}
+
+	/*
+	An entry is written to a temporary file first and then moved in place, so a run which is interrupted never leaves
+	a partial entry behind.
+	 */
+	private void put(File file, byte[] content){
+		try {
+			FileUtils.forceMkdir(this.directory);
+			File temporaryFile = File.createTempFile(file.getName(), ".tmp", this.directory);
+			Files.write(temporaryFile.toPath(), content);
+			if(!temporaryFile.renameTo(file)){
+				FileUtils.forceDelete(temporaryFile);
+			}
+		} catch (IOException e){
+			System.out.println("[" + new java.util.Date() + "]" + "Could not store the Soot pass cache entry \""
+				+ file.getAbsolutePath() + "\": " + e.getLocalizedMessage());
+		}
+	}
+}
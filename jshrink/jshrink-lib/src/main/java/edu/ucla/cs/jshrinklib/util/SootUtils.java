@@ -2,9 +2,11 @@ package edu.ucla.cs.jshrinklib.util;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.*;
 
 import edu.ucla.cs.jshrinklib.reachability.FieldData;
 import edu.ucla.cs.jshrinklib.reachability.MethodData;
+import edu.ucla.cs.jshrinklib.reachability.MethodGraph;
 import soot.*;
 import soot.jimple.JasminClass;
 import soot.jimple.toolkits.callgraph.CallGraph;
@@ -74,6 +76,8 @@ public class SootUtils {
 	public static Map<SootMethod, Set<SootMethod>> convertMethodDataCallGraphToSootMethodCallGraph(
 			Map<MethodData, Set<MethodData>> map){
 		Map<SootMethod, Set<SootMethod>> toReturn = new HashMap<SootMethod, Set<SootMethod>>();
+		// the same callers appear in the caller sets of many methods, so resolve each of them only once
+		Map<MethodData, Optional<SootMethod>> resolvedCallers = new HashMap<MethodData, Optional<SootMethod>>();
 		for(Map.Entry<MethodData, Set<MethodData>> entry : map.entrySet()){
 			SootClass keySootClass = Scene.v().loadClassAndSupport(entry.getKey().getClassName());
 
@@ -87,10 +91,13 @@ public class SootUtils {
 				SootMethod keySootMethod = keySootClass.getMethod(entry.getKey().getSubSignature());
 				Set<SootMethod> value = new HashSet<SootMethod>();
 				for (MethodData methodData : entry.getValue()) {
-					SootClass valueSootClass = Scene.v().getSootClass(methodData.getClassName());
-					if (valueSootClass.declaresMethod(methodData.getSubSignature())) {
-						SootMethod valueSootMethod = valueSootClass.getMethod(methodData.getSubSignature());
-						value.add(valueSootMethod);
+					Optional<SootMethod> valueSootMethod = resolvedCallers.computeIfAbsent(methodData, md -> {
+						SootClass valueSootClass = Scene.v().getSootClass(md.getClassName());
+						return valueSootClass.declaresMethod(md.getSubSignature())
+							? Optional.of(valueSootClass.getMethod(md.getSubSignature())) : Optional.<SootMethod>empty();
+					});
+					if (valueSootMethod.isPresent()) {
+						value.add(valueSootMethod.get());
 					}
 				}
 				toReturn.put(keySootMethod, value);
@@ -243,46 +250,106 @@ public class SootUtils {
 		}
 	}
 
-	public static void visitMethodNonRecur(SootMethod parent, CallGraph cg, Set<String> usedClass, Map<MethodData,
-			Set<MethodData>> visited, Set<String> appClasses, Set<String> libClasses){
-		Queue<SootMethod> stack = new LinkedList<SootMethod>();
-		stack.add(parent);
-
-		Map<SootMethod, Set<SootMethod>> visitedSootMethod = new HashMap<SootMethod, Set<SootMethod>>();
-
-		while(!stack.isEmpty()) {
-			SootMethod par = stack.poll();
-			//MethodData parentMethodData = sootMethodToMethodData(par);
-			usedClass.add(par.getDeclaringClass().getName());
-
-			Iterator<MethodOrMethodContext> targets = new Targets(cg.edgesOutOf(par));
-			while (targets.hasNext()) {
-				SootMethod method = (SootMethod) targets.next();
-				//MethodData methodMethodData = sootMethodToMethodData(method);
+	/*
+	A single breadth-first traversal of the call graph from all the entry points at once. Each reachable method is
+	expanded once, so each edge is visited once, and every edge out of a reachable method is added to "visited" as
+	"callee <- caller". The classes of the reachable methods are added to "usedClass".
+
+	With more than one thread, each level of the traversal is split between the threads. The threads only read the
+	call graph; the methods and edges they find are merged on this thread, so the result is the same as with one.
+	 */
+	public static void visitMethodsNonRecur(Collection<SootMethod> entryPoints, CallGraph cg, Set<String> usedClass,
+			MethodGraph.Builder visited, int threads){
+		Set<SootMethod> reached = Collections.newSetFromMap(new ConcurrentHashMap<SootMethod, Boolean>());
+		List<SootMethod> frontier = new ArrayList<SootMethod>();
+		for(SootMethod entryPoint : entryPoints){
+			if(reached.add(entryPoint)){
+				frontier.add(entryPoint);
+			}
+		}
 
-				if (!visitedSootMethod.containsKey(method)) {
-					visitedSootMethod.put(method, new HashSet<SootMethod>());
-				} else if (visitedSootMethod.get(method).contains(par)) {
-					continue;
+		// most methods are both callees and callers, so convert each of them only once
+		Map<SootMethod, MethodData> methodData = new HashMap<SootMethod, MethodData>();
+		ExecutorService executor = threads > 1 ? Executors.newFixedThreadPool(threads) : null;
+		try {
+			while(!frontier.isEmpty()) {
+				List<TraversalStep> steps = new ArrayList<TraversalStep>();
+				if(executor == null || frontier.size() < threads) {
+					steps.add(new TraversalStep(frontier, cg, reached).call());
+				} else {
+					int chunkSize = (frontier.size() + threads - 1) / threads;
+					List<Future<TraversalStep>> results = new ArrayList<Future<TraversalStep>>();
+					for(int i=0; i<frontier.size(); i+=chunkSize) {
+						results.add(executor.submit(new TraversalStep(
+							frontier.subList(i, Math.min(i + chunkSize, frontier.size())), cg, reached)));
+					}
+					for(Future<TraversalStep> result : results) {
+						steps.add(result.get());
+					}
 				}
 
-				visitedSootMethod.get(method).add(par);
-				stack.add(method);
-
+				List<SootMethod> next = new ArrayList<SootMethod>();
+				for(TraversalStep step : steps) {
+					for(SootMethod method : step.methods) {
+						usedClass.add(method.getDeclaringClass().getName());
+						visited.addMethod(methodData.computeIfAbsent(method, SootUtils::sootMethodToMethodData));
+					}
+					for(int i=0; i<step.callees.size(); i++) {
+						visited.addCall(methodData.computeIfAbsent(step.callees.get(i), SootUtils::sootMethodToMethodData),
+							methodData.computeIfAbsent(step.callers.get(i), SootUtils::sootMethodToMethodData));
+					}
+					next.addAll(step.discovered);
+				}
+				frontier = next;
+			}
+		} catch (InterruptedException e) {
+			e.printStackTrace();
+			System.exit(1);
+		} catch (ExecutionException e) {
+			if(e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new RuntimeException(e.getCause());
+		} finally {
+			if(executor != null) {
+				executor.shutdownNow();
 			}
 		}
+	}
 
-		for(Map.Entry<SootMethod, Set<SootMethod>> entry: visitedSootMethod.entrySet()){
-			MethodData methodDataKey = sootMethodToMethodData(entry.getKey());
-			if(!visited.containsKey(methodDataKey)){
-				visited.put(sootMethodToMethodData(entry.getKey()), new HashSet<MethodData>());
-			}
+	/*
+	Expands part of one level of "visitMethodsNonRecur": records the edges out of the given methods, and the callees
+	which had not been reached before (the next level).
+	 */
+	private static class TraversalStep implements Callable<TraversalStep> {
+		private final List<SootMethod> methods;
+		private final CallGraph cg;
+		private final Set<SootMethod> reached;
+		private final List<SootMethod> callees = new ArrayList<SootMethod>();
+		private final List<SootMethod> callers = new ArrayList<SootMethod>();
+		private final List<SootMethod> discovered = new ArrayList<SootMethod>();
+
+		private TraversalStep(List<SootMethod> methods, CallGraph cg, Set<SootMethod> reached){
+			this.methods = methods;
+			this.cg = cg;
+			this.reached = reached;
+		}
 
-			for(SootMethod sootMethod: entry.getValue()){
-				visited.get(methodDataKey).add(sootMethodToMethodData(sootMethod));
+		@Override
+		public TraversalStep call(){
+			for(SootMethod par : this.methods) {
+				Iterator<MethodOrMethodContext> targets = new Targets(this.cg.edgesOutOf(par));
+				while (targets.hasNext()) {
+					SootMethod method = (SootMethod) targets.next();
+					this.callees.add(method);
+					this.callers.add(par);
+					if(this.reached.add(method)) {
+						this.discovered.add(method);
+					}
+				}
 			}
+			return this;
 		}
-
 	}
 
 	public static boolean modifiableSootClass(SootClass sootClass){
@@ -330,6 +397,44 @@ public class SootUtils {
 		return Optional.empty();
 	}
 
+	/*
+	Soot keeps all of its state in the "G" singleton. When analysing several modules at once, each worker thread needs
+	its own copy, otherwise the analyses would trample over each other's Scene. "useThreadScopedSoot()" gives every
+	thread its own G (created lazily, reset by "G.reset()" on that thread only). "useGlobalSoot()" switches back to a
+	single, fresh, G shared by all threads.
+	 */
+	public static void useThreadScopedSoot(){
+		G.setGlobalObjectGetter(new G.GlobalObjectGetter() {
+			private final ThreadLocal<G> instance = ThreadLocal.withInitial(G::new);
+
+			@Override
+			public G getG() {
+				return instance.get();
+			}
+
+			@Override
+			public void reset() {
+				instance.set(new G());
+			}
+		});
+	}
+
+	public static void useGlobalSoot(){
+		G.setGlobalObjectGetter(new G.GlobalObjectGetter() {
+			private G instance = new G();
+
+			@Override
+			public G getG() {
+				return instance;
+			}
+
+			@Override
+			public void reset() {
+				instance = new G();
+			}
+		});
+	}
+
 	public static boolean isPackagePrivate(ClassMember classMember){
 		return !classMember.isPrivate() && !classMember.isProtected() && !classMember.isPublic();
 	}
@@ -1,17 +1,21 @@
 package edu.ucla.cs.jshrinklib.backup;
 
+import edu.ucla.cs.jshrinklib.util.ClassFileUtils;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.filefilter.TrueFileFilter;
 import org.junit.Test;
 
 import java.io.*;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.Set;
 import java.util.stream.Collectors;
 
 import static junit.framework.TestCase.assertTrue;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 
@@ -107,6 +111,16 @@ public class CheckpointTest {
 		assertTrue(c.isSafe());
 	}
 
+	@Test
+	public void checkpointSelectedTestsTest(){
+		String realPath = CheckpointTest.class.getClassLoader().getResource("simple-test-project2").getPath();
+		String backupPath = "/tmp/checkpoint-test";
+		Checkpoint c = new Checkpoint(realPath, backupPath, "class-collapse", true);
+		assertTrue(c.isSafe(new HashSet<String>(Arrays.asList("StandardStuffTest"))));
+		// no test reaches the change
+		assertTrue(c.isSafe(new HashSet<String>()));
+	}
+
 	@Test
 	public void checkpointTest2(){
 		String realPath = CheckpointTest.class.getClassLoader().getResource("junit4").getPath();
@@ -136,4 +150,103 @@ public class CheckpointTest {
 		String p = File.separator+"src"+File.separator+"main"+File.separator+"java";
 		assertEquals(c.getBackupPath().toAbsolutePath()+p,c.resolveToBackupFile(new File(realPath+p)).getAbsolutePath());
 	}
+
+	@Test
+	public void testPatternsTest(){
+		Set<String> testClasses = new HashSet<String>();
+		testClasses.add("edu.ucla.cs.FooTest");
+		testClasses.add("edu.ucla.cs.FooTest$Nested");
+		testClasses.add("BarTest");
+		assertEquals("BarTest,edu/ucla/cs/FooTest", Checkpoint.getTestPatterns(testClasses));
+	}
+
+	@Test
+	public void hardLinkTest() throws IOException {
+		File realDir = Files.createTempDirectory("checkpoint_real_").toFile();
+		File backupDir = Files.createTempDirectory("checkpoint_backup_").toFile();
+		try {
+			File project = new File(realDir, "simple-test-project2");
+			FileUtils.copyDirectory(new File(CheckpointTest.class.getClassLoader()
+				.getResource("simple-test-project2").getFile()), project);
+			Checkpoint c = new Checkpoint(project.getAbsolutePath(), backupDir.getAbsolutePath(), "method-removal");
+			assertTrue(compareDir(c.getRealPath(), c.getBackupPath()));
+
+			// class files and jars are shared with the checkpoint, other files are copied
+			Path mainClass = new File(project, "target/classes/Main.class").toPath();
+			Path cClass = new File(project, "target/classes/C.class").toPath();
+			Path jar = new File(project, "target/simple-test-project2-1.0-SNAPSHOT.jar").toPath();
+			Path pom = new File(project, "pom.xml").toPath();
+			assertTrue(Files.isSameFile(mainClass, c.resolveToBackupFile(mainClass.toFile()).toPath()));
+			assertTrue(Files.isSameFile(cClass, c.resolveToBackupFile(cClass.toFile()).toPath()));
+			assertTrue(Files.isSameFile(jar, c.resolveToBackupFile(jar.toFile()).toPath()));
+			assertFalse(Files.isSameFile(pom, c.resolveToBackupFile(pom.toFile()).toPath()));
+
+			// a class written in the checkpoint does not change the project
+			byte[] originalBytes = Files.readAllBytes(mainClass);
+			byte[] newBytes = new byte[]{(byte) 0xCA, (byte) 0xFE, (byte) 0xBA, (byte) 0xBE};
+			ClassFileUtils.replaceFile(c.resolveToBackupFile(mainClass.toFile()), newBytes);
+			assertArrayEquals(originalBytes, Files.readAllBytes(mainClass));
+			assertFalse(Files.isSameFile(mainClass, c.resolveToBackupFile(mainClass.toFile()).toPath()));
+
+			// rolling back brings the changed class back, and shares it again
+			assertTrue(c.rollBackToBackup());
+			assertArrayEquals(newBytes, Files.readAllBytes(mainClass));
+			assertTrue(Files.isSameFile(mainClass, c.resolveToBackupFile(mainClass.toFile()).toPath()));
+			assertTrue(Files.isSameFile(cClass, c.resolveToBackupFile(cClass.toFile()).toPath()));
+
+			// deleting the checkpoint leaves the project intact
+			assertTrue(c.delete());
+			assertArrayEquals(newBytes, Files.readAllBytes(mainClass));
+			assertTrue(cClass.toFile().exists());
+		} finally {
+			FileUtils.deleteDirectory(realDir);
+			FileUtils.deleteDirectory(backupDir);
+		}
+	}
+
+	@Test
+	public void breakHardLinksTest() throws IOException {
+		File realDir = Files.createTempDirectory("checkpoint_real_").toFile();
+		File backupDir = Files.createTempDirectory("checkpoint_backup_").toFile();
+		try {
+			File project = new File(realDir, "simple-test-project2");
+			FileUtils.copyDirectory(new File(CheckpointTest.class.getClassLoader()
+				.getResource("simple-test-project2").getFile()), project);
+			// the installed artifact of the project, and a dependency, in the local repository
+			Path artifact = new File(project, "libs/edu/ucla/cs/simple-test-project2/1.0/simple-test-project2-1.0.jar")
+				.toPath();
+			Path dependency = new File(project, "libs/junit/junit/4.12/junit-4.12.jar").toPath();
+			FileUtils.writeByteArrayToFile(artifact.toFile(), new byte[]{(byte) 0x50, (byte) 0x4B});
+			FileUtils.writeByteArrayToFile(dependency.toFile(), new byte[]{(byte) 0x50, (byte) 0x4B});
+
+			Checkpoint c = new Checkpoint(project.getAbsolutePath(), backupDir.getAbsolutePath(), "method-removal");
+			Path mainClass = new File(project, "target/classes/Main.class").toPath();
+			Path backupClass = c.resolveToBackupFile(mainClass.toFile()).toPath();
+			Path backupArtifact = c.resolveToBackupFile(artifact.toFile()).toPath();
+			Path backupDependency = c.resolveToBackupFile(dependency.toFile()).toPath();
+			assertTrue(Files.isSameFile(mainClass, backupClass));
+			assertTrue(Files.isSameFile(artifact, backupArtifact));
+
+			// as before Maven compiles the checkpoint, which leaves the local repository as it is
+			Checkpoint.breakHardLinks(c.getBackupPath(), false);
+			assertFalse(Files.isSameFile(mainClass, backupClass));
+			assertTrue(Files.isSameFile(artifact, backupArtifact));
+
+			// as before Maven installs the checkpoint, which only writes the artifacts of its modules
+			Checkpoint.breakHardLinks(c.getBackupPath(), true);
+			assertFalse(Files.isSameFile(artifact, backupArtifact));
+			assertTrue(Files.isSameFile(dependency, backupDependency));
+			byte[] originalBytes = Files.readAllBytes(mainClass);
+			assertArrayEquals(originalBytes, Files.readAllBytes(backupClass));
+
+			// writing into a file of the checkpoint no longer changes the project
+			try(OutputStream out = new FileOutputStream(backupClass.toFile())){
+				out.write(new byte[]{(byte) 0xCA, (byte) 0xFE});
+			}
+			assertArrayEquals(originalBytes, Files.readAllBytes(mainClass));
+		} finally {
+			FileUtils.deleteDirectory(realDir);
+			FileUtils.deleteDirectory(backupDir);
+		}
+	}
 }
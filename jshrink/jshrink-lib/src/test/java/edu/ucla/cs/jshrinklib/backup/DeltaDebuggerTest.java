@@ -0,0 +1,72 @@
+package edu.ucla.cs.jshrinklib.backup;
+
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.assertEquals;
+
+public class DeltaDebuggerTest {
+
+	private static final Set<String> CHANGED_CLASSES = new HashSet<String>(Arrays.asList(
+		"a.A1", "a.A2", "a.A3", "b.B1", "b.B2", "c.C1", "c.C2", "c.C3", "c.C4", "d.D1", "Main"));
+
+	/*
+	Validates a subset of the classes: it fails if it contains every class of one of the given failures.
+	 */
+	private static DeltaDebugger.Validator failingWith(List<Set<String>> failures, List<Set<String>> validated){
+		return subsets -> {
+			List<Boolean> toReturn = new ArrayList<Boolean>();
+			for(Set<String> subset : subsets){
+				validated.add(subset);
+				boolean passes = true;
+				for(Set<String> failure : failures){
+					if(subset.containsAll(failure)){
+						passes = false;
+					}
+				}
+				toReturn.add(passes);
+			}
+			return toReturn;
+		};
+	}
+
+	private static Set<String> set(String... classes){
+		return new TreeSet<String>(Arrays.asList(classes));
+	}
+
+	@Test
+	public void singleFailingClassTest(){
+		List<Set<String>> validated = new ArrayList<Set<String>>();
+		DeltaDebugger deltaDebugger = new DeltaDebugger(failingWith(Arrays.asList(set("c.C3")), validated));
+		assertEquals(set("c.C3"), deltaDebugger.isolateFailures(CHANGED_CLASSES));
+		assertEquals(validated.size(), deltaDebugger.getValidations());
+	}
+
+	@Test
+	public void failingClassesTogetherTest(){
+		// the changes to "a.A2" and "d.D1" only fail together
+		List<Set<String>> validated = new ArrayList<Set<String>>();
+		DeltaDebugger deltaDebugger = new DeltaDebugger(failingWith(Arrays.asList(set("a.A2", "d.D1")), validated));
+		assertEquals(set("a.A2", "d.D1"), deltaDebugger.isolateFailures(CHANGED_CLASSES));
+	}
+
+	@Test
+	public void severalFailuresTest(){
+		List<Set<String>> validated = new ArrayList<Set<String>>();
+		DeltaDebugger deltaDebugger = new DeltaDebugger(failingWith(
+			Arrays.asList(set("b.B1"), set("Main"), set("c.C1", "c.C4")), validated));
+		assertEquals(set("b.B1", "Main", "c.C1", "c.C4"), deltaDebugger.isolateFailures(CHANGED_CLASSES));
+		// the changes which are kept pass validation
+		Set<String> kept = new TreeSet<String>(CHANGED_CLASSES);
+		kept.removeAll(set("b.B1", "Main", "c.C1", "c.C4"));
+		assertEquals(kept, validated.get(validated.size() - 1));
+	}
+
+	@Test
+	public void allFailingTest(){
+		List<Set<String>> validated = new ArrayList<Set<String>>();
+		DeltaDebugger deltaDebugger = new DeltaDebugger(failingWith(Arrays.asList(set()), validated));
+		assertEquals(new TreeSet<String>(CHANGED_CLASSES), deltaDebugger.isolateFailures(CHANGED_CLASSES));
+	}
+}
@@ -1,5 +1,6 @@
 package edu.ucla.cs.jshrinklib.methodinliner;
 
+import edu.ucla.cs.jshrinklib.JShrink;
 import edu.ucla.cs.jshrinklib.TestUtils;
 import edu.ucla.cs.jshrinklib.reachability.CallGraphAnalysis;
 import edu.ucla.cs.jshrinklib.reachability.EntryPointProcessor;
@@ -171,6 +172,36 @@ public class MethodInlinerTest {
 				SootUtils.convertMethodDataCallGraphToSootMethodCallGraph(callGraphAnalysis.getUsedLibMethods()));
 	}
 
+	public void setup_appOnlyProject(String project, boolean useSpark){
+		ClassLoader classLoader = MethodInlinerTest.class.getClassLoader();
+		original = new File(classLoader.getResource(project).getFile());
+
+		try{
+			backup = File.createTempFile("backup", "");
+			backup.delete();
+			FileUtils.copyDirectory(original,backup);
+		} catch(IOException e){
+			e.printStackTrace();
+			System.exit(1);
+		}
+
+		appClassPath.add(new File(backup.getAbsolutePath()
+			+ File.separator + "target" + File.separator + "classes"));
+
+		EntryPointProcessor epp = new EntryPointProcessor(true, false, false,
+			new HashSet<MethodData>() );
+
+		CallGraphAnalysis callGraphAnalysis =
+			new CallGraphAnalysis(libJarPath, appClassPath, appTestPath, epp,useSpark);
+		callGraphAnalysis.setup();
+		callGraphAnalysis.run();
+
+		SootUtils.setup_trimming(libJarPath,appClassPath,appTestPath);
+		this.callgraph = SootUtils.mergeCallGraphMaps(
+			SootUtils.convertMethodDataCallGraphToSootMethodCallGraph(callGraphAnalysis.getUsedAppMethods()),
+			SootUtils.convertMethodDataCallGraphToSootMethodCallGraph(callGraphAnalysis.getUsedLibMethods()));
+	}
+
 	@Test
 	public void inlineMethodsTest() throws IOException{
 		setup_simpleTestProject();
@@ -342,4 +373,52 @@ public class MethodInlinerTest {
 			.get(TestUtils.getMethodDataFromSignature("<ChildsChild: public java.lang.String bla()>"))
 			.contains(TestUtils.getMethodDataFromSignature("<Main: public static void dynamicDispatch2(Parent)>")));
 	}
+
+	@Test
+	public void inlineEnablesEarlierCalleeTest() throws IOException{
+		/*
+		"Helper.greet()" calls the private "Helper.print(String)", so it cannot be inlined in "Main" until "print" has
+		been inlined in it. "greet" comes first in signature order, so it is inlined in the second pass.
+		 */
+		setup_appOnlyProject("inline-order-project", false);
+		JShrink.enable_member_visibility = true;
+		InlineData inlineData;
+		try {
+			inlineData = MethodInliner.inlineMethods(this.callgraph, getClasspaths(), new HashSet<String>());
+		} finally {
+			JShrink.enable_member_visibility = false;
+		}
+
+		Map<MethodData, Set<MethodData>> expected = new HashMap<MethodData, Set<MethodData>>();
+		expected.put(TestUtils.getMethodDataFromSignature("<Helper: private static void print(java.lang.String)>"),
+			Collections.singleton(TestUtils.getMethodDataFromSignature("<Helper: public static void greet()>")));
+		expected.put(TestUtils.getMethodDataFromSignature("<Helper: public static void greet()>"),
+			Collections.singleton(
+				TestUtils.getMethodDataFromSignature("<Main: public static void main(java.lang.String[])>")));
+		assertEquals(expected, inlineData.getInlineLocations());
+
+		assertEquals(Collections.singleton(
+				TestUtils.getMethodDataFromSignature("<Main: public static void main(java.lang.String[])>")),
+			inlineData.getUltimateInlineLocations(TestUtils.getMethodDataFromSignature(
+				"<Helper: private static void print(java.lang.String)>")).get());
+	}
+
+	@Test
+	public void inlinedDispatchCandidateTest() throws IOException{
+		/*
+		"Square.name()" is called from "Main.main" once "Main.printName" is inlined there, but "Defaults.name()", which
+		has the same sub-signature, was inlined in "Main.main" earlier in the same pass. It still counts as a target of
+		the dynamic invocation until the end of the pass, so "Square.name()" is only inlined in the next pass.
+		 */
+		setup_appOnlyProject("inline-dispatch-project", true);
+		InlineData inlineData = MethodInliner.inlineMethods(this.callgraph, getClasspaths(), new HashSet<String>());
+
+		Set<MethodData> main = Collections.singleton(
+			TestUtils.getMethodDataFromSignature("<Main: public static void main(java.lang.String[])>"));
+		Map<MethodData, Set<MethodData>> expected = new HashMap<MethodData, Set<MethodData>>();
+		expected.put(TestUtils.getMethodDataFromSignature("<Defaults: public static java.lang.String name()>"), main);
+		expected.put(TestUtils.getMethodDataFromSignature("<Main: public static void printName(Shape)>"), main);
+		expected.put(TestUtils.getMethodDataFromSignature("<Square: public java.lang.String name()>"), main);
+		assertEquals(expected, inlineData.getInlineLocations());
+	}
 }
@@ -1,6 +1,7 @@
 package edu.ucla.cs.jshrinklib.reachability;
 
 import org.apache.commons.io.FileUtils;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -11,11 +12,15 @@ import java.util.HashSet;
 import java.util.List;
 
 import static junit.framework.TestCase.assertTrue;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
 
 public class CallGraphAnalysisCacheWrapperTest {
 
 	private File project;
+	// the copies of the project made by a test
+	private List<File> copies = new ArrayList<File>();
 
 	@Before
 	public void before(){
@@ -36,6 +41,15 @@ public class CallGraphAnalysisCacheWrapperTest {
 		}
 	}
 
+	@After
+	public void after() throws IOException {
+		FileUtils.deleteDirectory(this.project);
+		for(File copy : this.copies){
+			FileUtils.deleteDirectory(copy);
+		}
+		this.copies.clear();
+	}
+
 	@Test
 	public void testCache(){
 		ClassLoader classLoader = CallGraphAnalysisCacheWrapper.class.getClassLoader();
@@ -62,6 +76,7 @@ public class CallGraphAnalysisCacheWrapperTest {
 		callGraphAnalysisCacheWrapper.run();
 
 		assertTrue(callGraphAnalysisCacheWrapper.getCache().isPresent());
+		assertTrue(new File(callGraphAnalysisCacheWrapper.getCache().get().getAbsolutePath() + ".manifest").exists());
 
 		CallGraphAnalysisCacheWrapper callGraphAnalysisCacheWrapper2 =
 			new CallGraphAnalysisCacheWrapper(this.project, "module", libJarPath, appClassPath,
@@ -73,5 +88,55 @@ public class CallGraphAnalysisCacheWrapperTest {
 		callGraphAnalysisCacheWrapper2.run();
 
 		assertTrue(callGraphAnalysisCacheWrapper2.getCache().isPresent());
+
+		// the results loaded from the cache must be the same as those computed
+		assertFalse(callGraphAnalysisCacheWrapper.getUsedAppMethods().isEmpty());
+		assertEquals(callGraphAnalysisCacheWrapper.getEntryPoints(), callGraphAnalysisCacheWrapper2.getEntryPoints());
+		assertEquals(callGraphAnalysisCacheWrapper.getAppClasses(), callGraphAnalysisCacheWrapper2.getAppClasses());
+		assertEquals(callGraphAnalysisCacheWrapper.getAppMethods(), callGraphAnalysisCacheWrapper2.getAppMethods());
+		assertEquals(callGraphAnalysisCacheWrapper.getAppFields(), callGraphAnalysisCacheWrapper2.getAppFields());
+		assertEquals(callGraphAnalysisCacheWrapper.getUsedAppClasses(),
+			callGraphAnalysisCacheWrapper2.getUsedAppClasses());
+		assertEquals(callGraphAnalysisCacheWrapper.getUsedAppMethods(),
+			callGraphAnalysisCacheWrapper2.getUsedAppMethods());
+		assertEquals(callGraphAnalysisCacheWrapper.getUsedAppFields(),
+			callGraphAnalysisCacheWrapper2.getUsedAppFields());
+		assertEquals(callGraphAnalysisCacheWrapper.getTestMethods(), callGraphAnalysisCacheWrapper2.getTestMethods());
+		assertEquals(callGraphAnalysisCacheWrapper.getUsedTestMethods(),
+			callGraphAnalysisCacheWrapper2.getUsedTestMethods());
+	}
+
+	private CallGraphAnalysisCacheWrapper getCacheWrapper(File project){
+		List<File> appClassPath = new ArrayList<File>();
+		appClassPath.add(new File(
+			project.getAbsolutePath() + File.separator + "target" + File.separator + "classes"));
+		List<File> appTestPath = new ArrayList<File>();
+		appTestPath.add(new File(
+			project.getAbsolutePath() + File.separator + "target" + File.separator + "test-classes"));
+
+		EntryPointProcessor entryPointProcessor =
+			new EntryPointProcessor(true, false, false, new HashSet<MethodData>());
+
+		return new CallGraphAnalysisCacheWrapper(project, "module", new ArrayList<File>(), appClassPath,
+			appTestPath, entryPointProcessor, false, true, false);
+	}
+
+	@Test
+	public void testCacheKey() throws IOException {
+		String key = getCacheWrapper(this.project).getCacheKey();
+		assertEquals(key, getCacheWrapper(this.project).getCacheKey());
+
+		// The key depends on the content of the project, not on where it is located
+		File copy = File.createTempFile("simple-test-project2_copy_", "");
+		copy.delete();
+		this.copies.add(copy);
+		FileUtils.copyDirectory(this.project, copy);
+		assertEquals(key, getCacheWrapper(copy).getCacheKey());
+
+		// Rebuilding a class changes the key
+		File classFile = FileUtils.listFiles(new File(copy.getAbsolutePath() + File.separator + "target"
+			+ File.separator + "classes"), new String[]{"class"}, true).iterator().next();
+		FileUtils.writeByteArrayToFile(classFile, new byte[]{0}, true);
+		assertNotEquals(key, getCacheWrapper(copy).getCacheKey());
 	}
 }
@@ -466,6 +466,36 @@ public class CallGraphAnalysisSimpleTest {
 				"method"));
 	}
 
+	@Test
+	public void testParallelTraversal(){
+		ClassLoader classLoader = CallGraphAnalysisSimpleTest.class.getClassLoader();
+		List<File> libJarPath = new ArrayList<File>();
+		List<File> appClassPath = new ArrayList<File>();
+		appClassPath.add(new File(classLoader.getResource("simple-test-project2"
+			+ File.separator + "target" + File.separator + "classes").getFile()));
+		List<File> appTestPath = new ArrayList<File>();
+		appTestPath.add(new File(classLoader.getResource("simple-test-project2"
+			+ File.separator + "target" + File.separator + "test-classes").getFile()));
+
+		CallGraphAnalysis sequential = new CallGraphAnalysis(libJarPath, appClassPath, appTestPath,
+			new EntryPointProcessor(true, true, true, new HashSet<MethodData>()), false);
+		sequential.run();
+		G.reset();
+
+		CallGraphAnalysis parallel = new CallGraphAnalysis(libJarPath, appClassPath, appTestPath,
+			new EntryPointProcessor(true, true, true, new HashSet<MethodData>()), false);
+		parallel.setTraversalThreads(4);
+		parallel.run();
+
+		assertFalse(sequential.getUsedAppMethods().isEmpty());
+		assertEquals(sequential.getUsedAppMethods(), parallel.getUsedAppMethods());
+		assertEquals(sequential.getUsedLibMethods(), parallel.getUsedLibMethods());
+		assertEquals(sequential.getUsedTestMethods(), parallel.getUsedTestMethods());
+		assertEquals(sequential.getUsedAppClasses(), parallel.getUsedAppClasses());
+		assertEquals(sequential.getUsedLibClasses(), parallel.getUsedLibClasses());
+		assertEquals(sequential.getUsedAppFields(), parallel.getUsedAppFields());
+	}
+
 	private static Optional<Set<MethodData>> get(Map<MethodData,Set<MethodData>> map,
 	                                             String className, String methodName){
 		MethodData methodData = null;
@@ -0,0 +1,72 @@
+package edu.ucla.cs.jshrinklib.reachability;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+public class ClassPathSummaryTest {
+
+	private static File getJamaJar(){
+		return new File(ClassPathSummaryTest.class.getClassLoader().getResource("Jama-1.0.3.jar").getFile());
+	}
+
+	private static void assertSameSummary(ClassPathSummary expected, ClassPathSummary actual){
+		assertEquals(expected.getClasses(), actual.getClasses());
+		assertEquals(expected.getMethods(), actual.getMethods());
+		assertEquals(expected.getFields(), actual.getFields());
+		assertEquals(expected.getFieldReferences(), actual.getFieldReferences());
+		assertEquals(expected.getVirtualMethodCalls(), actual.getVirtualMethodCalls());
+	}
+
+	@Test
+	public void testStoredSummary() throws IOException {
+		File summaryDirectory = Files.createTempDirectory("asm_summaries_").toFile();
+		try {
+			ClassPathSummary scanned = ClassPathSummary.scan(getJamaJar(), true);
+			assertFalse(scanned.getMethods().isEmpty());
+
+			// The first call scans the jar and stores the summary, the second reads the stored summary back
+			assertSameSummary(scanned, ClassPathSummary.get(getJamaJar(), true, summaryDirectory));
+			assertEquals(1, summaryDirectory.listFiles().length);
+			assertSameSummary(scanned, ClassPathSummary.get(getJamaJar(), true, summaryDirectory));
+			assertEquals(1, summaryDirectory.listFiles().length);
+		} finally {
+			FileUtils.deleteDirectory(summaryDirectory);
+		}
+	}
+
+	@Test
+	public void testStoredSummaryWithoutFields() throws IOException {
+		File summaryDirectory = Files.createTempDirectory("asm_summaries_").toFile();
+		try {
+			ClassPathSummary scanned = ClassPathSummary.scan(getJamaJar(), false);
+			ClassPathSummary.get(getJamaJar(), false, summaryDirectory);
+			ClassPathSummary read = ClassPathSummary.get(getJamaJar(), false, summaryDirectory);
+			assertSameSummary(scanned, read);
+			assertNull(read.getFields());
+			assertNull(read.getFieldReferences());
+		} finally {
+			FileUtils.deleteDirectory(summaryDirectory);
+		}
+	}
+
+	@Test
+	public void testCorruptSummaryIsRescanned() throws IOException {
+		File summaryDirectory = Files.createTempDirectory("asm_summaries_").toFile();
+		try {
+			ClassPathSummary scanned = ClassPathSummary.scan(getJamaJar(), true);
+			ClassPathSummary.get(getJamaJar(), true, summaryDirectory);
+			FileUtils.writeByteArrayToFile(summaryDirectory.listFiles()[0], new byte[]{1, 2, 3});
+			assertSameSummary(scanned, ClassPathSummary.get(getJamaJar(), true, summaryDirectory));
+		} finally {
+			FileUtils.deleteDirectory(summaryDirectory);
+		}
+	}
+}
@@ -3,12 +3,21 @@ package edu.ucla.cs.jshrinklib.reachability;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+
 public class ClassReferenceGraphTest {
 
     private ClassReferenceGraph dependencyGraph;
 
     @Before
-    void setUp(){
+    public void setUp(){
         dependencyGraph = new ClassReferenceGraph();
     }
 
@@ -52,4 +61,57 @@ public class ClassReferenceGraphTest {
 
     }
 
+    private static Set<String> set(String... classes){
+        return new HashSet<String>(Arrays.asList(classes));
+    }
+
+    private void addChain(){
+        // A -> B -> C -> A, and D -> B
+        dependencyGraph.addClass("A", set("B"));
+        dependencyGraph.addClass("B", set("C", "B"));
+        dependencyGraph.addClass("C", set("A"));
+        dependencyGraph.addClass("D", set("B"));
+    }
+
+    @Test
+    public void testReferences(){
+        addChain();
+        assertEquals(set("B"), dependencyGraph.getReferences("A"));
+        assertEquals(set("C"), dependencyGraph.getReferences("B"));
+        assertEquals(set("A", "D"), dependencyGraph.getReferencedBy("B"));
+        assertEquals(Collections.emptySet(), dependencyGraph.getReferencedBy("D"));
+        assertEquals(Collections.emptySet(), dependencyGraph.getReferences("E"));
+        assertEquals(set("A", "B", "C"), dependencyGraph.getNodes());
+
+        // adding a class again does not duplicate its references
+        dependencyGraph.addClass("D", set("B", "C"));
+        assertEquals(set("A", "D"), dependencyGraph.getReferencedBy("B"));
+        assertEquals(set("B", "C"), dependencyGraph.getReferences("D"));
+    }
+
+    @Test
+    public void testTransitiveReferences(){
+        addChain();
+        assertEquals(set("B", "C"), dependencyGraph.getTransitiveReferences("A"));
+        assertEquals(set("A", "B", "C"), dependencyGraph.getTransitiveReferences("D"));
+        assertEquals(set("A", "C", "D"), dependencyGraph.getTransitiveReferencedBy("B"));
+        assertEquals(Collections.emptySet(), dependencyGraph.getTransitiveReferencedBy("D"));
+    }
+
+    @Test
+    public void testCache() throws IOException {
+        addChain();
+        File cacheFile = File.createTempFile("class_references_", ".cache");
+        try {
+            dependencyGraph.writeCache(cacheFile);
+            ClassReferenceGraph read = ClassReferenceGraph.readCache(cacheFile);
+            assertEquals(dependencyGraph.getNodes(), read.getNodes());
+            for(String className : set("A", "B", "C", "D")){
+                assertEquals(dependencyGraph.getReferences(className), read.getReferences(className));
+                assertEquals(dependencyGraph.getReferencedBy(className), read.getReferencedBy(className));
+            }
+        } finally {
+            cacheFile.delete();
+        }
+    }
 }
@@ -0,0 +1,58 @@
+package edu.ucla.cs.jshrinklib.reachability;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class CompactCacheTest {
+
+	@Test
+	public void nullMembersTest() throws IOException {
+		// a method without annotation, one whose annotation is unknown, and a field whose type could not be resolved
+		MethodData unannotated = new MethodData("run", "a.A", "void", new String[]{"int"}, true, false);
+		MethodData unknownAnnotation = new MethodData("test", "a.ATest", "void", new String[0], true, false);
+		unknownAnnotation.setAnnotation(null);
+		MethodData annotated = new MethodData("test2", "a.ATest", "void", new String[0], true, false);
+		annotated.setAnnotation("org.junit.Test");
+		FieldData unresolved = new FieldData("f", "a.A", false, null);
+		FieldData resolved = new FieldData("g", "a.A", true, "java.lang.String");
+
+		File file = File.createTempFile("compact-cache", ".cache");
+		try {
+			CompactCacheWriter writer = new CompactCacheWriter(1);
+			writer.writeMethodSet(Arrays.asList(unannotated, unknownAnnotation, annotated));
+			Map<MethodData, Set<FieldData>> fieldReferences = new HashMap<MethodData, Set<FieldData>>();
+			fieldReferences.put(unannotated, new HashSet<FieldData>(Arrays.asList(unresolved, resolved)));
+			writer.writeFieldReferenceMap(fieldReferences);
+			writer.writeTo(file);
+
+			CompactCacheReader reader = CompactCacheReader.open(file, 1);
+			Map<String, MethodData> methods = new HashMap<String, MethodData>();
+			List<MethodData> methodList = new ArrayList<MethodData>();
+			reader.readMethodSet(methodList);
+			for(MethodData method : methodList){
+				methods.put(method.getName(), method);
+			}
+			assertEquals(3, methods.size());
+			assertEquals("", methods.get("run").getAnnotation());
+			assertNull(methods.get("test").getAnnotation());
+			assertEquals("org.junit.Test", methods.get("test2").getAnnotation());
+
+			Map<MethodData, Set<FieldData>> readFieldReferences = new HashMap<MethodData, Set<FieldData>>();
+			reader.readFieldReferenceMap(readFieldReferences);
+			assertEquals(fieldReferences, readFieldReferences);
+			for(FieldData field : readFieldReferences.get(unannotated)){
+				if(field.getName().equals("f")){
+					assertNull(field.getType());
+				}
+			}
+		} finally {
+			file.delete();
+		}
+	}
+}
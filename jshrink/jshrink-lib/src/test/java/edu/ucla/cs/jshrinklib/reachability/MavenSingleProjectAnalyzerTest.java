@@ -5,10 +5,14 @@ import static org.junit.Assert.*;
 import edu.ucla.cs.jshrinklib.GitGetter;
 import org.junit.*;
 
+import edu.ucla.cs.jshrinklib.util.SootUtils;
 import soot.G;
+import soot.Scene;
 
 import java.io.File;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
@@ -307,6 +311,54 @@ public class MavenSingleProjectAnalyzerTest {
 		assertTrue(contains(standardStuffGetStaticString.get(), "StandardStuff", "getString"));
 	}
 
+	@Test
+	public void testParallelModuleAnalysis(){
+		ClassLoader classLoader = MavenSingleProjectAnalyzerTest.class.getClassLoader();
+		File mavenProject = new File(classLoader.getResource("module-test-project").getFile());
+
+		MavenSingleProjectAnalyzer sequential = new MavenSingleProjectAnalyzer(mavenProject.getAbsolutePath(),
+				new EntryPointProcessor(true, false, false,
+						new HashSet<MethodData>()), Optional.empty(), Optional.empty(), false, false, false, false, true);
+		sequential.setup();
+		sequential.run();
+		List<Object> sequentialResults = getResults(sequential);
+		G.reset();
+
+		MavenSingleProjectAnalyzer parallel = new MavenSingleProjectAnalyzer(mavenProject.getAbsolutePath(),
+				new EntryPointProcessor(true, false, false,
+						new HashSet<MethodData>()), Optional.empty(), Optional.empty(), false, false, false, false, true);
+		parallel.setCompileProject(false);
+		parallel.setAnalysisThreads(4);
+		parallel.setup();
+		parallel.run();
+		List<Object> parallelResults = getResults(parallel);
+
+		assertFalse(sequential.getUsedAppMethods().isEmpty());
+		assertEquals(sequentialResults, parallelResults);
+
+		sequential.cleanup();
+	}
+
+	private static List<Object> getResults(MavenSingleProjectAnalyzer runner){
+		// the getters need the classes loaded in Soot to filter out annotations
+		SootUtils.setup_trimming(runner.getLibClasspaths(), runner.getAppClasspaths(), runner.getTestClasspaths());
+		Scene.v().loadNecessaryClasses();
+
+		List<Object> results = new ArrayList<Object>();
+		results.add(runner.getAppClasses());
+		results.add(runner.getAppMethods());
+		results.add(runner.getAppFields());
+		results.add(runner.getUsedAppClasses());
+		results.add(runner.getUsedAppMethods());
+		results.add(runner.getUsedAppFields());
+		results.add(runner.getLibMethods());
+		results.add(runner.getUsedLibMethods());
+		results.add(runner.getTestMethods());
+		results.add(runner.getUsedTestMethods());
+		results.add(runner.getEntryPoints());
+		return results;
+	}
+
 	private static Optional<Set<MethodData>> get(Map<MethodData,Set<MethodData>> map,
 	                                             String className, String methodName){
 		MethodData methodData = null;
@@ -0,0 +1,81 @@
+package edu.ucla.cs.jshrinklib.reachability;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class MemberIndexTest {
+
+	private static MemberIndex getIndex(){
+		Set<MethodData> methods = new HashSet<MethodData>();
+		methods.add(new MethodData("foo", "com.example.A", "void", new String[]{}, true, false));
+		methods.add(new MethodData("foo", "com.example.A", "int", new String[]{"java.lang.String", "int"}, true, false));
+		methods.add(new MethodData("bar", "com.example.B", "com.example.A", new String[]{}, false, true));
+
+		Set<FieldData> fields = new HashSet<FieldData>();
+		fields.add(new FieldData("f", "com.example.A", false, "int"));
+		fields.add(new FieldData("f", "com.example.A", true, "int"));
+		fields.add(new FieldData("f", "com.example.B", false, "java.lang.String"));
+
+		return new MemberIndex(methods, fields);
+	}
+
+	@Test
+	public void getMethodTest(){
+		MemberIndex index = getIndex();
+
+		assertEquals(new MethodData("foo", "com.example.A", "int", new String[]{"java.lang.String", "int"}, true, false),
+			index.getMethod("com.example.A", "int foo(java.lang.String,int)").get());
+		assertEquals(new MethodData("foo", "com.example.A", "void", new String[]{}, true, false),
+			index.getMethod("com.example.A", "void foo()").get());
+		assertEquals(new MethodData("bar", "com.example.B", "com.example.A", new String[]{}, false, true),
+			index.getMethod("com.example.B", "com.example.A bar()").get());
+
+		assertFalse(index.getMethod("com.example.B", "void foo()").isPresent());
+		assertFalse(index.getMethod("com.example.C", "void foo()").isPresent());
+	}
+
+	@Test
+	public void getMethodByArgumentsTest(){
+		MemberIndex index = getIndex();
+
+		assertEquals(new MethodData("foo", "com.example.A", "int", new String[]{"java.lang.String", "int"}, true, false),
+			index.getMethod("com.example.A", "foo", new String[]{"java.lang.String", "int"}).get());
+		assertEquals(new MethodData("bar", "com.example.B", "com.example.A", new String[]{}, false, true),
+			index.getMethod("com.example.B", "bar", new String[]{}).get());
+
+		assertFalse(index.getMethod("com.example.A", "foo", new String[]{"int", "java.lang.String"}).isPresent());
+		assertFalse(index.getMethod("com.example.B", "foo", new String[]{}).isPresent());
+		assertFalse(index.getMethod("com.example.C", "foo", new String[]{}).isPresent());
+	}
+
+	@Test
+	public void getMethodsByNameTest(){
+		MemberIndex index = getIndex();
+
+		assertEquals(2, index.getMethodsByName("com.example.A", "foo").size());
+		assertEquals(1, index.getMethodsByName("com.example.B", "bar").size());
+		assertTrue(index.getMethodsByName("com.example.A", "bar").isEmpty());
+		assertTrue(index.getMethodsByName("com.example.C", "foo").isEmpty());
+	}
+
+	@Test
+	public void getFieldsTest(){
+		MemberIndex index = getIndex();
+
+		List<FieldData> fields = index.getFields("com.example.A", "f", "int");
+		assertEquals(new HashSet<FieldData>(Arrays.asList(new FieldData("f", "com.example.A", false, "int"),
+			new FieldData("f", "com.example.A", true, "int"))), new HashSet<FieldData>(fields));
+
+		assertEquals(1, index.getFields("com.example.B", "f", "java.lang.String").size());
+		assertTrue(index.getFields("com.example.B", "f", "int").isEmpty());
+		assertTrue(index.getFields("com.example.C", "f", "int").isEmpty());
+	}
+}
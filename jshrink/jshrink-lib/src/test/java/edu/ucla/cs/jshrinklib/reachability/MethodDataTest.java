@@ -126,4 +126,21 @@ public class MethodDataTest {
 		assertEquals(methodData1.getSubSignature(), methodData2.getSubSignature());
 		assertEquals(methodData1, methodData2);
 	}
+
+	@Test
+	public void hashCodeTest(){
+		// methods whose names and arguments are of the same length must not share a hash code
+		MethodData methodData1 = new MethodData("method_1", "com.example.Class1", "void",
+			new String[]{"long"}, true, false);
+		MethodData methodData2 = new MethodData("method_1", "com.example.Class1", "void",
+			new String[]{"char"}, true, false);
+		MethodData methodData3 = new MethodData("method_3", "com.example.Class1", "void",
+			new String[]{"long"}, true, false);
+		MethodData methodData4 = new MethodData("method_1", "com.example.Class1", "void",
+			new String[]{"long"}, false, true);
+
+		assertFalse(methodData1.hashCode() == methodData2.hashCode());
+		assertFalse(methodData1.hashCode() == methodData3.hashCode());
+		assertEquals(methodData1.hashCode(), methodData4.hashCode());
+	}
 }
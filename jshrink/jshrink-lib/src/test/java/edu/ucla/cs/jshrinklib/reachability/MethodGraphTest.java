@@ -0,0 +1,99 @@
+package edu.ucla.cs.jshrinklib.reachability;
+
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class MethodGraphTest {
+
+	private static MethodData method(String name){
+		return new MethodData(name, "com.example.MethodGraphTest", "void", new String[0], true, false);
+	}
+
+	private static Map<MethodData, Set<MethodData>> getCallGraph(){
+		// main -> a, main -> b, a -> b, b -> b
+		Map<MethodData, Set<MethodData>> callGraph = new HashMap<MethodData, Set<MethodData>>();
+		callGraph.put(method("main"), new HashSet<MethodData>());
+		callGraph.put(method("a"), new HashSet<MethodData>(Arrays.asList(method("main"))));
+		callGraph.put(method("b"), new HashSet<MethodData>(Arrays.asList(method("main"), method("a"), method("b"))));
+		callGraph.put(method("unused"), new HashSet<MethodData>());
+		return callGraph;
+	}
+
+	@Test
+	public void asMapTest(){
+		Map<MethodData, Set<MethodData>> callGraph = getCallGraph();
+		MethodGraph graph = MethodGraph.fromMap(callGraph);
+
+		assertEquals(4, graph.size());
+		assertEquals(4, graph.getEdgeCount());
+		assertEquals(callGraph, graph.asMap());
+		assertEquals(graph.asMap(), callGraph);
+		assertTrue(graph.asMap().get(method("main")).isEmpty());
+		assertTrue(graph.asMap().get(method("b")).contains(method("b")));
+		assertFalse(graph.asMap().get(method("a")).contains(method("a")));
+		assertNull(graph.asMap().get(method("notInGraph")));
+	}
+
+	@Test
+	public void adjacencyTest(){
+		MethodGraph graph = MethodGraph.fromMap(getCallGraph());
+		int main = SymbolTable.getMethodId(method("main"));
+		int a = SymbolTable.getMethodId(method("a"));
+		int b = SymbolTable.getMethodId(method("b"));
+
+		assertTrue(graph.contains(method("unused")));
+		assertFalse(graph.contains(method("notInGraph")));
+		assertEquals(method("a"), graph.getMethod(a));
+
+		int[] mainCallees = graph.getCallees(main);
+		Arrays.sort(mainCallees);
+		int[] expected = new int[]{a, b};
+		Arrays.sort(expected);
+		assertArrayEquals(expected, mainCallees);
+		assertArrayEquals(new int[]{b}, graph.getCallees(b));
+		assertArrayEquals(new int[0], graph.getCallers(main));
+		assertEquals(3, graph.getCallers(b).length);
+	}
+
+	@Test
+	public void restrictedViewTest(){
+		MethodGraph graph = MethodGraph.fromMap(getCallGraph());
+		BitSet keys = SymbolTable.toMethodIds(Arrays.asList(method("a"), method("b"), method("notInGraph")));
+		BitSet values = SymbolTable.toMethodIds(Arrays.asList(method("a"), method("b")));
+
+		Map<MethodData, Set<MethodData>> view = graph.asMap(keys, values);
+		assertEquals(2, view.size());
+		assertFalse(view.containsKey(method("main")));
+		assertFalse(view.containsKey(method("notInGraph")));
+		assertTrue(view.get(method("a")).isEmpty());
+		assertEquals(new HashSet<MethodData>(Arrays.asList(method("a"), method("b"))), view.get(method("b")));
+		assertFalse(view.get(method("b")).contains(method("main")));
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void viewIsReadOnlyTest(){
+		MethodGraph graph = MethodGraph.fromMap(getCallGraph());
+		graph.asMap().get(method("b")).add(method("unused"));
+	}
+
+	@Test
+	public void builderDropsDuplicateEdgesTest(){
+		MethodGraph.Builder builder = new MethodGraph.Builder();
+		for(int i=0; i<100; i++){
+			builder.addCall(method("callee"), method("caller" + (i % 10)));
+		}
+		assertTrue(builder.contains(method("caller3")));
+		MethodGraph graph = builder.build();
+		assertEquals(11, graph.size());
+		assertEquals(10, graph.getEdgeCount());
+		assertEquals(10, graph.asMap().get(method("callee")).size());
+
+		// the builder can still be added to after building a graph
+		builder.addCall(method("callee"), method("caller10"));
+		assertEquals(11, builder.build().getEdgeCount());
+		assertEquals(10, graph.getEdgeCount());
+	}
+}
@@ -0,0 +1,79 @@
+package edu.ucla.cs.jshrinklib.reachability;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashSet;
+
+import static org.junit.Assert.*;
+
+public class SymbolTableTest {
+
+	@Test
+	public void internTest(){
+		String className = new String("com.example.Interned");
+		String copy = new String("com.example.Interned");
+		assertNotSame(className, copy);
+		assertSame(SymbolTable.intern(className), SymbolTable.intern(copy));
+
+		String[] args = new String[]{new String("int"), new String("java.lang.String")};
+		String[] argsCopy = new String[]{new String("int"), new String("java.lang.String")};
+		assertSame(SymbolTable.intern(args), SymbolTable.intern(argsCopy));
+		assertNotSame(SymbolTable.intern(args), SymbolTable.intern(new String[]{"int"}));
+
+		assertNull(SymbolTable.intern((String) null));
+	}
+
+	@Test
+	public void internedMethodDataTest(){
+		MethodData md1 = new MethodData("foo", new String("com.example.A"), "void",
+			new String[]{new String("int")}, true, false);
+		MethodData md2 = new MethodData("bar", new String("com.example.A"), "void",
+			new String[]{new String("int")}, true, false);
+		assertSame(md1.getClassName(), md2.getClassName());
+		assertSame(md1.getArgs(), md2.getArgs());
+	}
+
+	@Test
+	public void methodIdTest(){
+		MethodData md1 = new MethodData("foo", "com.example.MethodIdTest", "void", new String[]{"int"}, true, false);
+		MethodData md2 = new MethodData("foo", "com.example.MethodIdTest", "void", new String[]{"long"}, true, false);
+		MethodData md1Copy = new MethodData("foo", "com.example.MethodIdTest", "void", new String[]{"int"}, false, true);
+
+		assertEquals(-1, SymbolTable.findMethodId(md1));
+		int id1 = SymbolTable.getMethodId(md1);
+		int id2 = SymbolTable.getMethodId(md2);
+		assertNotEquals(id1, id2);
+		assertEquals(id1, SymbolTable.getMethodId(md1Copy));
+		assertEquals(id1, SymbolTable.findMethodId(md1Copy));
+		assertTrue(SymbolTable.getMethodCount() > Math.max(id1, id2));
+
+		MethodData fromId = SymbolTable.getMethod(id1);
+		assertEquals(md1, fromId);
+		assertTrue(fromId.isPublic());
+		assertFalse(fromId.isStatic());
+
+		// the table does not change when the MethodData it was given is renamed
+		md1.setName("renamed");
+		assertEquals("foo", SymbolTable.getMethod(id1).getName());
+		assertNotEquals(id1, SymbolTable.getMethodId(md1));
+
+		BitSet ids = SymbolTable.toMethodIds(new HashSet<MethodData>(Arrays.asList(md1Copy, md2)));
+		assertEquals(2, ids.cardinality());
+		assertTrue(ids.get(id1));
+		assertTrue(ids.get(id2));
+	}
+
+	@Test
+	public void clearTest(){
+		MethodData md = new MethodData("foo", "com.example.ClearTest", "void", new String[]{"int"}, true, false);
+		SymbolTable.getMethodId(md);
+		assertTrue(SymbolTable.getMethodCount() > 0);
+
+		SymbolTable.clear();
+		assertEquals(0, SymbolTable.getMethodCount());
+		assertEquals(-1, SymbolTable.findMethodId(md));
+		assertEquals(0, SymbolTable.getMethodId(md));
+	}
+}
@@ -0,0 +1,69 @@
+package edu.ucla.cs.jshrinklib.reachability;
+
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.assertEquals;
+
+public class TestImpactAnalysisTest {
+
+	private static MethodData method(String className, String name){
+		return new MethodData(name, className, "void", new String[]{}, true, false);
+	}
+
+	private static void addCall(Map<MethodData, Set<MethodData>> callGraph, MethodData caller, MethodData callee){
+		callGraph.computeIfAbsent(callee, k -> new HashSet<MethodData>()).add(caller);
+		callGraph.computeIfAbsent(caller, k -> new HashSet<MethodData>());
+	}
+
+	/*
+	ATest.test -> A.foo -> B.bar
+	BTest.test -> B.baz
+	CTest.test -> C.qux
+	DTest extends BaseTest, BaseTest.test -> D.foo
+	 */
+	private static Map<MethodData, Set<MethodData>> getCallGraph(){
+		Map<MethodData, Set<MethodData>> callGraph = new HashMap<MethodData, Set<MethodData>>();
+		addCall(callGraph, method("ATest", "test"), method("A", "foo"));
+		addCall(callGraph, method("A", "foo"), method("B", "bar"));
+		addCall(callGraph, method("BTest", "test"), method("B", "baz"));
+		addCall(callGraph, method("CTest", "test"), method("C", "qux"));
+		addCall(callGraph, method("BaseTest", "test"), method("D", "foo"));
+		return callGraph;
+	}
+
+	private static final Set<String> TEST_CLASSES =
+		new HashSet<String>(Arrays.asList("ATest", "BTest", "CTest", "BaseTest", "DTest"));
+
+	private static Set<String> select(String... changedClasses){
+		Map<String, String> superClasses = new HashMap<String, String>();
+		superClasses.put("DTest", "BaseTest");
+		superClasses.put("BaseTest", "java.lang.Object");
+		return TestImpactAnalysis.getTestClassesReaching(getCallGraph(),
+			new HashSet<String>(Arrays.asList(changedClasses)), TEST_CLASSES, superClasses);
+	}
+
+	@Test
+	public void transitiveCallersTest(){
+		assertEquals(new TreeSet<String>(Arrays.asList("ATest", "BTest")), select("B"));
+		assertEquals(new TreeSet<String>(Arrays.asList("ATest")), select("A"));
+		assertEquals(new TreeSet<String>(Arrays.asList("CTest")), select("C"));
+	}
+
+	@Test
+	public void inheritedTestsTest(){
+		assertEquals(new TreeSet<String>(Arrays.asList("BaseTest", "DTest")), select("D"));
+	}
+
+	@Test
+	public void changedTestClassTest(){
+		assertEquals(new TreeSet<String>(Arrays.asList("CTest")), select("CTest"));
+	}
+
+	@Test
+	public void unreachedClassTest(){
+		// a class no test reaches (e.g., one which is removed) selects no test
+		assertEquals(new TreeSet<String>(), select("E"));
+	}
+}
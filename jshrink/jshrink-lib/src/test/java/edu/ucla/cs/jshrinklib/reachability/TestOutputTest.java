@@ -3,8 +3,11 @@ package edu.ucla.cs.jshrinklib.reachability;
 import edu.ucla.cs.jshrinklib.util.MavenUtils;
 import org.junit.Test;
 
+import java.io.File;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Optional;
 
 import static junit.framework.TestCase.assertTrue;
 import static org.junit.Assert.assertEquals;
@@ -183,4 +186,25 @@ public class TestOutputTest {
 		HashMap<String, Integer> testNames = MavenUtils.testClassesFromString(toProcess);
 		assertEquals(testNames, testNamesOriginal);
 	}
+
+	@Test
+	public void testOutputFileTest() throws Exception {
+		File log = File.createTempFile("test-output", ".log");
+		try {
+			String toProcess = "Results :\n\nTests run: 3, Failures: 1, Errors: 0, Skipped: 0\n";
+			Files.write(log.toPath(), toProcess.getBytes());
+			MavenUtils.TestOutputParser parser = new MavenUtils.TestOutputParser();
+			for(String line : Files.readAllLines(log.toPath())){
+				parser.accept(line);
+			}
+			TestOutput output = parser.getTestOutput(log);
+			assertEquals(3, output.getRun());
+			assertEquals(1, output.getFailures());
+			// the output is read from the file it is logged in
+			assertEquals(Optional.of(log), output.getTestOutputFile());
+			assertEquals(toProcess, output.getTestOutputText());
+		} finally {
+			log.delete();
+		}
+	}
 }
@@ -0,0 +1,200 @@
+package edu.ucla.cs.jshrinklib.util;
+
+import edu.ucla.cs.jshrinklib.reachability.FieldData;
+import edu.ucla.cs.jshrinklib.reachability.MethodData;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.jar.JarFile;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.*;
+
+public class ASMTransformerTest {
+
+	public static class Sample {
+		public int number = 1;
+		public String unusedField;
+
+		public Sample(){
+		}
+
+		public Sample(int number){
+			this.number = number;
+		}
+
+		public int kept(){
+			return 42;
+		}
+
+		public int wiped(){
+			return 42;
+		}
+
+		public String thrown(){
+			return "no exception";
+		}
+
+		public void removed(){
+		}
+	}
+
+	private static final String CLASS_NAME = Sample.class.getName();
+	private static final String ENTRY_NAME = ClassPathIndex.getEntryName(CLASS_NAME);
+
+	private File directory;
+	private File jar;
+
+	/*
+	Loads the sample class from the given bytes, rather than delegating to the test's class loader.
+	 */
+	private static class SampleClassLoader extends ClassLoader {
+		private final byte[] classBytes;
+
+		private SampleClassLoader(byte[] classBytes){
+			super(SampleClassLoader.class.getClassLoader());
+			this.classBytes = classBytes;
+		}
+
+		@Override
+		protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+			if(name.equals(CLASS_NAME)){
+				Class<?> loaded = findLoadedClass(name);
+				return loaded != null ? loaded : defineClass(name, this.classBytes, 0, this.classBytes.length);
+			}
+			return super.loadClass(name, resolve);
+		}
+	}
+
+	private static byte[] getSampleBytes() throws IOException {
+		try(InputStream in = ASMTransformerTest.class.getResourceAsStream("/" + ENTRY_NAME)){
+			return IOUtils.toByteArray(in);
+		}
+	}
+
+	private static MethodData method(String name, String returnType, String... args){
+		return new MethodData(name, CLASS_NAME, returnType, args, true, false);
+	}
+
+	private static ASMTransformer getTransformer(){
+		ASMTransformer transformer = new ASMTransformer();
+		transformer.removeMethod(method("removed", "void"));
+		transformer.wipeMethodBody(method("wiped", "int"), Optional.empty());
+		transformer.wipeMethodBodyAndInsertRuntimeException(method("thrown", "java.lang.String"), Optional.of("wiped"),
+			Optional.empty());
+		transformer.wipeMethodBody(method("<init>", "void", "int"),
+			Optional.of(new MethodData("<init>", "java.lang.Object", "void", new String[0], true, false)));
+		transformer.removeField(new FieldData("unusedField", CLASS_NAME, false, "java.lang.String"));
+		return transformer;
+	}
+
+	@Before
+	public void before() throws IOException {
+		this.directory = Files.createTempDirectory("asm_transformer_").toFile();
+		File classFile = new File(this.directory, ENTRY_NAME);
+		classFile.getParentFile().mkdirs();
+		Files.write(classFile.toPath(), getSampleBytes());
+
+		this.jar = File.createTempFile("asm_transformer_", ".jar");
+		try(ZipOutputStream out = new ZipOutputStream(new FileOutputStream(this.jar))){
+			out.putNextEntry(new ZipEntry(ENTRY_NAME));
+			out.write(getSampleBytes());
+			out.closeEntry();
+		}
+	}
+
+	@After
+	public void after() throws IOException {
+		FileUtils.deleteDirectory(this.directory);
+		this.jar.delete();
+	}
+
+	private static void checkTransformed(byte[] classBytes) throws Exception {
+		Class<?> sampleClass = new SampleClassLoader(classBytes).loadClass(CLASS_NAME);
+
+		for(java.lang.reflect.Method method : sampleClass.getDeclaredMethods()){
+			assertNotEquals("removed", method.getName());
+		}
+		for(java.lang.reflect.Field field : sampleClass.getDeclaredFields()){
+			assertNotEquals("unusedField", field.getName());
+		}
+
+		Object sample = sampleClass.getConstructor().newInstance();
+		assertEquals(1, sampleClass.getField("number").get(sample));
+		assertEquals(42, sampleClass.getMethod("kept").invoke(sample));
+		assertEquals(0, sampleClass.getMethod("wiped").invoke(sample));
+		try {
+			sampleClass.getMethod("thrown").invoke(sample);
+			fail();
+		} catch (InvocationTargetException e){
+			assertTrue(e.getCause() instanceof RuntimeException);
+			assertEquals("wiped", e.getCause().getMessage());
+		}
+
+		// the field initialisers are part of the wiped constructor's body
+		Object wipedSample = sampleClass.getConstructor(int.class).newInstance(5);
+		assertEquals(0, sampleClass.getField("number").get(wipedSample));
+	}
+
+	@Test
+	public void transformClassInDirectoryTest() throws Exception {
+		ClassPathWriter classPathWriter = new ClassPathWriter(Collections.singleton(this.directory));
+		getTransformer().apply(classPathWriter, Collections.emptySet());
+		classPathWriter.commit();
+
+		checkTransformed(Files.readAllBytes(new File(this.directory, ENTRY_NAME).toPath()));
+	}
+
+	@Test
+	public void transformClassInJarTest() throws Exception {
+		ClassPathWriter classPathWriter = new ClassPathWriter(Collections.singleton(this.jar));
+		getTransformer().apply(classPathWriter, Collections.emptySet());
+		classPathWriter.commit();
+
+		try(JarFile jarFile = new JarFile(this.jar);
+		    InputStream in = jarFile.getInputStream(jarFile.getJarEntry(ENTRY_NAME))){
+			checkTransformed(IOUtils.toByteArray(in));
+		}
+	}
+
+	@Test
+	public void excludedClassesAreNotTransformedTest() throws Exception {
+		ClassPathWriter classPathWriter = new ClassPathWriter(Collections.singleton(this.directory));
+		getTransformer().apply(classPathWriter, Collections.singleton(CLASS_NAME));
+		classPathWriter.commit();
+
+		assertArrayEquals(getSampleBytes(), Files.readAllBytes(new File(this.directory, ENTRY_NAME).toPath()));
+	}
+
+	@Test
+	public void removalOverridesWipeTest(){
+		ASMTransformer transformer = new ASMTransformer();
+		transformer.wipeMethodBody(method("kept", "int"), Optional.empty());
+		transformer.removeMethod(method("kept", "int"));
+		transformer.wipeMethodBody(method("kept", "int"), Optional.empty());
+
+		assertEquals(Collections.singleton(method("kept", "int")), transformer.getRemovedMethods(CLASS_NAME));
+		assertTrue(transformer.getWipedMethods(CLASS_NAME).isEmpty());
+		assertEquals(Collections.singleton(CLASS_NAME), transformer.getClasses());
+	}
+
+	@Test
+	public void getDescriptorTest(){
+		assertEquals("I", ASMTransformer.getDescriptor("int"));
+		assertEquals("[[J", ASMTransformer.getDescriptor("long[][]"));
+		assertEquals("Ljava/lang/String;", ASMTransformer.getDescriptor("java.lang.String"));
+		assertEquals("(I[Ljava/lang/Object;)V", ASMTransformer.getMethodDescriptor(
+			new MethodData("m", CLASS_NAME, "void", new String[]{"int", "java.lang.Object[]"}, true, false)));
+	}
+}
@@ -0,0 +1,168 @@
+package edu.ucla.cs.jshrinklib.util;
+
+import edu.ucla.cs.jshrinklib.TestUtils;
+import edu.ucla.cs.jshrinklib.methodwiper.MethodWiper;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Test;
+import soot.G;
+import soot.Scene;
+import soot.SootClass;
+import soot.SootMethod;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class ClassFileUtilsTest {
+
+	@After
+	public void after(){
+		G.reset();
+	}
+
+	private static File getMethodWiperTestClass(){
+		return new File(ClassFileUtilsTest.class.getClassLoader().getResource("methodwiper" + File.separator
+			+ "Test.class").getFile());
+	}
+
+	private static File copyOfJamaJar() throws IOException {
+		File original = new File(ClassFileUtilsTest.class.getClassLoader().getResource("Jama-1.0.3.jar").getFile());
+		File copy = File.createTempFile("Jama_", ".jar");
+		FileUtils.copyFile(original, copy);
+		return copy;
+	}
+
+	@Test
+	public void testDecompressedSizeOfJar() throws IOException {
+		File jar = copyOfJamaJar();
+		try {
+			long decompressedSize = ClassFileUtils.getDecompressedSize(jar);
+			assertNotEquals(jar.length(), decompressedSize);
+
+			// the same size as that of the extracted jar
+			ClassFileUtils.decompressJar(jar);
+			assertEquals(ClassFileUtils.getSize(jar), decompressedSize);
+			assertEquals(decompressedSize, ClassFileUtils.getDecompressedSize(jar));
+		} finally {
+			FileUtils.forceDelete(jar);
+		}
+	}
+
+	@Test
+	public void testDecompressedSizeAfterRewrite() throws IOException {
+		File jar = copyOfJamaJar();
+		try {
+			long decompressedSize = ClassFileUtils.getDecompressedSize(jar);
+
+			JarRewriter jarRewriter = new JarRewriter(jar);
+			jarRewriter.putEntry("Jama/Extra.class", new byte[100]);
+			jarRewriter.rewrite();
+
+			assertEquals(decompressedSize + 100, ClassFileUtils.getDecompressedSize(jar));
+		} finally {
+			FileUtils.forceDelete(jar);
+		}
+	}
+
+	@Test
+	public void testDecompressedSizeOfDirectory() throws IOException {
+		File directory = Files.createTempDirectory("Jama_").toFile();
+		try {
+			// a jar within a directory is counted as it is, as "getSize(File)" does
+			FileUtils.copyFileToDirectory(
+				new File(ClassFileUtilsTest.class.getClassLoader().getResource("Jama-1.0.3.jar").getFile()), directory);
+			FileUtils.copyFileToDirectory(getMethodWiperTestClass(), directory);
+			assertEquals(ClassFileUtils.getSize(directory), ClassFileUtils.getDecompressedSize(directory));
+		} finally {
+			FileUtils.deleteDirectory(directory);
+		}
+	}
+
+	@Test
+	public void testUnchangedClassIsCopied() throws IOException {
+		File classFile = getMethodWiperTestClass();
+		SootClass sootClass = TestUtils.getSootClass(classFile.getParentFile().getAbsolutePath(), "Test");
+		byte[] originalClassBytes = Files.readAllBytes(classFile.toPath());
+
+		assertArrayEquals(originalClassBytes,
+			ClassFileUtils.getClassBytes(sootClass, originalClassBytes, Collections.<SootMethod>emptySet()));
+	}
+
+	@Test
+	public void testOnlyModifiedMethodsAreEmitted() throws IOException {
+		File classFile = getMethodWiperTestClass();
+		SootClass sootClass = TestUtils.getSootClass(classFile.getParentFile().getAbsolutePath(), "Test");
+		byte[] originalClassBytes = Files.readAllBytes(classFile.toPath());
+
+		SootMethod wiped = sootClass.getMethodByName("staticVoidMethodNoParams");
+		assertTrue(MethodWiper.wipeMethodBody(wiped));
+		byte[] classBytes = ClassFileUtils.getClassBytes(sootClass, originalClassBytes, Collections.singleton(wiped));
+		assertTrue(classBytes.length < originalClassBytes.length);
+
+		File directory = Files.createTempDirectory("partial_class_").toFile();
+		try {
+			Files.write(new File(directory, "Test.class").toPath(), classBytes);
+			String output = TestUtils.runClass(directory.getAbsolutePath(), "Test");
+
+			String expected = "staticIntMethodNoParams touched" + System.lineSeparator();
+			expected += "staticStringMethodNoParams touched" + System.lineSeparator();
+			expected += "staticDoubleMethodNoParams touched" + System.lineSeparator();
+			expected += "staticVoidMethodTwoParams touched" + System.lineSeparator();
+			expected += "staticIntMethodTwoParams touched" + System.lineSeparator();
+			expected += "methodNoParams touched" + System.lineSeparator();
+			expected += "intMethodNoParams touched" + System.lineSeparator();
+			expected += "intMethodTwoParams touched" + System.lineSeparator();
+			expected += "staticBooleanMethodNoParams touched" + System.lineSeparator();
+			expected += "staticCharMethodNoParams touched" + System.lineSeparator();
+			expected += "staticByteMethodNoParams touched" + System.lineSeparator();
+			expected += "staticShortMethodNoParams touched" + System.lineSeparator();
+
+			assertEquals(expected, output);
+		} finally {
+			FileUtils.deleteDirectory(directory);
+		}
+	}
+
+	@Test
+	public void testClassesAreWritten() throws IOException {
+		File original = new File(ClassFileUtilsTest.class.getClassLoader().getResource("Jama-1.0.3").getFile());
+		File directory = Files.createTempDirectory("Jama_").toFile();
+		try {
+			FileUtils.copyDirectory(original, directory);
+			TestUtils.getSootClass(directory.getAbsolutePath(), "Jama.Matrix");
+			List<SootClass> sootClasses = new ArrayList<SootClass>();
+			for(File classFile : FileUtils.listFiles(directory, new String[]{"class"}, true)){
+				String path = directory.toPath().relativize(classFile.toPath()).toString();
+				sootClasses.add(Scene.v().loadClassAndSupport(
+					path.substring(0, path.length() - ".class".length()).replace(File.separatorChar, '.')));
+			}
+			assertEquals(9, sootClasses.size());
+
+			ClassPathWriter classPathWriter = new ClassPathWriter(Collections.singletonList(directory));
+			Map<String, Exception> exceptions = classPathWriter.writeClasses(sootClasses);
+			classPathWriter.commit();
+
+			assertTrue(exceptions.isEmpty());
+			for(SootClass sootClass : sootClasses){
+				File classFile = new File(directory, sootClass.getName().replace('.', File.separatorChar) + ".class");
+				assertArrayEquals(ClassFileUtils.getClassBytes(sootClass), Files.readAllBytes(classFile.toPath()));
+			}
+
+			// a class which is not in the classpath does not stop the others from being written
+			Map<String, byte[]> classFiles = new HashMap<String, byte[]>();
+			classFiles.put("Jama.DoesNotExist", new byte[]{(byte) 0xCA, (byte) 0xFE});
+			classFiles.put("Jama.util.Maths", new byte[]{(byte) 0xCA, (byte) 0xFE});
+			exceptions = classPathWriter.writeClasses(classFiles);
+			assertEquals(Collections.singleton("Jama.DoesNotExist"), exceptions.keySet());
+			assertArrayEquals(new byte[]{(byte) 0xCA, (byte) 0xFE},
+				Files.readAllBytes(new File(directory, "Jama" + File.separator + "util" + File.separator
+					+ "Maths.class").toPath()));
+		} finally {
+			FileUtils.deleteDirectory(directory);
+		}
+	}
+}
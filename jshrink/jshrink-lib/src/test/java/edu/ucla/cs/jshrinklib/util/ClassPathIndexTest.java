@@ -0,0 +1,84 @@
+package edu.ucla.cs.jshrinklib.util;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ClassPathIndexTest {
+
+	private static File getJamaJar(){
+		return new File(ClassPathIndexTest.class.getClassLoader().getResource("Jama-1.0.3.jar").getFile());
+	}
+
+	private static File getJamaDirectory(){
+		return new File(ClassPathIndexTest.class.getClassLoader().getResource("Jama-1.0.3").getFile());
+	}
+
+	@Test
+	public void findInJarTest() throws IOException {
+		File jar = getJamaJar();
+		List<ClassPathIndex.Location> locations = ClassPathIndex.find("Jama.Matrix", Collections.singletonList(jar));
+		assertEquals(1, locations.size());
+
+		ClassPathIndex.Location location = locations.get(0);
+		assertEquals(jar, location.getClassPathEntry());
+		assertEquals("Jama/Matrix.class", location.getEntryName());
+		assertTrue(location.isInJar());
+		assertFalse(location.getClassFile().isPresent());
+
+		// the offset is that of the entry's local header, which ends with the entry name
+		byte[] bytes = FileUtils.readFileToByteArray(jar);
+		int offset = (int) location.getOffset();
+		assertEquals(0x50, bytes[offset] & 0xFF);
+		assertEquals(0x4b, bytes[offset + 1] & 0xFF);
+		assertEquals(0x03, bytes[offset + 2] & 0xFF);
+		assertEquals(0x04, bytes[offset + 3] & 0xFF);
+		assertEquals("Jama/Matrix.class", new String(bytes, offset + 30, "Jama/Matrix.class".length(), "UTF-8"));
+
+		assertFalse(ClassPathIndex.contains("Jama.DoesNotExist", Collections.singletonList(jar)));
+	}
+
+	@Test
+	public void findInDirectoryTest(){
+		File dir = getJamaDirectory();
+		List<ClassPathIndex.Location> locations =
+			ClassPathIndex.find("Jama.Matrix", Arrays.asList(new File("does_not_exist"), dir, getJamaJar()));
+		assertEquals(2, locations.size());
+
+		assertEquals(dir, locations.get(0).getClassPathEntry());
+		assertFalse(locations.get(0).isInJar());
+		assertEquals(new File(dir, "Jama/Matrix.class"), locations.get(0).getClassFile().get());
+		assertEquals(getJamaJar(), locations.get(1).getClassPathEntry());
+
+		assertTrue(ClassPathIndex.contains("Jama.Matrix", Collections.singletonList(dir)));
+		assertFalse(ClassPathIndex.contains("Jama.DoesNotExist", Collections.singletonList(dir)));
+	}
+
+	@Test
+	public void findAfterRewriteTest() throws IOException {
+		File jar = File.createTempFile("Jama_", ".jar");
+		try {
+			FileUtils.copyFile(getJamaJar(), jar);
+			assertTrue(ClassPathIndex.contains("Jama.Matrix", Collections.singletonList(jar)));
+
+			JarRewriter jarRewriter = new JarRewriter(jar);
+			jarRewriter.removeEntry("Jama/Matrix.class");
+			jarRewriter.putEntry("Jama/Extra.class", new byte[]{(byte) 0xCA, (byte) 0xFE});
+			jarRewriter.rewrite();
+
+			assertFalse(ClassPathIndex.contains("Jama.Matrix", Collections.singletonList(jar)));
+			assertTrue(ClassPathIndex.contains("Jama.Extra", Collections.singletonList(jar)));
+			assertEquals(Collections.singletonList(jar), ClassFileUtils.classInPath("Jama.Extra",
+				Collections.singletonList(jar)));
+		} finally {
+			FileUtils.forceDelete(jar);
+		}
+	}
+}
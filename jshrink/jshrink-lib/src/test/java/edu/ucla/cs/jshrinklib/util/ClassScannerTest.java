@@ -0,0 +1,121 @@
+package edu.ucla.cs.jshrinklib.util;
+
+import edu.ucla.cs.jshrinklib.reachability.ASMClassVisitor;
+import edu.ucla.cs.jshrinklib.reachability.FieldData;
+import edu.ucla.cs.jshrinklib.reachability.MethodData;
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.Opcodes;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.net.URISyntaxException;
+import java.util.*;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ClassScannerTest {
+
+	// JUnit's jar has enough classes to be scanned in several chunks
+	private static File getJUnitJar() throws URISyntaxException {
+		return new File(Test.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+	}
+
+	@Test
+	public void testScanOrder() throws Exception {
+		List<String> expected = new ArrayList<String>();
+		try(JarFile jarFile = new JarFile(getJUnitJar())){
+			Enumeration<JarEntry> entries = jarFile.entries();
+			while(entries.hasMoreElements()){
+				String name = entries.nextElement().getName();
+				if(name.endsWith(".class")){
+					expected.add(name);
+				}
+			}
+		}
+
+		List<List<String>> chunks = ClassScanner.scan(getJUnitJar(), ArrayList::new,
+			(chunk, classFile) -> chunk.add(classFile.getName()));
+		assertTrue(chunks.size() > 1);
+		List<String> actual = new ArrayList<String>();
+		for(List<String> chunk : chunks){
+			actual.addAll(chunk);
+		}
+		assertEquals(expected, actual);
+	}
+
+	@Test
+	public void testSameResultAsSequentialScan() throws Exception {
+		Set<String> expectedClasses = new HashSet<String>();
+		Set<MethodData> expectedMethods = new HashSet<MethodData>();
+		Set<FieldData> expectedFields = new HashSet<FieldData>();
+		Map<MethodData, Set<FieldData>> expectedFieldRefs = new HashMap<MethodData, Set<FieldData>>();
+		Map<MethodData, Set<MethodData>> expectedVirtualCalls = new HashMap<MethodData, Set<MethodData>>();
+		try(JarFile jarFile = new JarFile(getJUnitJar())){
+			Enumeration<JarEntry> entries = jarFile.entries();
+			while(entries.hasMoreElements()){
+				JarEntry entry = entries.nextElement();
+				if(entry.getName().endsWith(".class")){
+					try(InputStream in = jarFile.getInputStream(entry)){
+						new ClassReader(in).accept(new ASMClassVisitor(Opcodes.ASM5, expectedClasses, expectedMethods,
+							expectedFields, expectedFieldRefs, expectedVirtualCalls), ClassReader.SKIP_DEBUG);
+					}
+				}
+			}
+		}
+
+		Set<String> classes = new HashSet<String>();
+		Set<MethodData> methods = new HashSet<MethodData>();
+		Set<FieldData> fields = new HashSet<FieldData>();
+		Map<MethodData, Set<FieldData>> fieldRefs = new HashMap<MethodData, Set<FieldData>>();
+		Map<MethodData, Set<MethodData>> virtualCalls = new HashMap<MethodData, Set<MethodData>>();
+		ASMUtils.readClass(getJUnitJar(), classes, methods, fields, fieldRefs, virtualCalls);
+
+		assertEquals(expectedClasses, classes);
+		assertEquals(expectedMethods, methods);
+		assertEquals(expectedFields, fields);
+		assertEquals(expectedFieldRefs, fieldRefs);
+		assertEquals(expectedVirtualCalls, virtualCalls);
+	}
+
+	@Test(expected = IOException.class)
+	public void testNeitherDirectoryNorJar() throws IOException {
+		ClassScanner.scan(new File("not_a_jar.txt"), ArrayList::new, (chunk, classFile) -> {});
+	}
+
+	@Test
+	public void testModuleInfoIsSkipped() throws IOException {
+		File classFile = new File(ClassScannerTest.class.getClassLoader().getResource("methodwiper" + File.separator
+			+ "Test.class").getFile());
+		File jar = File.createTempFile("module_", ".jar");
+		try {
+			// a multi-release jar may also have a module-info.class under "META-INF/versions"
+			try(JarOutputStream out = new JarOutputStream(new FileOutputStream(jar))){
+				for(String name : Arrays.asList("module-info.class", "META-INF/versions/9/module-info.class",
+					"Test.class")){
+					out.putNextEntry(new JarEntry(name));
+					out.write(Files.readAllBytes(classFile.toPath()));
+					out.closeEntry();
+				}
+			}
+
+			List<List<String>> chunks = ClassScanner.scan(jar, ArrayList::new,
+				(chunk, scanned) -> chunk.add(scanned.getName()));
+			List<String> names = new ArrayList<String>();
+			for(List<String> chunk : chunks){
+				names.addAll(chunk);
+			}
+			assertEquals(Collections.singletonList("Test.class"), names);
+		} finally {
+			FileUtils.forceDelete(jar);
+		}
+	}
+}
@@ -0,0 +1,134 @@
+package edu.ucla.cs.jshrinklib.util;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.jar.JarFile;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+public class JarRewriterTest {
+
+	private File jar;
+
+	private static byte[] content(String s){
+		StringBuilder sb = new StringBuilder();
+		for(int i=0; i<50; i++){
+			sb.append(s);
+		}
+		return sb.toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	@Before
+	public void before() throws IOException {
+		this.jar = File.createTempFile("jar_rewriter_", ".jar");
+		try(ZipOutputStream out = new ZipOutputStream(new FileOutputStream(this.jar))){
+			out.setComment("a comment");
+			// deflated entries are written with a data descriptor
+			for(String name : new String[]{"a/A.class", "a/B.class", "META-INF/MANIFEST.MF"}){
+				out.putNextEntry(new ZipEntry(name));
+				out.write(content(name));
+				out.closeEntry();
+			}
+			byte[] stored = content("a/C.class");
+			ZipEntry storedEntry = new ZipEntry("a/C.class");
+			storedEntry.setMethod(ZipEntry.STORED);
+			storedEntry.setSize(stored.length);
+			CRC32 crc = new CRC32();
+			crc.update(stored);
+			storedEntry.setCrc(crc.getValue());
+			out.putNextEntry(storedEntry);
+			out.write(stored);
+			out.closeEntry();
+		}
+	}
+
+	@After
+	public void after(){
+		this.jar.delete();
+	}
+
+	private Map<String, byte[]> readEntries() throws IOException {
+		Map<String, byte[]> entries = new LinkedHashMap<String, byte[]>();
+		try(JarFile jarFile = new JarFile(this.jar)){
+			Enumeration<? extends ZipEntry> e = jarFile.entries();
+			while(e.hasMoreElements()){
+				ZipEntry entry = e.nextElement();
+				try(InputStream in = jarFile.getInputStream(entry)){
+					entries.put(entry.getName(), IOUtils.toByteArray(in));
+				}
+			}
+		}
+		return entries;
+	}
+
+	@Test
+	public void testRewrite() throws IOException {
+		long compressedSizeBefore;
+		try(ZipFile zipFile = new ZipFile(this.jar)){
+			compressedSizeBefore = zipFile.getEntry("a/C.class").getCompressedSize();
+		}
+
+		JarRewriter jarRewriter = new JarRewriter(this.jar);
+		jarRewriter.putEntry("a/A.class", content("updated"));
+		jarRewriter.removeEntry("a/B.class");
+		jarRewriter.putEntry("a/D.class", content("added"));
+		jarRewriter.rewrite();
+
+		Map<String, byte[]> entries = readEntries();
+		assertEquals(Arrays.asList("a/A.class", "META-INF/MANIFEST.MF", "a/C.class", "a/D.class"),
+			new ArrayList<String>(entries.keySet()));
+		assertArrayEquals(content("updated"), entries.get("a/A.class"));
+		assertArrayEquals(content("META-INF/MANIFEST.MF"), entries.get("META-INF/MANIFEST.MF"));
+		assertArrayEquals(content("a/C.class"), entries.get("a/C.class"));
+		assertArrayEquals(content("added"), entries.get("a/D.class"));
+
+		try(ZipFile zipFile = new ZipFile(this.jar)){
+			assertEquals("a comment", zipFile.getComment());
+			// copied, not recompressed
+			assertEquals(compressedSizeBefore, zipFile.getEntry("a/C.class").getCompressedSize());
+			assertNull(zipFile.getEntry("a/B.class"));
+		}
+
+		// the local headers must be consistent too, for tools reading jars as a stream
+		List<String> streamed = new ArrayList<String>();
+		try(ZipInputStream in = new ZipInputStream(new java.io.FileInputStream(this.jar))){
+			ZipEntry entry;
+			while((entry = in.getNextEntry()) != null){
+				assertArrayEquals(entries.get(entry.getName()), IOUtils.toByteArray(in));
+				streamed.add(entry.getName());
+			}
+		}
+		assertEquals(new ArrayList<String>(entries.keySet()), streamed);
+
+		// no temporary file is left behind
+		File[] siblings = this.jar.getParentFile().listFiles((dir, name) -> name.startsWith(this.jar.getName())
+			&& !name.equals(this.jar.getName()));
+		assertEquals(0, siblings.length);
+	}
+
+	@Test
+	public void testNoChanges() throws IOException {
+		long lastModified = this.jar.lastModified();
+		JarRewriter jarRewriter = new JarRewriter(this.jar);
+		assertFalse(jarRewriter.hasChanges());
+		jarRewriter.rewrite();
+		assertEquals(lastModified, this.jar.lastModified());
+	}
+}
@@ -3,8 +3,12 @@ package edu.ucla.cs.jshrinklib.util;
 import static org.junit.Assert.*;
 
 import java.io.File;
+import java.nio.file.Files;
 import java.util.HashMap;
+import java.util.Optional;
 
+import edu.ucla.cs.jshrinklib.reachability.TestOutput;
+import org.apache.commons.io.FileUtils;
 import org.junit.Test;
 
 public class MavenUtilTest {
@@ -16,4 +20,111 @@ public class MavenUtilTest {
 		MavenUtils.getModules(root_dir, modules);
 		assertEquals(19, modules.size());
 	}
+
+	@Test
+	public void getClasspathsTest() {
+		// maven-dependency-plugin 2.1, as logged by Maven 3.8 and earlier
+		HashMap<String, String> classpaths =
+			MavenUtils.getClasspathsFromFile(new File("src/test/resources/square_okhttp/onr_classpath.log"));
+		assertTrue(classpaths.containsKey("okhttp"));
+		assertTrue(classpaths.containsKey("parent"));
+
+		// maven-dependency-plugin 3.7.0, as logged by Maven 3.9 and later
+		classpaths = MavenUtils.getClasspathsFromFile(
+			new File("src/test/resources/module_test_project_dependencies.log"));
+		assertEquals(3, classpaths.size());
+		assertEquals("", classpaths.get("module-test-project"));
+		assertEquals(3, classpaths.get("simple-test-project").split(File.pathSeparator).length);
+		assertEquals(10, classpaths.get("another-simple-test-project").split(File.pathSeparator).length);
+	}
+
+	@Test
+	public void getCompileClasspathsTest() throws Exception {
+		String log = new String(Files.readAllBytes(
+			new File("src/test/resources/module_test_project_dependencies.log").toPath()));
+		HashMap<String, String> classpaths = MavenUtils.getCompileClasspaths(log);
+
+		// as resolved by "dependency:build-classpath -DincludeScope=compile"
+		assertEquals(3, classpaths.size());
+		assertEquals("", classpaths.get("module-test-project"));
+		// a system scope dependency, but not the test scope ones
+		assertEquals("/tmp/mtp/simple-test-project/libs/standard-stuff-library.jar",
+			classpaths.get("simple-test-project"));
+		// not the runtime scope dependency (xnio-nio)
+		String compileClasspath = classpaths.get("another-simple-test-project");
+		assertEquals(9, compileClasspath.split(File.pathSeparator).length);
+		assertFalse(compileClasspath.contains("xnio-nio"));
+		assertTrue(compileClasspath.startsWith("/tmp/mtp/libs/io/undertow/jastow/jastow/2.1.0.Final/jastow-2.1.0.Final.jar"));
+	}
+
+	@Test
+	public void classpathParserTest() throws Exception {
+		// the classpaths parsed line by line, as Maven outputs them, are those parsed from the whole output
+		String log = new String(Files.readAllBytes(
+			new File("src/test/resources/module_test_project_dependencies.log").toPath()));
+		MavenUtils.ClasspathParser parser = new MavenUtils.ClasspathParser();
+		for(String line : Files.readAllLines(
+			new File("src/test/resources/module_test_project_dependencies.log").toPath())){
+			parser.accept(line);
+		}
+		assertEquals(MavenUtils.getClasspaths(log), parser.getClasspaths());
+		assertEquals(MavenUtils.getCompileClasspaths(log), parser.getCompileClasspaths());
+	}
+
+	@Test
+	public void testOutputParserTest() {
+		MavenUtils.TestOutputParser parser = new MavenUtils.TestOutputParser();
+		parser.accept("Tests run: 2, Failures: 0, Errors: 0, Skipped: 0, Time elapsed: 1.375 sec - in a.ATest");
+		parser.accept("Results :");
+		parser.accept("Tests run: 7, Failures: 1, Errors: 2, Skipped: 3");
+		parser.accept("Tests run: 9, Failures: 0, Errors: 0, Skipped: 0");
+		parser.accept("[INFO] BUILD FAILURE");
+		TestOutput testOutput = parser.getTestOutput("log");
+		assertEquals(7, testOutput.getRun());
+		assertEquals(1, testOutput.getFailures());
+		assertEquals(2, testOutput.getErrors());
+		assertEquals(3, testOutput.getSkipped());
+		assertFalse(testOutput.isTestBuildSuccess());
+		assertEquals("log", testOutput.getTestOutputText());
+	}
+
+	@Test
+	public void classpathCacheTest() throws Exception {
+		File project = Files.createTempDirectory("classpath-cache").toFile();
+		try {
+			File pom = new File(project, "pom.xml");
+			Files.write(pom.toPath(), "<project/>".getBytes());
+			File jar = new File(project, "libs" + File.separator + "lib.jar");
+			jar.getParentFile().mkdirs();
+			Files.write(jar.toPath(), new byte[]{0});
+			File cacheDirectory = new File(project, "jshrink_caches");
+
+			HashMap<String, String> classpaths = new HashMap<String, String>();
+			classpaths.put("module", jar.getAbsolutePath());
+			classpaths.put("parent", "");
+			MavenClasspathCache cache = new MavenClasspathCache(project, jar.getParentFile(), Optional.of(cacheDirectory));
+			assertFalse(cache.get("test").isPresent());
+			cache.put("test", classpaths);
+			assertEquals(Optional.of(classpaths), cache.get("test"));
+			assertFalse(cache.get("compile").isPresent());
+
+			// persisted in the form of "dependency:build-classpath"
+			File[] cacheFiles = cacheDirectory.listFiles();
+			assertEquals(1, cacheFiles.length);
+			assertEquals(classpaths, MavenUtils.getClasspathsFromFile(cacheFiles[0]));
+
+			// a change to a "pom.xml" file changes the key
+			Files.write(pom.toPath(), "<project></project>".getBytes());
+			cache = new MavenClasspathCache(project, jar.getParentFile(), Optional.of(cacheDirectory));
+			assertFalse(cache.get("test").isPresent());
+			cache.put("test", classpaths);
+
+			// a classpath with a file which no longer exists is resolved again
+			jar.delete();
+			cache = new MavenClasspathCache(project, jar.getParentFile(), Optional.of(cacheDirectory));
+			assertFalse(cache.get("test").isPresent());
+		} finally {
+			FileUtils.deleteDirectory(project);
+		}
+	}
 }
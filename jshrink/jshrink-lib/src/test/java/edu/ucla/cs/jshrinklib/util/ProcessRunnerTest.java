@@ -0,0 +1,81 @@
+package edu.ucla.cs.jshrinklib.util;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class ProcessRunnerTest {
+
+	@Test
+	public void streamOutputTest() throws Exception {
+		File log = File.createTempFile("process-runner", ".log");
+		try {
+			List<String> lines = new ArrayList<String>();
+			ProcessRunner.Result result = new ProcessRunner("stream_test", "sh", "-c", "echo one; echo two >&2; echo three")
+				.addLineHandler(lines::add)
+				.setLogFile(log)
+				.keepOutput()
+				.run();
+
+			assertTrue(result.isSuccess());
+			// stderr is merged into stdout
+			assertEquals(Arrays.asList("one", "two", "three"), lines);
+			assertEquals(lines, Files.readAllLines(log.toPath(), Charset.defaultCharset()));
+			assertEquals("one" + System.lineSeparator() + "two" + System.lineSeparator() + "three"
+				+ System.lineSeparator(), result.getOutput().get());
+			assertEquals(lines, result.getTail());
+
+			assertEquals(1, ProcessRunner.getMetrics().get("stream_test").getRuns());
+			assertEquals(0, ProcessRunner.getMetrics().get("stream_test").getTimeouts());
+		} finally {
+			log.delete();
+		}
+	}
+
+	@Test
+	public void temporaryLogFileTest() throws Exception {
+		ProcessRunner.Result result = new ProcessRunner("log_test", "sh", "-c", "echo passed")
+			.setTemporaryLogFile()
+			.run();
+		assertTrue(result.isSuccess());
+		// deleted, as the command succeeded
+		assertFalse(result.getLogFile().isPresent());
+		assertFalse(result.getOutput().isPresent());
+
+		result = new ProcessRunner("log_test", "sh", "-c", "echo failed; exit 3")
+			.setTemporaryLogFile()
+			.run();
+		assertFalse(result.isSuccess());
+		assertEquals(3, result.getExitValue());
+		try {
+			assertTrue(result.getLogFile().get().exists());
+			assertEquals(Arrays.asList("failed"),
+				Files.readAllLines(result.getLogFile().get().toPath(), Charset.defaultCharset()));
+			assertTrue(result.getFailureMessage().contains("failed"));
+		} finally {
+			result.getLogFile().get().delete();
+		}
+		assertEquals(2, ProcessRunner.getMetrics().get("log_test").getRuns());
+	}
+
+	@Test
+	public void timeoutTest() throws Exception {
+		long start = System.currentTimeMillis();
+		ProcessRunner.Result result = new ProcessRunner("timeout_test", "sh", "-c", "echo started; exec sleep 60")
+			.setTimeout(1, TimeUnit.SECONDS)
+			.run();
+		assertTrue(System.currentTimeMillis() - start < 30000);
+		assertTrue(result.isTimedOut());
+		assertFalse(result.isSuccess());
+		assertEquals(Arrays.asList("started"), result.getTail());
+		assertEquals(1, ProcessRunner.getMetrics().get("timeout_test").getTimeouts());
+	}
+}
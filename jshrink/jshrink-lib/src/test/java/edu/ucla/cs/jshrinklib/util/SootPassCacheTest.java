@@ -0,0 +1,61 @@
+package edu.ucla.cs.jshrinklib.util;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Optional;
+
+import static org.junit.Assert.*;
+
+public class SootPassCacheTest {
+
+	private File directory;
+
+	@Before
+	public void before() throws IOException {
+		this.directory = Files.createTempDirectory("soot_pass_cache_").toFile();
+	}
+
+	@After
+	public void after() throws IOException {
+		FileUtils.deleteDirectory(this.directory);
+	}
+
+	@Test
+	public void classBytesTest(){
+		byte[] classBytes = new byte[]{(byte) 0xCA, (byte) 0xFE, (byte) 0xBA, (byte) 0xBE};
+		String digest = DigestUtils.sha256(classBytes);
+
+		SootPassCache cache = new SootPassCache(new File(this.directory, "soot_pass"));
+		assertFalse(cache.get(digest).isPresent());
+		cache.putClassBytes(digest, classBytes);
+
+		// read by a new cache, as in the next run
+		Optional<SootPassCache.Entry> entry = new SootPassCache(new File(this.directory, "soot_pass")).get(digest);
+		assertTrue(entry.isPresent());
+		assertArrayEquals(classBytes, entry.get().getClassBytes().get());
+		assertFalse(entry.get().getExceptionMessage().isPresent());
+	}
+
+	@Test
+	public void exceptionMessageTest(){
+		String digest = DigestUtils.sha256("unmodifiable");
+
+		SootPassCache cache = new SootPassCache(this.directory);
+		cache.putExceptionMessage(digest, "Cannot convert invokedynamic");
+
+		Optional<SootPassCache.Entry> entry = cache.get(digest);
+		assertTrue(entry.isPresent());
+		assertFalse(entry.get().getClassBytes().isPresent());
+		assertEquals("Cannot convert invokedynamic", entry.get().getExceptionMessage().get());
+		assertFalse(cache.get(DigestUtils.sha256("other")).isPresent());
+
+		// no temporary files are left behind
+		assertEquals(1, this.directory.listFiles().length);
+	}
+}
@@ -0,0 +1,6 @@
+public class Defaults {
+
+	public static String name(){
+		return "Shape";
+	}
+}
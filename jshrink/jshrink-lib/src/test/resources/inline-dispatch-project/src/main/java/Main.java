@@ -0,0 +1,10 @@
+public class Main {
+	public static void main(String[] args){
+		System.out.println(Defaults.name());
+		printName(new Square());
+	}
+
+	public static void printName(Shape shape){
+		System.out.println(shape.name());
+	}
+}
@@ -0,0 +1,10 @@
+public class Shape {
+
+	public Shape(){
+
+	}
+
+	public String name(){
+		return "Shape";
+	}
+}
@@ -0,0 +1,11 @@
+public class Square extends Shape {
+
+	public Square(){
+
+	}
+
+	@Override
+	public String name(){
+		return "Square";
+	}
+}
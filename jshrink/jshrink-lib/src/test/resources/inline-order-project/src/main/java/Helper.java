@@ -0,0 +1,10 @@
+public class Helper {
+
+	public static void greet(){
+		print("Hello");
+	}
+
+	private static void print(String message){
+		System.out.println(message);
+	}
+}